@@ -1,30 +1,16 @@
---MOCK DATA
+--MOCK DATA (UtilsForTests.resetDB() sends this whole script in one transaction before each test)
 
---remove all users that can be removed
-DELETE
-FROM users
-WHERE username != 'admin';
---admin can't be deleted as it is a protected entry.
+--empty every table and restart the id sequences in one statement. TRUNCATE doesn't scan the tables or fire the
+--protect_* rules so it is much faster than deleting the rows. schema_version is left alone.
+TRUNCATE users, authors, series, books, book_identifier, book_authors, book_genres, genres, comments, comments_series,
+    comments_author, recommendation_series_to_series, recommendation_book_to_series, recommendation_book_to_book,
+    user_book_rating, file_state
+    RESTART IDENTITY;
 
---can't delete a series if this is > 0 so set all series values of this field to 0
-DELETE
-FROM books;
-UPDATE series
-SET number_books_in_series=0;
-
---need to delete all series FIRST (as authors can't be deleted until no series reference them.
-DELETE
-FROM series;
-DELETE
-FROM authors;
-DELETE
-FROM genres;
-
---reset our admin accounts salt/hashedPassword
-UPDATE users
-set salt='$2a$10$D0uvz6/IgaKHVjV7zdlXAe',
-    hashedPassword='$2a$10$D0uvz6/IgaKHVjV7zdlXAe8L92nEexa4gkNV7zyLtCRUTIyJEVKxy'
-WHERE username = 'admin';
+--the protected root admin account (user_id 1 again) as the baseline migration creates it (hashed password is Password1)
+INSERT INTO users (username, hashedPassword, salt, first_name, last_name, email, is_admin)
+VALUES ('admin', '$2a$10$D0uvz6/IgaKHVjV7zdlXAe8L92nEexa4gkNV7zyLtCRUTIyJEVKxy', '$2a$10$D0uvz6/IgaKHVjV7zdlXAe',
+        'admin', 'admin', 'admin@email.com', true);
 
 INSERT INTO users (username, hashedPassword, salt, first_name, last_name, email, is_admin)
 VALUES ('JamesJoyce', '$2a$10$D0uvz6/IgaKHVjV7zdlXAe8L92nEexa4gkNV7zyLtCRUTIyJEVKxy', '$2a$10$D0uvz6/IgaKHVjV7zdlXAe',
@@ -246,4 +232,4 @@ SELECT books.book_id, authors.author_id
 FROM books,
      authors
 WHERE books.title = 'TestBook7'
-  AND authors.fname = 'James';
\ No newline at end of file
+  AND authors.fname = 'James';
\ No newline at end of file
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+
+/**
+ * Benchmarks for Book.hashCode() and Book.equals() (used whenever books are
+ * put in hash based collections or compared in the tests). No database is
+ * needed.
+ *
+ * @author Bryce-BG
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookBenchmark {
+	private Book book;
+	private Book sameBook;
+	private Book otherBook;
+
+	@Setup
+	public void setUp() {
+		book = newBook();
+		sameBook = new Book(book);
+		otherBook = new Book(book);
+		otherBook.setTitle(book.getTitle() + "!"); // differs in the last field compared
+	}
+
+	@Benchmark
+	public int hashCodeBook() {
+		return book.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSame() {
+		return book.equals(sameBook);
+	}
+
+	@Benchmark
+	public boolean equalsDifferent() {
+		return book.equals(otherBook);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Book newBook() {
+		StringBuilder description = new StringBuilder();
+		for (int x = 0; x < 40; x++) {
+			description.append(SyntheticLibrary.word(x * 7)).append(' ');
+		}
+		Book b = new Book(7.5f, 1234, 2, 2, "covers/1234", "cover.jpg", description.toString(), 1, true, 17,
+				new Timestamp(946684800000L), "Penguin", 321, 56, "Shadow River 1234");
+		b.setAuthorIDs(new int[] { 17, 230 });
+		b.setGenres(new String[] { SyntheticLibrary.genre(2), SyntheticLibrary.genre(9) });
+		b.setIdentifiers(new Pair[] { new Pair<String, String>("isbn", "9780000001234") });
+		return b;
+	}
+}
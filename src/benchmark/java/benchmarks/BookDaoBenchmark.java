@@ -0,0 +1,146 @@
+package benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+
+/**
+ * Benchmarks for the BookDao read and write paths against a synthetic library
+ * (see LibraryState for the scale).
+ *
+ * The edit benchmarks overwrite fields of random books with values of the same
+ * shape as the seeded ones, so the library stays representative between runs.
+ * Books inserted by insertBookIntoDB() are deleted after each iteration.
+ *
+ * @author Bryce-BG
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookDaoBenchmark {
+	private static final String INSERT_TITLE_PREFIX = "Benchmark Insert ";
+
+	@Benchmark
+	public Book getBookByBookID(LibraryState lib) {
+		return DAORoot.bookDao.getBookByBookID(lib.randomBookID());
+	}
+
+	// same as getBookByBookID() but always misses the BookCache
+	@Benchmark
+	public Book getBookByBookID_uncached(LibraryState lib) {
+		long bookID = lib.randomBookID();
+		DAORoot.bookDao.getBookCache().invalidate(bookID);
+		return DAORoot.bookDao.getBookByBookID(bookID);
+	}
+
+	@Benchmark
+	public Book[] getBooksByAuthor(LibraryState lib) {
+		return DAORoot.bookDao.getBooksByAuthor(lib.randomAuthorID());
+	}
+
+	@Benchmark
+	public Book[] getBooksByTitle(LibraryState lib) {
+		return DAORoot.bookDao.getBooksByTitle(lib.randomWord());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public ArrayList<Book> getAllBooks(LibraryState lib) {
+		return DAORoot.bookDao.getAllBooks();
+	}
+
+	// the constant memory alternative to getAllBooks()
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public boolean forEachBook(LibraryState lib, Blackhole bh) {
+		return DAORoot.bookDao.forEachBook(bh::consume);
+	}
+
+	@Benchmark
+	public boolean insertBookIntoDB(LibraryState lib, InsertState ins) {
+		int[] authorIDs = { lib.randomAuthorID() };
+		return DAORoot.bookDao.insertBookIntoDB(authorIDs, "A book inserted by the benchmarks.", 1,
+				INSERT_TITLE_PREFIX + ins.counter.incrementAndGet());
+	}
+
+	@Benchmark
+	public boolean editBook_description(LibraryState lib) {
+		return DAORoot.bookDao.editBook(lib.randomBookID(), EDIT_TYPE.SET_DESCRIPTION,
+				"An edited " + lib.randomWord() + " description.");
+	}
+
+	@Benchmark
+	public boolean editBook_avgRating(LibraryState lib) {
+		return DAORoot.bookDao.editBook(lib.randomBookID(), EDIT_TYPE.SET_AVG_RATING,
+				Float.valueOf(ThreadLocalRandom.current().nextInt(1000) / 100f));
+	}
+
+	@Benchmark
+	public boolean editBook_genres(LibraryState lib) {
+		String[] genres = { lib.randomGenre(), lib.randomGenre() };
+		if (genres[0].equals(genres[1]))
+			genres = new String[] { genres[0] };
+		return DAORoot.bookDao.editBook(lib.randomBookID(), EDIT_TYPE.SET_GENRES, genres);
+	}
+
+	@Benchmark
+	public boolean editBook_identifiers(LibraryState lib) {
+		long bookID = lib.randomBookID();
+		@SuppressWarnings("unchecked")
+		Pair<String, String>[] identifiers = new Pair[] {
+				new Pair<String, String>("isbn", String.format("978%010d", bookID)) };
+		return DAORoot.bookDao.editBook(bookID, EDIT_TYPE.SET_IDENTIFIERS, identifiers);
+	}
+
+	/**
+	 * Numbers the books inserted by insertBookIntoDB() (titles must be unique per
+	 * author) and deletes them again after each iteration.
+	 */
+	@State(Scope.Benchmark)
+	public static class InsertState {
+		private final AtomicLong counter = new AtomicLong();
+
+		@TearDown(Level.Iteration)
+		public void removeInsertedBooks() throws ClassNotFoundException, SQLException {
+			// one statement (auto-committed): their book_authors rows are removed by the
+			// ON DELETE CASCADE
+			try (Connection conn = DAORoot.library.connectToDB();
+					PreparedStatement pstmt = conn.prepareStatement("DELETE FROM books WHERE title LIKE ?")) {
+				pstmt.setString(1, INSERT_TITLE_PREFIX + "%");
+				pstmt.executeUpdate();
+			}
+			DAORoot.bookDao.getBookCache().invalidateAll();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Shared JMH state: points DAORoot at a synthetic library of "scale" books
+ * (see SyntheticLibrary) and hands out random ids and search terms that exist
+ * in it.
+ *
+ * The scale is a JMH parameter so other sizes can be run with for example:
+ * -p scale=10000,1000000
+ *
+ * @author Bryce-BG
+ *
+ */
+@State(Scope.Benchmark)
+public class LibraryState {
+	@Param({ "10000" })
+	public int scale;
+
+	private int authorCount;
+
+	@Setup
+	public void setUp() {
+		// keep the log quiet so logging doesn't show up in the numbers
+		Utils.initializeAppLogger("benchmark_log.txt", GlobalConstants.APP_LOGGER_PATTERN, Level.WARN);
+		if (!SyntheticLibrary.prepare(scale))
+			throw new IllegalStateException("Unable to prepare the benchmark database for scale " + scale
+					+ ". Check the postgres settings in library.properties.");
+		authorCount = SyntheticLibrary.authorCount(scale);
+	}
+
+	/**
+	 * @return the id of a book in the library (ids are 1 to scale).
+	 */
+	public long randomBookID() {
+		return ThreadLocalRandom.current().nextLong(1, scale + 1);
+	}
+
+	/**
+	 * @return the id of an author in the library.
+	 */
+	public int randomAuthorID() {
+		return ThreadLocalRandom.current().nextInt(1, authorCount + 1);
+	}
+
+	/**
+	 * @return a word that titles are built from.
+	 */
+	public String randomWord() {
+		return SyntheticLibrary.word(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+	}
+
+	/**
+	 * @return the name of a genre in the library.
+	 */
+	public String randomGenre() {
+		return SyntheticLibrary.genre(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+	}
+}
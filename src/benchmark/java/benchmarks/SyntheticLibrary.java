@@ -0,0 +1,343 @@
+package benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Random;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.LibraryDB;
+import com.BryceBG.DatabaseTools.Database.SchemaMigrator;
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Generates a synthetic library of a given size for the benchmarks to run
+ * against. Each scale gets its own database (librarybench_<scale>) on the
+ * postgres server from library.properties. The database is created and seeded
+ * the first time a scale is asked for and re-used by later runs (seeding a
+ * million books takes minutes).
+ *
+ * The data is deterministic for a given scale: roughly 10 books per author,
+ * half of the books in series of four, a fifth co-authored, 1-3 genres and an
+ * isbn per book, and titles/descriptions drawn from a small vocabulary so the
+ * title and text searches have realistic hit counts.
+ *
+ * Can also be run on its own to seed the databases ahead of time:<br>
+ * java benchmarks.SyntheticLibrary 10000 1000000
+ *
+ * @author Bryce-BG
+ *
+ */
+public class SyntheticLibrary {
+	private static final Logger logger = LogManager.getLogger(SyntheticLibrary.class.getName());
+
+	public static final String DB_NAME_PREFIX = "librarybench_";
+	// password of the admin account created by the baseline migration
+	public static final String ADMIN_USERNAME = "admin";
+	public static final String ADMIN_PASSWORD = "Password1";
+
+	private static final long RANDOM_SEED = 42;
+	private static final int BATCH_SIZE = 1000;
+	private static final int BOOKS_PER_AUTHOR = 10;
+	private static final int BOOKS_PER_SERIES = 4;
+
+	// {genre, parent}
+	private static final String[][] GENRES = { { "Fiction", null }, { "Nonfiction", null },
+			{ "Fantasy", "Fiction" }, { "Epic Fantasy", "Fantasy" }, { "Urban Fantasy", "Fantasy" },
+			{ "Science Fiction", "Fiction" }, { "Space Opera", "Science Fiction" }, { "Cyberpunk", "Science Fiction" },
+			{ "Mystery", "Fiction" }, { "Thriller", "Fiction" }, { "Horror", "Fiction" }, { "Romance", "Fiction" },
+			{ "Historical Fiction", "Fiction" }, { "Literary Fiction", "Fiction" }, { "Young Adult", "Fiction" },
+			{ "History", "Nonfiction" }, { "Biography", "Nonfiction" }, { "Science", "Nonfiction" },
+			{ "Philosophy", "Nonfiction" }, { "Travel", "Nonfiction" }, { "Poetry", null }, { "Classics", null } };
+
+	private static final String[] FIRST_NAMES = { "James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+			"Michael", "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica",
+			"Thomas", "Sarah", "Charles", "Karen" };
+	private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+			"Miller", "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson",
+			"Thomas", "Taylor", "Moore", "Jackson", "Martin" };
+	private static final String[] WORDS = { "shadow", "river", "crown", "empire", "silent", "broken", "winter",
+			"storm", "garden", "glass", "iron", "night", "dragon", "star", "ocean", "memory", "fire", "city", "forest",
+			"secret", "king", "queen", "war", "song", "light", "stone", "wolf", "dream", "house", "road", "last",
+			"hidden", "golden", "lost", "dark", "wild", "ancient", "bright", "cold", "distant" };
+	private static final String[] PUBLISHERS = { "", "Penguin", "HarperCollins", "Tor", "Orbit", "Vintage",
+			"Random House", "Macmillan" };
+
+	/**
+	 * Point DAORoot at the benchmark database for a scale, creating and seeding it
+	 * if it doesn't exist yet (or has fewer books than asked for).
+	 *
+	 * @param bookCount the number of books the library should have.
+	 * @return true if DAORoot now points at a seeded database.
+	 */
+	public static boolean prepare(int bookCount) {
+		String dbName = DB_NAME_PREFIX + bookCount;
+		if (switchTo(dbName) && countBooks() >= bookCount) {
+			logger.info("Re-using benchmark database {}", dbName);
+			return SchemaMigrator.checkOnStartup(); // one query unless it was seeded by an older version
+		}
+
+		logger.info("Creating benchmark database {}", dbName);
+		if (!LibraryDB.createDB(dbName, false)) // also switches DAORoot to it
+			return false;
+		try {
+			seed(bookCount);
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return false;
+		} catch (SQLException e) {
+			logger.error("Exception occured seeding benchmark database: " + e.getMessage());
+			return false;
+		}
+		DAORoot.bookDao.getBookCache().invalidateAll();
+		return true;
+	}
+
+	/**
+	 * Fill the (empty, freshly created) database DAORoot points at with
+	 * bookCount books and the authors, series and genres they reference.
+	 */
+	public static void seed(int bookCount) throws ClassNotFoundException, SQLException {
+		Random random = new Random(RANDOM_SEED);
+		int authorCount = authorCount(bookCount);
+		long start = System.currentTimeMillis();
+
+		try (Connection conn = DAORoot.library.connectToDB();) {
+			conn.setAutoCommit(false);
+
+			// 1. genres (parents are listed before their children)
+			try (PreparedStatement pstmt = conn
+					.prepareStatement("INSERT INTO genres (genre_name, parent, genre_description) VALUES (?, ?, ?)");) {
+				for (String[] genre : GENRES) {
+					pstmt.setString(1, genre[0]);
+					pstmt.setString(2, genre[1]);
+					pstmt.setString(3, "Synthetic genre: " + genre[0]);
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+			}
+
+			// 2. authors (ids are assigned here so the junction tables can be
+			// filled in the same pass as the books)
+			try (PreparedStatement pstmt = conn.prepareStatement(
+					"INSERT INTO authors (author_id, fname, lname, author_bib) VALUES (?, ?, ?, ?)");) {
+				for (int a = 1; a <= authorCount; a++) {
+					pstmt.setInt(1, a);
+					pstmt.setString(2, FIRST_NAMES[a % FIRST_NAMES.length]);
+					// suffix keeps (fname, lname) unique
+					pstmt.setString(3, LAST_NAMES[(a / FIRST_NAMES.length) % LAST_NAMES.length] + a);
+					pstmt.setString(4, sentence(random, 12));
+					pstmt.addBatch();
+					if (a % BATCH_SIZE == 0)
+						pstmt.executeBatch();
+				}
+				pstmt.executeBatch();
+			}
+
+			// 3. books (plus their authors, genres and identifiers and the series
+			// they belong to)
+			try (PreparedStatement seriesStmt = conn.prepareStatement(
+					"INSERT INTO series (series_id, series_name, primary_author_id, number_books_in_series, series_status) "
+							+ "VALUES (?, ?, ?, 0, 'ONGOING'::series_status_enum)");
+					PreparedStatement bookStmt = conn.prepareStatement("INSERT INTO books (book_id, title, description, "
+							+ "edition, publisher, primary_author_id, count_authors, series_id, book_index_in_series, "
+							+ "publish_date, has_identifiers, average_rating, rating_count) "
+							+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, TRUE, ?, ?)");
+					PreparedStatement authorStmt = conn
+							.prepareStatement("INSERT INTO book_authors (book_id, author_id) VALUES (?, ?)");
+					PreparedStatement genreStmt = conn
+							.prepareStatement("INSERT INTO book_genres (book_id, genre_name) VALUES (?, ?)");
+					PreparedStatement identifierStmt = conn.prepareStatement(
+							"INSERT INTO book_identifier (book_id, identifier_type, identifier_value) VALUES (?, 'isbn', ?)");) {
+
+				for (long b = 1; b <= bookCount; b++) {
+					int author = (int) ((b - 1) % authorCount) + 1;
+					int coAuthor = 0;
+					if (authorCount > 1 && random.nextInt(5) == 0) {
+						coAuthor = random.nextInt(authorCount) + 1;
+						if (coAuthor == author)
+							coAuthor = 0;
+					}
+					int primary = (coAuthor == 0) ? author : Math.min(author, coAuthor);
+
+					// an author's books come in runs of 2 * BOOKS_PER_SERIES where the first
+					// BOOKS_PER_SERIES books of the run form a series
+					Integer series = null;
+					float indexInSeries = -1;
+					long bookOfAuthor = (b - 1) / authorCount; // how many books this author already has
+					long run = bookOfAuthor / (2 * BOOKS_PER_SERIES);
+					int indexInRun = (int) (bookOfAuthor % (2 * BOOKS_PER_SERIES));
+					if (indexInRun < BOOKS_PER_SERIES) {
+						series = (int) (run * authorCount + author);
+						indexInSeries = indexInRun + 1;
+						if (indexInRun == 0) {
+							seriesStmt.setInt(1, series);
+							seriesStmt.setString(2,
+									"The " + capitalize(WORDS[series % WORDS.length]) + " Cycle " + series);
+							seriesStmt.setInt(3, author);
+							seriesStmt.addBatch();
+						}
+					}
+
+					bookStmt.setLong(1, b);
+					bookStmt.setString(2, title(random) + " " + b);
+					bookStmt.setString(3, sentence(random, 40));
+					bookStmt.setInt(4, random.nextInt(3) + 1);
+					bookStmt.setString(5, PUBLISHERS[random.nextInt(PUBLISHERS.length)]);
+					bookStmt.setInt(6, primary);
+					bookStmt.setInt(7, coAuthor == 0 ? 1 : 2);
+					if (series == null) {
+						bookStmt.setNull(8, java.sql.Types.INTEGER);
+					} else {
+						bookStmt.setInt(8, series);
+					}
+					bookStmt.setFloat(9, indexInSeries);
+					bookStmt.setTimestamp(10, new Timestamp(-631152000000L + (long) (random.nextDouble() * 2.2e12)));
+					bookStmt.setFloat(11, Math.round(random.nextFloat() * 1000) / 100f);
+					bookStmt.setLong(12, random.nextInt(10000));
+					bookStmt.addBatch();
+
+					authorStmt.setLong(1, b);
+					authorStmt.setInt(2, author);
+					authorStmt.addBatch();
+					if (coAuthor != 0) {
+						authorStmt.setLong(1, b);
+						authorStmt.setInt(2, coAuthor);
+						authorStmt.addBatch();
+					}
+
+					int genreCount = random.nextInt(3) + 1;
+					int firstGenre = random.nextInt(GENRES.length);
+					for (int g = 0; g < genreCount; g++) {
+						genreStmt.setLong(1, b);
+						genreStmt.setString(2, GENRES[(firstGenre + g * 7) % GENRES.length][0]);
+						genreStmt.addBatch();
+					}
+
+					identifierStmt.setLong(1, b);
+					identifierStmt.setString(2, String.format("978%010d", b));
+					identifierStmt.addBatch();
+
+					if (b % BATCH_SIZE == 0) {
+						// series first as the books reference them
+						seriesStmt.executeBatch();
+						bookStmt.executeBatch();
+						authorStmt.executeBatch();
+						genreStmt.executeBatch();
+						identifierStmt.executeBatch();
+						conn.commit();
+					}
+					if (b % 100000 == 0)
+						logger.info("Seeded {} of {} books", b, bookCount);
+				}
+				seriesStmt.executeBatch();
+				bookStmt.executeBatch();
+				authorStmt.executeBatch();
+				genreStmt.executeBatch();
+				identifierStmt.executeBatch();
+			}
+
+			// 4. fix up what we set by hand
+			try (Statement stmt = conn.createStatement();) {
+				stmt.executeUpdate("UPDATE books SET rating_sum = average_rating * rating_count");
+				stmt.executeUpdate("UPDATE series s SET (number_books_in_series, rating_sum, rating_count) = "
+						+ "(SELECT count(*), COALESCE(sum(b.rating_sum), 0), COALESCE(sum(b.rating_count), 0) "
+						+ "FROM books b WHERE b.series_id = s.series_id)");
+				stmt.execute("SELECT setval(pg_get_serial_sequence('authors', 'author_id'), "
+						+ "(SELECT COALESCE(max(author_id), 1) FROM authors))");
+				stmt.execute("SELECT setval(pg_get_serial_sequence('series', 'series_id'), "
+						+ "(SELECT COALESCE(max(series_id), 1) FROM series))");
+				stmt.execute("SELECT setval(pg_get_serial_sequence('books', 'book_id'), "
+						+ "(SELECT COALESCE(max(book_id), 1) FROM books))");
+			}
+			conn.commit();
+
+			// statistics so the planner doesn't guess on the freshly loaded tables
+			conn.setAutoCommit(true);
+			try (Statement stmt = conn.createStatement();) {
+				stmt.execute("ANALYZE");
+			}
+		}
+		logger.info("Seeded {} books, {} authors and {} genres in {} ms", bookCount, authorCount, GENRES.length,
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return the amount of books in the database DAORoot points at (-1 if it
+	 *         can't be read, for example because the tables don't exist).
+	 */
+	public static long countBooks() {
+		try (Connection conn = DAORoot.library.connectToDB();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT count(*) FROM books");) {
+			return rs.next() ? rs.getLong(1) : -1;
+		} catch (ClassNotFoundException | SQLException e) {
+			return -1;
+		}
+	}
+
+	private static boolean switchTo(String dbName) {
+		return DAORoot.changeDB(Utils.getConfigString("app.dbhost", null), Utils.getConfigString("app.dbport", null),
+				dbName, Utils.getConfigString("app.dbpass", null), Utils.getConfigString("app.dbuser", null));
+	}
+
+	/**
+	 * @return a word from the vocabulary titles and descriptions are built from.
+	 */
+	static String word(int index) {
+		return WORDS[Math.floorMod(index, WORDS.length)];
+	}
+
+	/**
+	 * @return the name of a genre in the synthetic library.
+	 */
+	static String genre(int index) {
+		return GENRES[Math.floorMod(index, GENRES.length)][0];
+	}
+
+	/**
+	 * @return how many authors the library for bookCount books has.
+	 */
+	static int authorCount(int bookCount) {
+		return Math.max(1, bookCount / BOOKS_PER_AUTHOR);
+	}
+
+	private static String title(Random random) {
+		return capitalize(WORDS[random.nextInt(WORDS.length)]) + " " + capitalize(WORDS[random.nextInt(WORDS.length)]);
+	}
+
+	private static String sentence(Random random, int wordCount) {
+		StringBuilder sb = new StringBuilder();
+		for (int x = 0; x < wordCount; x++) {
+			if (x > 0)
+				sb.append(' ');
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return capitalize(sb.append('.').toString());
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	/**
+	 * Seed the benchmark databases for the scales passed in (default 10000).
+	 */
+	public static void main(String[] args) {
+		Utils.initializeAppLogger("benchmark_log.txt", GlobalConstants.APP_LOGGER_PATTERN, Level.INFO);
+		if (args.length == 0)
+			args = new String[] { "10000" };
+		for (String scale : args) {
+			if (!prepare(Integer.parseInt(scale)))
+				logger.error("Preparing benchmark database for scale {} failed", scale);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.BryceBG.DatabaseTools.Database.User.Session;
+import com.BryceBG.DatabaseTools.Database.User.UserController;
+
+/**
+ * Benchmarks the cost of authenticating a controller call: a username/password
+ * (BCrypt plus a user lookup) against a session token from login().
+ *
+ * @author Bryce-BG
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserControllerBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class SessionState {
+		private String token;
+
+		@Setup
+		public void setUp(LibraryState lib) {
+			token = UserController.login(SyntheticLibrary.ADMIN_USERNAME, SyntheticLibrary.ADMIN_PASSWORD).getValue0();
+			if (token == null)
+				throw new IllegalStateException("Unable to log in to the benchmark database");
+		}
+	}
+
+	@Benchmark
+	public boolean authenticate(LibraryState lib) {
+		return UserController.authenticate(SyntheticLibrary.ADMIN_USERNAME, SyntheticLibrary.ADMIN_PASSWORD);
+	}
+
+	@Benchmark
+	public Session getSession(SessionState session) {
+		return UserController.getSession(session.token);
+	}
+}
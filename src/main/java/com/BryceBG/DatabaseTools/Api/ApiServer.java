@@ -0,0 +1,643 @@
+package com.BryceBG.DatabaseTools.Api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
+import com.BryceBG.DatabaseTools.Database.Author.Author;
+import com.BryceBG.DatabaseTools.Database.Author.AuthorController;
+import com.BryceBG.DatabaseTools.Database.Author.AuthorDao;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Book.BookController;
+import com.BryceBG.DatabaseTools.Database.Series.Series;
+import com.BryceBG.DatabaseTools.Database.Series.SeriesController;
+import com.BryceBG.DatabaseTools.Database.Series.SeriesDao;
+import com.BryceBG.DatabaseTools.Database.User.UserController;
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Json;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+
+/**
+ * REST API over the controllers.
+ *
+ * Jetty's request threads only parse the request. The controller call (and the
+ * JDBC work behind it) runs on a bounded pool sized to the connection pool and
+ * the response is handed back to Jetty as a CompletableFuture, so slow queries
+ * never tie up the threads accepting requests. When the pool's queue is full the
+ * request is answered with 503 straight away instead of queuing without bound.
+ *
+ * Responses are JSON. Catalog reads (books, authors, series) are cacheable:
+ * they carry "Cache-Control: public, max-age=api.cache_max_age_s" and a weak
+ * ETag so clients and proxies can revalidate with If-None-Match and get a 304
+ * without the body. Covers get the same max-age with an ETag and Last-Modified
+ * taken from the cover file, as a re-sync can replace a book's cover under the
+ * same url. Everything else is "no-store". Request bodies are form
+ * encoded and the session token from POST /api/login is sent as
+ * "Authorization: Bearer &lt;token&gt;".
+ *
+ * @author Bryce-BG
+ *
+ */
+public class ApiServer {
+	private static final Logger logger = LogManager.getLogger(ApiServer.class.getName());
+
+	private static final String JSON = "application/json";
+
+	// fields PATCH /api/books/:id can set -> BookController edit type
+	private static final HashMap<String, Integer> EDITABLE_FIELDS = new HashMap<String, Integer>();
+	static {
+		EDITABLE_FIELDS.put("add_author", BookController.ADD_AUTHOR);
+		EDITABLE_FIELDS.put("remove_author", BookController.REMOVE_AUTHOR);
+		EDITABLE_FIELDS.put("index_in_series", BookController.SET_BOOK_INDEX_IN_SERIES);
+		EDITABLE_FIELDS.put("description", BookController.SET_DESCRIPTION);
+		EDITABLE_FIELDS.put("edition", BookController.SET_EDITION);
+		EDITABLE_FIELDS.put("genres", BookController.SET_GENRES);
+		EDITABLE_FIELDS.put("publish_date", BookController.SET_PUBLISH_DATE);
+		EDITABLE_FIELDS.put("publisher", BookController.SET_PUBLISHER);
+		EDITABLE_FIELDS.put("series_id", BookController.SET_SERIES_ID);
+	}
+
+	private final Javalin app;
+	private final ThreadPoolExecutor workers;
+	private final int cacheMaxAge;
+
+	/**
+	 * A server that runs requests on "api.threads" threads (default:
+	 * db.pool.max_size), queues up to "api.queue_size" (default 1000) more and
+	 * lets clients cache catalog reads for "api.cache_max_age_s" (default 60)
+	 * seconds.
+	 */
+	public ApiServer() {
+		this(Utils.getConfigInteger("api.threads", Utils.getConfigInteger("db.pool.max_size", 10)),
+				Utils.getConfigInteger("api.queue_size", 1000), Utils.getConfigInteger("api.cache_max_age_s", 60));
+	}
+
+	public ApiServer(int threads, int queueSize, int cacheMaxAgeSeconds) {
+		this.cacheMaxAge = Math.max(0, cacheMaxAgeSeconds);
+		AtomicInteger threadCount = new AtomicInteger();
+		// no more threads than connections, extra threads would only wait on the pool
+		this.workers = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), r -> {
+					Thread t = new Thread(r, "api-worker-" + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, new ThreadPoolExecutor.AbortPolicy());
+		this.app = Javalin.create(config -> {
+			config.showJavalinBanner = false;
+			config.defaultContentType = JSON;
+			config.asyncRequestTimeout = (long) Utils.getConfigInteger("api.timeout_ms", 30000);
+		});
+		helperRoutes();
+	}
+
+	/**
+	 * Start listening.
+	 *
+	 * @param port the port to listen on (0 for any free port, see port()).
+	 */
+	public ApiServer start(int port) {
+		app.start(port);
+		return this;
+	}
+
+	public int port() {
+		return app.port();
+	}
+
+	public void stop() {
+		app.stop();
+		workers.shutdownNow();
+	}
+
+	private void helperRoutes() {
+		// session
+		app.post("/api/login", ctx -> {
+			String username = ctx.formParam("username");
+			String password = ctx.formParam("password");
+			helperAsync(ctx, false, () -> {
+				Pair<String, String> res = UserController.login(username, password);
+				if (res.getValue0() == null)
+					return Response.error(401, res.getValue1());
+				return Response.ok(map("token", res.getValue0()));
+			});
+		});
+		app.post("/api/logout", ctx -> {
+			String token = sessionToken(ctx);
+			helperAsync(ctx, false, () -> Response.of(UserController.logout(token)));
+		});
+
+		// books ("random" is registered before ":id" so it isn't taken for an id)
+		app.get("/api/books/random", ctx -> {
+			int count = intParam(ctx.queryParam("count"), 1);
+			String genre = ctx.queryParam("genre");
+			helperAsync(ctx, false,
+					() -> Response.ok(map("items", toList(BookController.getRandomBooks(count, genre)))));
+		});
+		app.get("/api/books/:id", ctx -> {
+			long bookID = longParam(ctx.pathParam("id"));
+			helperAsync(ctx, true, () -> {
+				Book book = DAORoot.bookDao.getBookByBookID(bookID);
+				return book == null ? Response.error(404, "No book with ID: " + bookID) : Response.ok(toMap(book));
+			});
+		});
+		app.get("/api/books/:id/cover", ctx -> {
+			long bookID = longParam(ctx.pathParam("id"));
+			boolean small = "small".equals(ctx.queryParam("size"));
+			helperCover(ctx, bookID, small);
+		});
+		app.get("/api/books", ctx -> {
+			int searchType;
+			Object searchVal;
+			if (ctx.queryParam("title") != null) {
+				searchType = BookController.SEARCH_BY_TITLE;
+				searchVal = ctx.queryParam("title");
+			} else if (ctx.queryParam("text") != null) {
+				searchType = BookController.SEARCH_BY_TEXT;
+				searchVal = ctx.queryParam("text");
+			} else if (ctx.queryParam("genre") != null) { // includes subgenres
+				searchType = BookController.SEARCH_BY_GENRE;
+				searchVal = ctx.queryParam("genre");
+			} else if (ctx.queryParam("author") != null) {
+				searchType = BookController.SEARCH_BY_AUTHOR;
+				String author = ctx.queryParam("author");
+				searchVal = author.matches("\\d+") ? (Object) Integer.valueOf(author) : author;
+			} else if (ctx.queryParam("series") != null) {
+				searchType = BookController.SEARCH_BY_SERIES;
+				searchVal = (int) longParam(ctx.queryParam("series"));
+			} else if (ctx.queryParam("identifier") != null) { // type:value
+				searchType = BookController.SEARCH_BY_IDENTIFIER;
+				String[] identifier = ctx.queryParam("identifier").split(":", 2);
+				if (identifier.length != 2)
+					throw new IllegalArgumentException("identifier must be type:value");
+				searchVal = new Pair<String, String>(identifier[0], identifier[1]);
+			} else {
+				throw new IllegalArgumentException(
+						"One of title, text, genre, author, series or identifier is required");
+			}
+			helperSearchBooks(ctx, searchType, searchVal);
+		});
+		app.post("/api/books", ctx -> {
+			String token = sessionToken(ctx);
+			String title = ctx.formParam("title");
+			String description = ctx.formParam("description");
+			int edition = intParam(ctx.formParam("edition"), -1);
+			Pair<String, String>[] authorNames = authorNames(ctx);
+			helperAsync(ctx, false,
+					() -> Response.of(BookController.addBook(token, title, description, edition, authorNames)));
+		});
+		app.patch("/api/books/:id", ctx -> {
+			String token = sessionToken(ctx);
+			long bookID = longParam(ctx.pathParam("id"));
+			String field = ctx.formParam("field");
+			Integer editType = EDITABLE_FIELDS.get(field);
+			if (editType == null)
+				throw new IllegalArgumentException("Unknown field: " + field);
+			Object value = editValue(editType, ctx.formParam("value"));
+			helperAsync(ctx, false, () -> Response.of(BookController.editBook(token, bookID, editType, value)));
+		});
+		app.delete("/api/books/:id", ctx -> {
+			String token = sessionToken(ctx);
+			long bookID = longParam(ctx.pathParam("id"));
+			helperAsync(ctx, false, () -> Response.of(BookController.removeBook(token, bookID)));
+		});
+		app.put("/api/books/:id/rating", ctx -> {
+			String token = sessionToken(ctx);
+			long bookID = longParam(ctx.pathParam("id"));
+			float rating = floatParam(ctx.formParam("rating"));
+			helperAsync(ctx, false, () -> Response.of(UserController.rateBook(token, bookID, rating)));
+		});
+		app.delete("/api/books/:id/rating", ctx -> {
+			String token = sessionToken(ctx);
+			long bookID = longParam(ctx.pathParam("id"));
+			helperAsync(ctx, false, () -> Response.of(UserController.removeRating(token, bookID)));
+		});
+
+		// authors
+		app.get("/api/authors", ctx -> {
+			String pageToken = ctx.queryParam("page_token");
+			int pageSize = intParam(ctx.queryParam("page_size"), 0);
+			helperAsync(ctx, true, () -> Response.page(DAORoot.authorDao.getAllAuthorsPage(pageToken, pageSize),
+					AuthorDao.PAGE_KIND, pageToken, ApiServer::toMap));
+		});
+		app.get("/api/authors/:id", ctx -> {
+			int authorID = (int) longParam(ctx.pathParam("id"));
+			helperAsync(ctx, true, () -> {
+				Author author = DAORoot.authorDao.getAuthor(authorID);
+				return author == null ? Response.error(404, "No author with ID: " + authorID)
+						: Response.ok(toMap(author));
+			});
+		});
+		app.get("/api/authors/:id/books", ctx -> helperSearchBooks(ctx, BookController.SEARCH_BY_AUTHOR,
+				(int) longParam(ctx.pathParam("id"))));
+		app.post("/api/authors", ctx -> {
+			String token = sessionToken(ctx);
+			String fName = ctx.formParam("fname");
+			String lName = ctx.formParam("lname");
+			helperAsync(ctx, false, () -> Response.of(AuthorController.createAuthor(token, fName, lName)));
+		});
+
+		// series
+		app.get("/api/series", ctx -> {
+			String pageToken = ctx.queryParam("page_token");
+			int pageSize = intParam(ctx.queryParam("page_size"), 0);
+			helperAsync(ctx, true, () -> Response.page(DAORoot.seriesDao.getAllSeriesPage(pageToken, pageSize),
+					SeriesDao.PAGE_KIND, pageToken, ApiServer::toMap));
+		});
+		app.get("/api/series/:id", ctx -> {
+			int seriesID = (int) longParam(ctx.pathParam("id"));
+			helperAsync(ctx, true, () -> {
+				Series series = DAORoot.seriesDao.getSeriesBySeriesID(seriesID);
+				return series == null ? Response.error(404, "No series with ID: " + seriesID)
+						: Response.ok(toMap(series));
+			});
+		});
+		app.get("/api/series/:id/books", ctx -> helperSearchBooks(ctx, BookController.SEARCH_BY_SERIES,
+				(int) longParam(ctx.pathParam("id"))));
+		app.post("/api/series", ctx -> {
+			String token = sessionToken(ctx);
+			String name = ctx.formParam("name");
+			Pair<String, String>[] authorNames = authorNames(ctx);
+			helperAsync(ctx, false, () -> Response.of(SeriesController.createSeries(token, name, authorNames)));
+		});
+
+		// genres ("suggest" and "complete" are registered before ":name")
+		app.get("/api/genres/suggest", ctx -> {
+			String title = ctx.queryParam("title");
+			String description = ctx.queryParam("description");
+			String[] subjects = ctx.queryParams("subject").toArray(new String[0]);
+			helperAsync(ctx, false,
+					() -> Response.ok(map("items", BookController.suggestGenres(title, description, subjects))));
+		});
+		app.get("/api/genres/complete", ctx -> {
+			String prefix = ctx.queryParam("prefix");
+			int count = intParam(ctx.queryParam("count"), 10);
+			helperAsync(ctx, false, () -> Response.ok(map("items", BookController.completeGenre(prefix, count))));
+		});
+		app.get("/api/genres/:name/books", ctx -> helperSearchBooks(ctx, BookController.SEARCH_BY_GENRE,
+				ctx.pathParam("name")));
+
+		// users
+		app.post("/api/users", ctx -> {
+			String token = sessionToken(ctx);
+			String username = ctx.formParam("username");
+			String password = ctx.formParam("password");
+			String fName = ctx.formParam("fname");
+			String lName = ctx.formParam("lname");
+			String email = ctx.formParam("email");
+			boolean isAdmin = Boolean.parseBoolean(ctx.formParam("is_admin"));
+			helperAsync(ctx, false, () -> Response
+					.of(UserController.createNewUser(token, username, password, fName, lName, email, isAdmin)));
+		});
+		app.delete("/api/users/:username", ctx -> {
+			String token = sessionToken(ctx);
+			String username = ctx.pathParam("username");
+			helperAsync(ctx, false, () -> Response.of(UserController.deleteUser(token, username)));
+		});
+
+		// bad parameters are rejected before any work is queued
+		app.exception(IllegalArgumentException.class, (e, ctx) -> {
+			ctx.status(400).contentType(JSON).header("Cache-Control", "no-store")
+					.result(Json.toJson(map("error", e.getMessage())));
+		});
+	}
+
+	private void helperSearchBooks(Context ctx, int searchType, Object searchVal) {
+		String pageToken = ctx.queryParam("page_token");
+		int pageSize = intParam(ctx.queryParam("page_size"), 0);
+		helperAsync(ctx, true, () -> {
+			Pair<Page<Book>, String> res = BookController.searchBook(searchType, searchVal, pageToken, pageSize);
+			if (res.getValue0() == null)
+				return Response.error(GlobalConstants.MSG_QUERY_FAILED.equals(res.getValue1()) ? 500 : 400,
+						res.getValue1());
+			return Response.ok(pageBody(res.getValue0(), ApiServer::toMap));
+		});
+	}
+
+	/**
+	 * Send a book's cover. The url is keyed by the book rather than the image so
+	 * the cover is only cached for the usual max-age and then revalidated with its
+	 * ETag (the file's name, size and modification time) or Last-Modified.
+	 */
+	private void helperCover(Context ctx, long bookID, boolean small) {
+		String ifNoneMatch = ctx.header("If-None-Match");
+		String ifModifiedSince = ctx.header("If-Modified-Since");
+		CompletableFuture<Object> future;
+		try {
+			future = CompletableFuture.supplyAsync(() -> {
+				Book book = DAORoot.bookDao.getBookByBookID(bookID);
+				String path = book == null ? null : small ? book.getSmallCover() : book.getLargeCover();
+				if (path != null && Files.isReadable(Paths.get(path))) {
+					try {
+						Path cover = Paths.get(path);
+						long size = Files.size(cover);
+						long modified = Files.getLastModifiedTime(cover).toMillis();
+						String etag = "\"" + Integer.toHexString(cover.getFileName().toString().hashCode()) + "-"
+								+ Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+						ctx.header("ETag", etag);
+						ctx.header("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+								.format(Instant.ofEpochMilli(modified).atZone(ZoneOffset.UTC)));
+						ctx.header("Cache-Control", "public, max-age=" + cacheMaxAge);
+						if (ifNoneMatch != null ? etag.equals(ifNoneMatch) : notModifiedSince(ifModifiedSince, modified)) {
+							ctx.status(304);
+							return "";
+						}
+						InputStream rtVal = Files.newInputStream(cover);
+						ctx.contentType(path.endsWith(".png") ? "image/png" : "image/jpeg");
+						ctx.header("Content-Length", Long.toString(size));
+						return rtVal;
+					} catch (IOException e) {
+						logger.error("Exception occured during helperCover: " + e.getMessage());
+					}
+				}
+				ctx.status(404).contentType(JSON).header("Cache-Control", "no-store");
+				return Json.toJson(map("error", "No cover for book " + bookID));
+			}, workers);
+		} catch (RejectedExecutionException e) {
+			helperBusy(ctx);
+			return;
+		}
+		ctx.result(future);
+	}
+
+	/**
+	 * Run a request's work on the worker pool and send its response when it is
+	 * done.
+	 *
+	 * @param cacheable if true a successful response gets a Cache-Control max-age
+	 *                  and ETag (and 304 if the client's copy is current).
+	 */
+	private void helperAsync(Context ctx, boolean cacheable, Supplier<Response> work) {
+		String ifNoneMatch = ctx.header("If-None-Match");
+		CompletableFuture<Response> future;
+		try {
+			future = CompletableFuture.supplyAsync(work, workers);
+		} catch (RejectedExecutionException e) {
+			helperBusy(ctx);
+			return;
+		}
+		ctx.contentType(JSON);
+		ctx.result(future.handle((res, e) -> {
+			if (e != null) {
+				logger.error("Exception occured during " + ctx.method() + " " + ctx.path() + ": " + e.getMessage());
+				res = Response.error(500, "Internal server error");
+			}
+			String body = Json.toJson(res.body);
+			ctx.status(res.status);
+			if (!cacheable || res.status != 200) {
+				ctx.header("Cache-Control", "no-store");
+				return body;
+			}
+			String etag = etag(body);
+			ctx.header("ETag", etag);
+			ctx.header("Cache-Control", "public, max-age=" + cacheMaxAge);
+			if (etag.equals(ifNoneMatch)) {
+				ctx.status(304);
+				return "";
+			}
+			return body;
+		}));
+	}
+
+	private static void helperBusy(Context ctx) {
+		ctx.status(503).contentType(JSON).header("Retry-After", "1").header("Cache-Control", "no-store")
+				.result(Json.toJson(map("error", "Server is busy, try again later")));
+	}
+
+	// true if a cover modified at the time passed in is no newer than the client's
+	// If-Modified-Since (which only has whole seconds)
+	private static boolean notModifiedSince(String ifModifiedSince, long modified) {
+		if (ifModifiedSince == null)
+			return false;
+		try {
+			Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+			return modified / 1000 <= since.getEpochSecond();
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	private static String etag(String body) {
+		CRC32 crc = new CRC32();
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		crc.update(bytes);
+		return "W/\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length) + "\"";
+	}
+
+	/* request parsing */
+
+	private static String sessionToken(Context ctx) {
+		String header = ctx.header("Authorization");
+		if (header != null && header.regionMatches(true, 0, "Bearer ", 0, 7))
+			return header.substring(7).strip();
+		return null;
+	}
+
+	private static int intParam(String value, int defaultValue) {
+		if (value == null || value.isBlank())
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.strip());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + value);
+		}
+	}
+
+	private static long longParam(String value) {
+		try {
+			return Long.parseLong(value.strip());
+		} catch (NumberFormatException | NullPointerException e) {
+			throw new IllegalArgumentException("Not an ID: " + value);
+		}
+	}
+
+	private static float floatParam(String value) {
+		try {
+			return Float.parseFloat(value.strip());
+		} catch (NumberFormatException | NullPointerException e) {
+			throw new IllegalArgumentException("Not a number: " + value);
+		}
+	}
+
+	// author_fname and author_lname are repeated once per author, in the same order
+	@SuppressWarnings("unchecked")
+	private static Pair<String, String>[] authorNames(Context ctx) {
+		List<String> fNames = ctx.formParams("author_fname");
+		List<String> lNames = ctx.formParams("author_lname");
+		if (fNames.size() != lNames.size())
+			throw new IllegalArgumentException("Every author_fname needs an author_lname");
+		Pair<String, String>[] rtVal = new Pair[fNames.size()];
+		for (int x = 0; x < rtVal.length; x++)
+			rtVal[x] = new Pair<String, String>(fNames.get(x), lNames.get(x));
+		return rtVal;
+	}
+
+	// convert the form value to the type BookController.editBook() expects
+	private static Object editValue(int editType, String value) {
+		if (value == null)
+			throw new IllegalArgumentException("value is required");
+		if (editType == BookController.ADD_AUTHOR || editType == BookController.REMOVE_AUTHOR
+				|| editType == BookController.SET_EDITION || editType == BookController.SET_SERIES_ID)
+			return intParam(value, 0);
+		if (editType == BookController.SET_BOOK_INDEX_IN_SERIES)
+			return floatParam(value);
+		if (editType == BookController.SET_GENRES)
+			return value.isBlank() ? new String[0] : value.strip().split("\\s*,\\s*");
+		if (editType == BookController.SET_PUBLISH_DATE)
+			return Timestamp.valueOf(value.strip() + " 00:00:00"); // yyyy-mm-dd
+		return value;
+	}
+
+	/* response bodies */
+
+	private static Map<String, Object> map(String key, Object value) {
+		LinkedHashMap<String, Object> rtVal = new LinkedHashMap<String, Object>();
+		rtVal.put(key, value);
+		return rtVal;
+	}
+
+	private static List<Map<String, Object>> toList(Book[] books) {
+		List<Map<String, Object>> rtVal = new ArrayList<Map<String, Object>>();
+		if (books != null) {
+			for (Book book : books) {
+				if (book != null)
+					rtVal.add(toMap(book));
+			}
+		}
+		return rtVal;
+	}
+
+	static Map<String, Object> toMap(Book book) {
+		LinkedHashMap<String, Object> rtVal = new LinkedHashMap<String, Object>();
+		rtVal.put("book_id", book.getBookID());
+		rtVal.put("title", book.getTitle());
+		rtVal.put("description", book.getDescription());
+		rtVal.put("edition", book.getEdition());
+		rtVal.put("publisher", book.getPublisher());
+		rtVal.put("publish_date", book.getPublishDate());
+		rtVal.put("primary_author_id", book.getPrimaryAuthorID());
+		rtVal.put("author_ids", book.getAuthorIDs());
+		rtVal.put("series_id", book.getSeriesID());
+		rtVal.put("index_in_series", book.getBookIndexInSeries());
+		rtVal.put("avg_rating", book.getAvgRating());
+		rtVal.put("rating_count", book.getRatingCount());
+		rtVal.put("genres", book.getGenres());
+		List<Map<String, Object>> identifiers = new ArrayList<Map<String, Object>>();
+		if (book.getIdentifiers() != null) {
+			for (Pair<String, String> identifier : book.getIdentifiers()) {
+				Map<String, Object> x = map("type", identifier.getValue0());
+				x.put("value", identifier.getValue1());
+				identifiers.add(x);
+			}
+		}
+		rtVal.put("identifiers", identifiers);
+		rtVal.put("has_cover", book.getLargeCover() != null);
+		return rtVal;
+	}
+
+	static Map<String, Object> toMap(Author author) {
+		LinkedHashMap<String, Object> rtVal = new LinkedHashMap<String, Object>();
+		rtVal.put("author_id", author.getAuthorID());
+		rtVal.put("first_name", author.getFirstName());
+		rtVal.put("last_name", author.getLastName());
+		rtVal.put("bio", author.getAuthorBib());
+		return rtVal;
+	}
+
+	static Map<String, Object> toMap(Series series) {
+		LinkedHashMap<String, Object> rtVal = new LinkedHashMap<String, Object>();
+		rtVal.put("series_id", series.getSeriesID());
+		rtVal.put("name", series.getSeriesName());
+		rtVal.put("primary_author_id", series.getPrimaryAuthorID());
+		rtVal.put("book_count", series.getNumberBooksInSeries());
+		rtVal.put("status", series.getSeriesStatus());
+		rtVal.put("avg_rating", series.getAverageRating());
+		rtVal.put("rating_count", series.getRatingCount());
+		return rtVal;
+	}
+
+	private static <T> Map<String, Object> pageBody(Page<T> page, Function<T, Map<String, Object>> toMap) {
+		List<Map<String, Object>> items = new ArrayList<Map<String, Object>>(page.getItems().size());
+		for (T item : page.getItems())
+			items.add(toMap.apply(item));
+		Map<String, Object> body = map("items", items);
+		body.put("next_page_token", page.getNextPageToken());
+		return body;
+	}
+
+	/**
+	 * Status and body of a response (built on a worker thread).
+	 */
+	private static class Response {
+		private final int status;
+		private final Object body;
+
+		private Response(int status, Object body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		private static Response ok(Object body) {
+			return new Response(200, body);
+		}
+
+		private static Response error(int status, String message) {
+			return new Response(status, map("error", message));
+		}
+
+		// a DAO returns a null page for a bad token and for a failed query, the token
+		// tells them apart
+		private static <T> Response page(Page<T> page, String pageKind, String pageToken,
+				Function<T, Map<String, Object>> toMap) {
+			if (page == null && !PageToken.isValid(pageKind, pageToken))
+				return error(400, "Invalid page token. Start again from the first page.");
+			if (page == null)
+				return error(500, GlobalConstants.MSG_QUERY_FAILED);
+			return ok(pageBody(page, toMap));
+		}
+
+		// map a controller result to 200 or the matching error status
+		private static Response of(Pair<Boolean, String> res) {
+			if (res.getValue0().booleanValue())
+				return ok(map("message", res.getValue1()));
+			String msg = res.getValue1();
+			if (GlobalConstants.MSG_INVALID_SESSION.equals(msg) || GlobalConstants.MSG_INVALID_USER.equals(msg))
+				return error(401, msg);
+			if (GlobalConstants.MSG_INVALID_USER_PERMISSIONS.equals(msg))
+				return error(403, msg);
+			return error(400, msg);
+		}
+	}
+}
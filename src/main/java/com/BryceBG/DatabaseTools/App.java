@@ -2,6 +2,9 @@ package com.BryceBG.DatabaseTools;
 
 
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import javax.swing.SwingUtilities;
 
 import org.apache.commons.cli.CommandLine;
@@ -14,8 +17,17 @@ import org.apache.commons.cli.ParseException;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
 
+import com.BryceBG.DatabaseTools.Api.ApiServer;
+import com.BryceBG.DatabaseTools.Covers.CoverPipeline;
+import com.BryceBG.DatabaseTools.Covers.CoverStore;
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.IndexAdvisor;
 import com.BryceBG.DatabaseTools.Database.LibraryDB;
+import com.BryceBG.DatabaseTools.Database.SchemaMigrator;
+import com.BryceBG.DatabaseTools.Scraper.EpubScanner;
+import com.BryceBG.DatabaseTools.Scraper.LibrarySync;
 import com.BryceBG.DatabaseTools.ui.MainWindow;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
 import com.BryceBG.DatabaseTools.utils.Utils;
@@ -51,12 +63,6 @@ public class App {
 
         logger.info("App Log4j2 system initialized");
 
-        //TODO check if database exists if not call createDB?
-        
-        
-        
-
-        
 		MainWindow mw = new MainWindow();
 		SwingUtilities.invokeLater(mw);
 
@@ -71,12 +77,36 @@ public class App {
 
         Option version = new Option("v", "version", false, "Version of the program");
         Option initialize = new Option("c", "initilize_database", true, "create the postgresql database for our system");
+        Option scan = new Option("s", "scan_library", true, "scan a directory for epubs and add them to the library");
+        Option sync = new Option("u", "sync_library", true, "update the library with the epubs added, changed or deleted in a directory");
+        Option serve = new Option("w", "web_api", true, "serve the REST API on a port");
+        Option reconcile = new Option("r", "reconcile_series", false, "recompute the book count of every series from the books table");
+        Option migrate = new Option("m", "migrate", false, "apply the schema migrations the database is missing");
+        Option advisor = new Option("a", "index_advisor", false, "report missing and unused indexes and sequentially scanned tables");
 
         version.setRequired(false);
         options.addOption(version);
         
         initialize.setRequired(false);
         options.addOption(initialize);
+
+        scan.setRequired(false);
+        options.addOption(scan);
+
+        sync.setRequired(false);
+        options.addOption(sync);
+
+        serve.setRequired(false);
+        options.addOption(serve);
+
+        reconcile.setRequired(false);
+        options.addOption(reconcile);
+
+        migrate.setRequired(false);
+        options.addOption(migrate);
+
+        advisor.setRequired(false);
+        options.addOption(advisor);
         
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
@@ -105,8 +135,101 @@ public class App {
             	System.out.println("Database creation was un-successful");
             System.exit(0);
         }
+
+        if (args.length > 0 && cmd.hasOption('m')){
+        	int applied = SchemaMigrator.migrate(false);
+        	if (applied >= 0)
+        		System.out.println(String.format("Applied %d migrations, the schema is at version %d", applied,
+        				SchemaMigrator.getCurrentVersion()));
+        	else
+        		System.out.println("Migrating the database was un-successful");
+            System.exit(0);
+        }
+
+        // everything past here uses the library so make sure its schema is current (one query when it is)
+        if (!SchemaMigrator.checkOnStartup())
+        	logger.error("The library database's schema isn't at version {}", SchemaMigrator.getLatestVersion());
+
+        if (args.length > 0 && cmd.hasOption('s')){
+        	Path libraryDir = Paths.get(cmd.getOptionValue("s"));
+        	System.out.println(String.format("Scanning %s for epubs", libraryDir));
+
+        	EpubScanner scanner = new EpubScanner();
+        	CoverPipeline covers = createCoverPipeline();
+        	scanner.setCoverPipeline(covers);
+        	EpubScanner.ScanReport report = scanner.scan(libraryDir);
+        	for (Pair<Path, String> failure : report.getFailures())
+        		System.out.println(String.format("Failed: %s (%s)", failure.getValue0(), failure.getValue1()));
+        	System.out.println("Scan finished: " + report);
+        	printCoverReport(covers);
+            System.exit(0);
+        }
+
+        if (args.length > 0 && cmd.hasOption('u')){
+        	Path libraryDir = Paths.get(cmd.getOptionValue("u"));
+        	System.out.println(String.format("Syncing the library with %s", libraryDir));
+
+        	LibrarySync librarySync = new LibrarySync();
+        	CoverPipeline covers = createCoverPipeline();
+        	librarySync.setCoverPipeline(covers);
+        	LibrarySync.SyncReport report = librarySync.sync(libraryDir);
+        	for (Pair<String, String> failure : report.getFailures())
+        		System.out.println(String.format("Failed: %s (%s)", failure.getValue0(), failure.getValue1()));
+        	System.out.println("Sync finished: " + report);
+        	printCoverReport(covers);
+            System.exit(0);
+        }
+
+        if (args.length > 0 && cmd.hasOption('r')){
+        	int reconciled = DAORoot.seriesDao.reconcileSeriesBookCounts();
+        	if (reconciled >= 0)
+        		System.out.println(String.format("Corrected the book count of %d series", reconciled));
+        	else
+        		System.out.println("Reconciling the series book counts was un-successful");
+            System.exit(0);
+        }
+
+        if (args.length > 0 && cmd.hasOption('a')){
+        	IndexAdvisor.Report report = new IndexAdvisor().advise();
+        	if (report != null)
+        		System.out.println(report);
+        	else
+        		System.out.println("Reading the database statistics was un-successful");
+            System.exit(0);
+        }
+
+        if (args.length > 0 && cmd.hasOption('w')){
+        	int port = Integer.parseInt(cmd.getOptionValue("w"));
+        	ApiServer server = new ApiServer().start(port);
+        	Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        	System.out.println(String.format("Serving the REST API on port %d", server.port()));
+        	try {
+        		Thread.currentThread().join(); // serve until the program is killed
+        	} catch (InterruptedException e) {
+        		Thread.currentThread().interrupt();
+        	}
+        	System.exit(0);
+        }
         
 	}
+
+	// covers are extracted unless "covers.extract" is false or there is nowhere to put them
+	private static CoverPipeline createCoverPipeline() {
+		if (!Utils.getConfigBoolean("covers.extract", true) || CoverStore.getRootDirectory() == null)
+			return null;
+		return new CoverPipeline();
+	}
+
+	// wait for the covers still being extracted then print how it went
+	private static void printCoverReport(CoverPipeline covers) {
+		if (covers == null)
+			return;
+		System.out.println("Waiting for covers to finish");
+		covers.close();
+		for (Pair<Path, String> failure : covers.getFailures())
+			System.out.println(String.format("Failed cover: %s (%s)", failure.getValue0(), failure.getValue1()));
+		System.out.println("Covers finished: " + covers);
+	}
 	
 
 
@@ -0,0 +1,161 @@
+package com.BryceBG.DatabaseTools.Covers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+import com.BryceBG.DatabaseTools.Database.Book.BookPatch;
+import com.BryceBG.DatabaseTools.Scraper.EpubReader;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Extracts covers from epubs in the background. Each submitted book's cover is
+ * read from its epub, stored (with thumbnails) in the CoverStore and saved on
+ * the book with BookDao.editBook.
+ *
+ * Decoding and scaling images is slow and memory hungry so the work runs on a
+ * small fixed pool with a bounded queue. When the queue is full the submitting
+ * thread extracts the cover itself, which slows the scan down instead of
+ * letting pending covers pile up.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class CoverPipeline implements AutoCloseable {
+	private static final Logger logger = LogManager.getLogger(CoverPipeline.class.getName());
+
+	private final CoverStore store;
+	private final ThreadPoolExecutor workers;
+
+	private final AtomicInteger stored = new AtomicInteger();
+	private final AtomicInteger missing = new AtomicInteger();
+	// <epub, reason>
+	private final List<Pair<Path, String>> failures = Collections.synchronizedList(new ArrayList<Pair<Path, String>>());
+
+	/**
+	 * A pipeline with "covers.threads" workers (default 2) and room for
+	 * "covers.queue_size" (default 1000) pending covers.
+	 */
+	public CoverPipeline() {
+		this(new CoverStore(), Utils.getConfigInteger("covers.threads", 2),
+				Utils.getConfigInteger("covers.queue_size", 1000));
+	}
+
+	public CoverPipeline(CoverStore store, int threads, int queueSize) {
+		this.store = store;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), r -> {
+					Thread t = new Thread(r, "cover-worker-" + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Queue a book's cover for extraction.
+	 *
+	 * @param bookID the book to set the cover of.
+	 * @param epub   the epub the book was read from.
+	 */
+	public void submit(long bookID, Path epub) {
+		if (bookID <= 0 || epub == null)
+			return;
+		workers.execute(() -> extract(bookID, epub));
+	}
+
+	/**
+	 * Extract, store and save a single cover on the calling thread.
+	 *
+	 * @return true if the book now has the epub's cover.
+	 */
+	public boolean extract(long bookID, Path epub) {
+		try {
+			byte[] image = EpubReader.readCover(epub);
+			if (image == null) {
+				missing.incrementAndGet();
+				return false;
+			}
+			Pair<String, String> cover = store.store(image);
+			// location and name are set together so a book never has half a cover
+			if (DAORoot.bookDao.editBook(bookID, new BookPatch().set(EDIT_TYPE.SET_COVER_LOCATION, cover.getValue0())
+					.set(EDIT_TYPE.SET_COVER_NAME, cover.getValue1()))) {
+				stored.incrementAndGet();
+				return true;
+			}
+			failures.add(new Pair<Path, String>(epub, "Unable to set the cover of book " + bookID));
+		} catch (IOException | XMLStreamException e) {
+			failures.add(new Pair<Path, String>(epub, "Unable to extract cover: " + e.getMessage()));
+		} catch (RuntimeException e) { // a corrupt image can throw from inside ImageIO
+			logger.error("Exception occured during extract: " + e.getMessage());
+			failures.add(new Pair<Path, String>(epub, "Unable to extract cover: " + e.getMessage()));
+		}
+		return false;
+	}
+
+	/**
+	 * Stop accepting covers and wait for the queued ones to finish.
+	 *
+	 * @return true if every queued cover finished before the timeout.
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		workers.shutdown();
+		return workers.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Finish the queued covers (waiting as long as it takes).
+	 */
+	@Override
+	public void close() {
+		try {
+			awaitCompletion(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return how many covers were stored and saved.
+	 */
+	public int getStoredCount() {
+		return stored.get();
+	}
+
+	/**
+	 * @return how many epubs didn't have a cover.
+	 */
+	public int getMissingCount() {
+		return missing.get();
+	}
+
+	/**
+	 * @return <epub, reason> for every cover that couldn't be extracted or saved.
+	 */
+	public List<Pair<Path, String>> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<Pair<Path, String>>(failures);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("stored=%d, missing=%d, failed=%d, pending=%d", stored.get(), missing.get(),
+				failures.size(), workers.getQueue().size());
+	}
+}
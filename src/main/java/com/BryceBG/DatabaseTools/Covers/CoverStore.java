@@ -0,0 +1,212 @@
+package com.BryceBG.DatabaseTools.Covers;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Lays out cover images on disk. Covers are named after the SHA-256 of the
+ * image and sharded into two levels of directories by the first bytes of the
+ * hash:<br>
+ * &lt;app.root_cover_location&gt;/ab/cd/abcd...ef.jpg (large, the book's
+ * cover_name)<br>
+ * &lt;app.root_cover_location&gt;/ab/cd/abcd...ef-S.jpg (small thumbnail)<br>
+ * so no directory grows past a few hundred files and books that share a cover
+ * (editions, re-imports) share the files.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class CoverStore {
+	public static final String SMALL_SUFFIX = "-S";
+	private static final String FORMAT = "jpg";
+
+	// read once, the root is used every time a Book's cover paths are built
+	private static volatile String rootDirectory = Utils.getConfigString("app.root_cover_location", null);
+
+	private final int smallHeight;
+	private final int largeHeight;
+	// images with more pixels than this are rejected before they are decoded
+	private final long maxPixels;
+
+	/**
+	 * A store that makes thumbnails "covers.small_height" (default 200) and
+	 * "covers.large_height" (default 800) pixels high and rejects images over
+	 * "covers.max_pixels" (default 40 million) pixels.
+	 */
+	public CoverStore() {
+		this(Utils.getConfigInteger("covers.small_height", 200), Utils.getConfigInteger("covers.large_height", 800),
+				Utils.getConfigInteger("covers.max_pixels", 40000000));
+	}
+
+	public CoverStore(int smallHeight, int largeHeight) {
+		this(smallHeight, largeHeight, 40000000);
+	}
+
+	public CoverStore(int smallHeight, int largeHeight, long maxPixels) {
+		this.smallHeight = Math.max(1, smallHeight);
+		this.largeHeight = Math.max(this.smallHeight, largeHeight);
+		this.maxPixels = Math.max(1, maxPixels);
+	}
+
+	/**
+	 * @return the directory covers are stored under (app.root_cover_location).
+	 */
+	public static String getRootDirectory() {
+		return rootDirectory;
+	}
+
+	/**
+	 * Change the directory covers are stored under (for tests or after the config
+	 * changes). Books created before the change keep their old paths.
+	 */
+	public static void setRootDirectory(String root) {
+		rootDirectory = root;
+	}
+
+	/**
+	 * @param coverName the name of a (large) cover. e.g. "abc.jpg".
+	 * @return the name of its small thumbnail. e.g. "abc-S.jpg".
+	 */
+	public static String smallCoverName(String coverName) {
+		int dot = coverName.lastIndexOf('.');
+		if (dot <= 0)
+			return coverName + SMALL_SUFFIX;
+		return coverName.substring(0, dot) + SMALL_SUFFIX + coverName.substring(dot);
+	}
+
+	/**
+	 * @return the full path of a file in the cover store or null if either part is
+	 *         missing.
+	 */
+	public static String resolve(String coverLocation, String coverName) {
+		if (coverLocation == null || coverName == null)
+			return null;
+		return rootDirectory + File.separator + coverLocation + File.separator + coverName;
+	}
+
+	/**
+	 * @return the cover_location (shard directories) for an image hash.
+	 */
+	static String locationFor(String hash) {
+		return hash.substring(0, 2) + File.separator + hash.substring(2, 4);
+	}
+
+	/**
+	 * Store a cover image and its thumbnails. Nothing is written if the same
+	 * image is already in the store.
+	 *
+	 * @param image the raw image (any format ImageIO can read).
+	 * @return <cover_location, cover_name> to save on the book.
+	 * @throws IOException if the image can't be decoded or written or is over the
+	 *                     pixel limit.
+	 */
+	public Pair<String, String> store(byte[] image) throws IOException {
+		if (rootDirectory == null)
+			throw new IOException("app.root_cover_location is not set");
+		String hash = sha256(image);
+		String location = locationFor(hash);
+		String name = hash + "." + FORMAT;
+		Path dir = Paths.get(rootDirectory, location);
+		Path large = dir.resolve(name);
+		Path small = dir.resolve(smallCoverName(name));
+		if (Files.exists(large) && Files.exists(small))
+			return new Pair<String, String>(location, name);
+
+		BufferedImage original = read(image);
+		Files.createDirectories(dir);
+		write(scaleToHeight(original, largeHeight), large);
+		write(scaleToHeight(original, smallHeight), small);
+		return new Pair<String, String>(location, name);
+	}
+
+	/**
+	 * Decode an image, checking its size from the header first so a small file
+	 * that claims huge dimensions is never decoded into memory.
+	 */
+	private BufferedImage read(byte[] image) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+			Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext())
+				throw new IOException("Unsupported image format");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				if ((long) width * height > maxPixels)
+					throw new IOException(
+							String.format("Image is %dx%d which is over the %d pixel limit", width, height, maxPixels));
+				return reader.read(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Scale an image down (never up) to a height, keeping its aspect ratio. The
+	 * result has no alpha channel so it can be written as a jpeg.
+	 */
+	static BufferedImage scaleToHeight(BufferedImage image, int height) {
+		int h = Math.min(height, image.getHeight());
+		int w = Math.max(1, (int) Math.round((double) image.getWidth() * h / image.getHeight()));
+		BufferedImage rtVal = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = rtVal.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, w, h, Color.WHITE, null); // transparent covers get a white background
+		} finally {
+			g.dispose();
+		}
+		return rtVal;
+	}
+
+	// write to a temp file and move it into place so readers never see half a file
+	private static void write(BufferedImage image, Path target) throws IOException {
+		Path tmp = Files.createTempFile(target.getParent(), ".cover", ".tmp");
+		try {
+			if (!ImageIO.write(image, FORMAT, tmp.toFile()))
+				throw new IOException("No writer for " + FORMAT);
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static String sha256(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(data))
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) { // SHA-256 is required on every JVM
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -5,7 +5,8 @@ import org.apache.commons.text.WordUtils;
 import org.javatuples.Pair;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
-import com.BryceBG.DatabaseTools.Database.User.User;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
+import com.BryceBG.DatabaseTools.Database.User.Session;
 import com.BryceBG.DatabaseTools.Database.User.UserController;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
@@ -22,14 +23,29 @@ public class AuthorController {
 
 	public static Pair<Boolean, String> createAuthor(String username, String password, String authorFName,
 			String authorLName) {
-		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
-
 		// 1. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperCreateAuthor(caller, authorFName, authorLName));
+	}
+
+	/**
+	 * Same as createAuthor() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> createAuthor(String sessionToken, String authorFName, String authorLName) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperCreateAuthor(caller, authorFName, authorLName));
+	}
+
+	private static Pair<Boolean, String> helperCreateAuthor(Session caller, String authorFName, String authorLName) {
+		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 
 		// 1.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 2. validate authorFName and authorLName arn't going to cause issues adding to
@@ -77,13 +93,29 @@ public class AuthorController {
 	 */
 	public static Pair<Boolean, String> removeAuthor(String username, String password, String authorFName,
 			String authorLName) {
-		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 		// 1. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperRemoveAuthor(caller, authorFName, authorLName));
+	}
+
+	/**
+	 * Same as removeAuthor() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> removeAuthor(String sessionToken, String authorFName, String authorLName) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperRemoveAuthor(caller, authorFName, authorLName));
+	}
+
+	private static Pair<Boolean, String> helperRemoveAuthor(Session caller, String authorFName, String authorLName) {
+		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 
 		// 1.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 2. validate authorFName and authorLName arn't going to cause issues adding to
@@ -135,14 +167,32 @@ public class AuthorController {
 	 */
 	public static Pair<Boolean, String> verifyAuthorAccount(String username, String password, String authorFName,
 			String authorLName, String verifiedUserUsername) {
+		// 1. ensure user exists and has correct password
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperVerifyAuthorAccount(caller, authorFName, authorLName, verifiedUserUsername));
+	}
+
+	/**
+	 * Same as verifyAuthorAccount() but the caller is identified by the session
+	 * token returned by UserController.login() instead of their username and
+	 * password.
+	 */
+	public static Pair<Boolean, String> verifyAuthorAccount(String sessionToken, String authorFName, String authorLName,
+			String verifiedUserUsername) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperVerifyAuthorAccount(caller, authorFName, authorLName, verifiedUserUsername));
+	}
 
+	private static Pair<Boolean, String> helperVerifyAuthorAccount(Session caller, String authorFName,
+			String authorLName, String verifiedUserUsername) {
 		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
-		// 1. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
 
 		// 1.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 2. ensure identifiers for author are not empty strings or null
@@ -195,22 +245,38 @@ public class AuthorController {
 	 */
 	public static Pair<Boolean, String> updateAuthorBio(String username, String password, String authorFName,
 			String authorLName, String author_bio) {
+		// 1. ensure user exists and has correct password
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperUpdateAuthorBio(caller, authorFName, authorLName, author_bio));
+	}
+
+	/**
+	 * Same as updateAuthorBio() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> updateAuthorBio(String sessionToken, String authorFName, String authorLName,
+			String author_bio) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperUpdateAuthorBio(caller, authorFName, authorLName, author_bio));
+	}
 
+	private static Pair<Boolean, String> helperUpdateAuthorBio(Session caller, String authorFName, String authorLName,
+			String author_bio) {
 		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
-		// 1. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
 
 		// 1.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 2. ensure the author we are trying to update exists
 		Author theAuthorToUpdate = authorDao.getAuthor(authorFName, authorLName);
 		if (theAuthorToUpdate != null) {
 			// 3. ensure user performing the update is either: author or an admin
-			User theUpdateUser = userDao.getUserByUsername(username);
-			if (theUpdateUser.isAdmin() || theUpdateUser.getUserId() == theAuthorToUpdate.getVerifiedUserID()) {
+			if (caller.isAdmin() || caller.getUserID() == theAuthorToUpdate.getVerifiedUserID()) {
 				boolean rtnedVal = DAORoot.authorDao.addAuthorBib(theAuthorToUpdate.getFirstName(),
 						theAuthorToUpdate.getLastName(), author_bio);
 				if (rtnedVal == false) {
@@ -221,7 +287,7 @@ public class AuthorController {
 				}
 			} else {// not a user who can update this author
 				return new Pair<Boolean, String>(Boolean.FALSE,
-						String.format("User %s lacks permissions modify this author", username));
+						String.format("User %s lacks permissions modify this author", caller.getUsername()));
 			}
 		} else {
 			String authorName = authorFName + " " + authorLName;
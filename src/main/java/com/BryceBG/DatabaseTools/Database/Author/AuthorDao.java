@@ -5,12 +5,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import org.apache.commons.text.WordUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.BryceBG.DatabaseTools.Database.CursorScanner;
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
 import com.BryceBG.DatabaseTools.Database.User.User;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 
@@ -25,6 +29,9 @@ import com.BryceBG.DatabaseTools.utils.DaoUtils;
 public class AuthorDao {
 	private static final Logger logger = LogManager.getLogger(AuthorDao.class.getName());
 
+	// the kind of the page tokens from getAllAuthorsPage() (see PageToken)
+	public static final String PAGE_KIND = "authors";
+
 	/**
 	 * Function to get an author from our database using their first and last name.
 	 * 
@@ -77,7 +84,9 @@ public class AuthorDao {
 
 	public Author getAuthor(String name) {
 		Author rtVal = null;
-		String sql = "SELECT * FROM authors WHERE concat(fname , ' ' , lname) ILIKE ?;";
+		// same expression as the authors_full_name_trgm_idx index (fname and lname
+		// can't be null so it matches concat())
+		String sql = "SELECT * FROM authors WHERE (fname || ' ' || lname) ILIKE ?;";
 		// protect against null values
 		if (DaoUtils.stringIsOk(name)) {
 			// 0. format author fields passed in
@@ -166,16 +175,8 @@ public class AuthorDao {
 			try (ResultSet rs = pstmt.executeQuery()) {
 				// 3. loop through records returned to parse our data.
 				while (rs.next()) {
-					// 4. extract results from result set needed to create Author object
-
-					String author_bib = rs.getString("author_bib");
-					int author_id = rs.getInt("author_id");
-					String fName = rs.getString("fname");
-					String lName = rs.getString("lName");
-					int verified_user_ID = rs.getInt("verified_user_ID");
-
-					// 5. create our return object with the values
-					rtVal.add(new Author(author_id, fName, lName, author_bib, verified_user_ID));
+					// 4. create our return object with the values from the row
+					rtVal.add(helperGetAuthorFromRow(rs));
 				}
 
 			} // end of try-with-resources: result set
@@ -189,6 +190,67 @@ public class AuthorDao {
 		return rtVal;
 	}
 
+	/**
+	 * Paged version of getAllAuthors(). Uses keyset pagination so every page costs the
+	 * same no matter how deep into the results it is.
+	 * 
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of results on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of results.
+	 */
+	public Page<Author> getAllAuthorsPage(String pageToken, int pageSize) {
+		String kind = PAGE_KIND;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+		ArrayList<Author> rows = new ArrayList<Author>();
+		String sql = "SELECT * FROM authors WHERE (lname, author_id) > (?, ?) ORDER BY lname, author_id LIMIT ?";
+
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setString(1, token.getSortKey());
+			pstmt.setLong(2, token.getID());
+			pstmt.setInt(3, pageSize + 1);
+			// 2. execute our query and read the rows (one more than the page size so we
+			// know if there is another page).
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rows.add(helperGetAuthorFromRow(rs));
+				}
+			} // end of try-with-resources: result set
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return null;
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			return null;
+		}
+		return Page.fromRows(rows, pageSize, kind, Author::getLastName, Author::getAuthorID);
+	}
+
+	/**
+	 * Function to visit every author in the database without holding them all in
+	 * memory (see CursorScanner).
+	 * 
+	 * @param action called once for every author (in no particular order).
+	 * @return true if every author was visited without errors.
+	 */
+	public boolean forEachAuthor(Consumer<? super Author> action) {
+		return CursorScanner.scan("SELECT * FROM authors", CursorScanner.DEFAULT_FETCH_SIZE,
+				this::helperGetAuthorFromRow, (conn, chunk) -> {
+					chunk.forEach(action);
+					return true;
+				});
+	}
+
 	public boolean addAuthor(String fName, String lName) {
 		boolean rtVal = false;
 
@@ -232,6 +294,8 @@ public class AuthorDao {
 			if (rs == 1) {
 				// update was successful
 				rtVal = true;
+				// the delete cascades to the author's books so cached books may be gone
+				DAORoot.bookDao.invalidateCachedBooks();
 			} else {
 				logger.info(String.format("The removeAuthor() failed: the execute update returned: %i", rs));
 				rtVal = false;
@@ -261,6 +325,8 @@ public class AuthorDao {
 			if (rs == 1) {
 				// update was successful
 				rtVal = true;
+				// the delete cascades to the author's books so cached books may be gone
+				DAORoot.bookDao.invalidateCachedBooks();
 			} else {
 				logger.info(String.format("The removeAuthor() failed: the execute update returned: %i", rs));
 				rtVal = false;
@@ -354,6 +420,19 @@ public class AuthorDao {
 		return rtVal;
 	}
 
+	/**
+	 * Helper function that creates an Author from the current row of a result set
+	 * over the authors table.
+	 */
+	private Author helperGetAuthorFromRow(ResultSet rs) throws SQLException {
+		String author_bib = rs.getString("author_bib");
+		int author_id = rs.getInt("author_id");
+		String fName = rs.getString("fname");
+		String lName = rs.getString("lName");
+		int verified_user_ID = rs.getInt("verified_user_ID");
+		return new Author(author_id, fName, lName, author_bib, verified_user_ID);
+	}
+
 //	public boolean addAuthorAlias(int authorID, int aliasID) {
 //		return false;
 //		TODO in future version of DB where we allow aliases for the authors
@@ -1,13 +1,12 @@
 package com.BryceBG.DatabaseTools.Database.Book;
 
 
-import java.io.File;
 import java.sql.Timestamp;
 import java.util.Arrays;
 
 import org.javatuples.Pair;
 
-import com.BryceBG.DatabaseTools.utils.Utils;
+import com.BryceBG.DatabaseTools.Covers.CoverStore;
 
 /**
  * This class represents a book object. It not only contains the fields for the
@@ -28,6 +27,8 @@ public class Book {
 	private int count_authors = 1;
 	private String cover_location;
 	private String cover_name; // Filename is for the cover image (append to cover_location to get full path).
+	private String large_cover_path; // full paths, rebuilt when cover_location or cover_name change
+	private String small_cover_path;
 	private String description;
 	private int edition = -1;
 	private String[] genres; // NOT initialized by constructor
@@ -98,6 +99,27 @@ public class Book {
 		this.setTitle(title);
 	}
 
+	/**
+	 * Copy constructor. Arrays are copied so changing the copy's arrays doesn't
+	 * change the original (used by BookCache to hand out copies of cached books).
+	 * 
+	 * @param other the book to copy.
+	 */
+	public Book(Book other) {
+		this(other.average_rating, other.book_id, other.book_index_in_series, other.count_authors,
+				other.cover_location, other.cover_name, other.description, other.edition, other.has_identifiers,
+				other.primary_author_id, other.publish_date == null ? null : (Timestamp) other.publish_date.clone(),
+				other.publisher, other.rating_count, other.series_id, other.title);
+		this.authorIDs = other.authorIDs == null ? null : other.authorIDs.clone();
+		this.genres = other.genres == null ? null : other.genres.clone();
+		this.identifiers = other.identifiers == null ? null : other.identifiers.clone(); // Pairs are immutable
+		this.personal_rating = other.personal_rating;
+		this.personal_shelves = other.personal_shelves == null ? null : other.personal_shelves.clone();
+		this.personal_quotes = other.personal_quotes == null ? null : other.personal_quotes.clone();
+		this.personal_comment = other.personal_comment;
+		this.personal_series_comment = other.personal_series_comment;
+	}
+
 	public long getBookID() {
 		return book_id;
 	}
@@ -136,6 +158,7 @@ public class Book {
 
 	public void setCoverLocation(String cover_location) {
 		this.cover_location = cover_location;
+		helperUpdateCoverPaths();
 	}
 
 	public String[] getPersonalShelves() {
@@ -248,23 +271,21 @@ public class Book {
 
 	public void setCoverName(String cover_name) {
 		this.cover_name = cover_name;
+		helperUpdateCoverPaths();
 	}
 
-	/* special functions to get full path to cover images */
+	/* special functions to get full path to cover images (null if the book has no cover) */
 	public String getSmallCover() {
-		// https://stackoverflow.com/questions/4416425/how-to-split-string-with-some-separator-but-without-removing-that-separator-in-j/4416576#4416576
-		// https://stackoverflow.com/questions/4545937/java-splitting-the-filename-into-a-base-and-extension
-		// this technique is called zero-width positive lookahead
-		String[] tokens = cover_name.split("\\.(?=[^\\.]+$)");
-		// tokens[0] = file name
-		// tokens[1] = extension
-
-		return Utils.getConfigString("app.root_cover_location", null) + File.separator + cover_location + File.separator
-				+ tokens[0] + "-S." + tokens[1];
+		return small_cover_path;
 	}
 
 	public String getLargeCover() {
-		return Utils.getConfigString("app.root_cover_location", null) + File.separator + cover_location + File.separator + cover_name;
+		return large_cover_path;
+	}
+
+	private void helperUpdateCoverPaths() {
+		large_cover_path = CoverStore.resolve(cover_location, cover_name);
+		small_cover_path = cover_name == null ? null : CoverStore.resolve(cover_location, CoverStore.smallCoverName(cover_name));
 	}
 
 	public long getRatingCount() {
@@ -0,0 +1,651 @@
+package com.BryceBG.DatabaseTools.Database.Book;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.text.WordUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.utils.DaoUtils;
+import com.BryceBG.DatabaseTools.utils.IdentifierUtils;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Loads large amounts of books at once (catalog imports). Where
+ * BookDao.insertBookIntoDB() uses a transaction per book, the loader works in
+ * batches of "db.bulk.batch_size" books per transaction:<br>
+ * 1. rows that can be rejected without the database are (no title, no
+ * authors, ...)<br>
+ * 2. the authors and genres of the whole batch are looked up with one query
+ * each (missing authors are optionally created)<br>
+ * 3. the books and their authors, genres and identifiers are streamed into
+ * temporary staging tables with COPY FROM STDIN<br>
+ * 4. the books are upserted from the staging table with ON CONFLICT on the
+ * (title, primary_author_id, edition, publisher) key, and the junction tables
+ * of every loaded book are replaced with the staged ones.
+ *
+ * A bad row never aborts the rest of the load. It is reported in the Report
+ * with the reason it failed. If the database rejects the batch as a whole
+ * (for example a constraint we don't check up front) the batch is retried one
+ * row at a time so only the offending rows fail.
+ *
+ * Loading a book that already exists updates its description, publish date
+ * (when given) and identifiers, authors and genres.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class BookBulkLoader {
+	private static final Logger logger = LogManager.getLogger(BookBulkLoader.class.getName());
+
+	public static final int DEFAULT_BATCH_SIZE = 5000;
+
+	// staging tables (emptied at commit so they can be re-used by later batches on
+	// the same pooled connection)
+	private static final String SQL_CREATE_STAGING = "CREATE TEMP TABLE IF NOT EXISTS book_load_stage ("
+			+ "row_no INT, title VARCHAR, description VARCHAR, edition INT, publisher VARCHAR, "
+			+ "publish_date TIMESTAMP, primary_author_id INT, count_authors INT, has_identifiers BOOLEAN) "
+			+ "ON COMMIT DELETE ROWS; "
+			+ "CREATE TEMP TABLE IF NOT EXISTS book_load_authors (book_id BIGINT, author_id INT) ON COMMIT DELETE ROWS; "
+			+ "CREATE TEMP TABLE IF NOT EXISTS book_load_genres (book_id BIGINT, genre_name VARCHAR) ON COMMIT DELETE ROWS; "
+			+ "CREATE TEMP TABLE IF NOT EXISTS book_load_identifiers (book_id BIGINT, identifier_type VARCHAR, "
+			+ "identifier_value VARCHAR) ON COMMIT DELETE ROWS;";
+	private static final String SQL_CLEAR_STAGING = "TRUNCATE book_load_stage, book_load_authors, book_load_genres, "
+			+ "book_load_identifiers;";
+
+	private static final String SQL_FIND_AUTHORS = "SELECT a.author_id, a.fname, a.lname FROM authors a "
+			+ "JOIN unnest(?::varchar[], ?::varchar[]) AS n(fname, lname) ON a.fname = n.fname AND a.lname = n.lname";
+	private static final String SQL_CREATE_AUTHORS = "INSERT INTO authors (fname, lname) "
+			+ "SELECT * FROM unnest(?::varchar[], ?::varchar[]) ON CONFLICT (fname, lname) DO NOTHING";
+	private static final String SQL_FIND_GENRES = "SELECT genre_name FROM genres WHERE genre_name = ANY(?)";
+
+	// blank descriptions/missing publish dates don't wipe out what we already have
+	private static final String SQL_UPSERT_BOOKS = "WITH upserted AS ("
+			+ "INSERT INTO books AS b (title, description, edition, publisher, publish_date, primary_author_id, "
+			+ "count_authors, has_identifiers) "
+			+ "SELECT title, description, edition, publisher, publish_date, primary_author_id, count_authors, "
+			+ "has_identifiers FROM book_load_stage "
+			+ "ON CONFLICT (title, primary_author_id, edition, publisher) DO UPDATE SET "
+			+ "description = COALESCE(NULLIF(EXCLUDED.description, ''), b.description), "
+			+ "publish_date = COALESCE(EXCLUDED.publish_date, b.publish_date), "
+			+ "count_authors = EXCLUDED.count_authors, has_identifiers = EXCLUDED.has_identifiers "
+			// xmax is 0 for a freshly inserted row version
+			+ "RETURNING b.book_id, b.title, b.primary_author_id, b.edition, b.publisher, (b.xmax = 0) AS inserted) "
+			+ "SELECT s.row_no, u.book_id, u.inserted FROM upserted u JOIN book_load_stage s "
+			+ "ON s.title = u.title AND s.primary_author_id = u.primary_author_id AND s.edition = u.edition "
+			+ "AND s.publisher = u.publisher";
+	private static final String[] SQL_REPLACE_LINKS = {
+			"DELETE FROM book_authors WHERE book_id = ANY(?)",
+			"DELETE FROM book_genres WHERE book_id = ANY(?)",
+			"DELETE FROM book_identifier WHERE book_id = ANY(?)" };
+	private static final String SQL_INSERT_LINKS = "INSERT INTO book_authors (book_id, author_id) "
+			+ "SELECT book_id, author_id FROM book_load_authors ON CONFLICT DO NOTHING; "
+			+ "INSERT INTO book_genres (book_id, genre_name) "
+			+ "SELECT book_id, genre_name FROM book_load_genres ON CONFLICT DO NOTHING;";
+	// has_identifiers was staged from the book's identifiers, but an identifier
+	// that conflicts is skipped. Books left with none of theirs get it cleared, and
+	// the books that lost some are returned with how many were staged and linked
+	private static final String SQL_INSERT_IDENTIFIERS = "WITH linked AS ("
+			+ "INSERT INTO book_identifier (book_id, identifier_type, identifier_value) "
+			+ "SELECT book_id, identifier_type, identifier_value FROM book_load_identifiers ON CONFLICT DO NOTHING "
+			+ "RETURNING book_id), "
+			+ "dropped AS (SELECT s.book_id, count(*) AS staged, "
+			+ "(SELECT count(*) FROM linked l WHERE l.book_id = s.book_id) AS kept "
+			+ "FROM book_load_identifiers s GROUP BY s.book_id), "
+			+ "cleared AS (UPDATE books b SET has_identifiers = false FROM dropped d "
+			+ "WHERE b.book_id = d.book_id AND d.kept = 0) "
+			+ "SELECT book_id, staged, kept FROM dropped WHERE kept < staged";
+
+	private final int batchSize;
+	private final boolean createMissingAuthors;
+
+	/**
+	 * A loader that uses the configured batch size and rejects books by authors
+	 * that aren't in the database.
+	 */
+	public BookBulkLoader() {
+		this(Utils.getConfigInteger("db.bulk.batch_size", DEFAULT_BATCH_SIZE), false);
+	}
+
+	/**
+	 * @param batchSize            how many books are loaded per transaction.
+	 * @param createMissingAuthors if true authors that aren't in the database are
+	 *                             added. Otherwise books by them fail to load.
+	 */
+	public BookBulkLoader(int batchSize, boolean createMissingAuthors) {
+		this.batchSize = Math.max(1, batchSize);
+		this.createMissingAuthors = createMissingAuthors;
+	}
+
+	/**
+	 * Load a stream of books. The stream is consumed a batch at a time so it can
+	 * be larger than memory.
+	 *
+	 * @param records the books to load.
+	 * @return what was loaded and which rows (numbered from 1 in stream order)
+	 *         failed.
+	 */
+	public Report load(Stream<? extends BookRecord> records) {
+		return load(records.iterator());
+	}
+
+	/**
+	 * Same as load(Stream) but for an iterator.
+	 */
+	public Report load(Iterator<? extends BookRecord> records) {
+		Report report = new Report();
+		List<Row> batch = new ArrayList<Row>(batchSize);
+		int rowNumber = 0;
+		while (records.hasNext()) {
+			batch.add(new Row(++rowNumber, records.next()));
+			if (batch.size() == batchSize) {
+				loadBatch(batch, report);
+				batch = new ArrayList<Row>(batchSize);
+			}
+		}
+		if (!batch.isEmpty())
+			loadBatch(batch, report);
+		logger.info("Bulk load finished: {}", report);
+		return report;
+	}
+
+	/**
+	 * Load one batch of books in a single transaction.
+	 */
+	private void loadBatch(List<Row> batch, Report report) {
+		// 1. reject what we can without the database
+		List<Row> rows = new ArrayList<Row>(batch.size());
+		for (Row row : batch) {
+			String reason = row.normalize();
+			if (reason == null)
+				rows.add(row);
+			else
+				report.fail(row, reason);
+		}
+		if (rows.isEmpty())
+			return;
+
+		List<Row> loaded = new ArrayList<Row>(rows.size());
+		try (Connection conn = DAORoot.library.connectToDB();) {
+			conn.setAutoCommit(false);
+			try (Statement stmt = conn.createStatement();) {
+				stmt.execute(SQL_CREATE_STAGING);
+			}
+
+			// 2. resolve authors and genres for the whole batch
+			rows = helperResolveAuthors(conn, rows, report);
+			rows = helperCheckGenres(conn, rows, report);
+			rows = helperRemoveDuplicates(rows, report);
+
+			// 3. load the batch as a whole. If the database rejects it, load it a row at a
+			// time so only the bad rows fail.
+			Savepoint savepoint = conn.setSavepoint();
+			try {
+				helperUpsert(conn, rows);
+				loaded.addAll(rows);
+			} catch (SQLException | IOException e) {
+				logger.warn("Bulk loading a batch of {} books failed ({}). Retrying one book at a time.", rows.size(),
+						e.getMessage());
+				conn.rollback(savepoint);
+				for (Row row : rows) {
+					savepoint = conn.setSavepoint();
+					try {
+						helperUpsert(conn, Collections.singletonList(row));
+						loaded.add(row);
+					} catch (SQLException | IOException ex) {
+						conn.rollback(savepoint);
+						report.fail(row, ex.getMessage());
+					}
+				}
+			}
+			conn.commit();
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			failAll(rows, report, "Unable to connect to the database");
+			return;
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			failAll(rows, report, e.getMessage());
+			return;
+		}
+
+		// 4. only count the books once they are committed
+		for (Row row : loaded) {
+			report.loaded(row);
+			DAORoot.bookDao.getBookCache().invalidate(row.bookID);
+		}
+	}
+
+	// the batch was rolled back so every row that made it past validation failed
+	private void failAll(List<Row> rows, Report report, String reason) {
+		for (Row row : rows) {
+			report.fail(row, reason);
+		}
+	}
+
+	/**
+	 * Helper function that looks up (and optionally creates) the authors of a
+	 * batch in bulk and fills in each row's author ids.
+	 *
+	 * @return the rows whose authors were all found.
+	 */
+	private List<Row> helperResolveAuthors(Connection conn, List<Row> rows, Report report) throws SQLException {
+		LinkedHashSet<Pair<String, String>> names = new LinkedHashSet<Pair<String, String>>();
+		for (Row row : rows) {
+			Collections.addAll(names, row.authorNames);
+		}
+		HashMap<Pair<String, String>, Integer> ids = helperFindAuthors(conn, names);
+
+		if (createMissingAuthors && ids.size() < names.size()) {
+			LinkedHashSet<Pair<String, String>> missing = new LinkedHashSet<Pair<String, String>>(names);
+			missing.removeAll(ids.keySet());
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_CREATE_AUTHORS);) {
+				helperSetNameArrays(conn, pstmt, missing);
+				int created = pstmt.executeUpdate();
+				logger.info("Bulk load created {} authors", created);
+			}
+			ids.putAll(helperFindAuthors(conn, missing));
+		}
+
+		List<Row> rtVal = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			String missingAuthor = null;
+			row.authorIDs = new int[row.authorNames.length];
+			for (int x = 0; x < row.authorNames.length && missingAuthor == null; x++) {
+				Integer id = ids.get(row.authorNames[x]);
+				if (id == null)
+					missingAuthor = row.authorNames[x].getValue0() + " " + row.authorNames[x].getValue1();
+				else
+					row.authorIDs[x] = id;
+			}
+			if (missingAuthor != null) {
+				report.fail(row, String.format("Author \"%s\" does not exist.", missingAuthor));
+			} else {
+				row.primaryAuthorID = DaoUtils.findPrimaryAuthor(row.authorIDs);
+				rtVal.add(row);
+			}
+		}
+		return rtVal;
+	}
+
+	private HashMap<Pair<String, String>, Integer> helperFindAuthors(Connection conn,
+			LinkedHashSet<Pair<String, String>> names) throws SQLException {
+		HashMap<Pair<String, String>, Integer> rtVal = new HashMap<Pair<String, String>, Integer>();
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_FIND_AUTHORS);) {
+			helperSetNameArrays(conn, pstmt, names);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rtVal.put(new Pair<String, String>(rs.getString("fname"), rs.getString("lname")),
+							rs.getInt("author_id"));
+				}
+			}
+		}
+		return rtVal;
+	}
+
+	private void helperSetNameArrays(Connection conn, PreparedStatement pstmt,
+			LinkedHashSet<Pair<String, String>> names) throws SQLException {
+		String[] fnames = new String[names.size()];
+		String[] lnames = new String[names.size()];
+		int x = 0;
+		for (Pair<String, String> name : names) {
+			fnames[x] = name.getValue0();
+			lnames[x++] = name.getValue1();
+		}
+		pstmt.setArray(1, conn.createArrayOf("varchar", fnames));
+		pstmt.setArray(2, conn.createArrayOf("varchar", lnames));
+	}
+
+	/**
+	 * Helper function that checks the genres of a batch exist (with one query).
+	 *
+	 * @return the rows whose genres all exist.
+	 */
+	private List<Row> helperCheckGenres(Connection conn, List<Row> rows, Report report) throws SQLException {
+		HashSet<String> genres = new HashSet<String>();
+		for (Row row : rows) {
+			Collections.addAll(genres, row.genres);
+		}
+		if (genres.isEmpty())
+			return rows;
+
+		HashSet<String> known = new HashSet<String>();
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_FIND_GENRES);) {
+			pstmt.setArray(1, conn.createArrayOf("varchar", genres.toArray(new String[genres.size()])));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					known.add(rs.getString(1));
+				}
+			}
+		}
+
+		List<Row> rtVal = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			String unknown = null;
+			for (String genre : row.genres) {
+				if (!known.contains(genre)) {
+					unknown = genre;
+					break;
+				}
+			}
+			if (unknown == null)
+				rtVal.add(row);
+			else
+				report.fail(row, String.format("Genre \"%s\" does not exist.", unknown));
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Helper function that fails rows that are the same book (same title,
+	 * primary author, edition and publisher) as an earlier row in the batch. A
+	 * single upsert can't touch the same book twice.
+	 */
+	private List<Row> helperRemoveDuplicates(List<Row> rows, Report report) {
+		HashMap<String, Row> seen = new HashMap<String, Row>();
+		List<Row> rtVal = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			String key = row.title + '\0' + row.primaryAuthorID + '\0' + row.edition + '\0' + row.publisher;
+			Row first = seen.putIfAbsent(key, row);
+			if (first == null)
+				rtVal.add(row);
+			else
+				report.fail(row, String.format("Duplicate of row %d.", first.rowNumber));
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Helper function that stages rows with COPY and upserts them (and their
+	 * authors, genres and identifiers). Sets the bookID of each row.
+	 */
+	private void helperUpsert(Connection conn, List<Row> rows) throws SQLException, IOException {
+		CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+		try (Statement stmt = conn.createStatement();) {
+			stmt.execute(SQL_CLEAR_STAGING);
+		}
+
+		// 1. stage and upsert the books
+		CopyWriter books = new CopyWriter();
+		for (Row row : rows) {
+			books.row(row.rowNumber, row.title, row.description, row.edition, row.publisher, row.publishDate,
+					row.primaryAuthorID, row.authorIDs.length, row.identifiers.length > 0);
+		}
+		copyManager.copyIn("COPY book_load_stage (row_no, title, description, edition, publisher, publish_date, "
+				+ "primary_author_id, count_authors, has_identifiers) FROM STDIN", books.reader());
+
+		HashMap<Integer, Row> byRowNumber = new HashMap<Integer, Row>();
+		for (Row row : rows) {
+			byRowNumber.put(row.rowNumber, row);
+		}
+		List<Long> updatedIDs = new ArrayList<Long>();
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SQL_UPSERT_BOOKS)) {
+			while (rs.next()) {
+				Row row = byRowNumber.remove(rs.getInt("row_no"));
+				row.bookID = rs.getLong("book_id");
+				row.inserted = rs.getBoolean("inserted");
+				if (!row.inserted)
+					updatedIDs.add(row.bookID);
+			}
+		}
+		if (!byRowNumber.isEmpty()) // should never happen
+			throw new SQLException(byRowNumber.size() + " books were staged but not upserted");
+
+		// 2. stage the junction tables now that we know the book_ids
+		CopyWriter authors = new CopyWriter();
+		CopyWriter genres = new CopyWriter();
+		CopyWriter identifiers = new CopyWriter();
+		for (Row row : rows) {
+			for (int authorID : row.authorIDs) {
+				authors.row(row.bookID, authorID);
+			}
+			for (String genre : row.genres) {
+				genres.row(row.bookID, genre);
+			}
+			for (Pair<String, String> identifier : row.identifiers) {
+				identifiers.row(row.bookID, identifier.getValue0(), identifier.getValue1());
+			}
+		}
+		copyManager.copyIn("COPY book_load_authors (book_id, author_id) FROM STDIN", authors.reader());
+		copyManager.copyIn("COPY book_load_genres (book_id, genre_name) FROM STDIN", genres.reader());
+		copyManager.copyIn("COPY book_load_identifiers (book_id, identifier_type, identifier_value) FROM STDIN",
+				identifiers.reader());
+
+		// 3. books that already existed get their junction entries replaced
+		if (!updatedIDs.isEmpty()) {
+			Array ids = conn.createArrayOf("bigint", updatedIDs.toArray());
+			for (String sql : SQL_REPLACE_LINKS) {
+				try (PreparedStatement pstmt = conn.prepareStatement(sql);) {
+					pstmt.setArray(1, ids);
+					pstmt.executeUpdate();
+				}
+			}
+		}
+		try (Statement stmt = conn.createStatement();) {
+			stmt.execute(SQL_INSERT_LINKS);
+		}
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(SQL_INSERT_IDENTIFIERS)) {
+			while (rs.next()) {
+				logger.warn("{} of the {} identifiers of book {} conflicted with existing rows and were not linked",
+						rs.getLong("staged") - rs.getLong("kept"), rs.getLong("staged"), rs.getLong("book_id"));
+			}
+		}
+	}
+
+	/**
+	 * Builds the body of a COPY ... FROM STDIN in postgres' text format.
+	 */
+	static class CopyWriter {
+		private final StringBuilder sb = new StringBuilder();
+
+		void row(Object... values) {
+			for (int x = 0; x < values.length; x++) {
+				if (x > 0)
+					sb.append('\t');
+				if (values[x] == null) {
+					sb.append("\\N");
+				} else {
+					escape(values[x].toString());
+				}
+			}
+			sb.append('\n');
+		}
+
+		private void escape(String value) {
+			for (int x = 0; x < value.length(); x++) {
+				char c = value.charAt(x);
+				switch (c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(c);
+				}
+			}
+		}
+
+		StringReader reader() {
+			return new StringReader(sb.toString());
+		}
+
+		@Override
+		public String toString() {
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * A book being loaded along with its position in the input and what we
+	 * resolved for it.
+	 */
+	private static class Row {
+		private final int rowNumber;
+		private final BookRecord record;
+
+		private String title;
+		private String description;
+		private int edition;
+		private String publisher;
+		private java.sql.Timestamp publishDate;
+		private Pair<String, String>[] authorNames;
+		private String[] genres;
+		private Pair<String, String>[] identifiers;
+
+		private int[] authorIDs;
+		private int primaryAuthorID;
+		private long bookID;
+		private boolean inserted;
+
+		private Row(int rowNumber, BookRecord record) {
+			this.rowNumber = rowNumber;
+			this.record = record;
+		}
+
+		/**
+		 * Validate the record and normalize its fields the same way the controllers
+		 * and BookDao do (stripped title, capitalized author names, -1 for an unknown
+		 * edition, "" for no publisher, formatted identifiers).
+		 *
+		 * @return null if the record is ok. Otherwise the reason it can't be loaded.
+		 */
+		@SuppressWarnings("unchecked")
+		private String normalize() {
+			if (record == null)
+				return "Record is null.";
+			if (!DaoUtils.stringIsOk(record.getTitle()))
+				return "Invalid title.";
+			title = record.getTitle().strip();
+			description = (record.getDescription() == null) ? "" : record.getDescription();
+			edition = (record.getEdition() < 0) ? -1 : record.getEdition();
+			publisher = (record.getPublisher() == null) ? "" : record.getPublisher().strip();
+			publishDate = record.getPublishDate();
+
+			Pair<String, String>[] names = record.getAuthorNames();
+			if (names == null || names.length == 0)
+				return "No authors were included for the book (required field).";
+			LinkedHashSet<Pair<String, String>> uniqueNames = new LinkedHashSet<Pair<String, String>>();
+			for (Pair<String, String> name : names) {
+				if (name == null || !DaoUtils.stringIsOk(name.getValue0()) || !DaoUtils.stringIsOk(name.getValue1()))
+					return "An author's first name or last name is invalid.";
+				uniqueNames.add(new Pair<String, String>(WordUtils.capitalizeFully(name.getValue0().strip()),
+						WordUtils.capitalizeFully(name.getValue1().strip())));
+			}
+			authorNames = uniqueNames.toArray(new Pair[uniqueNames.size()]);
+
+			LinkedHashSet<String> uniqueGenres = new LinkedHashSet<String>();
+			if (record.getGenres() != null) {
+				for (String genre : record.getGenres()) {
+					if (!DaoUtils.stringIsOk(genre))
+						return "A genre is invalid.";
+					uniqueGenres.add(genre.strip());
+				}
+			}
+			genres = uniqueGenres.toArray(new String[uniqueGenres.size()]);
+
+			identifiers = new Pair[0];
+			if (record.getIdentifiers() != null && record.getIdentifiers().length > 0) {
+				for (Pair<String, String> identifier : record.getIdentifiers()) {
+					if (identifier == null || identifier.getValue0() == null || identifier.getValue1() == null)
+						return "An identifier is null.";
+				}
+				LinkedHashSet<Pair<String, String>> uniqueIdentifiers = new LinkedHashSet<Pair<String, String>>();
+				Collections.addAll(uniqueIdentifiers, IdentifierUtils.formatIdentifiers(record.getIdentifiers().clone()));
+				identifiers = uniqueIdentifiers.toArray(new Pair[uniqueIdentifiers.size()]);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * The outcome of a bulk load.
+	 */
+	public static class Report {
+		private int insertedCount = 0;
+		private int updatedCount = 0;
+		// (row number, reason) in the order the failures happened
+		private final List<Pair<Integer, String>> failures = new ArrayList<Pair<Integer, String>>();
+		// book_id of every loaded row by row number
+		private final HashMap<Integer, Long> bookIDs = new HashMap<Integer, Long>();
+
+		private void loaded(Row row) {
+			if (row.inserted)
+				insertedCount++;
+			else
+				updatedCount++;
+			bookIDs.put(row.rowNumber, row.bookID);
+		}
+
+		private void fail(Row row, String reason) {
+			failures.add(new Pair<Integer, String>(row.rowNumber, reason));
+		}
+
+		/**
+		 * @return how many books were added to the database.
+		 */
+		public int getInsertedCount() {
+			return insertedCount;
+		}
+
+		/**
+		 * @return how many books already existed and were updated.
+		 */
+		public int getUpdatedCount() {
+			return updatedCount;
+		}
+
+		public int getFailedCount() {
+			return failures.size();
+		}
+
+		/**
+		 * @return pairs of (row number, reason for failure). Rows are numbered from 1
+		 *         in the order they were passed in.
+		 */
+		public List<Pair<Integer, String>> getFailures() {
+			return Collections.unmodifiableList(failures);
+		}
+
+		/**
+		 * @param rowNumber the row number (from 1) of a book passed in.
+		 * @return the book_id the row was loaded as or -1 if it failed.
+		 */
+		public long getBookID(int rowNumber) {
+			Long id = bookIDs.get(rowNumber);
+			return id == null ? -1 : id;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("inserted=%d, updated=%d, failed=%d", insertedCount, updatedCount, failures.size());
+		}
+	}
+}
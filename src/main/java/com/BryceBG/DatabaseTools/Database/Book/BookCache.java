@@ -0,0 +1,208 @@
+package com.BryceBG.DatabaseTools.Database.Book;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.LibraryDB;
+
+/**
+ * A bounded least recently used cache of fully filled out (authors, genres,
+ * identifiers) books keyed by book_id. BookDao.getBookByBookID() reads through
+ * it and every BookDao write invalidates the books it touched.
+ *
+ * The cache is bounded both by the amount of books and by an estimate of the
+ * memory they take up (descriptions can be long). Books are copied on the way
+ * in and out so callers can't change what is cached by using the Book setters.
+ *
+ * Everything cached is dropped if DAORoot.library is switched to another
+ * database.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class BookCache {
+	// rough overhead of a Book object, its arrays and strings (excluding the
+	// characters themselves)
+	private static final long BOOK_BASE_WEIGHT = 300;
+
+	private final int maxEntries;
+	private final long maxWeight;
+
+	// access ordered so iteration starts at the least recently used book
+	private final LinkedHashMap<Long, Pair<Book, Long>> books = new LinkedHashMap<Long, Pair<Book, Long>>(16, 0.75f,
+			true);
+	private long weight = 0;
+	// the library the cached books were read from
+	private LibraryDB library = null;
+	// bumped on every invalidation. A reader that started before an invalidation
+	// must not cache what it read (it may be the old version of the book)
+	private long invalidationCount = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxEntries max number of books to keep (0 disables the cache)
+	 * @param maxWeight  max estimated size in bytes of the books kept
+	 */
+	public BookCache(int maxEntries, long maxWeight) {
+		this.maxEntries = Math.max(0, maxEntries);
+		this.maxWeight = Math.max(0, maxWeight);
+	}
+
+	public boolean isEnabled() {
+		return maxEntries > 0 && maxWeight > 0;
+	}
+
+	/**
+	 * Get a copy of a cached book.
+	 *
+	 * @param bookID the id of the book.
+	 * @return null if the book isn't cached.
+	 */
+	public synchronized Book get(long bookID) {
+		if (!isEnabled())
+			return null;
+		checkLibrary();
+		Pair<Book, Long> entry = books.get(bookID);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return new Book(entry.getValue0());
+	}
+
+	/**
+	 * @return a stamp to pass to put() for a book that is about to be read from
+	 *         the database.
+	 */
+	public synchronized long getStamp() {
+		checkLibrary();
+		return invalidationCount;
+	}
+
+	/**
+	 * Cache a (copy of a) book that was read from the database. The book is not
+	 * cached if anything was invalidated since stamp was taken as the book read
+	 * may already be out of date.
+	 *
+	 * @param bookX the book to cache.
+	 * @param stamp the value of getStamp() from before the book was read.
+	 */
+	public synchronized void put(Book bookX, long stamp) {
+		if (!isEnabled() || bookX == null)
+			return;
+		checkLibrary();
+		if (stamp != invalidationCount)
+			return;
+		long bookWeight = estimateWeight(bookX);
+		if (bookWeight > maxWeight)
+			return;
+
+		Pair<Book, Long> old = books.put(bookX.getBookID(), new Pair<Book, Long>(new Book(bookX), bookWeight));
+		if (old != null)
+			weight -= old.getValue1();
+		weight += bookWeight;
+
+		// evict least recently used books until we are back in bounds
+		Iterator<Map.Entry<Long, Pair<Book, Long>>> it = books.entrySet().iterator();
+		while ((books.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+			weight -= it.next().getValue().getValue1();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Remove a book from the cache (call after the book was changed).
+	 */
+	public synchronized void invalidate(long bookID) {
+		invalidationCount++;
+		Pair<Book, Long> old = books.remove(bookID);
+		if (old != null)
+			weight -= old.getValue1();
+	}
+
+	/**
+	 * Remove every book from the cache (call after a change that may have touched
+	 * books we can't name, like a cascading delete).
+	 */
+	public synchronized void invalidateAll() {
+		invalidationCount++;
+		books.clear();
+		weight = 0;
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	public synchronized int getSize() {
+		return books.size();
+	}
+
+	/**
+	 * @return the estimated size in bytes of the books cached.
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return String.format("BookCache[size=%d/%d, weight=%d/%d bytes, hits=%d, misses=%d, hitRate=%.2f, evictions=%d]",
+				books.size(), maxEntries, weight, maxWeight, hits, misses, lookups == 0 ? 0.0 : (double) hits / lookups,
+				evictions);
+	}
+
+	// drop everything if we have been pointed at another database
+	private void checkLibrary() {
+		if (library != DAORoot.library) {
+			library = DAORoot.library;
+			invalidationCount++;
+			books.clear();
+			weight = 0;
+		}
+	}
+
+	/**
+	 * Estimate how much memory a book takes up (strings are 2 bytes a character).
+	 */
+	static long estimateWeight(Book bookX) {
+		long w = BOOK_BASE_WEIGHT;
+		w += 2L * length(bookX.getTitle()) + 2L * length(bookX.getDescription()) + 2L * length(bookX.getPublisher())
+				+ 2L * length(bookX.getCoverLocation()) + 2L * length(bookX.getCoverName());
+		if (bookX.getAuthorIDs() != null)
+			w += 4L * bookX.getAuthorIDs().length;
+		if (bookX.getGenres() != null) {
+			for (String genre : bookX.getGenres()) {
+				w += 40 + 2L * length(genre);
+			}
+		}
+		if (bookX.getIdentifiers() != null) {
+			for (Pair<String, String> identifier : bookX.getIdentifiers()) {
+				w += 80 + 2L * (length(identifier.getValue0()) + length(identifier.getValue1()));
+			}
+		}
+		return w;
+	}
+
+	private static int length(String s) {
+		return s == null ? 0 : s.length();
+	}
+}
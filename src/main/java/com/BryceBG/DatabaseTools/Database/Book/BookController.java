@@ -1,9 +1,10 @@
 package com.BryceBG.DatabaseTools.Database.Book;
 
-import static com.BryceBG.DatabaseTools.Database.DAORoot.userDao;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
@@ -11,11 +12,18 @@ import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
 import com.BryceBG.DatabaseTools.Database.Author.Author;
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.BOOK_SORT;
 import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreTree;
+import com.BryceBG.DatabaseTools.Database.User.Session;
 import com.BryceBG.DatabaseTools.Database.User.UserController;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Utils;
 
 /**
  * This class will handle the higher logic for manipulating book related data in
@@ -67,14 +75,29 @@ public class BookController {
 	 */
 	public static Pair<Boolean, String> addBook(String username, String password, String title, String description,
 			int edition, Pair<String, String>[] authorNames) {
-
 		// 1. authenticate user and authenticate.
-		if (UserController.authenticate(username, password) == false) {
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
 			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
-		}
+		return UnitOfWork.run(() -> helperAddBook(caller, title, description, edition, authorNames));
+	}
+
+	/**
+	 * Same as addBook() but the caller is identified by the session token returned
+	 * by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> addBook(String sessionToken, String title, String description, int edition,
+			Pair<String, String>[] authorNames) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperAddBook(caller, title, description, edition, authorNames));
+	}
 
+	private static Pair<Boolean, String> helperAddBook(Session caller, String title, String description, int edition,
+			Pair<String, String>[] authorNames) {
 		// 1.b. ensure they have permissions to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 1.c ensure at least 1 author for the series was passed in
@@ -132,6 +155,36 @@ public class BookController {
 
 	}
 
+	/**
+	 * Add (or update) many books at once with the BookBulkLoader. Books that fail
+	 * to load don't stop the rest from loading; they are listed in the returned
+	 * report.
+	 * 
+	 * @param sessionToken         token of an administrator returned by
+	 *                             UserController.login().
+	 * @param records              the books to load.
+	 * @param createMissingAuthors if true authors that don't exist yet are added
+	 *                             instead of failing their books.
+	 * @return <report of the load, GlobalConstants.MSG_SUCCESS> or <null, reason
+	 *         for failure> if the load wasn't attempted.
+	 */
+	public static Pair<BookBulkLoader.Report, String> addBooks(String sessionToken, Stream<BookRecord> records,
+			boolean createMissingAuthors) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<BookBulkLoader.Report, String>(null, GlobalConstants.MSG_INVALID_SESSION);
+		if (caller.isAdmin() == false)
+			return new Pair<BookBulkLoader.Report, String>(null, GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
+		if (records == null)
+			return new Pair<BookBulkLoader.Report, String>(null, "No books were passed in.");
+
+		BookBulkLoader loader = new BookBulkLoader(
+				Utils.getConfigInteger("db.bulk.batch_size", BookBulkLoader.DEFAULT_BATCH_SIZE), createMissingAuthors);
+		BookBulkLoader.Report report = loader.load(records);
+		logger.info("User: {} bulk loaded books ({})", caller.getUsername(), report);
+		return new Pair<BookBulkLoader.Report, String>(report, GlobalConstants.MSG_SUCCESS);
+	}
+
 	/**
 	 * A function to remove a book from the database
 	 * 
@@ -144,11 +197,26 @@ public class BookController {
 	 */
 	public static Pair<Boolean, String> removeBook(String username, String password, long bookID) {
 		// 1. authenticate user and authenticate.
-		if (UserController.authenticate(username, password) == false) {
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
 			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
-		}
+		return UnitOfWork.run(() -> helperRemoveBook(caller, bookID));
+	}
+
+	/**
+	 * Same as removeBook() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> removeBook(String sessionToken, long bookID) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperRemoveBook(caller, bookID));
+	}
+
+	private static Pair<Boolean, String> helperRemoveBook(Session caller, long bookID) {
 		// 1.b. ensure they have permissions to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 2. attempt to remove book.
@@ -229,18 +297,33 @@ public class BookController {
 	 * @return <True, GlobalConstants.MSG_SUCCESS> if operation was successful.
 	 *         Otherwise returns <False, reason_for_failure>
 	 */
-	@SuppressWarnings("unchecked")
 	public static <T> Pair<Boolean, String> editBook(String username, String password, long bookID, int editType,
 			T newVal) {
+		// 0. validate user performing operation
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperEditBook(caller, bookID, editType, newVal));
+	}
+
+	/**
+	 * Same as editBook() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static <T> Pair<Boolean, String> editBook(String sessionToken, long bookID, int editType, T newVal) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperEditBook(caller, bookID, editType, newVal));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Pair<Boolean, String> helperEditBook(Session caller, long bookID, int editType, T newVal) {
 		// Generic error message to return.
 		String genericErrorString = "Editing book %s unexpectedly failed. Check parameters and if issues persist contact system administrator";
 
-		// 0. validate user performing operation
-		if (UserController.authenticate(username, password) == false) {
-			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
-		}
 		// 0.b. ensure they have permissions to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		EDIT_TYPE editOp = hashIntToEditType.get(editType);
@@ -371,10 +454,65 @@ public class BookController {
 	public final static int SEARCH_BY_AUTHOR = 2;
 	public final static int SEARCH_BY_SERIES = 3;
 	public final static int SEARCH_BY_TITLE = 4;
+	public final static int SEARCH_BY_TEXT = 5;
+	public final static int SEARCH_BY_GENRE = 6;
+
+	// most books a single getRandomBooks() call will return
+	public final static int MAX_RANDOM_BOOKS = 50;
+
+	// most genres a single completeGenre() call will return
+	public final static int MAX_GENRE_COMPLETIONS = 20;
+
+	/**
+	 * Suggest genres for a book that is being added from what is known about it
+	 * (matched against genre names, keywords and goodreads shelf names in memory,
+	 * see GenreIndex).
+	 * 
+	 * @param title       the book's title (may be null).
+	 * @param description the book's description (may be null).
+	 * @param subjects    subjects/tags the book came with (may be empty).
+	 * @return the suggested genre names, best first. Empty if none match.
+	 */
+	public static List<String> suggestGenres(String title, String description, String... subjects) {
+		ArrayList<String> texts = new ArrayList<String>();
+		texts.add(title);
+		texts.add(description);
+		if (subjects != null)
+			texts.addAll(Arrays.asList(subjects));
+		return DAORoot.genreDao.getGenreIndex().suggest(texts);
+	}
+
+	/**
+	 * Complete a genre name as it is typed (e.g. when tagging a book).
+	 * 
+	 * @param prefix what has been typed so far. Matches the start of any word in a
+	 *               genre's name, keywords or goodreads shelf name.
+	 * @param count  how many genres are wanted (capped at MAX_GENRE_COMPLETIONS).
+	 * @return the matching genre names (genres whose name matches first). Empty if
+	 *         none match.
+	 */
+	public static List<String> completeGenre(String prefix, int count) {
+		return DAORoot.genreDao.getGenreIndex().complete(prefix, Math.min(count, MAX_GENRE_COMPLETIONS));
+	}
 
 	public static Book getRandomBook() {
 		return DAORoot.bookDao.getRandomBook();
 	}
+
+	/**
+	 * Gets several distinct random books (for example for a carousel on the front
+	 * page).
+	 * 
+	 * @param count how many books are wanted (capped at MAX_RANDOM_BOOKS).
+	 * @param genre if not null or blank only books in this genre are returned.
+	 * @return the random books. May be fewer than count if there are not enough
+	 *         (matching) books.
+	 */
+	public static Book[] getRandomBooks(int count, String genre) {
+		if (genre != null && genre.isBlank())
+			genre = null;
+		return DAORoot.bookDao.getRandomBooks(Math.min(count, MAX_RANDOM_BOOKS), genre);
+	}
 	
 	/**
 	 * A function to search for a book in the database.
@@ -387,9 +525,18 @@ public class BookController {
 	 *                   If performing series search: T is expected to be an Integer
 	 *                   <br>
 	 *                   If performing series search: T is expected to be a String
+	 *                   <br>
+	 *                   If performing text search: T is expected to be a String
+	 *                   (only the best ranked page of hits is returned, use the
+	 *                   paged searchBook() to get the rest)<br>
+	 *                   If performing genre search: T is expected to be a String
+	 *                   (genre name). Books in its subgenres are included (only
+	 *                   the first page is returned, use the paged searchBook() to
+	 *                   get the rest)
 	 * 
 	 * @param searchType This can be 1: SEARCH_BY_IDENTIFIER, 2: SEARCH_BY_AUTHOR,
-	 *                   3: SEARCH_BY_SERIES, 4: SEARCH_BY_TITLE
+	 *                   3: SEARCH_BY_SERIES, 4: SEARCH_BY_TITLE, 5: SEARCH_BY_TEXT,
+	 *                   6: SEARCH_BY_GENRE
 	 * @param searchVal  The value to search.
 	 * @return if the first value in the pair is null, it indicates an error
 	 *         occurred and the second value of the pair should be looked at to
@@ -412,6 +559,12 @@ public class BookController {
 			rtVal = searchBySeries(searchVal);
 		} else if (searchType == SEARCH_BY_TITLE) {
 			rtVal = searchByTitle(searchVal);
+		} else if (searchType == SEARCH_BY_TEXT || searchType == SEARCH_BY_GENRE) {
+			Pair<Page<Book>, String> temp = searchBook(searchType, searchVal, null, PageToken.DEFAULT_PAGE_SIZE);
+			if (temp.getValue0() == null)
+				rtVal = new Pair<Book[], String>(null, temp.getValue1());
+			else
+				rtVal = new Pair<Book[], String>(temp.getValue0().getItems().toArray(new Book[0]), null);
 		}
 		else { // program error (didn't try to perform a search of known type
 			return new Pair<Book[], String>(null, "Invalid search type!");
@@ -420,6 +573,103 @@ public class BookController {
 
 	}
 
+	/**
+	 * Paged version of searchBook(). Pages are fetched with keyset pagination so
+	 * broad searches (for example the title "the") only return pageSize books at a
+	 * time and every page costs about the same to fetch.
+	 * 
+	 * @param <T>        see searchBook()
+	 * @param searchType see searchBook()
+	 * @param searchVal  The value to search.
+	 * @param pageToken  the token returned with the previous page (null for the
+	 *                   first page).
+	 * @param pageSize   the max number of books on a page (0 for the default).
+	 * @return if the first value in the pair is null, it indicates an error
+	 *         occurred and the second value of the pair should be looked at to
+	 *         determine the reason for failure (GlobalConstants.MSG_QUERY_FAILED
+	 *         if the search itself failed). Otherwise, the first pair element is
+	 *         the page of books returned by the search (empty if there are no
+	 *         results).
+	 */
+	public static <T> Pair<Page<Book>, String> searchBook(int searchType, T searchVal, String pageToken,
+			int pageSize) {
+		if (searchVal == null) {
+			return new Pair<Page<Book>, String>(null, "Search field cannot be null");
+		}
+		Page<Book> rtPage = null;
+		String rtMsg = null;
+		String pageKind; // the kind of token the search takes (see PageToken)
+
+		// 1. determine what type of book search to perform.
+		if (searchType == SEARCH_BY_IDENTIFIER) {
+			// identifiers match at most one book so there is only ever one page
+			Pair<Book[], String> temp = searchByIdentifier(searchVal);
+			if (temp.getValue0() == null)
+				rtMsg = temp.getValue1();
+			else if (pageToken != null || temp.getValue0()[0] == null)
+				rtPage = Page.empty();
+			else
+				rtPage = new Page<Book>(Arrays.asList(temp.getValue0()), null);
+			return new Pair<Page<Book>, String>(rtPage, rtMsg);
+		} else if (searchType == SEARCH_BY_AUTHOR) {
+			Pair<Author, String> author = helperFindAuthor(searchVal);
+			if (author.getValue0() == null)
+				return new Pair<Page<Book>, String>(null, author.getValue1());
+			pageKind = BookDao.PAGE_KIND_BY_AUTHOR + BOOK_SORT.BY_TITLE;
+			rtPage = DAORoot.bookDao.getBooksByAuthorPage(author.getValue0().getAuthorID(), BOOK_SORT.BY_TITLE,
+					pageToken, pageSize);
+		} else if (searchType == SEARCH_BY_SERIES) {
+			if (!(searchVal instanceof Integer))
+				return new Pair<Page<Book>, String>(null,
+						"Data type/value for query does not conform to expected format.");
+			if (DAORoot.seriesDao.getSeriesBySeriesID((int) searchVal) == null)
+				return new Pair<Page<Book>, String>(null, String
+						.format("Search returned no results. (i.e. no series with ID: %d exists)", (int) searchVal));
+			pageKind = BookDao.PAGE_KIND_BY_SERIES;
+			rtPage = DAORoot.bookDao.getBooksBySeriesPage((int) searchVal, pageToken, pageSize);
+		} else if (searchType == SEARCH_BY_TITLE) {
+			if (!(searchVal instanceof String))
+				return new Pair<Page<Book>, String>(null,
+						"Data type/value for query does not conform to expected format.");
+			if (!DaoUtils.stringIsOk((String) searchVal))
+				return new Pair<Page<Book>, String>(null,
+						String.format("Invalid search term: '%s' for search.", (String) searchVal));
+			pageKind = BookDao.PAGE_KIND_BY_TITLE;
+			rtPage = DAORoot.bookDao.getBooksByTitlePage((String) searchVal, pageToken, pageSize);
+		} else if (searchType == SEARCH_BY_TEXT) {
+			if (!(searchVal instanceof String))
+				return new Pair<Page<Book>, String>(null,
+						"Data type/value for query does not conform to expected format.");
+			if (!DaoUtils.stringIsOk((String) searchVal))
+				return new Pair<Page<Book>, String>(null,
+						String.format("Invalid search term: '%s' for search.", (String) searchVal));
+			// hits come back best ranked first
+			pageKind = BookDao.PAGE_KIND_BY_TEXT;
+			rtPage = DAORoot.bookDao.searchBooksByText((String) searchVal, pageToken, pageSize);
+		} else if (searchType == SEARCH_BY_GENRE) {
+			if (!(searchVal instanceof String))
+				return new Pair<Page<Book>, String>(null,
+						"Data type/value for query does not conform to expected format.");
+			String genreName = ((String) searchVal).strip();
+			GenreTree tree = DAORoot.genreDao.getGenreTree();
+			if (!tree.contains(genreName))
+				return new Pair<Page<Book>, String>(null,
+						String.format("Search returned no results. (i.e. no genre: '%s' exists)", genreName));
+			// the genre and all of its subgenres in one query
+			pageKind = BookDao.PAGE_KIND_BY_GENRES;
+			rtPage = DAORoot.bookDao.getBooksByGenresPage(tree.getSubtree(genreName).toArray(new String[0]),
+					pageToken, pageSize);
+		} else { // program error (didn't try to perform a search of known type
+			return new Pair<Page<Book>, String>(null, "Invalid search type!");
+		}
+
+		if (rtPage == null && !PageToken.isValid(pageKind, pageToken))
+			rtMsg = "Invalid page token. Start the search again from the first page.";
+		else if (rtPage == null) // the token is fine so the query failed
+			rtMsg = GlobalConstants.MSG_QUERY_FAILED;
+		return new Pair<Page<Book>, String>(rtPage, rtMsg);
+	}
+
 	private static <T> Pair<Book[], String> searchByTitle(T searchVal) {
 		Book[] rtBooks = null;
 		String rtMsg = null;
@@ -500,7 +750,24 @@ public class BookController {
 	 *         explaining the error.
 	 */
 	private static <T> Pair<Book[], String> searchByAuthor(T searchVal) {
-		Book[] rtBooks = null;
+		Pair<Author, String> author = helperFindAuthor(searchVal);
+		if (author.getValue0() == null)
+			return new Pair<Book[], String>(null, author.getValue1());
+		// 3. perform query for books by author
+		return new Pair<Book[], String>(DAORoot.bookDao.getBooksByAuthor(author.getValue0().getAuthorID()), null);
+	}
+
+	/**
+	 * Helper function for author searches that looks up the author being searched
+	 * for.
+	 * 
+	 * @param <T>       Expected to be a String[2], String, Integer
+	 * @param searchVal the author we are searching for
+	 * @return A tuple where the first value is the author or Null and a string
+	 *         explaining the error.
+	 */
+	private static <T> Pair<Author, String> helperFindAuthor(T searchVal) {
+		Author a = null;
 		String rtMsg = null;
 
 		// 2. check to make sure type of newVal is correct.
@@ -510,30 +777,21 @@ public class BookController {
 																		// or contained null values
 				rtMsg = String.format("Expected two fields: (first name, last name) instead got: %d (%s)", sVal.length,
 						String.join(", ", sVal));
-				return new Pair<Book[], String>(rtBooks, rtMsg);
 			} else if (!DaoUtils.stringIsOk(sVal[0]) || !DaoUtils.stringIsOk(sVal[1])) {
 				// ensure valid non-whitespace only search terms
 				rtMsg = String.format("Expected two fields: (first name, last name) instead got: %d ('%s', '%s')",
 						sVal.length, sVal[0], sVal[1]);
-				return new Pair<Book[], String>(rtBooks, rtMsg);
 			} else {
-				String fname = sVal[0];
-				String lname = sVal[1];
-				Author a = DAORoot.authorDao.getAuthor(fname, lname);// get author details and then query by authorID
-				if (a != null) {
-					rtBooks = DAORoot.bookDao.getBooksByAuthor(a.getAuthorID());
-				} else {
+				a = DAORoot.authorDao.getAuthor(sVal[0], sVal[1]);// get author details and then query by authorID
+				if (a == null) {
 					rtMsg = String.format(
 							"No results were returned for Author (i.e. author '%s' was not found in the database).",
 							String.join(" ", sVal));
 				}
 			}
 		} else if (searchVal instanceof Integer) {
-			Author a = DAORoot.authorDao.getAuthor((int) searchVal);
-			if (a != null) {
-				// 3. perform query for books by author
-				rtBooks = DAORoot.bookDao.getBooksByAuthor(a.getAuthorID());
-			} else {
+			a = DAORoot.authorDao.getAuthor((int) searchVal);
+			if (a == null) {
 				rtMsg = String.format(
 						"No results were returned for Author (i.e. author with ID: '%d' was not found in the database).",
 						(int) searchVal);
@@ -542,12 +800,8 @@ public class BookController {
 			// 1. ensure string is valid
 			if (DaoUtils.stringIsOk((String) searchVal)) {
 				// 2. call getAuthor to get authorID for our query.
-				Author a = DAORoot.authorDao.getAuthor((String) searchVal);// get author details and then query by
-																			// authorID
-				if (a != null) {
-					// 3. perform query for books by author
-					rtBooks = DAORoot.bookDao.getBooksByAuthor(a.getAuthorID());
-				} else {
+				a = DAORoot.authorDao.getAuthor((String) searchVal);
+				if (a == null) {
 					rtMsg = String.format(
 							"No results were returned for Author (i.e. author '%s' was not found in the database).",
 							(String) searchVal);
@@ -557,7 +811,7 @@ public class BookController {
 		} else {
 			rtMsg = "Data type/value for query does not conform to expected format.";
 		}
-		return new Pair<Book[], String>(rtBooks, rtMsg);
+		return new Pair<Author, String>(a, rtMsg);
 	}
 
 }
@@ -1,27 +1,42 @@
 package com.BryceBG.DatabaseTools.Database.Book;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
 
+import com.BryceBG.DatabaseTools.Database.CursorScanner;
 import com.BryceBG.DatabaseTools.Database.DAORoot;
-import com.BryceBG.DatabaseTools.Database.Author.Author;
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
 import com.BryceBG.DatabaseTools.Database.Series.Series;
 import com.BryceBG.DatabaseTools.Database.Series.SeriesDao;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 import com.BryceBG.DatabaseTools.utils.IdentifierUtils;
+import com.BryceBG.DatabaseTools.utils.Utils;
 
 /**
  * This is the public DAO (data access object) for interfacing with the book
@@ -33,6 +48,107 @@ import com.BryceBG.DatabaseTools.utils.IdentifierUtils;
 public class BookDao implements BookDaoInterface {
 	private static final Logger logger = LogManager.getLogger(BookDao.class.getName());
 
+	// how many books we fill out from the junction tables per query (see
+	// helperHydrateBooks())
+	private static final int HYDRATION_BATCH_SIZE = 1000;
+
+	// the kinds of the page tokens from the *Page() searches (see PageToken). The
+	// author's books are suffixed with the BOOK_SORT they are in.
+	public static final String PAGE_KIND_BY_AUTHOR = "books_by_author:";
+	public static final String PAGE_KIND_BY_SERIES = "books_by_series";
+	public static final String PAGE_KIND_BY_GENRES = "books_by_genres";
+	public static final String PAGE_KIND_BY_TITLE = "books_by_title";
+	public static final String PAGE_KIND_BY_TEXT = "books_by_text";
+
+	// picks the ids for getRandomBooks(). The optional in-memory id reservoir is
+	// configured in library.properties
+	private final RandomBookPicker randomPicker = new RandomBookPicker(
+			Utils.getConfigInteger("db.random.reservoir_size", 0),
+			Utils.getConfigInteger("db.random.reservoir_refresh_s", 300));
+	// how many times getRandomBooks() re-picks ids that turned out to be stale
+	private static final int RANDOM_PICK_ROUNDS = 3;
+
+	// cache of filled out books for getBookByBookID(). Configured in
+	// library.properties (0 entries disables it)
+	private final BookCache bookCache = new BookCache(Utils.getConfigInteger("cache.books.max_entries", 10000),
+			Utils.getConfigInteger("cache.books.max_weight_mb", 64) * 1024L * 1024L);
+
+	// the books columns helperGetBookFromRow() reads. Listed rather than "*" so
+	// reads don't send the (large) search_vector column
+	private static final String[] BOOK_COLUMN_NAMES = { "book_id", "title", "series_id", "book_index_in_series",
+			"primary_author_id", "count_authors", "cover_location", "cover_name", "description", "edition",
+			"has_identifiers", "publish_date", "publisher", "average_rating", "rating_count" };
+	private static final String BOOK_COLUMNS = String.join(", ", BOOK_COLUMN_NAMES);
+	// the same columns for queries that alias books as "b"
+	private static final String BOOK_COLUMNS_B = "b." + String.join(", b.", BOOK_COLUMN_NAMES);
+
+	// keyset paged lookups of an author's books (see getBooksByAuthor)
+	private static final String SQL_BOOKS_BY_AUTHOR_BY_ID = "SELECT " + BOOK_COLUMNS_B + " FROM books b "
+			+ "JOIN book_authors ba ON ba.book_id = b.book_id WHERE ba.author_id = ? AND b.book_id > ? "
+			+ "ORDER BY b.book_id LIMIT ?";
+	private static final String SQL_BOOKS_BY_AUTHOR_BY_TITLE = "SELECT " + BOOK_COLUMNS_B + " FROM books b "
+			+ "JOIN book_authors ba ON ba.book_id = b.book_id WHERE ba.author_id = ? AND (b.title, b.book_id) > (?, ?) "
+			+ "ORDER BY b.title, b.book_id LIMIT ?";
+	// keyset paged searches (see getBooksByTitlePage and getBooksBySeriesPage)
+	private static final String SQL_BOOKS_BY_TITLE_PAGE = "SELECT " + BOOK_COLUMNS + " FROM books WHERE title ILIKE ? "
+			+ "AND (title, book_id) > (?, ?) ORDER BY title, book_id LIMIT ?";
+	// a NULL index is read into a book as 0 so it is sorted as 0 too
+	private static final String SQL_BOOKS_BY_SERIES_PAGE = "SELECT " + BOOK_COLUMNS + " FROM books WHERE series_id = ? "
+			+ "AND (COALESCE(book_index_in_series, 0), book_id) > (?, ?) "
+			+ "ORDER BY COALESCE(book_index_in_series, 0), book_id LIMIT ?";
+	// keyset paged books in any of a set of genres (see getBooksByGenresPage)
+	private static final String SQL_BOOKS_BY_GENRES_PAGE = "SELECT " + BOOK_COLUMNS_B
+			+ " FROM books b WHERE b.book_id > ? AND EXISTS "
+			+ "(SELECT 1 FROM book_genres bg WHERE bg.book_id = b.book_id AND bg.genre_name = ANY(?)) "
+			+ "ORDER BY b.book_id LIMIT ?";
+	// ranked full text search (see searchBooksByText). Hits are paged by
+	// (search_rank DESC, book_id)
+	private static final String SQL_BOOKS_BY_TEXT_PAGE = "SELECT * FROM ("
+			+ "SELECT " + BOOK_COLUMNS_B + ", (ts_rank(b.search_vector, q.query) + similarity(b.title, ?))::real AS search_rank "
+			+ "FROM books b, (SELECT websearch_to_tsquery('english', ?) || to_tsquery('english', ?) AS query) q "
+			+ "WHERE b.search_vector @@ q.query OR b.title % ?) hits "
+			+ "WHERE search_rank < ? OR (search_rank = ? AND book_id > ?) "
+			+ "ORDER BY search_rank DESC, book_id LIMIT ?";
+	// setting a book's rating stats by hand: the row is locked, updated, and the
+	// difference applied to its series' rating totals. Returns how many books were
+	// updated (see helperSetRatingStats)
+	private static final String SQL_SET_RATING_STATS = "WITH old AS (SELECT book_id, rating_sum, rating_count FROM books WHERE book_id=? FOR UPDATE), "
+			+ "b AS (UPDATE books SET %s FROM old WHERE books.book_id=old.book_id "
+			+ "RETURNING books.series_id, books.rating_sum - old.rating_sum AS d_sum, books.rating_count - old.rating_count AS d_count), "
+			+ "s AS (UPDATE series SET rating_sum=series.rating_sum+b.d_sum, rating_count=series.rating_count+b.d_count "
+			+ "FROM b WHERE series.series_id=b.series_id) SELECT count(*) FROM b";
+	private static final String SQL_SET_AVG_RATING = String.format(SQL_SET_RATING_STATS,
+			"average_rating=?, rating_sum=? * books.rating_count");
+	private static final String SQL_SET_RATING_COUNT = String.format(SQL_SET_RATING_STATS,
+			"rating_count=?, rating_sum=books.average_rating * ?");
+	// the lightweight check editBook() makes before applying a patch: locks the
+	// book's row and reads its series, its authors and how many of the authors
+	// being added exist
+	private static final String SQL_EDIT_PROBE = "SELECT b.series_id, "
+			+ "ARRAY(SELECT ba.author_id FROM book_authors ba WHERE ba.book_id=b.book_id), "
+			+ "(SELECT count(*) FROM authors a WHERE a.author_id = ANY(?)) FROM books b WHERE b.book_id=? FOR UPDATE OF b";
+	// the books column each patch field sets directly (the others are derived in
+	// editBook())
+	private static final EnumMap<EDIT_TYPE, String> PATCH_COLUMNS = new EnumMap<EDIT_TYPE, String>(EDIT_TYPE.class);
+	static {
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_BOOK_INDEX_IN_SERIES, "book_index_in_series");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_COVER_LOCATION, "cover_location");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_COVER_NAME, "cover_name");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_DESCRIPTION, "description");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_EDITION, "edition");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_PUBLISH_DATE, "publish_date");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_PUBLISHER, "publisher");
+		PATCH_COLUMNS.put(EDIT_TYPE.SET_SERIES_ID, "series_id");
+	}
+
+	/**
+	 * @return the cache getBookByBookID() reads through (for stats and for DAOs
+	 *         whose writes cascade to books to invalidate).
+	 */
+	public BookCache getBookCache() {
+		return bookCache;
+	}
+
 	/**
 	 * Function to get all books currently in our database. This should probably
 	 * only be used for testing at this time as it is not setup to handle the
@@ -41,12 +157,10 @@ public class BookDao implements BookDaoInterface {
 	@Override
 	public ArrayList<Book> getAllBooks() {
 		ArrayList<Book> rtVal = new ArrayList<Book>();
-		String sql = "SELECT * FROM BOOKS";
+		String sql = "SELECT " + BOOK_COLUMNS + " FROM books";
 
 		// 1. establish connection to our database (and create our prepared statements
-		try (Connection conn = DAORoot.library.connectToDB();
-				PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
-						ResultSet.CONCUR_READ_ONLY);) {
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
 			// 2. execute our query.
 			try (ResultSet rs = pstmt.executeQuery()) {
 
@@ -64,17 +178,43 @@ public class BookDao implements BookDaoInterface {
 		return rtVal;
 	}
 
+	/**
+	 * Function to visit every book in our database without holding them all in
+	 * memory. Books are read through a cursor and filled out from the junction
+	 * tables a chunk at a time (see CursorScanner) so this is safe to use on a
+	 * fully loaded database (for example for exports or rebuilding indexes).
+	 * 
+	 * @param action called once for every book (in no particular order).
+	 * @return true if every book was visited without errors. False if an error
+	 *         occurred (books visited before the error are not undone).
+	 */
+	@Override
+	public boolean forEachBook(Consumer<? super Book> action) {
+		return CursorScanner.scan("SELECT " + BOOK_COLUMNS + " FROM books", CursorScanner.DEFAULT_FETCH_SIZE,
+				this::helperGetBookFromRow, (conn, chunk) -> {
+					boolean noErrors = helperHydrateBooks(conn, chunk);
+					chunk.forEach(action);
+					return noErrors;
+				});
+	}
+
 	/**
 	 * A function to get a single book from the database based on a book_id value.
 	 * 
+	 * Books are served from (and added to) the book cache when it is enabled.
+	 * 
 	 * @param bookID The book_id for a book we want to retrieve from the database.
 	 * @return Null if there was an error Or if no errror, the book that matches the
 	 *         id passed in from the database
 	 */
 	@Override
 	public Book getBookByBookID(long bookID) {
-		Book bookX = null;
-		String sql = "SELECT * FROM BOOKS WHERE book_id=?;";
+		// 0. check our cache first
+		Book bookX = bookCache.get(bookID);
+		if (bookX != null)
+			return bookX;
+		long cacheStamp = bookCache.getStamp();
+		String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id=?;";
 
 		// 1. establish connection to our database (and create our prepared statements
 		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
@@ -99,9 +239,31 @@ public class BookDao implements BookDaoInterface {
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
+		if (!UnitOfWork.isActive()) // rows read in a unit of work may never be committed
+			bookCache.put(bookX, cacheStamp);
 		return bookX;
 	}
 
+	// drop a changed book from the cache now and, if the change is part of a unit
+	// of work, again once the unit is over (another thread may cache the old row
+	// until then)
+	private void helperInvalidate(long bookID) {
+		bookCache.invalidate(bookID);
+		if (UnitOfWork.isActive())
+			UnitOfWork.afterCompletion(() -> bookCache.invalidate(bookID));
+	}
+
+	/**
+	 * Drop every cached book now and, if the change is part of a unit of work,
+	 * again once the unit is over. For DAOs whose writes cascade to books (e.g.
+	 * removing an author, series or genre).
+	 */
+	public void invalidateCachedBooks() {
+		bookCache.invalidateAll();
+		if (UnitOfWork.isActive())
+			UnitOfWork.afterCompletion(bookCache::invalidateAll);
+	}
+
 	/**
 	 * A function that gets all books in the database that the author has
 	 * authored/co-authored to the author provided.
@@ -113,45 +275,64 @@ public class BookDao implements BookDaoInterface {
 	 */
 	@Override
 	public Book[] getBooksByAuthor(int author_id) {
-		Book[] rtVal = new Book[0];
+		return getBooksByAuthor(author_id, BOOK_SORT.BY_BOOK_ID, null, 0);
+	}
 
-		try (Connection conn = DAORoot.library.connectToDB();) {
-
-			// 2. call helper function to get book_ids for where author has contributed
-			long[] bookIDs = helperGetBookIDsForAuthor(conn, author_id);
-			if (bookIDs != null) {
-				// 3. query to get all books with ids from our list.
-				// ugly workaround to dealing with IN array close (poor performance since we
-				// can't pre-prepare it)
-				// https://stackoverflow.com/questions/178479/preparedstatement-in-clause-alternatives
-				// https://stackoverflow.com/questions/36929116/how-to-use-in-clause-with-preparedstatement-in-postgresql/36930781#36930781
-				// https://stackoverflow.com/questions/3107044/preparedstatement-with-list-of-parameters-in-a-in-clause
-				String valueClause = String.join(", ", Collections.nCopies(bookIDs.length, "?"));
-				String sql = "select * from books WHERE book_id IN (" + valueClause + ")";
-
-				try (PreparedStatement pstmt = conn.prepareStatement(sql);) {
-					int index = 1;
-					for (long id : bookIDs) {
-						pstmt.setLong(index++, id);
-					}
-					// 4. execute query to get book data and parse results
-					try (ResultSet rs = pstmt.executeQuery()) {
-						// 5. parse results
-						Pair<Boolean, Book[]> temp = helperProcessBookResultSet(conn, rs);
-						if (temp.getValue0()) {// error occurred
-							// log error
-							logger.warn("An error occured proccessing the results of the sql query");
-						}
-						rtVal = temp.getValue1();
-					} // end of try-with-resources: result set
-				} // end prepared statement try
-			}
-		} catch (ClassNotFoundException e) {
-			logger.error("Exception occured during connectToDB: " + e.getMessage());
-		} catch (SQLException e) {
-			logger.error("Exception occured during executing SQL statement: {}", e.getMessage());
+	/**
+	 * A function that gets a page of the books that the author has
+	 * authored/co-authored. Paging is done by seeking past the last book of the
+	 * previous page (keyset paging) rather than with an OFFSET, so late pages cost
+	 * the same as the first one.
+	 * 
+	 * @param author_id the id of the author we want to query for books.
+	 * @param sortType  the order the books are returned in.
+	 * @param afterBook the last book of the previous page or null to get the first
+	 *                  page.
+	 * @param limit     the max number of books to return (values <= 0 return all
+	 *                  remaining books).
+	 * @return An empty array if the author has no (more) books listed in the
+	 *         database or an exception occurred. Otherwise the next page of books
+	 *         the author has authored/co-authored in the order requested.
+	 */
+	@Override
+	public Book[] getBooksByAuthor(int author_id, BOOK_SORT sortType, Book afterBook, int limit) {
+		Book[] rtVal;
+		if (afterBook == null)
+			rtVal = helperGetBooksByAuthor(author_id, sortType, "", 0, limit);
+		else
+			rtVal = helperGetBooksByAuthor(author_id, sortType, afterBook.getTitle(), afterBook.getBookID(), limit);
+		return rtVal == null ? new Book[0] : rtVal;
+	}
+
+	/**
+	 * Paged version of getBooksByAuthor() that uses continuation tokens.
+	 * 
+	 * @param author_id the id of the author we want to query for books.
+	 * @param sortType  the order the books are returned in.
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of books on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of books.
+	 */
+	@Override
+	public Page<Book> getBooksByAuthorPage(int author_id, BOOK_SORT sortType, String pageToken, int pageSize) {
+		if (sortType == null)
+			sortType = BOOK_SORT.BY_BOOK_ID;
+		String kind = PAGE_KIND_BY_AUTHOR + sortType;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
 		}
-		return rtVal;
+		pageSize = PageToken.clampPageSize(pageSize);
+
+		Book[] rows = helperGetBooksByAuthor(author_id, sortType, token.getSortKey(), token.getID(), pageSize + 1);
+		if (rows == null)
+			return null;
+		Function<Book, String> sortKey = (sortType == BOOK_SORT.BY_TITLE) ? Book::getTitle : b -> null;
+		return Page.fromRows(Arrays.asList(rows), pageSize, kind, sortKey, Book::getBookID);
 	}
 
 	/**
@@ -200,36 +381,56 @@ public class BookDao implements BookDaoInterface {
 	}
 
 	/**
-	 * Gets a book randomly from our database and returns it.
+	 * Gets a book randomly from our database and returns it. Intended to be used
+	 * on the front page of our website so it is served without counting or
+	 * scanning the books table (see RandomBookPicker).
 	 * 
-	 * @return returns null if an error occurred. Otherwise, returns a random book
-	 *         from our database.
+	 * @return returns null if an error occurred or there are no books. Otherwise,
+	 *         returns a random book from our database.
 	 */
 	@Override
 	public Book getRandomBook() {
-		// intended to be used on the front page of our website
-		String sql = "select * from books offset random() * (select count(*) from books) limit 1 ;";
-		Book bookX = null;
+		Book[] books = getRandomBooks(1, null);
+		return books.length == 1 ? books[0] : null;
+	}
 
-		// 1. establish connection to our database (and create our prepared statements
-		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+	/**
+	 * Gets several distinct books randomly from our database (for example to fill
+	 * a carousel on the front page).
+	 * 
+	 * @param count the number of books wanted.
+	 * @param genre if not null only books listed with this genre are returned.
+	 * @return An array of distinct random books. It is shorter than count if there
+	 *         are not enough (matching) books or an error occurred.
+	 */
+	@Override
+	public Book[] getRandomBooks(int count, String genre) {
+		ArrayList<Book> rtVal = new ArrayList<Book>();
+		if (count <= 0)
+			return new Book[0];
 
-			// 2. execute our query.
-			try (ResultSet rs = pstmt.executeQuery()) {
-				// 3. loop through records returned to parse our data.
-				Pair<Boolean, Book[]> temp = helperProcessBookResultSet(conn, rs);
-				if (temp.getValue0() || temp.getValue1().length != 1) {// error occurred
-					// log error
-					if (temp.getValue1().length != 1) {
-						logger.warn(
-								"unexpected amount of results returned from query for a single book. Instead got: {}",
-								temp.getValue1().length);
-						;
+		try (Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement pstmt = conn
+						.prepareStatement("SELECT " + BOOK_COLUMNS + " FROM books WHERE book_id = ANY(?)");) {
+			LinkedHashSet<Long> tried = new LinkedHashSet<Long>();
+			// ids can go stale between being picked and read (deleted book or an old
+			// reservoir) so pick again for any that went missing
+			for (int round = 0; round < RANDOM_PICK_ROUNDS && rtVal.size() < count; round++) {
+				long[] ids = randomPicker.pickBookIDs(conn, count - rtVal.size(), genre, tried);
+				if (ids.length == 0)
+					break;
+				for (long id : ids) {
+					tried.add(id);
+				}
+				pstmt.setArray(1, conn.createArrayOf("bigint", ArrayUtils.toObject(ids)));
+				try (ResultSet rs = pstmt.executeQuery()) {
+					Pair<Boolean, Book[]> temp = helperProcessBookResultSet(conn, rs);
+					if (temp.getValue0()) {// error occurred
+						logger.warn("An error occured proccessing the results of the sql query");
 					}
-					logger.warn("An error occured proccessing the results of the sql query");
-				} else
-					bookX = temp.getValue1()[0];
-			} // end of try-with-resources: result set
+					Collections.addAll(rtVal, temp.getValue1());
+				} // end of try-with-resources: result set
+			}
 		} // end of try-with-resources: connection
 			// catch blocks for try-with-resources: connection
 		catch (ClassNotFoundException e) {
@@ -237,7 +438,9 @@ public class BookDao implements BookDaoInterface {
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
-		return bookX;
+		// rows come back in id order so shuffle them
+		Collections.shuffle(rtVal);
+		return rtVal.toArray(new Book[rtVal.size()]);
 	}
 
 	/**
@@ -253,7 +456,7 @@ public class BookDao implements BookDaoInterface {
 		Book[] rtVal = new Book[0];
 		Series series = DAORoot.seriesDao.getSeriesBySeriesID(seriesID); //TODO?
 		if (series != null) {
-			String sql = "SELECT * FROM books WHERE series_id=?";
+			String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE series_id=?";
 
 			// 1. establish connection to our database (and create our prepared statements
 			try (Connection conn = DAORoot.library.connectToDB();
@@ -281,6 +484,42 @@ public class BookDao implements BookDaoInterface {
 		return rtVal;
 	}
 
+	/**
+	 * Paged version of getBooksBySeries(). Books are returned in the order they
+	 * occupy in the series.
+	 * 
+	 * @param seriesID  The ID of the series we want to inquire for.
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of books on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of books.
+	 */
+	@Override
+	public Page<Book> getBooksBySeriesPage(int seriesID, String pageToken, int pageSize) {
+		String kind = PAGE_KIND_BY_SERIES;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+
+		BigDecimal afterIndex;
+		try {
+			// NUMERIC(4,2) can't go below -99.99 so the first page starts before that
+			afterIndex = token.isFirstPage() ? new BigDecimal(-100) : new BigDecimal(token.getSortKey());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		List<Book> rows = helperQueryBooks(SQL_BOOKS_BY_SERIES_PAGE, seriesID, afterIndex, token.getID(), pageSize + 1);
+		if (rows == null)
+			return null;
+		return Page.fromRows(rows, pageSize, kind, b -> Float.toString(b.getBookIndexInSeries()), Book::getBookID);
+	}
+
 	/**
 	 * A primitive implementation to allow searching of the database for books by
 	 * title.
@@ -296,7 +535,7 @@ public class BookDao implements BookDaoInterface {
 		// 1. validate title passed in isn't going to cause issues.
 		if (DaoUtils.stringIsOk(title)) {
 			title = "%" + title + "%";
-			String sql = "SELECT * FROM books WHERE title ILIKE ?;";
+			String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE title ILIKE ?;";
 
 			// 1. establish connection to our database (and create our prepared statements
 			try (Connection conn = DAORoot.library.connectToDB();
@@ -323,6 +562,138 @@ public class BookDao implements BookDaoInterface {
 		return rtVal;
 	}
 
+	/**
+	 * Gets the books tagged with any of the genres passed in, a page at a time in
+	 * book_id order. Pass a genre with its subgenres
+	 * (GenreDao.getGenreTree().getSubtree()) to browse a genre including its
+	 * subgenres in one query.
+	 * 
+	 * @param genreNames the genres to match.
+	 * @param pageToken  the token from the previous page or null for the first
+	 *                   page.
+	 * @param pageSize   the max number of books on the page (see
+	 *                   PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of books.
+	 */
+	@Override
+	public Page<Book> getBooksByGenresPage(String[] genreNames, String pageToken, int pageSize) {
+		String kind = PAGE_KIND_BY_GENRES;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+		if (genreNames == null || genreNames.length == 0)
+			return Page.empty();
+		List<Book> rows = helperQueryBooks(SQL_BOOKS_BY_GENRES_PAGE, token.getID(), genreNames, pageSize + 1);
+		if (rows == null)
+			return null;
+		return Page.fromRows(rows, pageSize, kind, b -> "", Book::getBookID);
+	}
+
+	/**
+	 * Paged version of getBooksByTitle(). Books are returned in title order.
+	 * 
+	 * @param title     The title or partial title of the book to look for.
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of books on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of books (empty if no results were found).
+	 */
+	@Override
+	public Page<Book> getBooksByTitlePage(String title, String pageToken, int pageSize) {
+		String kind = PAGE_KIND_BY_TITLE;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		if (!DaoUtils.stringIsOk(title))
+			return Page.empty();
+		pageSize = PageToken.clampPageSize(pageSize);
+
+		List<Book> rows = helperQueryBooks(SQL_BOOKS_BY_TITLE_PAGE, "%" + title + "%", token.getSortKey(), token.getID(),
+				pageSize + 1);
+		if (rows == null)
+			return null;
+		return Page.fromRows(rows, pageSize, kind, Book::getTitle, Book::getBookID);
+	}
+
+	/**
+	 * Full text search over the title, description and publisher of books (see the
+	 * search_vector column in migrations/V2). The search text supports:<br>
+	 * 1. web search syntax: "quoted phrases", or, -excluded words<br>
+	 * 2. prefix matching of the words typed (so "harry pot" finds "Harry
+	 * Potter")<br>
+	 * 3. fuzzy (trigram) matching on the title for misspellings<br>
+	 * Hits are ranked by ts_rank() (title matches weigh the most) plus how similar
+	 * the title is to the search text, best first.
+	 * 
+	 * @param text      what the user typed into the search box.
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of books on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of books (empty if no results were found).
+	 */
+	@Override
+	public Page<Book> searchBooksByText(String text, String pageToken, int pageSize) {
+		String kind = PAGE_KIND_BY_TEXT;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		if (!DaoUtils.stringIsOk(text))
+			return Page.empty();
+		text = text.strip();
+		pageSize = PageToken.clampPageSize(pageSize);
+
+		float afterRank;
+		try {
+			// ranks are never infinite so the first page starts above all of them
+			afterRank = token.isFirstPage() ? Float.POSITIVE_INFINITY : Float.parseFloat(token.getSortKey());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+
+		List<Book> rows = new ArrayList<Book>();
+		HashMap<Long, Float> ranks = new HashMap<Long, Float>();
+		try (Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement pstmt = conn.prepareStatement(SQL_BOOKS_BY_TEXT_PAGE);) {
+			pstmt.setString(1, text); // similarity()
+			pstmt.setString(2, text); // websearch_to_tsquery()
+			pstmt.setString(3, helperBuildPrefixQuery(text)); // to_tsquery()
+			pstmt.setString(4, text); // title % ?
+			pstmt.setFloat(5, afterRank);
+			pstmt.setFloat(6, afterRank);
+			pstmt.setLong(7, token.getID());
+			pstmt.setInt(8, pageSize + 1);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					Book bookX = helperGetBookFromRow(rs);
+					ranks.put(bookX.getBookID(), rs.getFloat("search_rank"));
+					rows.add(bookX);
+				}
+			} // end of try-with-resources: result set
+			if (!helperHydrateBooks(conn, rows))
+				logger.warn("An error occured proccessing the results of the sql query");
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return null;
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			return null;
+		}
+		return Page.fromRows(rows, pageSize, kind, b -> Float.toString(ranks.get(b.getBookID())), Book::getBookID);
+	}
+
 	/**
 	 * Function to remove a book from the database and update all related table
 	 * entries which are referencing the book.
@@ -341,25 +712,31 @@ public class BookDao implements BookDaoInterface {
 		if (bookToDelete == null) // book doesn't exist exit now
 			return rtVal;
 
-		// 2. start connection.
-		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
-			// 3. disable auto-commit (so we can act like a transaction)
-			conn.setAutoCommit(false);
+		// 2. start connection (in a unit of work so the series count update below
+		// commits together with the delete).
+		try (UnitOfWork uow = UnitOfWork.begin();
+				Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			// 3. the unit of work is the transaction (nothing is committed until
+			// uow.commit())
 			pstmt.setLong(1, bookID);
 
+			// 3.b. take the book's ratings out of its series' rating totals (needs the row
+			// so has to come before the delete)
+			if (bookToDelete.getSeriesID() != 0)
+				transactionShouldContinue = DAORoot.seriesDao.moveBookRatings(bookID, bookToDelete.getSeriesID(), 0);
+
 			// 4. execute remove book from books table (and check success)
 			// Note: Because of our cascade settings in database automatically will remove
 			// referenced entries from: book_identifiers, book_authors, and book_genres
-			int rs = pstmt.executeUpdate();
+			int rs = transactionShouldContinue ? pstmt.executeUpdate() : 0;
 			// check if SQL update correctly modified 1 row.
 			if (rs == 1) {
 				// 5. if in series: update count booksInSeries
 				if (bookToDelete.getSeriesID() != 0) {
-					// get info needed to update our series
-					Series theBookSeries = DAORoot.seriesDao.getSeriesBySeriesID(bookToDelete.getSeriesID());
 					// decrement count books in series.
-					boolean rtnedVal = DAORoot.seriesDao.updateSeriesBookCount(theBookSeries.getSeriesName(),
-							bookToDelete.getPrimaryAuthorID(), SeriesDao.UpdateType.DEC);
+					boolean rtnedVal = DAORoot.seriesDao.updateSeriesBookCount(bookToDelete.getSeriesID(),
+							SeriesDao.UpdateType.DEC);
 					transactionShouldContinue = transactionShouldContinue & rtnedVal;
 					if (!transactionShouldContinue) { // update failed
 						logger.info("The updateSeriesBookCount() failed");
@@ -371,18 +748,16 @@ public class BookDao implements BookDaoInterface {
 			}
 			// 6. if all updates succeeded, commit and otherwise abort transaction.
 			if (transactionShouldContinue) {
-				conn.commit();
+				uow.commit();
 				rtVal = true;
-			} else {
-				conn.rollback();
-				rtVal = false;
-			}
+			} // otherwise closing the unit rolls it back
 		} catch (ClassNotFoundException e) {
 			logger.error("Exception occured during connectToDB: " + e.getMessage());
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
 
+		helperInvalidate(bookID);
 		return rtVal;
 	}
 
@@ -429,6 +804,7 @@ public class BookDao implements BookDaoInterface {
 
 		if (edition < 0)
 			edition = -1; // just ensure the default is followed for nonsensical edition values
+		long bookID = -1; // id of the new book (once inserted)
 
 		// 2. establish db connection
 		try (Connection conn = DAORoot.library.connectToDB();
@@ -452,7 +828,7 @@ public class BookDao implements BookDaoInterface {
 				ResultSet rs_lastID = pstmt.getGeneratedKeys();
 
 				if (rs_lastID.next()) {
-					long bookID = rs_lastID.getLong("book_id");
+					bookID = rs_lastID.getLong("book_id");
 					rs_lastID.close();
 
 					// 6. update our book_authors table
@@ -474,6 +850,9 @@ public class BookDao implements BookDaoInterface {
 			if (transactionShouldContinue) {
 				conn.commit();
 				rtVal = true;
+				// book_ids can be handed out again after the sequence is reset (test
+				// databases) so make sure nothing old is cached under the new id
+				helperInvalidate(bookID);
 			} else {
 				conn.rollback();
 				rtVal = false;
@@ -488,575 +867,390 @@ public class BookDao implements BookDaoInterface {
 
 	/**
 	 * This function allows editing of a book's fields in our database.
-	 * 
+	 *
 	 * @param <T>
 	 * @param bookID   The id of the book we are editing.
 	 * @param editType The type of edit we are performing to the book
 	 * @param newVal   This is the specific value required for the field. For
 	 *                 example if we are adding an author this should be a
+	 *                 Integer author_id (see EDIT_TYPE for the required types).
+	 * @return True if the update was successful. False if update failed.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public <T> boolean editBook(long bookID, EDIT_TYPE editType, T newVal) {
-		boolean rtnedVal = false;
-
-		if (editType == null) // protects against switch crashing
-			return false;
-
-		// 1. ensure value isn't null before doing any querying.
-		if (newVal == null)
-			return false;
-		// 2. determine appropriate type to cast newVal as and which helper function to
-		// call.
-		switch (editType) {
-		case ADD_AUTHOR:
-			if (editType.checkFitsRequiredType(newVal)) // verify the class of the object isn't going to cause a crash
-				rtnedVal = bookAddAuthor(bookID, (Integer) newVal);
-			break;
-		case REMOVE_AUTHOR:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = bookRemoveAuthor(bookID, (Integer) newVal);
-			break;
-		case SET_AVG_RATING:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookAvgRating(bookID, (Float) newVal);
-			break;
-		case SET_BOOK_INDEX_IN_SERIES:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookIndexInSeries(bookID, (Float) newVal);
-			break;
-		case SET_COVER_LOCATION:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookCoverLocation(bookID, (String) newVal);
-			break;
-		case SET_COVER_NAME:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookCoverName(bookID, (String) newVal);
-			break;
-		case SET_DESCRIPTION:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookDescription(bookID, (String) newVal);
-			break;
-		case SET_EDITION:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookEdition(bookID, (Integer) newVal);
-			break;
-		case SET_GENRES:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookGenres(bookID, (String[]) newVal);
-			break;
-		case SET_IDENTIFIERS:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookIdentifiers(bookID, (Pair<String, String>[]) newVal);
-			break;
-		case SET_PUBLISH_DATE:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookPublishDate(bookID, (java.sql.Timestamp) newVal);
-			break;
-		case SET_PUBLISHER:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookPublisher(bookID, (String) newVal);
-			break;
-		case SET_RATING_COUNT:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookRatingCount(bookID, (Integer) newVal);
-			break;
-		case SET_SERIES_ID:
-			if (editType.checkFitsRequiredType(newVal))
-				rtnedVal = setBookSeriesID(bookID, (Integer) newVal);
-			break;
-
-		default: // was null
-		}
-		// 3. return whether updated succeeded or failed.
-		return rtnedVal;
+		// a single edit is applied as a patch of one
+		return editBook(bookID, new BookPatch().set(editType, newVal));
 	}
 
-	// Helpers
-	/** Start functions for editBook function */
-
 	/**
-	 * This function allows the setting of identifiers for a book.
-	 * 
-	 * @param bookID ID of the book we are setting identifiers for.
-	 * @param newVal An array of identifiers where each entry consists of
-	 *               <identifier_scheme, identifier_value>
-	 * @return true if update to books table and book_identifier table was
-	 *         successful.
+	 * This function applies every edit in a patch to a book in one unit of work
+	 * (all of them or none). The book's row is locked and the values the edits
+	 * depend on (its series, authors and whether the added authors exist) are read
+	 * with one query instead of filling out the whole book. The books columns are
+	 * then set with one UPDATE and each junction table with one batch.
+	 *
+	 * @param bookID The id of the book we are editing.
+	 * @param patch  The edits to apply.
+	 * @return True if every edit was applied. False if the patch is empty or
+	 *         invalid, the book doesn't exist or any edit failed (nothing is
+	 *         changed).
 	 */
 	@SuppressWarnings("unchecked")
-	private boolean setBookIdentifiers(long bookID, Pair<String, String>[] newVal) {
-		boolean rtVal = false;
-		boolean newHasIdentifiersValue = true;
-		boolean transactionShouldContinue = true;
-		if (newVal.length == 0)
-			newHasIdentifiersValue = false;
-		else {
-			// validate no null values in pair will cause a crash (DB will reject them
-			// anyway with NOT NULL constraint)
-			for (Pair<String, String> idPair : newVal) {
-				if (idPair == null) {
-					logger.debug("Attempting to set bookIdentifier with a null identifier so update failed");
-					// TODO just remove null identifier.
-					return false;
-				} else if (idPair.getValue0() == null || idPair.getValue1() == null) {
-					logger.debug(
-							"Attempting to set bookIdentifier with a partially null identifier <{}, {}> so update failed");
-					return false;
-				}
-			}
-			// 1. call formatter to format our identifiers.
-			newVal = IdentifierUtils.formatIdentifiers(newVal);
-			
-			// 2. remove possible duplicates from our identifier list 
-			// strip out duplicate entries (which violates primary key constraint)
-			 Set<Pair<String,String>> mySet = new
-			 HashSet<Pair<String,String>>(Arrays.asList(newVal));
-			 newVal = mySet.toArray(new Pair[mySet.size()]);
-		}
-
-		// 3. establish connection
-		try (Connection conn = DAORoot.library.connectToDB();) {
-			// 4. set auto-commit false as we are updating multiple tables and need a
-			// transaction
-			conn.setAutoCommit(false);
-
-			// 5. update books entry to indicate if the book has identifiers or not.
-			transactionShouldContinue = transactionShouldContinue
-					& helperUpdateBooks(conn, bookID, "has_identifiers", newHasIdentifiersValue);
-
-			// 6. update book_identifiers table
-			if (transactionShouldContinue) {
-				int rv = helperSetBookIdentifiers(conn, bookID, newVal);
-				// check if it updated expected amount of rows
-				// TODO check if hasIdentifiers = false case?
-				transactionShouldContinue = transactionShouldContinue & (rv == newVal.length);
-			}
-
-			// 7. determine if we should commit or rollback changes;
-			if (transactionShouldContinue) {
-				rtVal = true;
-				conn.commit();
-			} else {
-				rtVal = false;
-				conn.rollback();
-			}
-		} catch (ClassNotFoundException e) {
-			logger.error("Exception occured during connectToDB: " + e.getMessage());
-		} catch (SQLException e) {
-			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
-		}
-		return rtVal;
-
-	}
-
-	/**
-	 * Helper function that allows the addition of authors to a book in the
-	 * database.
-	 * 
-	 * @param bookID      ID of the book in the database we are adding a new author
-	 *                    too.
-	 * @param newAuthorID ID of the new author for the book
-	 * @return true if update was successful. false if it failed.
-	 */
-	private boolean bookAddAuthor(long bookID, Integer newAuthorID) {
+	@Override
+	public boolean editBook(long bookID, BookPatch patch) {
 		boolean rtVal = false;
-		// 1. validate bookID by querying book table.
-		Book bookX = getBookByBookID(bookID);
-		if (bookX == null) {
+		// 1. validate what we can before doing any querying.
+		if (patch == null || patch.isEmpty() || !patch.isValid())
 			return false;
-		}
-
-		// 2. validate new authorID?
-		Author authorX = DAORoot.authorDao.getAuthor(newAuthorID.intValue());
-		if (authorX == null) {
+		Float avgRating = (Float) patch.get(EDIT_TYPE.SET_AVG_RATING);
+		// ensure float is in acceptable range (DB will throw an error and catch it but
+		// it is quicker to catch here)
+		if (avgRating != null && (avgRating.floatValue() < 0 || avgRating.floatValue() > 10))
+			return false;
+		Integer ratingCount = (Integer) patch.get(EDIT_TYPE.SET_RATING_COUNT);
+		if (ratingCount != null && ratingCount.intValue() < 0)
 			return false;
+		String[] genres = null;
+		if (patch.has(EDIT_TYPE.SET_GENRES)) {
+			// strip out duplicate entries (which violates primary key constraint)
+			Set<String> mySet = new HashSet<String>(Arrays.asList((String[]) patch.get(EDIT_TYPE.SET_GENRES)));
+			genres = mySet.toArray(new String[mySet.size()]);
 		}
-		// 3. ensure author not already in list of authorIDs.
-		int[] authorIDs = bookX.getAuthorIDs();
-		for (int x : authorIDs) {
-			if (x == newAuthorID.intValue()) {
-				logger.debug("new author id {} is already listed as an author for the book", newAuthorID.intValue());
+		Pair<String, String>[] identifiers = null;
+		if (patch.has(EDIT_TYPE.SET_IDENTIFIERS)) {
+			identifiers = helperPrepareIdentifiers((Pair<String, String>[]) patch.get(EDIT_TYPE.SET_IDENTIFIERS));
+			if (identifiers == null)
 				return false;
-			}
-		}
-
-		// 4. determine amount of updates needed.
-		int countUpdatesNeeded = 2; // how many updates we need to perform on our database.
-		// create array of author IDs from old + new
-		int[] newAuthorIDs = new int[authorIDs.length + 1];
-		for (int x = 0; x < authorIDs.length; x++) {
-			newAuthorIDs[x] = authorIDs[x];
-		}
-		newAuthorIDs[newAuthorIDs.length - 1] = newAuthorID.intValue();
-		// Check if books.primary_author_id needs to be updated
-		if (DaoUtils.findPrimaryAuthor(newAuthorIDs) != bookX.getPrimaryAuthorID()) {
-			countUpdatesNeeded++;
 		}
-
-		// establish connection
-		try (Connection conn = DAORoot.library.connectToDB();) {
-			conn.setAutoCommit(false); // disable auto-commit (transaction)
-			if (countUpdatesNeeded == 3) { // need to update count_authors variable and primary_author_id
-				// call generic helper function that updates books table
-				if (helperUpdateBooks(conn, bookID, "primary_author_id", newAuthorID)
-						&& helperUpdateBooks(conn, bookID, "count_authors", bookX.getCountAuthors() + 1)) {
-					countUpdatesNeeded -= 2;
-				}
-			} // just update the count_authors variable (new author isn't primary)
-			else if (countUpdatesNeeded == 2) {
-				// call generic helper function that updates books table
-				if (helperUpdateBooks(conn, bookID, "count_authors", bookX.getCountAuthors() + 1)) {
-					countUpdatesNeeded--;
+		int[] addedAuthors = ArrayUtils.toPrimitive(patch.getAddedAuthors().toArray(new Integer[0]));
+		int[] removedAuthors = ArrayUtils.toPrimitive(patch.getRemovedAuthors().toArray(new Integer[0]));
+
+		try (UnitOfWork uow = UnitOfWork.begin(); Connection conn = DAORoot.library.connectToDB()) {
+			// 2. lock the book and read what the edits depend on
+			int oldSeriesID;
+			int[] authorIDs;
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_EDIT_PROBE)) {
+				pstmt.setArray(1, conn.createArrayOf("integer", ArrayUtils.toObject(addedAuthors)));
+				pstmt.setLong(2, bookID);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (!rs.next()) {
+						logger.debug("editBook() failed: there is no book with book_id {}", bookID);
+						return false;
+					}
+					oldSeriesID = rs.getInt(1); // 0 if it isn't in a series
+					authorIDs = ArrayUtils.toPrimitive((Integer[]) rs.getArray(2).getArray());
+					if (rs.getInt(3) != addedAuthors.length) {
+						logger.debug("editBook() failed: an author added to book {} isn't in the database", bookID);
+						return false;
+					}
 				}
 			}
 
-			// 5. update book_authors table. (if books update was successful or not needed)
-			// no need to query if first update failed and the variable will be 2 or 3 if it
-			// failed
-			if (countUpdatesNeeded == 1) {
-				countUpdatesNeeded -= helperAddBookAuthors(conn, bookID, new int[] { newAuthorID.intValue() });
+			// 3. determine the new values for the books columns.
+			LinkedHashMap<String, Object> columns = new LinkedHashMap<String, Object>();
+			for (EDIT_TYPE field : patch.getFields()) {
+				if (PATCH_COLUMNS.containsKey(field))
+					columns.put(PATCH_COLUMNS.get(field), patch.get(field));
 			}
-
-			// 6. commit/abort transaction
-			if (countUpdatesNeeded == 0) {
-				conn.commit();
-				rtVal = true;
-			} else {
-				conn.rollback();
-				rtVal = false;
-			}
-		} catch (ClassNotFoundException e) {
-			logger.error("Exception occured during connectToDB: " + e.getMessage());
-		} catch (SQLException e) {
-			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
-		}
-		return rtVal;
-	}
-
-	/**
-	 * Helper function that allows an author of a book to be removed (as long as
-	 * more than one author is set for the book)
-	 * 
-	 * @param bookID           ID of the book we are setting info on.
-	 * @param authorToRemoveID id of the author we are removing from the book
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean bookRemoveAuthor(long bookID, Integer authorToRemoveID) {
-
-		boolean rtVal = false;
-		// 1. validate bookID by querying book table.
-		Book bookX = getBookByBookID(bookID);
-		if (bookX == null)
-			return false;
-
-		// 2. ensure new authorID is in list of authorIDs for the book
-		if (ArrayUtils.contains(bookX.getAuthorIDs(), authorToRemoveID.intValue()) == false)
-			return false;
-
-		// 3. ensure there is more than 1 author listed for the book.
-		if (bookX.getCountAuthors() == 1) {
-			logger.debug("can't remove author from book {} as book only has one author", bookID);
-			return false;
-		}
-
-		// 4. determine amount of updates needed.
-		int countUpdatesNeeded = 2; // how many updates we need to perform on our database.
-
-		// 5. Check if books.primary_author_id needs to be updated
-		if (authorToRemoveID.intValue() == bookX.getPrimaryAuthorID()) {
-			countUpdatesNeeded++;
-		}
-
-		// establish connection
-		try (Connection conn = DAORoot.library.connectToDB();) {
-			conn.setAutoCommit(false); // disable auto-commit (transaction)
-			if (countUpdatesNeeded == 3) { // need to update count_authors variable and primary_author_id
-				int newPrimaryAuthorID = DaoUtils
-						.findPrimaryAuthor(ArrayUtils.removeElement(bookX.getAuthorIDs(), authorToRemoveID.intValue()));
-				if (helperUpdateBooks(conn, bookID, "primary_author_id", newPrimaryAuthorID)
-						&& helperUpdateBooks(conn, bookID, "count_authors", bookX.getCountAuthors() - 1)) {
-					countUpdatesNeeded -= 2;
+			if (identifiers != null) // indicate if the book has identifiers or not
+				columns.put("has_identifiers", identifiers.length > 0);
+			if (addedAuthors.length > 0 || removedAuthors.length > 0) {
+				// removals are applied before additions
+				int[] newAuthorIDs = authorIDs;
+				for (int authorID : removedAuthors) {
+					if (!ArrayUtils.contains(newAuthorIDs, authorID)) {
+						logger.debug("author id {} isn't listed as an author for book {}", authorID, bookID);
+						return false;
+					}
+					newAuthorIDs = ArrayUtils.removeElement(newAuthorIDs, authorID);
+				}
+				for (int authorID : addedAuthors) {
+					if (ArrayUtils.contains(newAuthorIDs, authorID)) {
+						logger.debug("new author id {} is already listed as an author for the book", authorID);
+						return false;
+					}
+					newAuthorIDs = ArrayUtils.add(newAuthorIDs, authorID);
 				}
-			} // just update the count_authors variable (author removed wasn't primary)
-			else if (countUpdatesNeeded == 2) {
-				if (helperUpdateBooks(conn, bookID, "count_authors", bookX.getCountAuthors() - 1)) {
-					countUpdatesNeeded--;
+				if (newAuthorIDs.length == 0) {
+					logger.debug("can't remove every author from book {}", bookID);
+					return false;
 				}
+				columns.put("primary_author_id", DaoUtils.findPrimaryAuthor(newAuthorIDs));
+				columns.put("count_authors", newAuthorIDs.length);
 			}
-			// 6. update book_authors table. (if books update was successful or not needed)
-			// no need to query if first update failed and the variable will be 2 or 3 if it
-			// failed
-			if (countUpdatesNeeded == 1) {
-				countUpdatesNeeded -= helperRemoveBookAuthors(conn, bookID, authorToRemoveID.intValue());
+
+			// 4. update the books entry with one statement.
+			// (not validating the series here: the foreign key rejects series that don't
+			// exist)
+			boolean transactionShouldContinue = columns.isEmpty() || helperUpdateBooks(conn, bookID, columns);
+
+			// 5. fix both series' counts and ratings if the book moved (before its rating
+			// stats are set so the series totals stay in step)
+			Integer newSeriesID = (Integer) patch.get(EDIT_TYPE.SET_SERIES_ID);
+			if (transactionShouldContinue && newSeriesID != null && newSeriesID.intValue() != oldSeriesID) {
+				if (oldSeriesID != 0)
+					transactionShouldContinue = DAORoot.seriesDao.updateSeriesBookCount(oldSeriesID,
+							SeriesDao.UpdateType.DEC);
+				transactionShouldContinue = transactionShouldContinue
+						&& DAORoot.seriesDao.updateSeriesBookCount(newSeriesID.intValue(), SeriesDao.UpdateType.INC);
+				transactionShouldContinue = transactionShouldContinue
+						&& DAORoot.seriesDao.moveBookRatings(bookID, oldSeriesID, newSeriesID.intValue());
 			}
 
-			// 7. commit/abort transaction
-			if (countUpdatesNeeded == 0) {
-				conn.commit();
+			// 6. rating stats set by hand (the count first so the average ends up as given)
+			if (transactionShouldContinue && ratingCount != null)
+				transactionShouldContinue = helperSetRatingStats(conn, bookID, SQL_SET_RATING_COUNT,
+						BigDecimal.valueOf(ratingCount.longValue()));
+			if (transactionShouldContinue && avgRating != null) {
+				// rounded as the column is so rating_sum matches the stored average
+				BigDecimal rating = new BigDecimal(avgRating.toString()).setScale(2, RoundingMode.HALF_UP);
+				transactionShouldContinue = helperSetRatingStats(conn, bookID, SQL_SET_AVG_RATING, rating);
+			}
+
+			// 7. junction tables (one batch each) and check they updated the expected
+			// amount of rows
+			if (transactionShouldContinue && removedAuthors.length > 0)
+				transactionShouldContinue = helperRemoveBookAuthors(conn, bookID,
+						removedAuthors) == removedAuthors.length;
+			if (transactionShouldContinue && addedAuthors.length > 0)
+				transactionShouldContinue = helperAddBookAuthors(conn, bookID, addedAuthors) == addedAuthors.length;
+			if (transactionShouldContinue && genres != null)
+				transactionShouldContinue = helperSetBookGenres(conn, bookID, genres) == genres.length;
+			if (transactionShouldContinue && identifiers != null)
+				transactionShouldContinue = helperSetBookIdentifiers(conn, bookID, identifiers) == identifiers.length;
+
+			// 8. commit every edit or roll all of them back
+			if (transactionShouldContinue) {
+				uow.commit();
 				rtVal = true;
 			} else {
-				conn.rollback();
-				rtVal = false;
+				logger.info("editBook() of book {} with {} failed so none of it was applied", bookID, patch);
 			}
 		} catch (ClassNotFoundException e) {
 			logger.error("Exception occured during connectToDB: " + e.getMessage());
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
+		// 9. drop the old version of the book from the cache
+		helperInvalidate(bookID);
 		return rtVal;
 	}
 
-	/**
-	 * Helper function that allows the setting of the average_rating field of a book
-	 * in the database.
-	 * 
-	 * @param bookID    ID of the book we are setting info on.
-	 * @param newRating the rating we are setting the field to for the book
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookAvgRating(long bookID, Float newRating) {
-		// 2. ensure float is in acceptable range (DB will throw an error and catch it
-		// but it is quicker to catch here)
-		if (newRating.floatValue() < 0 || newRating.floatValue() > 10)
-			return false;
-		return setBookField(bookID, "average_rating", newRating);
-	}
-
-	/**
-	 * Function that allows the book_index_in_series field for a book to be set.
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal the index we are setting the book to in the series.
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookIndexInSeries(long bookID, Float newVal) {
-		return setBookField(bookID, "book_index_in_series", newVal);
-	}
-
-	/**
-	 * Function that allows the cover location for a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal the coverLocation we are setting the book's coverPage to.
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookCoverLocation(long bookID, String newVal) {
-		return setBookField(bookID, "cover_location", newVal);
-	}
+	// Helpers
+	/** Start functions for editBook function */
 
 	/**
-	 * Function that allows the cover name for a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal the name of the file for the coverpage we are setting the
-	 *               book's coverPage to.
-	 * @return True if the update was successful. False if update failed.
+	 * Helper function for editBook(). Checks identifiers for null values, formats
+	 * them and removes duplicates.
+	 *
+	 * @param identifiers An array of identifiers where each entry consists of
+	 *                    <identifier_scheme, identifier_value>
+	 * @return the identifiers to set, null if any of them is (partially) null.
 	 */
-	private boolean setBookCoverName(long bookID, String newVal) {
-		return setBookField(bookID, "cover_name", newVal);
-	}
+	@SuppressWarnings("unchecked")
+	private Pair<String, String>[] helperPrepareIdentifiers(Pair<String, String>[] identifiers) {
+		if (identifiers.length == 0)
+			return identifiers;
+		// validate no null values in pair will cause a crash (DB will reject them
+		// anyway with NOT NULL constraint)
+		for (Pair<String, String> idPair : identifiers) {
+			if (idPair == null) {
+				logger.debug("Attempting to set bookIdentifier with a null identifier so update failed");
+				// TODO just remove null identifier.
+				return null;
+			} else if (idPair.getValue0() == null || idPair.getValue1() == null) {
+				logger.debug("Attempting to set bookIdentifier with a partially null identifier <{}, {}> so update failed",
+						idPair.getValue0(), idPair.getValue1());
+				return null;
+			}
+		}
+		// 1. call formatter to format our identifiers.
+		identifiers = IdentifierUtils.formatIdentifiers(identifiers);
 
-	/**
-	 * Function that allows the description for a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal the description we are setting for the book.
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookDescription(long bookID, String newVal) {
-		return setBookField(bookID, "description", newVal);
+		// 2. remove possible duplicates from our identifier list
+		// strip out duplicate entries (which violates primary key constraint)
+		Set<Pair<String, String>> mySet = new HashSet<Pair<String, String>>(Arrays.asList(identifiers));
+		return mySet.toArray(new Pair[mySet.size()]);
 	}
 
 	/**
-	 * Function that allows the edition of a book to be set.
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal The edition we want to set for the book
+	 * Helper for setting the rating stats of a book by hand (e.g. ratings imported
+	 * from another site). rating_sum is set to match so later ratings from our
+	 * users (UserDao.rateBook()) are averaged in with them, and the change is
+	 * applied to the rating totals of the book's series.
+	 *
+	 * @param conn  An active connection to the database.
+	 * @param sql   SQL_SET_AVG_RATING or SQL_SET_RATING_COUNT
+	 * @param value the new average or count
 	 * @return True if the update was successful. False if update failed.
 	 */
-	private boolean setBookEdition(long bookID, Integer newVal) {
-		return setBookField(bookID, "edition", newVal);
-	}
-
-	/**
-	 * Function that allows the genres of a book to be set.
-	 * 
-	 * @param bookID ID of the book we are editing the genres on.
-	 * @param newVal The string[] of genre names for the book
-	 * @return true if update succeeded. False if update failed.
-	 */
-	private boolean setBookGenres(long bookID, String[] newVal) {
+	private boolean helperSetRatingStats(Connection conn, long bookID, String sql, BigDecimal value) {
 		boolean rtVal = false;
-
-		if (getBookByBookID(bookID) == null)
-			return rtVal;
-
-		// strip out duplicate entries (which violates primary key constraint)
-		Set<String> mySet = new HashSet<String>(Arrays.asList(newVal));
-		newVal = mySet.toArray(new String[mySet.size()]);
-		// this actually also reverses the order of the array. so
-		// {TestGenre1,TestGenre2} -> {TestGenre2,TestGenre1}
-
-		try (Connection conn = DAORoot.library.connectToDB();) {
-
-			conn.setAutoCommit(false);
-
-			int rtnedVal = helperSetBookGenres(conn, bookID, newVal);
-			if (rtnedVal == newVal.length) {
-				conn.commit();
-				rtVal = true;
-			} else {
-				conn.rollback();
-				rtVal = false;
+		try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			pstmt.setLong(1, bookID);
+			pstmt.setBigDecimal(2, value);
+			pstmt.setBigDecimal(3, value);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				rtVal = rs.next() && rs.getInt(1) == 1; // 0 if the book doesn't exist
 			}
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
-		} catch (ClassNotFoundException e) {
-			logger.error("Exception occured during connectToDB: " + e.getMessage());
 		}
 		return rtVal;
 	}
 
-	/**
-	 * Function that allows the publisher of a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal The string representing the publisher for the book.
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookPublishDate(long bookID, Timestamp newVal) {
-		// https://stackoverflow.com/questions/9112770/how-to-convert-calendar-to-java-sql-date-in-java
-		return setBookField(bookID, "publish_date", newVal);
-	}
+	/** end implementation functions for editBook function */
 
 	/**
-	 * Function that allows the publisher of a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal The string representing the publisher for the book.
-	 * @return True if the update was successful. False if update failed.
+	 * Helper function for books table. Sets any number of fields of a book with a
+	 * single UPDATE so the fields can be set in a transaction and rolled back if
+	 * any of the updates fails
+	 *
+	 * @param conn    An active connection to the database we are updating.
+	 * @param bookID  ID of the book we are updating in the books table.
+	 * @param columns The fields we are updating (for example primary_author_id, or
+	 *                description, see the migrations' books table for full list
+	 *                of names) and the values we are replacing them with (usually
+	 *                String, Integer, Boolean, Float or Timestamp).
+	 * @return True if update was successful, False if update failed.
 	 */
-	private boolean setBookPublisher(long bookID, String newVal) {
-		return setBookField(bookID, "publisher", newVal);
-	}
+	private boolean helperUpdateBooks(Connection conn, long bookID, Map<String, Object> columns) {
+		boolean rtnVal = false;
+		// the column names only ever come from this class (PATCH_COLUMNS and
+		// editBook()), never from the caller's values
+		String sql = String.format("UPDATE books SET %s=? WHERE book_id=?", String.join("=?, ", columns.keySet()));
+		try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			int param = 1;
+			for (Object value : columns.values())
+				pstmt.setObject(param++, value);
+			pstmt.setLong(param, bookID);
+			// perform update and determine success
+			int rv = pstmt.executeUpdate();
+			if (rv == 1)
+				rtnVal = true;
 
-	/**
-	 * Function that allows the amount of users who have rated a book to be set
-	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal The integer representing the count of users who have rated the
-	 *               book.
-	 * @return True if the update was successful. False if update failed.
-	 */
-	private boolean setBookRatingCount(long bookID, Integer newVal) {
-		if (newVal.intValue() < 0)
-			return false;
-		return setBookField(bookID, "rating_count", newVal);
+		} catch (SQLException e) {
+			logger.error("An update to set book_id: {}, fields: {} failed. Exception: {}", bookID, columns,
+					e.getMessage());
+		}
+		return rtnVal;
 	}
 
 	/**
-	 * Function that allows the series_id (the series for the book) field for a book
-	 * to be set
+	 * Helper function for searchBooksByText(). Turns the search text into a
+	 * to_tsquery() expression that matches documents containing every word typed
+	 * with the last word treated as a prefix (as it may not be finished yet).
 	 * 
-	 * @param bookID ID of the book we are setting info on.
-	 * @param newVal The integer representing ID of the series we are setting for
-	 *               the series
-	 * @return True if the update was successful. False if update failed.
+	 * @param text the search text.
+	 * @return the tsquery expression. Empty if the text contains no words.
 	 */
-	private boolean setBookSeriesID(long bookID, Integer newVal) {
-		// not validating series with getSeries() here because it actually increases our
-		// overhead
-		return setBookField(bookID, "series_id", newVal);
+	private String helperBuildPrefixQuery(String text) {
+		ArrayList<String> words = new ArrayList<String>();
+		// only keep letters and digits so nothing the user types is parsed as a
+		// tsquery operator
+		for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+			if (!word.isEmpty())
+				words.add(word);
+		}
+		if (words.isEmpty())
+			return "";
+		return String.join(" & ", words) + ":*";
 	}
 
 	/**
-	 * helper to the helpers. Since this function is a helper to set a SINGLE field
-	 * in a book object. this outsources the generic set code.
+	 * Helper function for getBooksByAuthor() and getBooksByAuthorPage(). Gets the
+	 * author's books that sort after (afterTitle, afterID).
 	 * 
-	 * @param bookID    ID of the book we are setting info on.
-	 * @param fieldName what field we are setting in the book.
-	 * @param newVal    The value we are setting the book field to
-	 * @return True if the update was successful. False if update failed.
+	 * @param author_id  the id of the author we want to query for books.
+	 * @param sortType   the order the books are returned in.
+	 * @param afterTitle title of the last book seen ("" for the first page). Only
+	 *                   used when sorting by title.
+	 * @param afterID    book_id of the last book seen (0 for the first page).
+	 * @param limit      the max number of books to return (values <= 0 return all
+	 *                   remaining books).
+	 * @return the books found (empty if there are none) or null if an error
+	 *         occurred.
 	 */
-	private <T> boolean setBookField(long bookID, String fieldName, T newVal) {
-		boolean rtVal = false;
-		// 1. validate bookID by querying book table.
-		Book bookX = getBookByBookID(bookID);
-		if (bookX == null)
-			return false;
+	private Book[] helperGetBooksByAuthor(int author_id, BOOK_SORT sortType, String afterTitle, long afterID,
+			int limit) {
+		Book[] rtVal = new Book[0];
+		if (sortType == null)
+			sortType = BOOK_SORT.BY_BOOK_ID;
+
+		// the SQL text is constant per sort so the server can reuse the plan. The
+		// first page seeks past a key lower than any real one.
+		String sql = (sortType == BOOK_SORT.BY_TITLE) ? SQL_BOOKS_BY_AUTHOR_BY_TITLE : SQL_BOOKS_BY_AUTHOR_BY_ID;
+
+		try (Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			int index = 1;
+			pstmt.setInt(index++, author_id);
+			if (sortType == BOOK_SORT.BY_TITLE)
+				pstmt.setString(index++, afterTitle);
+			pstmt.setLong(index++, afterID);
+			if (limit > 0)
+				pstmt.setInt(index, limit);
+			else
+				pstmt.setNull(index, Types.INTEGER); // LIMIT NULL == no limit
 
-		// establish connection
-		try (Connection conn = DAORoot.library.connectToDB();) {
-			// 2. update books entry
-			rtVal = helperUpdateBooks(conn, bookID, fieldName, newVal);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				Pair<Boolean, Book[]> temp = helperProcessBookResultSet(conn, rs);
+				if (temp.getValue0()) {// error occurred
+					logger.warn("An error occured proccessing the results of the sql query");
+				}
+				rtVal = temp.getValue1();
+			} // end of try-with-resources: result set
 		} catch (ClassNotFoundException e) {
 			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			rtVal = null;
 		} catch (SQLException e) {
-			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			logger.error("Exception occured during executing SQL statement: {}", e.getMessage());
+			rtVal = null;
 		}
 		return rtVal;
 	}
 
-	/** end implementation functions for editBook function */
-
 	/**
-	 * Helper function for books table. Updates a field. But can do so in a manner
-	 * where multiple fields can be set and rollbacks can be done if any of the
-	 * updates fails
+	 * Helper function that runs a query over the books table and returns the
+	 * (filled out) books in the order the query returned them.
 	 * 
-	 * @param <T>           The type of the new value (usually, String, Integer,
-	 *                      Boolean, Float)
-	 * @param conn          An active connection to the database we are updating.
-	 * @param bookID        ID of the book we are updating in the books table.
-	 * @param fieldName     what field we are updating: for example
-	 *                      primary_author_id, or description (see install.sql books
-	 *                      table for full list of names)
-	 * @param newFieldValue The value we are replacing the field of the entry with.
-	 * @return True if update was successful, False if update failed.
+	 * @param sql    the query to run.
+	 * @param params the values for the query's parameters (in order).
+	 * @return the books found (empty if there are none) or null if an error
+	 *         occurred.
 	 */
-	private <T> boolean helperUpdateBooks(Connection conn, long bookID, String fieldName, T newFieldValue) {
-		boolean rtnVal = false;
-		String sql = String.format("UPDATE books SET %s=? WHERE book_id=?", fieldName);
-		try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-			// 1. set our first parameter which has unknown type
-			// determine type of newFieldValue and appropriate jdbc setter for it.
-			String typeString = newFieldValue.getClass().getTypeName();
-			if ("java.lang.Integer".equals(typeString))
-				pstmt.setInt(1, ((Integer) newFieldValue).intValue());
-			else if ("java.lang.Float".equals(typeString))
-				pstmt.setFloat(1, ((Float) newFieldValue).floatValue());
-			else if ("java.lang.String".equals(typeString))
-				pstmt.setString(1, ((String) newFieldValue));
-			else if ("java.lang.Boolean".equals(typeString))
-				pstmt.setBoolean(1, ((Boolean) newFieldValue).booleanValue());
-			else if ("java.sql.Timestamp".equals(typeString))
-				pstmt.setTimestamp(1, ((java.sql.Timestamp) newFieldValue));
-			else if ("java.lang.Long".equals(typeString))
-				pstmt.setLong(1, ((Long) newFieldValue).longValue());
-			else
-				throw new Exception("type was not a supported type for book table edits");
-
-			pstmt.setLong(2, bookID);
-			// perform update and determine success
-			int rv = pstmt.executeUpdate();
-			if (rv == 1)
-				rtnVal = true;
-
+	private List<Book> helperQueryBooks(String sql, Object... params) {
+		List<Book> rtVal = new ArrayList<Book>();
+		try (Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			for (int x = 0; x < params.length; x++) {
+				if (params[x] instanceof String[])
+					pstmt.setArray(x + 1, conn.createArrayOf("varchar", (String[]) params[x]));
+				else
+					pstmt.setObject(x + 1, params[x]);
+			}
+			try (ResultSet rs = pstmt.executeQuery()) {
+				Pair<Boolean, Book[]> temp = helperProcessBookResultSet(conn, rs);
+				if (temp.getValue0()) {// error occurred
+					logger.warn("An error occured proccessing the results of the sql query");
+				}
+				Collections.addAll(rtVal, temp.getValue1());
+			} // end of try-with-resources: result set
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			rtVal = null;
 		} catch (SQLException e) {
-			logger.error("An update to set book_id: {}, field: {}, to value: {} failed. Exception: {}", bookID,
-					fieldName, newFieldValue, e.getMessage());
-		} catch (Exception e) {
-			logger.info("Failed to update books table because: {}", e.getMessage());
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			rtVal = null;
 		}
-		return rtnVal;
+		return rtVal;
 	}
 
 	/**
 	 * A function that takes the result set of a query for our "books" table and
 	 * then compiles all necessary data from other tables to construct an array of
-	 * book objects and returns them.
+	 * book objects and returns them. The supplementary tables are queried once per
+	 * batch of books (rather than once per book) see: helperHydrateBooks()
 	 * 
 	 * @param conn An active connection to the database (used to query other tables
 	 *             to get data as needed)
@@ -1073,62 +1267,8 @@ public class BookDao implements BookDaoInterface {
 		try {
 			while (rs.next()) {
 				try {
-					// 4. extract results from result set needed to create objects
-					float avgRating = rs.getFloat("average_rating");
-					long bookID = rs.getLong("book_id");
-					float bookIndexInSeries = rs.getFloat("book_index_in_series");
-					int countAuthors = rs.getInt("count_authors");
-					String coverLocation = rs.getString("cover_location");
-					String coverName = rs.getString("cover_name");
-					String description = rs.getString("description");
-					int edition = rs.getInt("edition");
-					boolean has_identifiers = rs.getBoolean("has_identifiers");
-					int primaryAuthorID = rs.getInt("primary_author_id");
-					Timestamp publishDate = rs.getTimestamp("publish_date");
-					String publisher = rs.getString("publisher");
-					long ratingCount = rs.getLong("rating_count");
-					int seriesID = rs.getInt("series_id"); // if it is null (the default) the field is set to 0
-					String title = rs.getString("title");
-
-					// 5. create our return object with the values
-					Book bookX = new Book(avgRating, bookID, bookIndexInSeries, countAuthors, coverLocation, coverName,
-							description, edition, has_identifiers, primaryAuthorID, publishDate, publisher, ratingCount,
-							seriesID, title);
-					// 6. fill additional fields as needed from other tables (authors (if multiple),
-					// identifiers, and genres.
-
-					// 6.a get extra authors
-					if (countAuthors == 1) {
-						// there are no other authors so skip additional query to reduce query overhead.
-						bookX.setAuthorIDs(new int[] { bookX.getPrimaryAuthorID() });
-					} else {
-						// call helper function to get authors from book_authors table
-						int[] authorIDs = helperGetBooksAuthors(conn, bookID);
-						if (authorIDs == null) {
-							// use logger to warn something went wrong but continue silently
-							errorsOccurred = Boolean.TRUE;
-							logger.warn("An error was detected getting book {}'s authors", title);
-						}
-						bookX.setAuthorIDs(authorIDs); // add authors
-					}
-					// 6.b. get identifiers.
-					if (bookX.getHasIdentifiers()) {
-						Pair<String, String>[] bookIdentifiers = helperGetBookIdentifiers(conn, bookID);
-						if (bookIdentifiers == null) {
-							// should have been identifiers but we didn't get them so something went wrong
-							// in helper function.
-							errorsOccurred = Boolean.TRUE;
-							logger.warn(
-									"An error was detected getting book {}'s identifiers (it should have had identifiers but doesn't)",
-									title);
-						}
-						bookX.setIdentifiers(bookIdentifiers); // add our identifiers
-					}
-					// 6.c get genres.
-					String[] genres = helperGetBooksGenres(conn, bookID);
-					bookX.setGenres(genres); // add our genres to book object
-					// 7. add our fully fleshed out book object to return list
-					rtVal.add(bookX);
+					// 4. create our book object from the values in the row
+					rtVal.add(helperGetBookFromRow(rs));
 				} catch (SQLException e) { // Redundant BUT lets us continue if there was an unexpected error processing
 											// a single book in the list but the rest are fine
 					errorsOccurred = Boolean.TRUE;
@@ -1139,9 +1279,116 @@ public class BookDao implements BookDaoInterface {
 			errorsOccurred = Boolean.TRUE;
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
+		// 5. fill additional fields from other tables (authors (if multiple),
+		// identifiers, and genres.
+		if (!helperHydrateBooks(conn, rtVal))
+			errorsOccurred = Boolean.TRUE;
+
 		return new Pair<Boolean, Book[]>(errorsOccurred, rtVal.toArray(new Book[rtVal.size()]));
 	}
 
+	/**
+	 * Helper that creates a book object from the current row of a result set of a
+	 * "SELECT BOOK_COLUMNS FROM books" like query. Only fields from the books table are set
+	 * (see helperHydrateBooks() for the rest).
+	 * 
+	 * @param rs result set positioned on the row to convert.
+	 * @return the book object for the row.
+	 * @throws SQLException if a column could not be read.
+	 */
+	private Book helperGetBookFromRow(ResultSet rs) throws SQLException {
+		float avgRating = rs.getFloat("average_rating");
+		long bookID = rs.getLong("book_id");
+		float bookIndexInSeries = rs.getFloat("book_index_in_series");
+		int countAuthors = rs.getInt("count_authors");
+		String coverLocation = rs.getString("cover_location");
+		String coverName = rs.getString("cover_name");
+		String description = rs.getString("description");
+		int edition = rs.getInt("edition");
+		boolean has_identifiers = rs.getBoolean("has_identifiers");
+		int primaryAuthorID = rs.getInt("primary_author_id");
+		Timestamp publishDate = rs.getTimestamp("publish_date");
+		String publisher = rs.getString("publisher");
+		long ratingCount = rs.getLong("rating_count");
+		int seriesID = rs.getInt("series_id"); // if it is null (the default) the field is set to 0
+		String title = rs.getString("title");
+
+		return new Book(avgRating, bookID, bookIndexInSeries, countAuthors, coverLocation, coverName, description,
+				edition, has_identifiers, primaryAuthorID, publishDate, publisher, ratingCount, seriesID, title);
+	}
+
+	/**
+	 * Fills in the fields of the books that come from the junction tables
+	 * (book_authors, book_identifier, book_genres). Rather than querying each
+	 * table per book, the book_ids are collected in batches of
+	 * HYDRATION_BATCH_SIZE and each table is queried once per batch with
+	 * "book_id = ANY(?)". The results are then matched up to the books in memory.
+	 * 
+	 * @param conn  An active connection to the database.
+	 * @param books The books (created from the books table) to fill out.
+	 * @return true if no errors occurred. False if something went wrong getting
+	 *         data for one or more of the books.
+	 */
+	private boolean helperHydrateBooks(Connection conn, List<Book> books) {
+		boolean noErrors = true;
+		for (int start = 0; start < books.size(); start += HYDRATION_BATCH_SIZE) {
+			List<Book> batch = books.subList(start, Math.min(books.size(), start + HYDRATION_BATCH_SIZE));
+
+			// 1. determine which books need data from which tables
+			ArrayList<Long> allIDs = new ArrayList<Long>();
+			ArrayList<Long> multiAuthorIDs = new ArrayList<Long>();
+			ArrayList<Long> identifiedIDs = new ArrayList<Long>();
+			for (Book bookX : batch) {
+				allIDs.add(bookX.getBookID());
+				// there are no other authors so skip the book to reduce query overhead.
+				if (bookX.getCountAuthors() != 1)
+					multiAuthorIDs.add(bookX.getBookID());
+				if (bookX.getHasIdentifiers())
+					identifiedIDs.add(bookX.getBookID());
+			}
+
+			// 2. one query per junction table for the whole batch
+			HashMap<Long, int[]> authors = helperGetBooksAuthors(conn, multiAuthorIDs);
+			HashMap<Long, Pair<String, String>[]> identifiers = helperGetBookIdentifiers(conn, identifiedIDs);
+			HashMap<Long, String[]> genres = helperGetBooksGenres(conn, allIDs);
+			if (authors == null || identifiers == null || genres == null)
+				noErrors = false;
+
+			// 3. stitch the results onto our books
+			for (Book bookX : batch) {
+				// 3.a authors
+				if (bookX.getCountAuthors() == 1) {
+					bookX.setAuthorIDs(new int[] { bookX.getPrimaryAuthorID() });
+				} else {
+					int[] authorIDs = authors == null ? null : authors.get(bookX.getBookID());
+					if (authorIDs == null) {
+						// use logger to warn something went wrong but continue silently
+						noErrors = false;
+						logger.warn("An error was detected getting book {}'s authors", bookX.getTitle());
+					}
+					bookX.setAuthorIDs(authorIDs); // add authors
+				}
+				// 3.b identifiers
+				if (bookX.getHasIdentifiers()) {
+					Pair<String, String>[] bookIdentifiers = identifiers == null ? null
+							: identifiers.get(bookX.getBookID());
+					if (bookIdentifiers == null) {
+						// should have been identifiers but we didn't get them
+						noErrors = false;
+						logger.warn(
+								"An error was detected getting book {}'s identifiers (it should have had identifiers but doesn't)",
+								bookX.getTitle());
+					}
+					bookX.setIdentifiers(bookIdentifiers); // add our identifiers
+				}
+				// 3.c genres (null if the book has none listed)
+				if (genres != null)
+					bookX.setGenres(genres.get(bookX.getBookID()));
+			}
+		}
+		return noErrors;
+	}
+
 	/**
 	 * Helper function for book_authors table. Adds all authors provided paired with
 	 * the book_id to the table.
@@ -1217,20 +1464,21 @@ public class BookDao implements BookDaoInterface {
 	}
 
 	/**
-	 * Helper function for book_authors table. Removes an author provided paired
-	 * with the book_id from the table.
+	 * Helper function for book_authors table. Removes the authors provided paired
+	 * with the book_id from the table (in one statement).
 	 * 
-	 * @param conn             An active connection to our database.
-	 * @param authorIDToRemove The ID of the author we want to remove from the book
-	 * @param bookID           The id of the book we are removing an author from.
+	 * @param conn              An active connection to our database.
+	 * @param authorIDsToRemove The IDs of the authors we want to remove from the
+	 *                          book
+	 * @param bookID            The id of the book we are removing authors from.
 	 * @return returns The numbers of rows in the database that the update modified.
 	 */
-	private int helperRemoveBookAuthors(Connection conn, long bookID, int authorIDToRemove) {
-		String sql = "DELETE FROM book_authors WHERE book_id=? AND author_id=?;";
+	private int helperRemoveBookAuthors(Connection conn, long bookID, int[] authorIDsToRemove) {
+		String sql = "DELETE FROM book_authors WHERE book_id=? AND author_id = ANY(?);";
 		int rtVal = 0;
 		try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
 			pstmt.setLong(1, bookID);
-			pstmt.setInt(2, authorIDToRemove);
+			pstmt.setArray(2, conn.createArrayOf("integer", ArrayUtils.toObject(authorIDsToRemove)));
 
 			int rv = pstmt.executeUpdate();
 			rtVal = rv;
@@ -1247,163 +1495,117 @@ public class BookDao implements BookDaoInterface {
 	/**
 	 * Helper function for book_authors table. This function gets entries from the
 	 * database from the table book_authors (a supplementary "junction table" for
-	 * books)
+	 * books) for a set of books in a single query.
 	 * 
 	 * @param conn    An active connection to the database
-	 * @param book_id ID of the book we are getting authors for.
-	 * @return null if an exception occurred OR an array containing the IDs of the
-	 *         authors who wrote the book.
+	 * @param bookIDs IDs of the books we are getting authors for.
+	 * @return null if an exception occurred OR a map of book_id to the IDs of the
+	 *         authors who wrote the book (books with no entries are absent).
 	 */
-	private int[] helperGetBooksAuthors(Connection conn, long book_id) {
-		String sqlgetExtraAuthors = "SELECT author_id FROM book_authors WHERE book_id=?";
-		int[] authorIDs = null;
-		try (PreparedStatement pstmtGetAuthors = conn.prepareStatement(sqlgetExtraAuthors,
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);) {
-			pstmtGetAuthors.setLong(1, book_id);
-			try (ResultSet rs2 = pstmtGetAuthors.executeQuery()) {
-				// loop through records returned to parse our data.
-				int rowcount = 0;
-				if (rs2.last()) { // https://stackoverflow.com/questions/192078/how-do-i-get-the-size-of-a-java-sql-resultset
-					rowcount = rs2.getRow();
-					rs2.beforeFirst(); // not rs.first() because the rs.next() below will move on, missing
-										// the first element
-				}
-				if (rowcount > 0) { // always should be but just in case
-					authorIDs = new int[rowcount];
-					rowcount = 0;
-					while (rs2.next()) {
-						authorIDs[rowcount] = rs2.getInt("author_id");
-						rowcount++;
-					}
-				}
-			} // end try rs2
-		} catch (SQLException e) {
-			logger.error("An exception occured getting authors for book_id {}. Exception: {}", book_id, e.getMessage());
-		}
-		return authorIDs;
-	}
+	private HashMap<Long, int[]> helperGetBooksAuthors(Connection conn, List<Long> bookIDs) {
+		String sqlgetExtraAuthors = "SELECT book_id, author_id FROM book_authors WHERE book_id = ANY(?)";
+		HashMap<Long, int[]> rtVal = new HashMap<Long, int[]>();
+		if (bookIDs.isEmpty())
+			return rtVal;
 
-	/**
-	 * Helper function for book_authors table. Used to get all book_ids that an
-	 * author has either written or contributed to writing
-	 * 
-	 * @param conn      An active connection to the database we are querying.
-	 * @param author_id The id of the author we are looking for books by
-	 * @return null if an error occurs or there are no books in the database by the
-	 *         author. Otherwise: a list of all book_id's that the author has
-	 *         written
-	 */
-	private long[] helperGetBookIDsForAuthor(Connection conn, int author_id) {
-		String sqlgetBookIDsByAuthorID = "SELECT book_id FROM book_authors WHERE author_id=?";
-		long[] bookIDs = null;
-		try (PreparedStatement pstmtGetBooks = conn.prepareStatement(sqlgetBookIDsByAuthorID,
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);) {
-			pstmtGetBooks.setInt(1, author_id);
-			try (ResultSet rs2 = pstmtGetBooks.executeQuery()) {
-				// loop through records returned to parse our data.
-				int rowcount = 0;
-				// https://stackoverflow.com/questions/192078/how-do-i-get-the-size-of-a-java-sql-resultset
-				if (rs2.last()) {
-					rowcount = rs2.getRow();
-					rs2.beforeFirst();
-				}
-				if (rowcount > 0) { // always should be but just in case
-					bookIDs = new long[rowcount];
-					rowcount = 0;
-					while (rs2.next()) {
-						bookIDs[rowcount] = rs2.getLong("book_id");
-						rowcount++;
-					}
+		HashMap<Long, ArrayList<Integer>> grouped = new HashMap<Long, ArrayList<Integer>>();
+		try (PreparedStatement pstmtGetAuthors = conn.prepareStatement(sqlgetExtraAuthors);) {
+			pstmtGetAuthors.setArray(1, conn.createArrayOf("bigint", bookIDs.toArray()));
+			try (ResultSet rs2 = pstmtGetAuthors.executeQuery()) {
+				// loop through records returned and group them by book
+				while (rs2.next()) {
+					grouped.computeIfAbsent(rs2.getLong("book_id"), k -> new ArrayList<Integer>())
+							.add(rs2.getInt("author_id"));
 				}
 			} // end try rs2
 		} catch (SQLException e) {
-			logger.error("An exception occured getting book_ids for author_id {}. Exception: {}", author_id,
+			logger.error("An exception occured getting authors for {} books. Exception: {}", bookIDs.size(),
 					e.getMessage());
+			return null;
+		}
+		for (Map.Entry<Long, ArrayList<Integer>> entry : grouped.entrySet()) {
+			int[] authorIDs = new int[entry.getValue().size()];
+			for (int i = 0; i < authorIDs.length; i++)
+				authorIDs[i] = entry.getValue().get(i).intValue();
+			rtVal.put(entry.getKey(), authorIDs);
 		}
-		return bookIDs;
+		return rtVal;
 	}
 
 	/**
-	 * Helper function for book_genres table. Gets the genres a book has listed from
-	 * the database
+	 * Helper function for book_genres table. Gets the genres listed for a set of
+	 * books from the database in a single query.
 	 * 
 	 * @param conn    An active connection to the database we are querying.
-	 * @param book_id ID of the book we want to get the genres of.
-	 * @return null if an error occurs OR there are no genres listed for the book. A
-	 *         list of genre names in all other cases
+	 * @param bookIDs IDs of the books we want to get the genres of.
+	 * @return null if an error occurs. Otherwise a map of book_id to the genre
+	 *         names of that book (books with no genres listed are absent).
 	 */
-	private String[] helperGetBooksGenres(Connection conn, long book_id) {
-		String sqlGetGenres = "SELECT genre_name FROM book_genres WHERE book_id=?";
-		String[] genres = null;
-		try (PreparedStatement pstmtGetGenre = conn.prepareStatement(sqlGetGenres, ResultSet.TYPE_SCROLL_INSENSITIVE,
-				ResultSet.CONCUR_READ_ONLY);) {
-			pstmtGetGenre.setLong(1, book_id);
+	private HashMap<Long, String[]> helperGetBooksGenres(Connection conn, List<Long> bookIDs) {
+		String sqlGetGenres = "SELECT book_id, genre_name FROM book_genres WHERE book_id = ANY(?)";
+		HashMap<Long, String[]> rtVal = new HashMap<Long, String[]>();
+		if (bookIDs.isEmpty())
+			return rtVal;
+
+		HashMap<Long, ArrayList<String>> grouped = new HashMap<Long, ArrayList<String>>();
+		try (PreparedStatement pstmtGetGenre = conn.prepareStatement(sqlGetGenres);) {
+			pstmtGetGenre.setArray(1, conn.createArrayOf("bigint", bookIDs.toArray()));
 			try (ResultSet rs2 = pstmtGetGenre.executeQuery()) {
-				// loop through records returned to parse our data.
-				int rowcount = 0;
-				if (rs2.last()) {
-					rowcount = rs2.getRow();
-					rs2.beforeFirst(); // not rs.first() because the rs.next() below will move on, missing
-										// the first element
-				}
-				if (rowcount != 0) { // ensure we don't crash if no genres are listed for a book
-					genres = new String[rowcount];
-					rowcount = 0; // reusing variable.
-					while (rs2.next()) {
-						genres[rowcount] = rs2.getString("genre_name");
-						rowcount++;
-					}
+				// loop through records returned and group them by book
+				while (rs2.next()) {
+					grouped.computeIfAbsent(rs2.getLong("book_id"), k -> new ArrayList<String>())
+							.add(rs2.getString("genre_name"));
 				}
 			} // end try rs2
 		} catch (SQLException e) {
-			logger.error("An exception occured getting genres for book_id {}. Exception: {}", book_id, e.getMessage());
+			logger.error("An exception occured getting genres for {} books. Exception: {}", bookIDs.size(),
+					e.getMessage());
+			return null;
+		}
+		for (Map.Entry<Long, ArrayList<String>> entry : grouped.entrySet()) {
+			rtVal.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
 		}
-		return genres;
+		return rtVal;
 	}
 
 	/**
 	 * Helper function book_identifiers table. Gets identifiers such as ASIN and
-	 * ISBN numbers for a book from the database.
+	 * ISBN numbers for a set of books from the database in a single query.
 	 * 
 	 * @param conn    An active connection to the database
-	 * @param book_id ID of the book we are looking up identifiers for.
-	 * @return returns null if there is an error getting the identifiers for the
-	 *         book. Otherwise returns an array of pairs such that the first value
-	 *         is the identifier type (ISBN, ASIN, etc.) and the second value is the
-	 *         id for the identifier.
+	 * @param bookIDs IDs of the books we are looking up identifiers for.
+	 * @return returns null if there is an error getting the identifiers.
+	 *         Otherwise returns a map of book_id to an array of pairs such that the
+	 *         first value is the identifier type (ISBN, ASIN, etc.) and the second
+	 *         value is the id for the identifier.
 	 */
 	@SuppressWarnings("unchecked")
-	private Pair<String, String>[] helperGetBookIdentifiers(Connection conn, long book_id) {
-		String sqlGetIdentiers = "SELECT identifier_type, identifier_value FROM book_identifier WHERE book_id=?";
-		Pair<String, String>[] bookIdentifiers = null;
+	private HashMap<Long, Pair<String, String>[]> helperGetBookIdentifiers(Connection conn, List<Long> bookIDs) {
+		String sqlGetIdentiers = "SELECT book_id, identifier_type, identifier_value FROM book_identifier WHERE book_id = ANY(?)";
+		HashMap<Long, Pair<String, String>[]> rtVal = new HashMap<Long, Pair<String, String>[]>();
+		if (bookIDs.isEmpty())
+			return rtVal;
 
-		try (PreparedStatement pstmtgetIdentifiers = conn.prepareStatement(sqlGetIdentiers,
-				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);) {
-			pstmtgetIdentifiers.setLong(1, book_id);
+		HashMap<Long, ArrayList<Pair<String, String>>> grouped = new HashMap<Long, ArrayList<Pair<String, String>>>();
+		try (PreparedStatement pstmtgetIdentifiers = conn.prepareStatement(sqlGetIdentiers);) {
+			pstmtgetIdentifiers.setArray(1, conn.createArrayOf("bigint", bookIDs.toArray()));
 			try (ResultSet rs2 = pstmtgetIdentifiers.executeQuery()) {
-				// 3. loop through records returned to parse our data.
-				int rowcount = 0;
-				if (rs2.last()) {
-					rowcount = rs2.getRow();
-					rs2.beforeFirst(); // not rs.first() because the rs.next() below will move on, missing
-										// the first element
-				}
-				if (rowcount > 0) { // because has_identifiers should only be true if there are identifiers this
-									// should always be true.
-					bookIdentifiers = new Pair[rowcount];
-					rowcount = 0; // reusing variable. to identify where to store now
-					while (rs2.next()) {
-						bookIdentifiers[rowcount] = new Pair<String, String>(rs2.getString("identifier_type"),
-								rs2.getString("identifier_value"));
-						rowcount++;
-					}
+				// 3. loop through records returned and group them by book
+				while (rs2.next()) {
+					grouped.computeIfAbsent(rs2.getLong("book_id"), k -> new ArrayList<Pair<String, String>>())
+							.add(new Pair<String, String>(rs2.getString("identifier_type"),
+									rs2.getString("identifier_value")));
 				}
 			} // end try rs2
 		} catch (SQLException e) {
-			logger.error("An exception occured getting identifiers for book_id {}. Exception: {}", book_id,
+			logger.error("An exception occured getting identifiers for {} books. Exception: {}", bookIDs.size(),
 					e.getMessage());
+			return null;
+		}
+		for (Map.Entry<Long, ArrayList<Pair<String, String>>> entry : grouped.entrySet()) {
+			rtVal.put(entry.getKey(), entry.getValue().toArray(new Pair[entry.getValue().size()]));
 		}
-		return bookIdentifiers;
+		return rtVal;
 	}
 
 	/**
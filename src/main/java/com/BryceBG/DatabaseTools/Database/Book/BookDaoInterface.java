@@ -2,18 +2,32 @@ package com.BryceBG.DatabaseTools.Database.Book;
 
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import org.javatuples.Pair;
 
+import com.BryceBG.DatabaseTools.Database.Page;
+
 public interface BookDaoInterface {
 
 	/* GETTER functions */
 
 	public abstract ArrayList<Book> getAllBooks();
 
+	// streaming version of getAllBooks() for full catalog scans
+	public abstract boolean forEachBook(Consumer<? super Book> action);
+
 	// non unique so may return many books
 	public abstract Book[] getBooksByAuthor(int author_id);
 
+	// paged version: returns up to limit books that sort after afterBook
+	public abstract Book[] getBooksByAuthor(int author_id, BookDaoInterface.BOOK_SORT sortType, Book afterBook,
+			int limit);
+
+	// paged version that uses continuation tokens (see PageToken)
+	public abstract Page<Book> getBooksByAuthorPage(int author_id, BookDaoInterface.BOOK_SORT sortType,
+			String pageToken, int pageSize);
+
 	// Primary key so will return only one book
 	public abstract Book getBookByBookID(long bookID);
 
@@ -23,12 +37,25 @@ public interface BookDaoInterface {
 
 	public abstract Book getRandomBook();
 
+	// distinct random books (optionally only ones in a genre)
+	public abstract Book[] getRandomBooks(int count, String genre);
+
 	// non unique so may return many books
 	public abstract Book[] getBooksBySeries(int seriesID);
 
+	public abstract Page<Book> getBooksBySeriesPage(int seriesID, String pageToken, int pageSize);
+
+	// books tagged with any of the genres (in book_id order)
+	public abstract Page<Book> getBooksByGenresPage(String[] genreNames, String pageToken, int pageSize);
+
 	// non unique so may return many books
 	public abstract Book[] getBooksByTitle(String title);
 
+	public abstract Page<Book> getBooksByTitlePage(String title, String pageToken, int pageSize);
+
+	// ranked full text search over title/description/publisher
+	public abstract Page<Book> searchBooksByText(String text, String pageToken, int pageSize);
+
 	/* other functions such as add/remove/modify */
 
 	public abstract boolean insertBookIntoDB(int[] authorIDs, String description, int edition, String title);
@@ -37,6 +64,20 @@ public interface BookDaoInterface {
 
 	public abstract <T> boolean editBook(long bookID, BookDaoInterface.EDIT_TYPE editType, T newVal);
 
+	// several edits to one book in one transaction
+	public abstract boolean editBook(long bookID, BookPatch patch);
+
+
+	/**
+	 * The orderings that paged book lookups can be returned in. Ties are always
+	 * broken by book_id so every ordering is total (required for keyset paging).
+	 * 
+	 * @author Bryce-BG
+	 *
+	 */
+	public static enum BOOK_SORT {
+		BY_BOOK_ID, BY_TITLE;
+	}
 
 	/**
 	 * This enum is the fields that we allow on a book table entry to be modified post creation.
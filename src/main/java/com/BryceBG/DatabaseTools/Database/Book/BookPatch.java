@@ -0,0 +1,124 @@
+package com.BryceBG.DatabaseTools.Database.Book;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+
+/**
+ * A set of edits to apply to one book with BookDao.editBook(bookID, patch).
+ * Every edit in the patch is applied in a single unit of work (all of them or
+ * none): the book's row is written with one UPDATE and the junction tables
+ * with one batch each, instead of the queries editBook(bookID, editType,
+ * newVal) makes per field.
+ *
+ * The values are the same as for editBook(bookID, editType, newVal) (see
+ * EDIT_TYPE for the required types). Setting a field twice keeps the last
+ * value. ADD_AUTHOR and REMOVE_AUTHOR can be given more than once, the
+ * removals are applied before the additions. A value of the wrong type (or
+ * null) makes the patch invalid and editBook() will reject it.
+ *
+ * <pre>
+ * DAORoot.bookDao.editBook(bookID, new BookPatch().set(EDIT_TYPE.SET_DESCRIPTION, description)
+ * 		.set(EDIT_TYPE.SET_PUBLISHER, publisher).set(EDIT_TYPE.ADD_AUTHOR, authorID));
+ * </pre>
+ *
+ * @author Bryce-BG
+ *
+ */
+public class BookPatch {
+	private static final Logger logger = LogManager.getLogger(BookPatch.class.getName());
+
+	private final EnumMap<EDIT_TYPE, Object> values = new EnumMap<EDIT_TYPE, Object>(EDIT_TYPE.class);
+	private final LinkedHashSet<Integer> addedAuthors = new LinkedHashSet<Integer>();
+	private final LinkedHashSet<Integer> removedAuthors = new LinkedHashSet<Integer>();
+	private boolean valid = true;
+
+	/**
+	 * Add an edit to the patch.
+	 *
+	 * @param editType the field to edit.
+	 * @param newVal   the new value (of editType's required type).
+	 * @return this patch.
+	 */
+	public <T> BookPatch set(EDIT_TYPE editType, T newVal) {
+		if (editType == null || !editType.checkFitsRequiredType(newVal)) {
+			logger.debug("Edit {} with value {} isn't valid so the patch will be rejected", editType, newVal);
+			valid = false;
+			return this;
+		}
+		switch (editType) {
+		case ADD_AUTHOR:
+			addedAuthors.add((Integer) newVal);
+			break;
+		case REMOVE_AUTHOR:
+			removedAuthors.add((Integer) newVal);
+			break;
+		default:
+			values.put(editType, newVal);
+		}
+		return this;
+	}
+
+	/**
+	 * @return true if the patch has no edits.
+	 */
+	public boolean isEmpty() {
+		return values.isEmpty() && addedAuthors.isEmpty() && removedAuthors.isEmpty();
+	}
+
+	/**
+	 * @return false if a value of the wrong type was set or an author is both added
+	 *         and removed.
+	 */
+	public boolean isValid() {
+		return valid && Collections.disjoint(addedAuthors, removedAuthors);
+	}
+
+	/**
+	 * @return true if the patch sets the field.
+	 */
+	public boolean has(EDIT_TYPE editType) {
+		return values.containsKey(editType);
+	}
+
+	/**
+	 * @return the value set for a field (null if it isn't set). Not used for
+	 *         ADD_AUTHOR and REMOVE_AUTHOR.
+	 */
+	public Object get(EDIT_TYPE editType) {
+		return values.get(editType);
+	}
+
+	/**
+	 * @return the fields the patch sets (ADD_AUTHOR and REMOVE_AUTHOR not
+	 *         included).
+	 */
+	public Set<EDIT_TYPE> getFields() {
+		return Collections.unmodifiableSet(values.keySet());
+	}
+
+	public Set<Integer> getAddedAuthors() {
+		return Collections.unmodifiableSet(addedAuthors);
+	}
+
+	public Set<Integer> getRemovedAuthors() {
+		return Collections.unmodifiableSet(removedAuthors);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(values);
+		if (!addedAuthors.isEmpty())
+			sb.append(" +authors").append(addedAuthors);
+		if (!removedAuthors.isEmpty())
+			sb.append(" -authors").append(removedAuthors);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,108 @@
+package com.BryceBG.DatabaseTools.Database.Book;
+
+import java.sql.Timestamp;
+
+import org.javatuples.Pair;
+
+/**
+ * A book to be loaded by the BookBulkLoader. Unlike Book, authors are given by
+ * name (they are resolved to author_ids in bulk by the loader) and there is no
+ * book_id yet.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class BookRecord {
+	private String title;
+	private String description;
+	private int edition;
+	private String publisher;
+	private Timestamp publishDate;
+	private Pair<String, String>[] authorNames;
+	private String[] genres;
+	private Pair<String, String>[] identifiers;
+
+	/**
+	 * @param title       The title of the book.
+	 * @param authorNames Pairs of the authors <first name, last name> who
+	 *                    authored/co-authored the book.
+	 */
+	public BookRecord(String title, Pair<String, String>[] authorNames) {
+		this.setTitle(title);
+		this.setAuthorNames(authorNames);
+		this.setEdition(-1);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public int getEdition() {
+		return edition;
+	}
+
+	/**
+	 * @param edition the edition of the book (negative if unknown).
+	 */
+	public void setEdition(int edition) {
+		this.edition = edition;
+	}
+
+	public String getPublisher() {
+		return publisher;
+	}
+
+	public void setPublisher(String publisher) {
+		this.publisher = publisher;
+	}
+
+	public Timestamp getPublishDate() {
+		return publishDate;
+	}
+
+	public void setPublishDate(Timestamp publishDate) {
+		this.publishDate = publishDate;
+	}
+
+	public Pair<String, String>[] getAuthorNames() {
+		return authorNames;
+	}
+
+	public void setAuthorNames(Pair<String, String>[] authorNames) {
+		this.authorNames = authorNames;
+	}
+
+	public String[] getGenres() {
+		return genres;
+	}
+
+	/**
+	 * @param genres names of the genres of the book (they must already exist).
+	 */
+	public void setGenres(String[] genres) {
+		this.genres = genres;
+	}
+
+	public Pair<String, String>[] getIdentifiers() {
+		return identifiers;
+	}
+
+	/**
+	 * @param identifiers pairs of <identifier_type, identifier_value>
+	 */
+	public void setIdentifiers(Pair<String, String>[] identifiers) {
+		this.identifiers = identifiers;
+	}
+}
@@ -0,0 +1,302 @@
+package com.BryceBG.DatabaseTools.Database.Book;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.LibraryDB;
+
+/**
+ * Picks random book_ids for BookDao.getRandomBooks() without counting or
+ * scanning the books table. Picks are made by:<br>
+ * 1. drawing from an in-memory reservoir of book_ids (if enabled), which needs
+ * no database work at all<br>
+ * 2. otherwise probing random ids between min(book_id) and max(book_id) (both
+ * are read from the primary key index), retrying for ids that hit gaps left by
+ * deleted books<br>
+ * 3. falling back to an index seek to the first book at or after a random id
+ * once the retries are used up (or when picking within a genre), which always
+ * finds a book if there is one.
+ *
+ * The reservoir is a uniform sample of at most "db.random.reservoir_size" ids
+ * that is rebuilt every "db.random.reservoir_refresh_s" seconds by a background
+ * thread. It is disabled by default (size 0).
+ *
+ * @author Bryce-BG
+ *
+ */
+class RandomBookPicker {
+	private static final Logger logger = LogManager.getLogger(RandomBookPicker.class.getName());
+
+	// how many rounds of random id probes we make before falling back to seeks
+	private static final int MAX_PROBE_ROUNDS = 3;
+	// how many candidate ids we probe per id still needed (covers sparse ids)
+	private static final int PROBE_OVERSAMPLE = 4;
+	// fetch size used when streaming book_ids to rebuild the reservoir
+	private static final int RESERVOIR_FETCH_SIZE = 10000;
+
+	private static final String SQL_ID_RANGE = "SELECT min(book_id), max(book_id) FROM books";
+	private static final String SQL_PROBE_IDS = "SELECT book_id FROM books WHERE book_id = ANY(?)";
+	private static final String SQL_SEEK_ID = "SELECT book_id FROM books WHERE book_id >= ? ORDER BY book_id LIMIT 1";
+	private static final String SQL_SEEK_ID_IN_GENRE = "SELECT book_id FROM book_genres WHERE genre_name = ? AND book_id >= ? "
+			+ "ORDER BY book_id LIMIT 1";
+	private static final String SQL_ALL_IDS = "SELECT book_id FROM books";
+
+	private final int reservoirSize;
+	private final int reservoirRefreshSec;
+	private ScheduledExecutorService refresher = null;
+	private volatile Reservoir reservoir = null;
+
+	/**
+	 * @param reservoirSize       max number of book_ids to keep in memory (0
+	 *                            disables the reservoir)
+	 * @param reservoirRefreshSec how often the reservoir is rebuilt
+	 */
+	RandomBookPicker(int reservoirSize, int reservoirRefreshSec) {
+		this.reservoirSize = Math.max(0, reservoirSize);
+		this.reservoirRefreshSec = Math.max(1, reservoirRefreshSec);
+	}
+
+	/**
+	 * Pick up to count distinct random book_ids.
+	 *
+	 * @param conn    An active connection to the database we are querying.
+	 * @param count   the number of ids wanted.
+	 * @param genre   if not null only books listed with this genre are picked.
+	 * @param exclude ids that must not be picked (for example ones that were
+	 *                already picked in an earlier call).
+	 * @return the ids picked. Fewer than count are returned if there are not
+	 *         enough (matching) books in the database.
+	 * @throws SQLException if an error occurs querying the database.
+	 */
+	long[] pickBookIDs(Connection conn, int count, String genre, LinkedHashSet<Long> exclude) throws SQLException {
+		LinkedHashSet<Long> picked = new LinkedHashSet<Long>();
+		if (count <= 0)
+			return new long[0];
+
+		if (genre == null) {
+			Reservoir res = getReservoir();
+			if (res != null) {
+				pickFromReservoir(res, count, exclude, picked);
+			} else {
+				// 1. probe random ids in the id range
+				long[] range = helperGetIDRange(conn);
+				if (range == null) // no books
+					return new long[0];
+				for (int round = 0; round < MAX_PROBE_ROUNDS && picked.size() < count; round++) {
+					helperProbeRandomIDs(conn, range, count - picked.size(), exclude, picked);
+				}
+				// 2. seek for whatever the probes couldn't find
+				helperSeekRandomIDs(conn, range, null, count, exclude, picked);
+			}
+		} else {
+			long[] range = helperGetIDRange(conn);
+			if (range != null)
+				helperSeekRandomIDs(conn, range, genre, count, exclude, picked);
+		}
+
+		long[] rtVal = new long[picked.size()];
+		int x = 0;
+		for (Long id : picked) {
+			rtVal[x++] = id;
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Gets the reservoir for the library currently in use. Starts the refresh
+	 * thread the first time it is called (if the reservoir is enabled).
+	 *
+	 * @return null if the reservoir is disabled, not yet built, empty, or was built
+	 *         for a library we are no longer connected to.
+	 */
+	private Reservoir getReservoir() {
+		if (reservoirSize == 0)
+			return null;
+		synchronized (this) {
+			if (refresher == null) {
+				refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+					Thread t = new Thread(r, "random-book-reservoir");
+					t.setDaemon(true);
+					return t;
+				});
+				refresher.scheduleWithFixedDelay(this::refreshReservoir, 0, reservoirRefreshSec, TimeUnit.SECONDS);
+			}
+		}
+		Reservoir res = reservoir;
+		if (res == null || res.library != DAORoot.library || res.ids.length == 0)
+			return null;
+		return res;
+	}
+
+	/**
+	 * Rebuild the reservoir from the library currently in use. Uses reservoir
+	 * sampling (Algorithm R) so the sample stays uniform no matter how many books
+	 * there are.
+	 */
+	private void refreshReservoir() {
+		LibraryDB library = DAORoot.library;
+		long[] sample = new long[reservoirSize];
+		long seen = 0;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		try (Connection conn = library.connectToDB();) {
+			// postgres only streams results (honors fetch size) inside a transaction
+			conn.setAutoCommit(false);
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_ALL_IDS);) {
+				pstmt.setFetchSize(RESERVOIR_FETCH_SIZE);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next()) {
+						long id = rs.getLong(1);
+						if (seen < reservoirSize) {
+							sample[(int) seen] = id;
+						} else {
+							long slot = random.nextLong(seen + 1);
+							if (slot < reservoirSize)
+								sample[(int) slot] = id;
+						}
+						seen++;
+					}
+				}
+			}
+			conn.commit();
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return;
+		} catch (SQLException e) {
+			logger.error("Exception occured rebuilding the random book reservoir: " + e.getMessage());
+			return;
+		}
+
+		long[] ids = sample;
+		if (seen < reservoirSize) {
+			ids = new long[(int) seen];
+			System.arraycopy(sample, 0, ids, 0, ids.length);
+		}
+		reservoir = new Reservoir(library, ids);
+		logger.debug("Rebuilt random book reservoir with {} of {} book_ids", ids.length, seen);
+	}
+
+	private void pickFromReservoir(Reservoir res, int count, LinkedHashSet<Long> exclude,
+			LinkedHashSet<Long> picked) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int target = Math.min(count, res.ids.length);
+		// bounded so a small reservoir mostly covered by exclude can't spin forever
+		int attempts = target * PROBE_OVERSAMPLE * MAX_PROBE_ROUNDS;
+		while (picked.size() < target && attempts-- > 0) {
+			long id = res.ids[random.nextInt(res.ids.length)];
+			if (!exclude.contains(id))
+				picked.add(id);
+		}
+	}
+
+	/**
+	 * Helper function that gets the lowest and highest book_id in the database.
+	 *
+	 * @param conn An active connection to the database we are querying.
+	 * @return null if there are no books. Otherwise {min, max}.
+	 * @throws SQLException if an error occurs querying the database.
+	 */
+	private long[] helperGetIDRange(Connection conn) throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_ID_RANGE); ResultSet rs = pstmt.executeQuery()) {
+			if (rs.next()) {
+				long min = rs.getLong(1);
+				if (rs.wasNull())
+					return null;
+				return new long[] { min, rs.getLong(2) };
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Helper function that checks a batch of random ids in [min, max] and adds the
+	 * ones that belong to a book to picked.
+	 */
+	private void helperProbeRandomIDs(Connection conn, long[] range, int needed, LinkedHashSet<Long> exclude,
+			LinkedHashSet<Long> picked) throws SQLException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int candidateCount = needed * PROBE_OVERSAMPLE;
+		Long[] candidates = new Long[candidateCount];
+		for (int x = 0; x < candidateCount; x++) {
+			candidates[x] = random.nextLong(range[0], range[1] + 1);
+		}
+
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_PROBE_IDS);) {
+			pstmt.setArray(1, conn.createArrayOf("bigint", candidates));
+			LinkedHashSet<Long> found = new LinkedHashSet<Long>();
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					found.add(rs.getLong(1));
+				}
+			}
+			// keep the order the candidates were drawn in (rows come back in index order)
+			for (int x = 0; x < candidateCount && needed > 0; x++) {
+				Long id = candidates[x];
+				if (found.contains(id) && !exclude.contains(id) && picked.add(id))
+					needed--;
+			}
+		}
+	}
+
+	/**
+	 * Helper function that picks books by seeking to the first book (optionally
+	 * in a genre) at or after a random id, wrapping around to the lowest id if
+	 * there is none. Used when probing can't find enough books.
+	 */
+	private void helperSeekRandomIDs(Connection conn, long[] range, String genre, int count,
+			LinkedHashSet<Long> exclude, LinkedHashSet<Long> picked) throws SQLException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String sql = (genre == null) ? SQL_SEEK_ID : SQL_SEEK_ID_IN_GENRE;
+		// bounded as the genre may have fewer books than asked for
+		int attempts = Math.max(0, count - picked.size()) * PROBE_OVERSAMPLE * MAX_PROBE_ROUNDS;
+
+		try (PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			while (picked.size() < count && attempts-- > 0) {
+				long pivot = random.nextLong(range[0], range[1] + 1);
+				Long id = helperSeek(pstmt, genre, pivot);
+				if (id == null) // nothing after pivot so wrap around
+					id = helperSeek(pstmt, genre, range[0]);
+				if (id == null) // no books (in genre) at all
+					break;
+				if (!exclude.contains(id))
+					picked.add(id);
+			}
+		}
+	}
+
+	private Long helperSeek(PreparedStatement pstmt, String genre, long pivot) throws SQLException {
+		int index = 1;
+		if (genre != null)
+			pstmt.setString(index++, genre);
+		pstmt.setLong(index, pivot);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			if (rs.next())
+				return rs.getLong(1);
+		}
+		return null;
+	}
+
+	/**
+	 * A snapshot of sampled book_ids and the library they were read from.
+	 */
+	private static class Reservoir {
+		private final LibraryDB library;
+		private final long[] ids;
+
+		private Reservoir(LibraryDB library, long[] ids) {
+			this.library = library;
+			this.ids = ids;
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A small bounded pool of physical connections to a single postgres database.
+ * LibraryDB hands out connections from this pool so that the DAOs can keep
+ * their "open, use, close" pattern (try-with-resources) without paying for a
+ * new TCP connection and authentication handshake on every call. Calling
+ * close() on a connection handed out by the pool returns it to the pool rather
+ * than closing it.
+ *
+ * The pool supports:<br>
+ * 1. a minimum amount of idle connections and a maximum amount of total
+ * connections<br>
+ * 2. eviction of connections that have been idle for too long<br>
+ * 3. validation of a connection when it is borrowed (if it sat idle for a
+ * while)<br>
+ * 4. a timeout for how long a caller will wait for a free connection<br>
+ * 5. leak detection (logs a warning with the stack trace of the borrower if a
+ * connection is held for too long)
+ *
+ * @author Bryce-BG
+ *
+ */
+public class ConnectionPool {
+	private static final Logger logger = LogManager.getLogger(ConnectionPool.class.getName());
+
+	// connections that have been idle less than this are handed out without a
+	// validation round trip
+	private static final long VALIDATION_SKIP_WINDOW_MS = 1000;
+	// how often the housekeeping thread runs eviction and leak detection
+	private static final long HOUSEKEEPING_PERIOD_MS = 15000;
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMs;
+	private final long borrowTimeoutMs;
+	private final long leakDetectionMs;
+	private final int validationTimeoutSec;
+
+	// permits for how many connections may exist at once (idle or borrowed)
+	private final Semaphore permits;
+	// idle connections. Used as a stack so the most recently used (warm)
+	// connection is handed out first and the cold ones age out
+	private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<PooledEntry>();
+	private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new pool. No connections are opened until the pool is first used
+	 * (or the housekeeper fills it up to minSize).
+	 *
+	 * @param url                  jdbc url for the database
+	 * @param user                 username to connect to the database with
+	 * @param password             password to connect to the database with
+	 * @param minSize              minimum amount of idle connections to keep open
+	 * @param maxSize              maximum amount of connections (idle and
+	 *                             borrowed) that may exist at once
+	 * @param idleTimeoutMs        how long a connection above minSize may sit idle
+	 *                             before it is closed
+	 * @param borrowTimeoutMs      how long a borrower will wait for a free
+	 *                             connection before giving up
+	 * @param leakDetectionMs      how long a connection can be borrowed before we
+	 *                             log it as a possible leak (0 disables this)
+	 * @param validationTimeoutSec timeout used for Connection.isValid() when
+	 *                             validating on borrow
+	 */
+	public ConnectionPool(String url, String user, String password, int minSize, int maxSize, long idleTimeoutMs,
+			long borrowTimeoutMs, long leakDetectionMs, int validationTimeoutSec) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = Math.max(1, maxSize);
+		this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+		this.idleTimeoutMs = idleTimeoutMs;
+		this.borrowTimeoutMs = borrowTimeoutMs;
+		this.leakDetectionMs = leakDetectionMs;
+		this.validationTimeoutSec = validationTimeoutSec;
+		this.permits = new Semaphore(this.maxSize, true);
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-housekeeper");
+			t.setDaemon(true); // don't keep the app alive because of the pool
+			return t;
+		});
+		housekeeper.scheduleWithFixedDelay(this::houseKeep, HOUSEKEEPING_PERIOD_MS, HOUSEKEEPING_PERIOD_MS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a connection from the pool. The caller MUST close() the connection
+	 * when finished with it (which returns it to the pool).
+	 *
+	 * @return A connection to the database.
+	 * @throws SQLException           if the pool is closed, no connection became
+	 *                                available before the borrow timeout, or a new
+	 *                                connection could not be established.
+	 * @throws ClassNotFoundException if no postgres driver was able to be used
+	 */
+	public Connection borrow() throws SQLException, ClassNotFoundException {
+		if (closed)
+			throw new SQLException("Connection pool for " + url + " has been shut down");
+
+		// 1. wait for a permit (bounded by max size)
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new SQLException(String.format(
+						"Timed out after %dms waiting for a database connection (%d in use, max %d)", borrowTimeoutMs,
+						borrowed.size(), maxSize));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection");
+		}
+
+		// 2. hand out an idle connection if a valid one exists otherwise open a new one
+		try {
+			PooledEntry entry;
+			while ((entry = idle.pollFirst()) != null) {
+				if (isUsable(entry))
+					break;
+				closeQuietly(entry.physical);
+			}
+			if (entry == null)
+				entry = new PooledEntry(openPhysicalConnection());
+
+			entry.borrowedAt = System.currentTimeMillis();
+			entry.leakReported = false;
+			entry.borrowSite = leakDetectionMs > 0 ? new Throwable("Connection borrowed here") : null;
+			borrowed.add(entry);
+			return entry.newHandle();
+		} catch (SQLException | ClassNotFoundException | RuntimeException e) {
+			permits.release(); // we never handed anything out so give the permit back
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes all connections that are currently idle. The pool remains usable
+	 * (new connections are opened as needed). This is needed before the database
+	 * we point at is dropped as postgres refuses to drop a database with open
+	 * connections to it.
+	 */
+	public void evictIdleConnections() {
+		PooledEntry entry;
+		while ((entry = idle.pollFirst()) != null) {
+			closeQuietly(entry.physical);
+		}
+	}
+
+	/**
+	 * Shuts the pool down. Idle connections are closed immediately and borrowed
+	 * connections are closed as soon as they are returned.
+	 */
+	public void shutdown() {
+		closed = true;
+		housekeeper.shutdownNow();
+		evictIdleConnections();
+		logger.debug("Connection pool for {} shut down ({} connections still borrowed)", url, borrowed.size());
+	}
+
+	/* getters for the current state of the pool */
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getBorrowedCount() {
+		return borrowed.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean isShutdown() {
+		return closed;
+	}
+
+	/**
+	 * Called when a handle to a connection is closed. Puts the connection back in
+	 * the idle list (or closes it if it is no longer usable).
+	 *
+	 * @param entry the pool entry the handle belonged to
+	 */
+	private void giveBack(PooledEntry entry) {
+		borrowed.remove(entry);
+		try {
+			boolean reusable = !closed && resetState(entry);
+			if (reusable) {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(entry);
+			} else {
+				closeQuietly(entry.physical);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Restore a connection to the default state so the next borrower does not see
+	 * leftovers (open transaction, auto-commit disabled, unclosed statements) from
+	 * the previous one.
+	 *
+	 * @param entry the entry to reset
+	 * @return true if the connection is fine to be reused.
+	 */
+	private boolean resetState(PooledEntry entry) {
+		Connection c = entry.physical;
+		try {
+			// statements the borrower forgot to close would otherwise live on in the
+			// physical connection
+			for (Statement s : entry.openStatements) {
+				closeQuietly(s);
+			}
+			entry.openStatements.clear();
+
+			if (c.isClosed())
+				return false;
+			if (!c.getAutoCommit()) {
+				c.rollback(); // discard anything that wasn't committed
+				c.setAutoCommit(true);
+			}
+			if (c.isReadOnly())
+				c.setReadOnly(false);
+			c.clearWarnings();
+			return true;
+		} catch (SQLException e) {
+			logger.debug("Discarding pooled connection that failed to reset: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Determine if an idle connection is still ok to hand out. Connections that
+	 * were used very recently are trusted to save a round trip.
+	 */
+	private boolean isUsable(PooledEntry entry) {
+		try {
+			if (entry.physical.isClosed())
+				return false;
+			if (System.currentTimeMillis() - entry.lastUsed < VALIDATION_SKIP_WINDOW_MS)
+				return true;
+			return entry.physical.isValid(validationTimeoutSec);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private Connection openPhysicalConnection() throws SQLException, ClassNotFoundException {
+		Class.forName("org.postgresql.Driver"); // register the driver
+		return DriverManager.getConnection(url, user, password);
+	}
+
+	/**
+	 * Periodic job that closes connections that have been idle too long (above
+	 * minSize), tops the pool back up to minSize and reports possible leaks.
+	 */
+	private void houseKeep() {
+		try {
+			long now = System.currentTimeMillis();
+
+			// 1. evict connections idle for too long (oldest are at the end of the deque)
+			Iterator<PooledEntry> it = idle.descendingIterator();
+			while (it.hasNext() && idle.size() > minSize) {
+				PooledEntry entry = it.next();
+				if (now - entry.lastUsed > idleTimeoutMs && idle.removeFirstOccurrence(entry)) {
+					closeQuietly(entry.physical);
+				}
+			}
+
+			// 2. fill back up to our minimum (without exceeding the max)
+			while (!closed && idle.size() < minSize && permits.tryAcquire()) {
+				try {
+					PooledEntry entry = new PooledEntry(openPhysicalConnection());
+					entry.lastUsed = System.currentTimeMillis();
+					idle.offerLast(entry);
+				} catch (SQLException | ClassNotFoundException e) {
+					logger.debug("Unable to pre-open pooled connection: {}", e.getMessage());
+					break;
+				} finally {
+					permits.release();
+				}
+			}
+
+			// 3. leak detection
+			if (leakDetectionMs > 0) {
+				for (PooledEntry entry : borrowed) {
+					if (!entry.leakReported && now - entry.borrowedAt > leakDetectionMs) {
+						entry.leakReported = true;
+						logger.warn(String.format("Connection to %s has been borrowed for %dms. Possible leak.", url,
+								now - entry.borrowedAt), entry.borrowSite);
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.error("Connection pool housekeeping failed: {}", e.getMessage());
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable c) {
+		try {
+			if (c != null)
+				c.close();
+		} catch (Exception e) {
+			// nothing useful to do. The connection/statement is being thrown away anyway
+		}
+	}
+
+	/**
+	 * A physical connection and the bookkeeping the pool needs for it.
+	 */
+	private final class PooledEntry {
+		final Connection physical;
+		final List<Statement> openStatements = new ArrayList<Statement>();
+		volatile long lastUsed = System.currentTimeMillis();
+		volatile long borrowedAt;
+		volatile boolean leakReported;
+		volatile Throwable borrowSite;
+
+		PooledEntry(Connection physical) {
+			this.physical = physical;
+		}
+
+		/**
+		 * Wrap our physical connection in a proxy whose close() returns the connection
+		 * to the pool. Each borrow gets a new handle so a stale handle kept by a
+		 * previous borrower can't affect the current one.
+		 */
+		Connection newHandle() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Handle(this));
+		}
+	}
+
+	/**
+	 * The invocation handler behind the connections handed out to callers.
+	 */
+	private final class Handle implements InvocationHandler {
+		private PooledEntry entry;
+
+		Handle(PooledEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name)) {
+				synchronized (this) {
+					if (entry != null) {
+						PooledEntry e = entry;
+						entry = null;
+						giveBack(e);
+					}
+				}
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return entry == null || entry.physical.isClosed();
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return "PooledConnection[" + url + "]";
+			}
+
+			PooledEntry current = entry;
+			if (current == null)
+				throw new SQLException("Connection has already been returned to the pool");
+			try {
+				Object rtVal = method.invoke(current.physical, args);
+				// remember statements so they can be cleaned up when the connection is returned
+				if (rtVal instanceof Statement)
+					current.openStatements.add((Statement) rtVal);
+				return rtVal;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
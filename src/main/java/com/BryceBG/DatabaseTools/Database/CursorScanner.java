@@ -0,0 +1,106 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs a query over a forward-only server side cursor and hands the rows to
+ * the caller a chunk at a time. This is used by the DAO forEach*() functions so
+ * that scans over every row of a table (exports, reindexing) run in constant
+ * memory rather than pulling the whole table into the heap like the getAll*()
+ * functions do.
+ *
+ * The postgres driver only honors the fetch size when auto-commit is off, so
+ * the whole scan runs inside a single (read only) transaction on one pooled
+ * connection.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class CursorScanner {
+	private static final Logger logger = LogManager.getLogger(CursorScanner.class.getName());
+
+	// default amount of rows pulled from the server per round trip
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
+	/**
+	 * Converts the current row of a result set into an object.
+	 */
+	public interface RowMapper<T> {
+		T map(ResultSet rs) throws SQLException;
+	}
+
+	/**
+	 * Receives each chunk of rows. The connection passed in is the one the cursor
+	 * is open on so the handler can run extra queries (in the same transaction) to
+	 * fill out the chunk.
+	 */
+	public interface ChunkHandler<T> {
+		/**
+		 * @return false if an error occurred processing the chunk (the scan carries
+		 *         on but is reported as failed)
+		 */
+		boolean handle(Connection conn, List<T> chunk);
+	}
+
+	/**
+	 * Scan all rows returned by sql.
+	 *
+	 * @param sql       the query to run (it should not take any parameters).
+	 * @param fetchSize the amount of rows fetched (and handed to handler) at a
+	 *                  time.
+	 * @param mapper    converts each row into an object.
+	 * @param handler   called with each chunk of at most fetchSize objects.
+	 * @return true if every row was read and handled without errors. False if an
+	 *         error occurred (rows handled before the error are not undone).
+	 */
+	public static <T> boolean scan(String sql, int fetchSize, RowMapper<T> mapper, ChunkHandler<T> handler) {
+		boolean rtVal = true;
+		fetchSize = Math.max(1, fetchSize);
+
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB();) {
+			conn.setAutoCommit(false); // required for the cursor to be used
+			conn.setReadOnly(true);
+			try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);) {
+				pstmt.setFetchSize(fetchSize);
+				// 2. execute our query and hand the rows off a chunk at a time.
+				try (ResultSet rs = pstmt.executeQuery()) {
+					List<T> chunk = new ArrayList<T>(fetchSize);
+					while (rs.next()) {
+						try {
+							chunk.add(mapper.map(rs));
+						} catch (SQLException e) { // skip the bad row but keep going
+							rtVal = false;
+							logger.error("Exception occured reading a row during cursor scan: " + e.getMessage());
+						}
+						if (chunk.size() == fetchSize) {
+							rtVal &= handler.handle(conn, chunk);
+							chunk = new ArrayList<T>(fetchSize);
+						}
+					}
+					if (!chunk.isEmpty())
+						rtVal &= handler.handle(conn, chunk);
+				} // end of try-with-resources: result set
+			}
+			conn.commit();
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			rtVal = false;
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			rtVal = false;
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
+}
@@ -8,6 +8,7 @@ import org.apache.logging.log4j.Logger;
 
 import com.BryceBG.DatabaseTools.Database.Author.AuthorDao;
 import com.BryceBG.DatabaseTools.Database.Book.BookDao;
+import com.BryceBG.DatabaseTools.Database.FileState.FileStateDao;
 import com.BryceBG.DatabaseTools.Database.Genre.GenreDao;
 import com.BryceBG.DatabaseTools.Database.Series.SeriesDao;
 import com.BryceBG.DatabaseTools.Database.User.UserDao;
@@ -27,7 +28,8 @@ public class DAORoot {
 	public static SeriesDao seriesDao;
 	public static AuthorDao authorDao;
 	public static GenreDao genreDao;
-	public static LibraryDB library;
+	public static FileStateDao fileStateDao;
+	public static volatile LibraryDB library;
 	
 	private static final Logger logger = LogManager.getLogger(DAORoot.class.getName());
 
@@ -45,13 +47,15 @@ public class DAORoot {
 		seriesDao = new SeriesDao();
 		authorDao = new AuthorDao();
 		genreDao = new GenreDao();
+		fileStateDao = new FileStateDao();
 
 	}
 
 	/**
 	 * This overrides the database our library.properties file defines. Thus this is
 	 * used if we want to create a mock instance of our database to perform tests
-	 * on.
+	 * on. The connection pool of the previous database is shut down once the swap
+	 * is made (connections still in use are closed when they are returned).
 	 * 
 	 * @param dbHost Host address for where the alternative database is located
 	 * @param dbPort port to use to connect to the host of the database
@@ -61,8 +65,14 @@ public class DAORoot {
 	 * @return returns true if the new database is actually able to be connected to (i.e. if parameters for new database are valid).
 	 */
 	public static boolean changeDB(String dbHost, String dbPort, String dbName, String dbPass, String dbUser) {
-		library = new LibraryDB(dbHost, dbPort, dbName, dbPass, dbUser);
-		
+		LibraryDB oldLibrary;
+		synchronized (DAORoot.class) {
+			oldLibrary = library;
+			library = new LibraryDB(dbHost, dbPort, dbName, dbPass, dbUser);
+		}
+		if (oldLibrary != null)
+			oldLibrary.close(); // drain the old pool
+
 		boolean rtVal = false;
 		try (Connection conn = library.connectToDB();){
 			if(conn.isValid(0))
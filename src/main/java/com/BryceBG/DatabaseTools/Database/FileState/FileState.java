@@ -0,0 +1,78 @@
+package com.BryceBG.DatabaseTools.Database.FileState;
+
+/**
+ * A class representing a single entry of the file_state table: a book file on
+ * disk as it was when the catalog was last synced with it (see LibrarySync).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class FileState {
+	private String path; // absolute path of the file
+	private long size; // size in bytes
+	private long mtime; // last modified time (ms since epoch)
+	private String contentHash; // sha-256 of the file (hex)
+	private long bookID; // book the file was loaded as (0 if it failed to load)
+
+	public FileState(String path, long size, long mtime, String contentHash, long bookID) {
+		this.path = path;
+		this.size = size;
+		this.mtime = mtime;
+		this.contentHash = contentHash;
+		this.bookID = bookID;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public long getMtime() {
+		return mtime;
+	}
+
+	public void setMtime(long mtime) {
+		this.mtime = mtime;
+	}
+
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	public long getBookID() {
+		return bookID;
+	}
+
+	public void setBookID(long bookID) {
+		this.bookID = bookID;
+	}
+
+	/**
+	 * @return true if a file with this size and mtime is (assumed to be) the same
+	 *         file this entry was recorded from.
+	 */
+	public boolean matches(long size, long mtime) {
+		return this.size == size && this.mtime == mtime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FileState [path=%s, size=%d, mtime=%d, contentHash=%s, bookID=%d]", path, size, mtime,
+				contentHash, bookID);
+	}
+}
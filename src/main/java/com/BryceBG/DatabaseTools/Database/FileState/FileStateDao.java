@@ -0,0 +1,129 @@
+package com.BryceBG.DatabaseTools.Database.FileState;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+
+/**
+ * Dao for the file_state table (the index LibrarySync uses to tell which book
+ * files changed since the last sync).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class FileStateDao {
+	private static final Logger logger = LogManager.getLogger(FileStateDao.class.getName());
+
+	private static final int FETCH_SIZE = 10000;
+
+	/**
+	 * Get the recorded state of every file under a directory.
+	 *
+	 * @param pathPrefix only files whose path starts with this are returned (e.g.
+	 *                   "/library/").
+	 * @return path -> state. Null if an error occurred (so a failed read can't be
+	 *         mistaken for every file having been deleted).
+	 */
+	public HashMap<String, FileState> getFileStates(String pathPrefix) {
+		HashMap<String, FileState> rtVal = new HashMap<String, FileState>();
+		// escape LIKE wildcards that can show up in file names
+		String pattern = pathPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+		String sql = "SELECT * FROM file_state WHERE path LIKE ?";
+
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			// stream the rows instead of buffering the whole index twice (requires a
+			// transaction)
+			conn.setAutoCommit(false);
+			pstmt.setFetchSize(FETCH_SIZE);
+			pstmt.setString(1, pattern);
+			// 2. execute our query.
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					FileState state = new FileState(rs.getString("path"), rs.getLong("size"), rs.getLong("mtime"),
+							rs.getString("content_hash"), rs.getLong("book_id"));
+					rtVal.put(state.getPath(), state);
+				}
+			} // end of try-with-resources: result set
+			conn.commit();
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return null;
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			return null;
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Add or update (by path) the state of several files in one transaction.
+	 *
+	 * @param states the states to save. A bookID of 0 is saved as no book.
+	 * @return true if every state was saved.
+	 */
+	public boolean saveFileStates(Collection<FileState> states) {
+		if (states.isEmpty())
+			return true;
+		String sql = "INSERT INTO file_state (path, size, mtime, content_hash, book_id) VALUES (?, ?, ?, ?, ?) "
+				+ "ON CONFLICT (path) DO UPDATE SET size = EXCLUDED.size, mtime = EXCLUDED.mtime, "
+				+ "content_hash = EXCLUDED.content_hash, book_id = EXCLUDED.book_id";
+		boolean rtVal = false;
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			conn.setAutoCommit(false);
+			for (FileState state : states) {
+				pstmt.setString(1, state.getPath());
+				pstmt.setLong(2, state.getSize());
+				pstmt.setLong(3, state.getMtime());
+				pstmt.setString(4, state.getContentHash());
+				if (state.getBookID() > 0)
+					pstmt.setLong(5, state.getBookID());
+				else
+					pstmt.setNull(5, Types.BIGINT);
+				pstmt.addBatch();
+			}
+			pstmt.executeBatch();
+			conn.commit();
+			rtVal = true;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Forget the state of several files.
+	 *
+	 * @param paths paths of the files.
+	 * @return true if the entries were removed (or didn't exist).
+	 */
+	public boolean removeFileStates(Collection<String> paths) {
+		if (paths.isEmpty())
+			return true;
+		String sql = "DELETE FROM file_state WHERE path = ANY(?)";
+		boolean rtVal = false;
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setArray(1, conn.createArrayOf("varchar", paths.toArray()));
+			pstmt.executeUpdate();
+			rtVal = true;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
+}
@@ -7,12 +7,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.javatuples.Pair;
 
+import com.BryceBG.DatabaseTools.Database.CursorScanner;
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 
 public class GenreDao {
@@ -25,6 +32,97 @@ public class GenreDao {
 	public static final int MY_GOODREADS_EQUIVALENT = 4;
 	public static final int PARENT = 5;
 
+	// the genre hierarchy (see getGenreTree()) and suggestion index (see
+	// getGenreIndex()). null until they are first needed and after any change to
+	// the genres table.
+	private volatile GenreTree genreTree = null;
+	private volatile GenreIndex genreIndex = null;
+	// bumped whenever they are dropped so a tree or index loaded from rows read
+	// before the change isn't published after it (see helperPublish())
+	private final AtomicLong cacheGeneration = new AtomicLong();
+
+	/**
+	 * Get the genre hierarchy. It is loaded from the database the first time it is
+	 * needed and again after the genres are changed through this dao.
+	 * 
+	 * @return the current genre tree (empty if the genres couldn't be loaded).
+	 */
+	public GenreTree getGenreTree() {
+		GenreTree rtVal = genreTree;
+		if (rtVal == null) {
+			synchronized (this) {
+				rtVal = genreTree;
+				if (rtVal == null) {
+					long generation = cacheGeneration.get();
+					rtVal = new GenreTree(getAllGenres());
+					for (List<String> cycle : rtVal.getCycles())
+						logger.warn("The genre hierarchy has a cycle: {}", String.join(" -> ", cycle));
+					if (helperPublish(generation)) {
+						genreTree = rtVal;
+						if (cacheGeneration.get() != generation) // dropped while it was being set
+							genreTree = null;
+					}
+				}
+			}
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Get the index used to suggest and complete genres when adding books. Like
+	 * the genre tree it is loaded the first time it is needed and again after the
+	 * genres are changed through this dao; until then the old index keeps being
+	 * used by whoever already holds it.
+	 * 
+	 * @return the current genre index (empty if the genres couldn't be loaded).
+	 */
+	public GenreIndex getGenreIndex() {
+		GenreIndex rtVal = genreIndex;
+		if (rtVal == null) {
+			synchronized (this) {
+				rtVal = genreIndex;
+				if (rtVal == null) {
+					long generation = cacheGeneration.get();
+					rtVal = new GenreIndex(getAllGenres());
+					if (helperPublish(generation)) {
+						genreIndex = rtVal;
+						if (cacheGeneration.get() != generation) // dropped while it was being set
+							genreIndex = null;
+					}
+				}
+			}
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Drop the genre tree and index now and again once the current unit of work
+	 * (if any) is over so the next getGenreTree()/getGenreIndex() sees the change.
+	 * Called after every change made through this dao; code that changes the
+	 * genres table directly should call it too.
+	 */
+	public void invalidateGenreCaches() {
+		helperDropGenreCaches();
+		UnitOfWork.afterCompletion(this::helperDropGenreCaches);
+	}
+
+	private void helperDropGenreCaches() {
+		cacheGeneration.incrementAndGet(); // before the fields are cleared (see helperPublish())
+		genreTree = null;
+		genreIndex = null;
+	}
+
+	/**
+	 * Helper for getGenreTree()/getGenreIndex(): whether a tree or index loaded
+	 * from genres read at generation may be kept. Not if the caches were dropped
+	 * in the meantime (the rows may predate a change that has committed since).
+	 * The caller still has to re-check the generation after setting the field, as
+	 * a drop can happen between this check and the assignment.
+	 */
+	private boolean helperPublish(long generation) {
+		return cacheGeneration.get() == generation;
+	}
+
 	/**
 	 * Gets the names of genres in the system.
 	 * 
@@ -83,6 +181,64 @@ public class GenreDao {
 		return rtVal;
 	}
 
+	/**
+	 * Paged version of getAllGenres(). genre_name is unique so it is the only sort
+	 * key used.
+	 * 
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of results on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid. Otherwise the page of results
+	 *         (empty if an error occurred).
+	 */
+	public Page<Genre> getAllGenresPage(String pageToken, int pageSize) {
+		String kind = "genres";
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+		ArrayList<Genre> rows = new ArrayList<Genre>();
+		String sql = "SELECT * FROM genres WHERE genre_name > ? ORDER BY genre_name LIMIT ?";
+
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setString(1, token.getSortKey());
+			pstmt.setInt(2, pageSize + 1);
+			// 2. execute our query and read the rows (one more than the page size so we
+			// know if there is another page).
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rows.add(helperGetGenreFromRow(rs));
+				}
+			} // end of try-with-resources: result set
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return Page.fromRows(rows, pageSize, kind, Genre::getGenreName, g -> 0);
+	}
+
+	/**
+	 * Function to visit every genre in the database without holding them all in
+	 * memory (see CursorScanner).
+	 * 
+	 * @param action called once for every genre (in no particular order).
+	 * @return true if every genre was visited without errors.
+	 */
+	public boolean forEachGenre(Consumer<? super Genre> action) {
+		return CursorScanner.scan("SELECT * FROM genres", CursorScanner.DEFAULT_FETCH_SIZE,
+				this::helperGetGenreFromRow, (conn, chunk) -> {
+					chunk.forEach(action);
+					return true;
+				});
+	}
+
 	/**
 	 * A function that gets a genre object from our database.
 	 * 
@@ -187,6 +343,9 @@ public class GenreDao {
 			if (rs == 1) { // update was successful
 				rtVal = true;
 				conn.commit();
+				invalidateGenreCaches();
+				// the delete cascades to book_genres so cached books may list it
+				DAORoot.bookDao.invalidateCachedBooks();
 			} else {
 				logger.info(String.format("The addGenre failed: the execute update returned: %i", rs));
 				conn.rollback();
@@ -228,9 +387,12 @@ public class GenreDao {
 			// 1
 
 			if (rs == 1) {
-				// update was successful
+				// update was successful (children of the genre lose their parent)
 				rtVal = true;
 				conn.commit();
+				invalidateGenreCaches();
+				// the delete cascades to book_genres so cached books may list it
+				DAORoot.bookDao.invalidateCachedBooks();
 			} else {
 				conn.rollback();
 				logger.info(String.format("The removeSeries failed: the execute update returned: %d", rs));
@@ -292,10 +454,23 @@ public class GenreDao {
 	}
 
 	private boolean setGenreParent(String genreName, String value) {
-		if(getGenre(value)!=null)
-			return setGenreField(genreName, "parent", value.strip());
-		else
-		return false;
+		if (!DaoUtils.stringIsOk(genreName) || !DaoUtils.stringIsOk(value))
+			return false;
+		genreName = genreName.strip();
+		value = value.strip();
+		GenreTree tree = getGenreTree();
+		if (!tree.contains(value) || !tree.contains(genreName)) { // may have been added since the tree was loaded
+			invalidateGenreCaches();
+			tree = getGenreTree();
+		}
+		if (!tree.contains(value)) // the new parent has to exist
+			return false;
+		if (tree.wouldCreateCycle(genreName, value)) {
+			logger.info("Can't make {} the parent of {} as it is {} or one of its subgenres", value, genreName,
+					genreName);
+			return false;
+		}
+		return setGenreField(genreName, "parent", value);
 	}
 
 	private boolean setGenreGoodReadsEquivalent(String genreName, String value) {
@@ -317,7 +492,10 @@ public class GenreDao {
 	private boolean setGenreName(String genreName, String value) {
 		// 1. ensure new name is not empty or null
 		if (DaoUtils.stringIsOk(value)) { // update will fail if genre already exists
-			return setGenreField(genreName, "genre_name", value.strip());
+			boolean rtVal = setGenreField(genreName, "genre_name", value.strip());
+			if (rtVal) // the rename cascades to book_genres so cached books may list the old name
+				DAORoot.bookDao.invalidateCachedBooks();
+			return rtVal;
 		} else
 			return false;
 	}
@@ -387,8 +565,11 @@ public class GenreDao {
 			pstmt.setString(2, genreName);
 			// perform update and determine success
 			int rv = pstmt.executeUpdate();
-			if (rv == 1)
+			if (rv == 1) {
 				rtnVal = true;
+				if (!"genre_description".equals(fieldName)) // the only field neither cache uses
+					invalidateGenreCaches();
+			}
 
 		} catch (SQLException e) {
 			logger.error("An update to set genre: \'{}\', field: \'{}\', to value: \'{}\' failed. Exception: {}",
@@ -416,17 +597,8 @@ public class GenreDao {
 		try {
 			while (rs.next()) {
 				try {
-					String parent = rs.getString("parent");
-					String genreName = rs.getString("genre_name");
-					String genreDescription = rs.getString("genre_description");
-					String mygdrdsEquiv = rs.getString("mygdrds_equiv");
-					Array keywordsArray = rs.getArray("keywords");
-					String[] keywords = null;
-					if (keywordsArray != null)
-						keywords = (String[]) keywordsArray.getArray();
-
 					// 5. create our return object with the values
-					rtVal.add(new Genre(parent, genreName, genreDescription, mygdrdsEquiv, keywords));
+					rtVal.add(helperGetGenreFromRow(rs));
 
 				} catch (SQLException e) { // Redundant with outer catch BUT lets us continue if there was an unexpected
 											// error processing
@@ -442,4 +614,20 @@ public class GenreDao {
 		return new Pair<Boolean, Genre[]>(errorsOccurred, rtVal.toArray(new Genre[rtVal.size()]));
 	}
 
+	/**
+	 * Helper function that creates a Genre from the current row of a result set
+	 * over the genres table.
+	 */
+	private Genre helperGetGenreFromRow(ResultSet rs) throws SQLException {
+		String parent = rs.getString("parent");
+		String genreName = rs.getString("genre_name");
+		String genreDescription = rs.getString("genre_description");
+		String mygdrdsEquiv = rs.getString("mygdrds_equiv");
+		Array keywordsArray = rs.getArray("keywords");
+		String[] keywords = null;
+		if (keywordsArray != null)
+			keywords = (String[]) keywordsArray.getArray();
+		return new Genre(parent, genreName, genreDescription, mygdrdsEquiv, keywords);
+	}
+
 }
@@ -0,0 +1,248 @@
+package com.BryceBG.DatabaseTools.Database.Genre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An immutable in memory index of the words that identify each genre: its
+ * name, its keywords and its goodreads shelf name (genres.mygdrds_equiv). It
+ * answers the two questions adding a book asks without touching the database:
+ * <br>
+ * 1. suggest(): which genres does this title/description/subject list mention
+ * (an inverted index of term -> genres, matched longest phrase first)<br>
+ * 2. complete(): which genres start with what the user has typed so far (a
+ * prefix trie over the same terms, including every word inside a term so "fic"
+ * finds "Science Fiction").
+ *
+ * Terms are compared lower case with punctuation treated as spaces, so the
+ * shelf "science-fiction" and the subject "Science Fiction" are the same term.
+ *
+ * GenreDao.getGenreIndex() keeps the current index and rebuilds it after
+ * edits.
+ *
+ * @author Bryce-BG
+ *
+ */
+public final class GenreIndex {
+
+	// a match on a genre's own name counts more than a keyword match
+	private static final int NAME_WEIGHT = 3;
+	private static final int KEYWORD_WEIGHT = 1;
+
+	// term -> genres it identifies (the genre named by it first)
+	private final Map<String, String[]> terms = new HashMap<String, String[]>();
+	private final Map<String, String> names = new HashMap<String, String>(); // term -> genre it names
+	private final int maxTermWords; // longest term in words (longest phrase worth looking up)
+	private final TrieNode trie = new TrieNode();
+
+	/**
+	 * @param genres every genre.
+	 */
+	public GenreIndex(Collection<Genre> genres) {
+		HashMap<String, LinkedHashSet<String>> building = new HashMap<String, LinkedHashSet<String>>();
+		int longest = 0;
+		// names first so a genre's own name is always the first genre of its term
+		for (Genre genre : genres) {
+			String term = normalize(genre.getGenreName());
+			if (term.isEmpty())
+				continue;
+			names.putIfAbsent(term, genre.getGenreName());
+			building.computeIfAbsent(term, k -> new LinkedHashSet<String>()).add(genre.getGenreName());
+			longest = Math.max(longest, helperAddToTrie(term, genre.getGenreName(), true));
+		}
+		for (Genre genre : genres) {
+			if (normalize(genre.getGenreName()).isEmpty())
+				continue;
+			ArrayList<String> others = new ArrayList<String>();
+			if (genre.getKeywords() != null)
+				others.addAll(Arrays.asList(genre.getKeywords()));
+			others.add(genre.getMygdrdsEquiv());
+			for (String other : others) {
+				String term = normalize(other);
+				if (term.isEmpty())
+					continue;
+				building.computeIfAbsent(term, k -> new LinkedHashSet<String>()).add(genre.getGenreName());
+				longest = Math.max(longest, helperAddToTrie(term, genre.getGenreName(), false));
+			}
+		}
+		for (Map.Entry<String, LinkedHashSet<String>> entry : building.entrySet())
+			terms.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+		this.maxTermWords = longest;
+		trie.freeze();
+	}
+
+	/**
+	 * @return the number of distinct terms in the index.
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Look up a single term (e.g. one part of an epub subject).
+	 *
+	 * @return the genre the term identifies (the genre it names if there is one)
+	 *         or null if it isn't a genre name, keyword or shelf name.
+	 */
+	public String lookup(String term) {
+		String[] rtVal = terms.get(normalize(term));
+		return rtVal == null ? null : rtVal[0];
+	}
+
+	/**
+	 * Suggest genres for a book from free text (its title, description,
+	 * subjects...). Each text is scanned left to right matching the longest known
+	 * term at each word, so "science fiction" doesn't also count as "fiction".
+	 *
+	 * @param texts the texts to scan (null entries are skipped).
+	 * @return the genres mentioned, best first (more and stronger matches rank
+	 *         higher, ties alphabetically). Empty if there are none.
+	 */
+	public List<String> suggest(Collection<String> texts) {
+		HashMap<String, Integer> scores = new HashMap<String, Integer>();
+		HashSet<String> seen = new HashSet<String>(); // each term counts once
+		for (String text : texts) {
+			String normalized = normalize(text);
+			if (normalized.isEmpty())
+				continue;
+			String[] words = normalized.split(" ");
+			int x = 0;
+			while (x < words.length) {
+				int matched = 0;
+				String term = null;
+				StringBuilder phrase = new StringBuilder();
+				for (int n = 1; n <= maxTermWords && x + n <= words.length; n++) {
+					if (n > 1)
+						phrase.append(' ');
+					phrase.append(words[x + n - 1]);
+					if (terms.containsKey(phrase.toString())) {
+						matched = n;
+						term = phrase.toString();
+					}
+				}
+				if (matched == 0) {
+					x++;
+					continue;
+				}
+				x += matched;
+				if (!seen.add(term))
+					continue;
+				String named = names.get(term);
+				for (String genre : terms.get(term))
+					scores.merge(genre, genre.equals(named) ? NAME_WEIGHT : KEYWORD_WEIGHT, Integer::sum);
+			}
+		}
+		ArrayList<String> rtVal = new ArrayList<String>(scores.keySet());
+		rtVal.sort((a, b) -> {
+			int rtCmp = Integer.compare(scores.get(b), scores.get(a));
+			return rtCmp != 0 ? rtCmp : a.compareTo(b);
+		});
+		return rtVal;
+	}
+
+	/**
+	 * Same as suggest(Collection) for a fixed set of texts.
+	 */
+	public List<String> suggest(String... texts) {
+		return suggest(Arrays.asList(texts));
+	}
+
+	/**
+	 * Complete a partly typed genre. Matches any word of a genre's name, keywords
+	 * or shelf name.
+	 *
+	 * @param prefix what has been typed so far.
+	 * @param max    the most genres to return.
+	 * @return the matching genres: genres whose name matches (alphabetical) then
+	 *         genres that only matched on a keyword. Empty if the prefix is blank or
+	 *         nothing matches.
+	 */
+	public List<String> complete(String prefix, int max) {
+		String normalized = normalize(prefix);
+		if (normalized.isEmpty() || max <= 0)
+			return Collections.emptyList();
+		TrieNode node = trie;
+		for (int x = 0; x < normalized.length() && node != null; x++)
+			node = node.next.get(normalized.charAt(x));
+		if (node == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(node.genres).subList(0, Math.min(max, node.genres.length)));
+	}
+
+	/**
+	 * Lower case the text and turn everything but letters and digits into single
+	 * spaces.
+	 *
+	 * @return the normalized text ("" for null).
+	 */
+	static String normalize(String text) {
+		if (text == null)
+			return "";
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean space = false;
+		for (int x = 0; x < text.length(); x++) {
+			char c = text.charAt(x);
+			if (Character.isLetterOrDigit(c)) {
+				if (space && sb.length() > 0)
+					sb.append(' ');
+				sb.append(c);
+				space = false;
+			} else {
+				space = true;
+			}
+		}
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Add a term to the trie, once from each of its words.
+	 *
+	 * @return the number of words in the term.
+	 */
+	private int helperAddToTrie(String term, String genre, boolean isName) {
+		int words = 0;
+		for (int x = 0; x < term.length(); x++) {
+			if (x == 0 || term.charAt(x - 1) == ' ') {
+				words++;
+				TrieNode node = trie;
+				for (int y = x; y < term.length(); y++) {
+					node = node.next.computeIfAbsent(term.charAt(y), k -> new TrieNode());
+					(isName ? node.nameHits : node.keywordHits).add(genre);
+				}
+			}
+		}
+		return words;
+	}
+
+	private static final class TrieNode {
+		final HashMap<Character, TrieNode> next = new HashMap<Character, TrieNode>();
+		// while building: genres with a term through this node
+		TreeSet<String> nameHits = new TreeSet<String>();
+		TreeSet<String> keywordHits = new TreeSet<String>();
+		// once built: the genres to complete to (name matches first)
+		String[] genres;
+
+		void freeze() {
+			ArrayList<TrieNode> todo = new ArrayList<TrieNode>(); // iterative so long terms can't overflow the stack
+			todo.add(this);
+			while (!todo.isEmpty()) {
+				TrieNode node = todo.remove(todo.size() - 1);
+				LinkedHashSet<String> all = new LinkedHashSet<String>(node.nameHits);
+				all.addAll(node.keywordHits);
+				node.genres = all.toArray(new String[0]);
+				node.nameHits = null;
+				node.keywordHits = null;
+				todo.addAll(node.next.values());
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.BryceBG.DatabaseTools.Database.Genre;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of the genre hierarchy (genres.parent). The genres are
+ * laid out in depth first order so every genre's descendants sit in one
+ * contiguous run right after it. That makes "all the descendants of X" a view
+ * of that run (O(1)) and "is X an ancestor of Y" two comparisons. Ancestors are
+ * found by following parents (O(depth)).
+ *
+ * The database doesn't stop a genre from being (indirectly) its own parent. A
+ * cycle found while building the tree is cut at its alphabetically first genre,
+ * which becomes a root, and reported by getCycles().
+ *
+ * GenreDao.getGenreTree() keeps the current tree and rebuilds it after edits.
+ *
+ * @author Bryce-BG
+ *
+ */
+public final class GenreTree {
+
+	private final String[] order; // genre names in depth first order (children alphabetically)
+	private final Map<String, Integer> start = new HashMap<String, Integer>(); // index of the genre in order
+	private final int[] end; // end[start(x)]: index after the last descendant of x
+	private final Map<String, String> parents = new HashMap<String, String>(); // null for roots
+	private final Map<String, List<String>> children = new HashMap<String, List<String>>();
+	private final List<String> roots;
+	private final List<List<String>> cycles;
+
+	/**
+	 * @param genres every genre (parents that aren't in the collection are treated
+	 *               as no parent).
+	 */
+	public GenreTree(Collection<Genre> genres) {
+		// 1. parent links (sorted so the layout doesn't depend on query order)
+		TreeMap<String, String> parentOf = new TreeMap<String, String>();
+		for (Genre genre : genres) {
+			if (genre != null && genre.getGenreName() != null)
+				parentOf.put(genre.getGenreName(), genre.getParent());
+		}
+		for (Map.Entry<String, String> entry : parentOf.entrySet()) {
+			if (entry.getValue() != null && !parentOf.containsKey(entry.getValue()))
+				entry.setValue(null);
+		}
+
+		// 2. cut cycles
+		ArrayList<List<String>> foundCycles = new ArrayList<List<String>>();
+		HashMap<String, Integer> state = new HashMap<String, Integer>(); // 1 = on current path, 2 = done
+		for (String name : parentOf.keySet()) {
+			LinkedHashSet<String> path = new LinkedHashSet<String>();
+			String x = name;
+			while (x != null && !state.containsKey(x)) {
+				state.put(x, 1);
+				path.add(x);
+				x = parentOf.get(x);
+			}
+			if (x != null && state.get(x) == 1) { // walked back into this path
+				List<String> cycle = new ArrayList<String>();
+				boolean inCycle = false;
+				for (String y : path) {
+					inCycle = inCycle || y.equals(x);
+					if (inCycle)
+						cycle.add(y);
+				}
+				String cut = Collections.min(cycle);
+				parentOf.put(cut, null);
+				foundCycles.add(Collections.unmodifiableList(cycle));
+			}
+			for (String y : path)
+				state.put(y, 2);
+		}
+		this.cycles = Collections.unmodifiableList(foundCycles);
+
+		// 3. children lists
+		ArrayList<String> rootList = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : parentOf.entrySet()) {
+			parents.put(entry.getKey(), entry.getValue());
+			children.put(entry.getKey(), new ArrayList<String>());
+		}
+		for (Map.Entry<String, String> entry : parentOf.entrySet()) { // in name order
+			if (entry.getValue() == null)
+				rootList.add(entry.getKey());
+			else
+				children.get(entry.getValue()).add(entry.getKey());
+		}
+		for (Map.Entry<String, List<String>> entry : children.entrySet())
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		this.roots = Collections.unmodifiableList(rootList);
+
+		// 4. depth first layout (iterative so deep chains can't overflow the stack)
+		this.order = new String[parentOf.size()];
+		this.end = new int[parentOf.size()];
+		int next = 0;
+		ArrayDeque<String> stack = new ArrayDeque<String>();
+		for (int r = rootList.size() - 1; r >= 0; r--)
+			stack.push(rootList.get(r));
+		ArrayDeque<String> open = new ArrayDeque<String>(); // genres whose descendants are being laid out
+		while (!stack.isEmpty()) {
+			String x = stack.pop();
+			while (!open.isEmpty() && !open.peek().equals(parents.get(x))) // x isn't below these
+				end[start.get(open.pop())] = next;
+			start.put(x, next);
+			order[next++] = x;
+			open.push(x);
+			List<String> kids = children.get(x);
+			for (int c = kids.size() - 1; c >= 0; c--)
+				stack.push(kids.get(c));
+		}
+		while (!open.isEmpty())
+			end[start.get(open.pop())] = next;
+	}
+
+	/**
+	 * @return the number of genres in the tree.
+	 */
+	public int size() {
+		return order.length;
+	}
+
+	public boolean contains(String genreName) {
+		return start.containsKey(genreName);
+	}
+
+	/**
+	 * @return the genre's parent or null if it is a root (or not in the tree).
+	 */
+	public String getParent(String genreName) {
+		return parents.get(genreName);
+	}
+
+	/**
+	 * @return the genre's direct subgenres (alphabetical). Empty if it has none or
+	 *         isn't in the tree.
+	 */
+	public List<String> getChildren(String genreName) {
+		List<String> rtVal = children.get(genreName);
+		return rtVal == null ? Collections.<String>emptyList() : rtVal;
+	}
+
+	/**
+	 * @return the genres without a parent (alphabetical).
+	 */
+	public List<String> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * @return every genre below the genre (not including itself). Empty if it has
+	 *         none or isn't in the tree.
+	 */
+	public List<String> getDescendants(String genreName) {
+		Integer x = start.get(genreName);
+		if (x == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(order).subList(x + 1, end[x]));
+	}
+
+	/**
+	 * @return the genre followed by every genre below it (e.g. to browse books in a
+	 *         genre including its subgenres). Empty if it isn't in the tree.
+	 */
+	public List<String> getSubtree(String genreName) {
+		Integer x = start.get(genreName);
+		if (x == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(order).subList(x, end[x]));
+	}
+
+	/**
+	 * @return the genre's parent, grandparent... up to its root. Empty if it is a
+	 *         root or isn't in the tree.
+	 */
+	public List<String> getAncestors(String genreName) {
+		ArrayList<String> rtVal = new ArrayList<String>();
+		String x = parents.get(genreName);
+		while (x != null) {
+			rtVal.add(x);
+			x = parents.get(x);
+		}
+		return rtVal;
+	}
+
+	/**
+	 * @return true if ancestor is genreName or one of genreName's ancestors.
+	 */
+	public boolean isAncestorOrSelf(String ancestor, String genreName) {
+		Integer a = start.get(ancestor);
+		Integer x = start.get(genreName);
+		return a != null && x != null && a <= x && x < end[a];
+	}
+
+	/**
+	 * @return true if making newParent the parent of genreName would create a
+	 *         cycle (newParent is genreName or one of its descendants).
+	 */
+	public boolean wouldCreateCycle(String genreName, String newParent) {
+		return isAncestorOrSelf(genreName, newParent);
+	}
+
+	/**
+	 * @return the cycles found in the parent links when the tree was built (each
+	 *         one a list of the genres in it). Empty if there were none.
+	 */
+	public List<List<String>> getCycles() {
+		return cycles;
+	}
+}
@@ -0,0 +1,358 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads postgres' statistics views for the library database and reports how
+ * the indexes are doing:<br>
+ * 1. indexes created by the schema migrations (resources/migrations) that the
+ * database is missing or that a failed concurrent build left invalid
+ * <br>
+ * 2. indexes that have never been scanned (pg_stat_user_indexes). Indexes that
+ * back a foreign key may only be used when a referenced row is deleted<br>
+ * 3. tables that are read mostly by sequential scans (pg_stat_user_tables)<br>
+ * 4. the statements that took the most time (pg_stat_statements, when the
+ * extension is installed in the library database), flagging the ones that read
+ * a table from 3.
+ *
+ * The statistics are counted since they were last reset so the report is most
+ * useful after the library has been used for a while. Run with App
+ * -a/--index_advisor.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class IndexAdvisor {
+	private static final Logger logger = LogManager.getLogger(IndexAdvisor.class.getName());
+
+	private static final String SQL_EXISTING_INDEXES = "SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid "
+			+ "WHERE i.indisvalid AND c.relnamespace = current_schema()::regnamespace";
+	private static final String SQL_UNUSED_INDEXES = "SELECT s.relname, s.indexrelname, pg_relation_size(s.indexrelid) "
+			+ "FROM pg_stat_user_indexes s JOIN pg_index i ON i.indexrelid = s.indexrelid "
+			+ "WHERE s.idx_scan = 0 AND NOT i.indisunique AND NOT i.indisprimary "
+			+ "ORDER BY pg_relation_size(s.indexrelid) DESC, s.relname, s.indexrelname";
+	private static final String SQL_SEQ_SCAN_TABLES = "SELECT relname, seq_scan, seq_tup_read, COALESCE(idx_scan, 0), n_live_tup "
+			+ "FROM pg_stat_user_tables WHERE seq_scan > COALESCE(idx_scan, 0) AND n_live_tup >= ? "
+			+ "ORDER BY seq_tup_read DESC, relname";
+	private static final String SQL_HAS_STATEMENTS = "SELECT 1 FROM pg_extension WHERE extname = 'pg_stat_statements'";
+	// %s: total_exec_time (postgres 13+) or total_time
+	private static final String SQL_TOP_STATEMENTS = "SELECT query, calls, %s, rows, shared_blks_hit + shared_blks_read "
+			+ "FROM pg_stat_statements WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database()) "
+			+ "AND calls > 0 ORDER BY %s DESC LIMIT ?";
+
+	// tables smaller than this are cheaper to scan than to index
+	private int minTableRows = 1000;
+	private int maxStatements = 20;
+
+	public IndexAdvisor setMinTableRows(int minTableRows) {
+		this.minTableRows = minTableRows;
+		return this;
+	}
+
+	public IndexAdvisor setMaxStatements(int maxStatements) {
+		this.maxStatements = maxStatements;
+		return this;
+	}
+
+	/**
+	 * Read the statistics of the current library database.
+	 *
+	 * @return the report or null if the statistics couldn't be read.
+	 */
+	public Report advise() {
+		Report rtVal = new Report();
+		try (Connection conn = DAORoot.library.connectToDB()) {
+			// 1. missing migration indexes
+			HashSet<String> existing = new HashSet<String>();
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_EXISTING_INDEXES);
+					ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next())
+					existing.add(rs.getString(1));
+			}
+			for (String index : SchemaMigrator.getIndexNames()) {
+				if (!existing.contains(index))
+					rtVal.missingIndexes.add(index);
+			}
+
+			// 2. unused indexes
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_UNUSED_INDEXES);
+					ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next())
+					rtVal.unusedIndexes.add(new UnusedIndex(rs.getString(1), rs.getString(2), rs.getLong(3)));
+			}
+
+			// 3. tables read by sequential scans
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_SEQ_SCAN_TABLES)) {
+				pstmt.setInt(1, minTableRows);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next())
+						rtVal.seqScanTables.add(new SeqScanTable(rs.getString(1), rs.getLong(2), rs.getLong(3),
+								rs.getLong(4), rs.getLong(5)));
+				}
+			}
+
+			// 4. most expensive statements
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_HAS_STATEMENTS);
+					ResultSet rs = pstmt.executeQuery()) {
+				rtVal.statementsAvailable = rs.next();
+			}
+			if (rtVal.statementsAvailable)
+				helperTopStatements(conn, rtVal);
+			return rtVal;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured while reading the database statistics: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Helper function that adds the most expensive statements to the report.
+	 */
+	private void helperTopStatements(Connection conn, Report report) {
+		try {
+			String timeColumn = conn.getMetaData().getDatabaseMajorVersion() >= 13 ? "total_exec_time"
+					: "total_time";
+			try (PreparedStatement pstmt = conn
+					.prepareStatement(String.format(SQL_TOP_STATEMENTS, timeColumn, timeColumn))) {
+				pstmt.setInt(1, maxStatements);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					while (rs.next()) {
+						StatementStats statement = new StatementStats(rs.getString(1), rs.getLong(2),
+								rs.getDouble(3), rs.getLong(4), rs.getLong(5));
+						for (SeqScanTable table : report.seqScanTables) {
+							if (mentionsTable(statement.query, table.table))
+								statement.seqScanTables.add(table.table);
+						}
+						report.statements.add(statement);
+					}
+				}
+			}
+		} catch (SQLException e) { // e.g. the extension is installed but not in shared_preload_libraries
+			logger.warn("pg_stat_statements couldn't be read: " + e.getMessage());
+			report.statementsAvailable = false;
+		}
+	}
+
+	static boolean mentionsTable(String query, String table) {
+		return Pattern.compile("\\b" + Pattern.quote(table) + "\\b", Pattern.CASE_INSENSITIVE).matcher(query).find();
+	}
+
+	/**
+	 * The results of advise().
+	 */
+	public static class Report {
+		private final List<String> missingIndexes = new ArrayList<String>();
+		private final List<UnusedIndex> unusedIndexes = new ArrayList<UnusedIndex>();
+		private final List<SeqScanTable> seqScanTables = new ArrayList<SeqScanTable>();
+		private final List<StatementStats> statements = new ArrayList<StatementStats>();
+		private boolean statementsAvailable = false;
+
+		/**
+		 * @return migration indexes the database doesn't have (App -m/--migrate
+		 *         creates them if the migration that adds them hasn't been applied).
+		 */
+		public List<String> getMissingIndexes() {
+			return missingIndexes;
+		}
+
+		/**
+		 * @return non unique indexes that have never been scanned (biggest first).
+		 */
+		public List<UnusedIndex> getUnusedIndexes() {
+			return unusedIndexes;
+		}
+
+		/**
+		 * @return tables scanned sequentially more often than through an index (most
+		 *         rows read first).
+		 */
+		public List<SeqScanTable> getSeqScanTables() {
+			return seqScanTables;
+		}
+
+		/**
+		 * @return the statements that took the most time (empty if
+		 *         pg_stat_statements isn't installed).
+		 */
+		public List<StatementStats> getStatements() {
+			return statements;
+		}
+
+		/**
+		 * @return true if pg_stat_statements is installed in the database.
+		 */
+		public boolean isStatementsAvailable() {
+			return statementsAvailable;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Missing migration indexes: ").append(missingIndexes.isEmpty() ? "none" : missingIndexes)
+					.append(System.lineSeparator());
+			sb.append("Unused indexes (idx_scan = 0):").append(unusedIndexes.isEmpty() ? " none" : "")
+					.append(System.lineSeparator());
+			for (UnusedIndex x : unusedIndexes)
+				sb.append("  ").append(x).append(System.lineSeparator());
+			sb.append("Tables read mostly by sequential scans:").append(seqScanTables.isEmpty() ? " none" : "")
+					.append(System.lineSeparator());
+			for (SeqScanTable x : seqScanTables)
+				sb.append("  ").append(x).append(System.lineSeparator());
+			if (!statementsAvailable) {
+				sb.append("Statements: pg_stat_statements is not installed in this database");
+			} else {
+				sb.append("Most expensive statements:").append(statements.isEmpty() ? " none" : "");
+				for (StatementStats x : statements)
+					sb.append(System.lineSeparator()).append("  ").append(x);
+			}
+			return sb.toString();
+		}
+	}
+
+	public static class UnusedIndex {
+		private final String table;
+		private final String index;
+		private final long sizeBytes;
+
+		private UnusedIndex(String table, String index, long sizeBytes) {
+			this.table = table;
+			this.index = index;
+			this.sizeBytes = sizeBytes;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		public String getIndex() {
+			return index;
+		}
+
+		public long getSizeBytes() {
+			return sizeBytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s on %s (%d kB)", index, table, sizeBytes / 1024);
+		}
+	}
+
+	public static class SeqScanTable {
+		private final String table;
+		private final long seqScans;
+		private final long seqRowsRead;
+		private final long indexScans;
+		private final long liveRows;
+
+		private SeqScanTable(String table, long seqScans, long seqRowsRead, long indexScans, long liveRows) {
+			this.table = table;
+			this.seqScans = seqScans;
+			this.seqRowsRead = seqRowsRead;
+			this.indexScans = indexScans;
+			this.liveRows = liveRows;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		public long getSeqScans() {
+			return seqScans;
+		}
+
+		public long getSeqRowsRead() {
+			return seqRowsRead;
+		}
+
+		public long getIndexScans() {
+			return indexScans;
+		}
+
+		public long getLiveRows() {
+			return liveRows;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d sequential scans read %d rows, %d index scans (%d rows)", table, seqScans,
+					seqRowsRead, indexScans, liveRows);
+		}
+	}
+
+	public static class StatementStats {
+		private final String query;
+		private final long calls;
+		private final double totalMillis;
+		private final long rows;
+		private final long blocks;
+		private final List<String> seqScanTables = new ArrayList<String>();
+
+		private StatementStats(String query, long calls, double totalMillis, long rows, long blocks) {
+			this.query = query == null ? "" : query;
+			this.calls = calls;
+			this.totalMillis = totalMillis;
+			this.rows = rows;
+			this.blocks = blocks;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		public double getTotalMillis() {
+			return totalMillis;
+		}
+
+		public double getMeanMillis() {
+			return totalMillis / calls;
+		}
+
+		/**
+		 * @return rows returned or changed per call.
+		 */
+		public double getRowsPerCall() {
+			return (double) rows / calls;
+		}
+
+		/**
+		 * @return shared buffer blocks read per call (many blocks for few rows
+		 *         suggests a scan).
+		 */
+		public double getBlocksPerCall() {
+			return (double) blocks / calls;
+		}
+
+		/**
+		 * @return the tables the statement reads that are mostly sequentially
+		 *         scanned (see Report.getSeqScanTables()).
+		 */
+		public List<String> getSeqScanTables() {
+			return seqScanTables;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f ms total, %d calls, %.2f ms/call, %.1f rows/call, %.1f blocks/call%s: %s",
+					totalMillis, calls, getMeanMillis(), getRowsPerCall(), getBlocksPerCall(),
+					seqScanTables.isEmpty() ? "" : " [sequential scans on " + String.join(", ", seqScanTables) + "]",
+					query.replaceAll("\\s+", " "));
+		}
+	}
+}
@@ -1,17 +1,12 @@
 package com.BryceBG.DatabaseTools.Database;
 
-import java.io.IOException;
-import java.io.Reader;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.ibatis.io.Resources;
-import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.BryceBG.DatabaseTools.utils.GlobalConstants;
 import com.BryceBG.DatabaseTools.utils.Utils;
 
 /**
@@ -29,6 +24,9 @@ public class LibraryDB {
 	private String DB_PASSWORD = "postgres";
 	private String DB_USER = "postgres";
 
+	// pool of connections to the database (all DAO calls borrow from this)
+	private final ConnectionPool pool;
+
 	// constructor (optional override for default database parameters)
 	public LibraryDB(String dbHost, String dbPort, String dbName, String dbPassword, String dbUsername) {
 		DB_HOST = dbHost;
@@ -36,46 +34,75 @@ public class LibraryDB {
 		DB_NAME = dbName;
 		DB_PASSWORD = dbPassword;
 		DB_USER = dbUsername;
+
+		String url = String.format("jdbc:postgresql://%s:%s/%s", DB_HOST, DB_PORT, DB_NAME);
+		// pool settings can be overridden in library.properties
+		pool = new ConnectionPool(url, DB_USER, DB_PASSWORD, Utils.getConfigInteger("db.pool.min_size", 2),
+				Utils.getConfigInteger("db.pool.max_size", 10), Utils.getConfigInteger("db.pool.idle_timeout_ms", 600000),
+				Utils.getConfigInteger("db.pool.borrow_timeout_ms", 30000),
+				Utils.getConfigInteger("db.pool.leak_detection_ms", 60000),
+				Utils.getConfigInteger("db.pool.validation_timeout_s", 5));
 	}
 
 	/** #############getter functions for DB checks############# **/
 
+	public String getDBName() {
+		return DB_NAME;
+	}
+
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
 	/** ########################################################## */
 
 	/**
-	 * Connect to a postgresql database (librarydatabase) with default parameters
+	 * Get a connection to the postgresql database this object was created for.
+	 * Connections are borrowed from our connection pool and calling close() on
+	 * them returns them to the pool (so they should still be used in a
+	 * try-with-resources block). If the thread is in a UnitOfWork the unit's
+	 * connection is returned instead.
 	 * 
 	 * @throws ClassNotFoundException: if no postgres driver was able to be used
 	 * @throws SQLException:           if the connection failed due to invalid
-	 *                                 parameters
+	 *                                 parameters or no connection became free in
+	 *                                 time
 	 */
 	public Connection connectToDB() throws SQLException, ClassNotFoundException {
-		Connection conn = null;
-		Class.forName("org.postgresql.Driver"); // register the driver
-		String url = String.format("jdbc:postgresql://%s:%s/%s", DB_HOST, DB_PORT, DB_NAME);
-
+		// join the thread's unit of work if it has one
+		Connection joined = UnitOfWork.join(this);
+		if (joined != null)
+			return joined;
 		// establish connection to db at the provided url
 		try {
-			conn = DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
-			return conn;
+			return pool.borrow();
 		} catch (SQLException e) {
-			logger.error("Error in connecting to the database with the supplied parameters" + url);
+			logger.error("Error in connecting to the database with the supplied parameters {}: {}", DB_NAME,
+					e.getMessage());
 			throw e;
 		}
 	}
 
+	/**
+	 * Shut down the connection pool for this database. Used when we switch over to
+	 * using a different database.
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+
 	/**
 	 * This function is intended to be run once to initialize the database for
 	 * future use. WARNING This WILL drop existing database if a database with same
-	 * name exists in system. It also will execute our install.sql script on that
-	 * database and switch the DAORoot over to use the new database
+	 * name exists in system. It also switches the DAORoot over to use the new
+	 * database and applies every schema migration to it (see SchemaMigrator)
 	 * 
 	 * @param libraryName the name for the postgresql database to create
 	 * @param showResults This tells our system if it should be verbose and have the
 	 *                    function print out the script as it is executing or not
-	 * @return returns true if database was successfully created (though the
-	 *         install.sql script may not have run correctly). False if the database
-	 *         could not be created/recreated
+	 * @return returns true if database was successfully created and migrated to
+	 *         the latest schema version. False if the database could not be
+	 *         created/recreated or a migration failed
 	 */
 	public static boolean createDB(String libraryName, boolean showResults) {
 		if (libraryName == null || libraryName.isEmpty() || libraryName.isBlank()) {
@@ -85,75 +112,93 @@ public class LibraryDB {
 					"The name passed into CreateDB for the database was invalid so it was changed to: %s.",
 					libraryName));
 		}
-		try {
-			String sql = String.format("DROP DATABASE %s;", libraryName);
-
-			Connection connection = connectToPostGres();
-			Statement stmt = connection.createStatement();
-
+		try (Connection connection = connectToPostGres(); Statement stmt = connection.createStatement()) {
 			// 1. check if database with same name already exists and if it does drop it
-			List<String> dbNames = listAllDatabases(); // get names of current databases
-			for (String x : dbNames) {
-				if (libraryName.equalsIgnoreCase(x)) {
-					logger.debug("Existing database was found with name {}.", libraryName);
-					// Drop database so we can recreate it
-					stmt.executeUpdate(sql);
-					break;
-				}
-			}
+			helperDropIfExists(stmt, libraryName);
+
 			// 2. create our new database.
-			sql = String.format("CREATE DATABASE %s;", libraryName); // Create Database
-			stmt = connection.createStatement();
+			String sql = String.format("CREATE DATABASE %s;", libraryName); // Create Database
 			stmt.executeUpdate(sql);
 			logger.info("Successfully created database: {}", libraryName);
 
-			// 3. now apply our install.sql script to initialize the tables.
+			// 3. now apply our migrations to initialize the tables.
 			// 3.a. change our system to use the new database we just created
-			boolean rtnedVal = DAORoot.changeDB(Utils.getConfigString("app.dbhost", null),
-					Utils.getConfigString("app.dbport", null), libraryName, Utils.getConfigString("app.dbpass", null),
-					Utils.getConfigString("app.dbuser", null));
-			if (!rtnedVal) { // can't connect with new parameters
+			if (!helperSwitchTo(libraryName)) { // can't connect with new parameters
 				logger.error("Unexpected error in changing the database occured in createDB function");
 				return false;
 			}
-			// 3.b. establish connection with new database
-			try (Connection conn = DAORoot.library.connectToDB();) {
-
-				// Initialize the script runner
-				ScriptRunner sr = new ScriptRunner(conn);
-				if (!showResults) // kill the log writing if they didn't want it
-					sr.setLogWriter(null);
-				// Creating a reader object
-				Reader r = Resources.getResourceAsReader(GlobalConstants.DB_INSTALL_SCRIPT_PATH);
-				// Reader reader = new
-				// InputStreamReader(UtilsForTests.class.getClassLoader().getResourceAsStream(GlobalConstants.DB_INSTALL_SCRIPT_PATH));
-
-				// 3.c.Running the script to add tables and rules
-				sr.runScript(r);
-
-				// 4. commit results
-				conn.commit();
-				r.close();
-
-			} catch (ClassNotFoundException e) {
-				logger.error("Exception occured during connectToDB: {}", e.getMessage());
-			} catch (SQLException e) {
-				logger.error("Error occured during execution of our sql during DB creation: {}", e.getMessage());
-			} catch (IOException e) {
-				logger.error("Exception occured during trying to read install script {}. The exception was: {}",
-						GlobalConstants.DB_INSTALL_SCRIPT_PATH, e.getMessage());
-			}
+			// 3.b. add the tables, rules and indexes
+			return SchemaMigrator.migrate(showResults) >= 0;
+		} catch (Exception ex) {
+			logger.error("An error occured during createDB: " + ex.getMessage());
+		}
+		return false;
+	}
 
-			// TODO determine if script actually worked correctly. if an actual exception
-			// Occurred it will return false but if individual statements fail this can
-			// still return true (incorrectly)
+	/**
+	 * Create a database as a copy of another one (CREATE DATABASE ... TEMPLATE).
+	 * Postgres copies the template's files so this is much faster than createDB()
+	 * replaying the migrations: the tests build a template with the schema and
+	 * their fixtures once and copy it for each test class. WARNING This WILL drop
+	 * an existing database with the same name. The DAORoot is switched over to
+	 * use the copy.
+	 * 
+	 * Nothing may be connected to the template while it is copied (our own idle
+	 * connections to it are closed first).
+	 * 
+	 * @param libraryName  the name for the new database.
+	 * @param templateName the database to copy.
+	 * @return true if the copy was created and the DAORoot switched to it.
+	 */
+	public static boolean createDBFromTemplate(String libraryName, String templateName) {
+		try (Connection connection = connectToPostGres(); Statement stmt = connection.createStatement()) {
+			helperDropIfExists(stmt, libraryName);
+			// our own pooled connections would block the copy
+			if (templateName.equalsIgnoreCase(DAORoot.library.getDBName()))
+				DAORoot.library.getPool().evictIdleConnections();
+			stmt.executeUpdate(String.format("CREATE DATABASE %s TEMPLATE %s;", libraryName, templateName));
+			logger.info("Successfully created database: {} from template: {}", libraryName, templateName);
+			if (!helperSwitchTo(libraryName)) {
+				logger.error("Unexpected error in changing the database occured in createDBFromTemplate function");
+				return false;
+			}
 			return true;
 		} catch (Exception ex) {
-			logger.error("An error occured during createDB: " + ex.getMessage());
+			logger.error("An error occured during createDBFromTemplate: " + ex.getMessage());
 		}
 		return false;
 	}
 
+	/**
+	 * Helper function that drops a database if it exists (used before a database
+	 * is recreated).
+	 */
+	private static void helperDropIfExists(Statement stmt, String libraryName) throws SQLException {
+		List<String> dbNames = listAllDatabases(); // get names of current databases
+		for (String x : dbNames) {
+			if (libraryName.equalsIgnoreCase(x)) {
+				logger.debug("Existing database was found with name {}.", libraryName);
+				// our own pooled connections would block the drop
+				if (libraryName.equalsIgnoreCase(DAORoot.library.getDBName()))
+					DAORoot.library.getPool().evictIdleConnections();
+				// Drop database so we can recreate it
+				stmt.executeUpdate(String.format("DROP DATABASE %s;", libraryName));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Helper function that switches the DAORoot to a database on the server from
+	 * library.properties.
+	 * 
+	 * @return true if the database could be connected to.
+	 */
+	private static boolean helperSwitchTo(String libraryName) {
+		return DAORoot.changeDB(Utils.getConfigString("app.dbhost", null), Utils.getConfigString("app.dbport", null),
+				libraryName, Utils.getConfigString("app.dbpass", null), Utils.getConfigString("app.dbuser", null));
+	}
+
 	/**
 	 * Helper function that connects to postgres and not our library db (so we can
 	 * delete it with createDB())
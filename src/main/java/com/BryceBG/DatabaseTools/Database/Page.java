@@ -0,0 +1,67 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A single page of results from one of the DAO *Page() functions. If there are
+ * more results after this page, getNextPageToken() returns an opaque token that
+ * is passed back to the same function to get the next page.
+ *
+ * @author Bryce-BG
+ *
+ * @param <T> the type of the results
+ */
+public class Page<T> {
+	private final List<T> items;
+	private final String nextPageToken;
+
+	public Page(List<T> items, String nextPageToken) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextPageToken = nextPageToken;
+	}
+
+	/**
+	 * Build a page from rows that were fetched with "LIMIT pageSize + 1". The
+	 * extra row (if present) only tells us there is another page and is dropped.
+	 *
+	 * @param rows     the rows fetched in sort order.
+	 * @param pageSize the amount of rows the caller asked for.
+	 * @param kind     the query the rows are from (see PageToken).
+	 * @param sortKey  gets the sort key of a row (may return null when the query
+	 *                 sorts on the id alone).
+	 * @param id       gets the unique id (tie breaker) of a row.
+	 * @return the page of results
+	 */
+	public static <T> Page<T> fromRows(List<T> rows, int pageSize, String kind, Function<T, String> sortKey,
+			ToLongFunction<T> id) {
+		if (rows.size() <= pageSize)
+			return new Page<T>(rows, null);
+
+		List<T> items = new ArrayList<T>(rows.subList(0, pageSize));
+		T last = items.get(pageSize - 1);
+		return new Page<T>(items, PageToken.encode(kind, sortKey.apply(last), id.applyAsLong(last)));
+	}
+
+	public static <T> Page<T> empty() {
+		return new Page<T>(new ArrayList<T>(0), null);
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return the token for the next page or null if this is the last page.
+	 */
+	public String getNextPageToken() {
+		return nextPageToken;
+	}
+
+	public boolean hasNextPage() {
+		return nextPageToken != null;
+	}
+}
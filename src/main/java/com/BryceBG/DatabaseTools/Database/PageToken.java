@@ -0,0 +1,113 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation token for keyset (seek) pagination. A token holds the sort key
+ * and id of the last row of a page so the next page can be fetched with
+ * "WHERE (sort_key, id) > (?, ?) ORDER BY sort_key, id LIMIT ?" which is an
+ * index range scan no matter how deep into the results we are (unlike OFFSET).
+ *
+ * Tokens are opaque to callers (url safe base64) and are tagged with the kind
+ * of query they came from so a token from one query is rejected by another.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class PageToken {
+	// page size used when the caller doesn't ask for one
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	// largest page we will hand out in one call
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private static final String SEPARATOR = "\n";
+
+	private final String sortKey;
+	private final long id;
+
+	private PageToken(String sortKey, long id) {
+		this.sortKey = sortKey;
+		this.id = id;
+	}
+
+	/**
+	 * Create a token for the row with the sort key and id passed in.
+	 *
+	 * @param kind    the query the token is for.
+	 * @param sortKey the sort key of the last row on the page (null if the query
+	 *                only sorts on the id).
+	 * @param id      the id of the last row on the page.
+	 * @return the encoded token.
+	 */
+	public static String encode(String kind, String sortKey, long id) {
+		String raw = kind + SEPARATOR + id;
+		if (sortKey != null)
+			raw += SEPARATOR + sortKey;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decode a token handed back by a caller.
+	 *
+	 * @param kind  the query the token is expected to be for.
+	 * @param token the token (null for the first page).
+	 * @return a token positioned before the first row if token is null. Otherwise
+	 *         the decoded token or null if the token is malformed or is for a
+	 *         different kind of query.
+	 */
+	public static PageToken decode(String kind, String token) {
+		if (token == null)
+			return new PageToken(null, 0);
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			// limit of 3 so a sort key containing the separator survives
+			String[] parts = raw.split(SEPARATOR, 3);
+			if (parts.length < 2 || !parts[0].equals(kind))
+				return null;
+			return new PageToken(parts.length == 3 ? parts[2] : null, Long.parseLong(parts[1]));
+		} catch (IllegalArgumentException e) { // also covers NumberFormatException
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if token is null (first page) or a well formed token for kind.
+	 */
+	public static boolean isValid(String kind, String token) {
+		return decode(kind, token) != null;
+	}
+
+	/**
+	 * Clamp a requested page size to [1, MAX_PAGE_SIZE]. Values <= 0 get the
+	 * default page size.
+	 */
+	public static int clampPageSize(int pageSize) {
+		if (pageSize <= 0)
+			return DEFAULT_PAGE_SIZE;
+		return Math.min(pageSize, MAX_PAGE_SIZE);
+	}
+
+	/**
+	 * @return true if this token is for the first page (no rows seen yet).
+	 */
+	public boolean isFirstPage() {
+		return id == 0 && sortKey == null;
+	}
+
+	/**
+	 * @return the sort key of the last row seen. The empty string (which sorts
+	 *         before everything) for the first page or id only queries.
+	 */
+	public String getSortKey() {
+		return sortKey == null ? "" : sortKey;
+	}
+
+	/**
+	 * @return the id of the last row seen (0 for the first page as all of our ids
+	 *         start at 1).
+	 */
+	public long getID() {
+		return id;
+	}
+}
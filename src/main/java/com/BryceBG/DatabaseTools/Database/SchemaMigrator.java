@@ -0,0 +1,453 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.ibatis.io.Resources;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Brings the library database's schema up to date by applying the numbered
+ * scripts in resources/migrations in order. The versions that have been
+ * applied are recorded in the schema_version table so:<br>
+ * 1. checking a library on startup is a single query (getCurrentVersion()) and
+ * nothing is re-run when it is already current<br>
+ * 2. an existing library is upgraded in place by running only the scripts it
+ * is missing. Libraries created before schema_version existed are recorded at
+ * version 1 and upgraded from there (the later scripts check before they
+ * change anything)<br>
+ * 3. scripts that create indexes CONCURRENTLY are run outside of a transaction
+ * so the library stays writable while they build.
+ *
+ * Every other script runs in one transaction together with its schema_version
+ * row so it is either applied completely or not at all. A postgres advisory
+ * lock keeps two processes from migrating the same library at once.
+ *
+ * Scripts are split on semicolons outside of quotes and comments (dollar
+ * quoting isn't supported). To change the schema append a new migration to
+ * MIGRATIONS, applied scripts are never edited (a changed script is logged as
+ * a warning the next time migrate() runs).
+ *
+ * @author Bryce-BG
+ *
+ */
+public final class SchemaMigrator {
+	private static final Logger logger = LogManager.getLogger(SchemaMigrator.class.getName());
+
+	// every migration in the order it is applied
+	private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+			new Migration(1, "baseline", "V1__baseline.sql", true),
+			new Migration(2, "rating sums, full text search and file state", "V2__ratings_search_file_state.sql",
+					true),
+			new Migration(3, "index pack", "V3__index_pack.sql", false)));
+
+	// pg_advisory_lock() key held while migrating ("LibMigr")
+	private static final long MIGRATION_LOCK_KEY = 0x4c69624d696772L;
+
+	private static final Pattern CREATE_INDEX = Pattern.compile(
+			"^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?:CONCURRENTLY\\s+)?(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern DROP_INDEX = Pattern
+			.compile("^DROP\\s+INDEX\\s+(?:CONCURRENTLY\\s+)?(?:IF\\s+EXISTS\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+	private static final String SQL_CURRENT_VERSION = "SELECT max(version) FROM schema_version";
+	private static final String SQL_HAS_TABLE = "SELECT to_regclass(?) IS NOT NULL";
+	private static final String SQL_CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version "
+			+ "(version INT, description VARCHAR NOT NULL, script VARCHAR NOT NULL, checksum BIGINT NOT NULL, "
+			+ "applied_at TIMESTAMP NOT NULL DEFAULT now(), PRIMARY KEY (version))";
+	private static final String SQL_APPLIED_VERSIONS = "SELECT version, checksum FROM schema_version";
+	private static final String SQL_INSERT_VERSION = "INSERT INTO schema_version (version, description, script, checksum) "
+			+ "VALUES (?, ?, ?, ?)";
+	private static final String SQL_INVALID_INDEXES = "SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid "
+			+ "WHERE NOT i.indisvalid AND c.relnamespace = current_schema()::regnamespace AND c.relname = ANY(?)";
+
+	// postgres' SQLState for a table that doesn't exist
+	private static final String UNDEFINED_TABLE = "42P01";
+
+	private SchemaMigrator() {
+	}
+
+	/**
+	 * @return every migration, in the order they are applied.
+	 */
+	public static List<Migration> getMigrations() {
+		return MIGRATIONS;
+	}
+
+	/**
+	 * @return the schema version this version of the app expects.
+	 */
+	public static int getLatestVersion() {
+		return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+	}
+
+	/**
+	 * Get the schema version of the current library database. This is the one
+	 * query startup makes when the library is up to date.
+	 *
+	 * @return the highest version applied, 0 if the library has no schema_version
+	 *         table (a new database or one created before migrations) or -1 if the
+	 *         database couldn't be read.
+	 */
+	public static int getCurrentVersion() {
+		try (Connection conn = DAORoot.library.connectToDB()) {
+			return helperCurrentVersion(conn);
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Reading the schema version failed: " + e.getMessage());
+		}
+		return -1;
+	}
+
+	/**
+	 * Check the library's schema version on startup and apply the migrations it
+	 * is missing (unless "db.migrate_on_startup" is false).
+	 *
+	 * @return true if the library is at the latest version.
+	 */
+	public static boolean checkOnStartup() {
+		int current = getCurrentVersion();
+		if (current < 0)
+			return false;
+		int latest = getLatestVersion();
+		if (current == latest) {
+			logger.info("Library schema is at version {}", current);
+			return true;
+		}
+		if (current > latest) {
+			logger.error("The library is at schema version {} which is newer than this app supports ({})", current,
+					latest);
+			return false;
+		}
+		if (!Utils.getConfigBoolean("db.migrate_on_startup", true)) {
+			logger.warn("The library is at schema version {} but the app needs version {} (run with -m to migrate)",
+					current, latest);
+			return false;
+		}
+		return migrate(false) >= 0;
+	}
+
+	/**
+	 * Apply every migration the current library database hasn't had yet. Safe
+	 * to run at any time: nothing is run again on a library that is up to date.
+	 *
+	 * @param showResults if each statement should be printed as it is executed.
+	 * @return the number of migrations applied or -1 if one of them failed (the
+	 *         migrations before it stay applied).
+	 */
+	public static int migrate(boolean showResults) {
+		try (Connection conn = DAORoot.library.connectToDB()) {
+			conn.setAutoCommit(true);
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute("SELECT pg_advisory_lock(" + MIGRATION_LOCK_KEY + ")");
+			}
+			try {
+				return helperMigrate(conn, showResults);
+			} finally {
+				try (Statement stmt = conn.createStatement()) {
+					stmt.execute("SELECT pg_advisory_unlock(" + MIGRATION_LOCK_KEY + ")");
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Error occured during a schema migration: " + e.getMessage());
+		} catch (IOException e) {
+			logger.error("Exception occured during trying to read a migration script: " + e.getMessage());
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the names of the indexes the migrations leave in the database, in
+	 *         the order they are created.
+	 */
+	public static List<String> getIndexNames() {
+		LinkedHashSet<String> rtVal = new LinkedHashSet<String>();
+		for (Migration migration : MIGRATIONS) {
+			try {
+				for (String sql : splitStatements(migration.readScript())) {
+					Matcher m = CREATE_INDEX.matcher(sql);
+					if (m.find())
+						rtVal.add(m.group(1).toLowerCase(Locale.ROOT));
+					m = DROP_INDEX.matcher(sql);
+					if (m.find())
+						rtVal.remove(m.group(1).toLowerCase(Locale.ROOT));
+				}
+			} catch (IOException e) {
+				logger.error("Exception occured during trying to read script {}. The exception was: {}",
+						migration.script, e.getMessage());
+			}
+		}
+		return new ArrayList<String>(rtVal);
+	}
+
+	/**
+	 * Split a script into its statements: on semicolons that aren't inside a
+	 * quoted string, quoted identifier or comment. Comments are removed.
+	 *
+	 * @return the statements (trimmed, without the semicolon). Empty statements
+	 *         are left out.
+	 */
+	public static List<String> splitStatements(String script) {
+		List<String> rtVal = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		int x = 0;
+		while (x < script.length()) {
+			char c = script.charAt(x);
+			if (script.startsWith("--", x)) { // line comment (the newline is kept)
+				int end = script.indexOf('\n', x);
+				x = end < 0 ? script.length() : end;
+			} else if (script.startsWith("/*", x)) {
+				int end = script.indexOf("*/", x + 2);
+				x = end < 0 ? script.length() : end + 2;
+				sb.append(' ');
+			} else if (c == '\'' || c == '"') { // '' and "" escapes are read as two quoted runs
+				int end = script.indexOf(c, x + 1);
+				end = end < 0 ? script.length() : end + 1;
+				sb.append(script, x, end);
+				x = end;
+			} else if (c == ';') {
+				helperAddStatement(rtVal, sb);
+				x++;
+			} else {
+				sb.append(c);
+				x++;
+			}
+		}
+		helperAddStatement(rtVal, sb);
+		return rtVal;
+	}
+
+	private static void helperAddStatement(List<String> statements, StringBuilder sb) {
+		String sql = sb.toString().trim();
+		if (!sql.isEmpty())
+			statements.add(sql);
+		sb.setLength(0);
+	}
+
+	private static int helperCurrentVersion(Connection conn) throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_CURRENT_VERSION);
+				ResultSet rs = pstmt.executeQuery()) {
+			rs.next();
+			return rs.getInt(1); // 0 for an empty table
+		} catch (SQLException e) {
+			if (UNDEFINED_TABLE.equals(e.getSQLState()))
+				return 0;
+			throw e;
+		}
+	}
+
+	private static boolean helperHasTable(Connection conn, String table) throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_HAS_TABLE)) {
+			pstmt.setString(1, table);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				rs.next();
+				return rs.getBoolean(1);
+			}
+		}
+	}
+
+	/**
+	 * Apply the missing migrations (called while holding the migration lock).
+	 */
+	private static int helperMigrate(Connection conn, boolean showResults) throws SQLException, IOException {
+		// 1. another process may have migrated the library while we waited for the lock
+		if (helperCurrentVersion(conn) == getLatestVersion())
+			return 0;
+
+		// 2. a library created before schema_version existed is at version 1
+		boolean existing = !helperHasTable(conn, "schema_version") && helperHasTable(conn, "books");
+		try (Statement stmt = conn.createStatement()) {
+			stmt.execute(SQL_CREATE_VERSION_TABLE);
+		}
+		if (existing) {
+			Migration baseline = MIGRATIONS.get(0);
+			helperRecordVersion(conn, baseline, "baseline (existing library)", baseline.readScript());
+			logger.info("Recorded the existing library at schema version {}", baseline.version);
+		}
+
+		// 3. apply the rest in order
+		HashMap<Integer, Long> applied = new HashMap<Integer, Long>();
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_APPLIED_VERSIONS);
+				ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next())
+				applied.put(rs.getInt(1), rs.getLong(2));
+		}
+		int rtVal = 0;
+		for (Migration migration : MIGRATIONS) {
+			String script = migration.readScript();
+			Long appliedChecksum = applied.get(migration.version);
+			if (appliedChecksum != null) {
+				if (appliedChecksum != checksum(script))
+					logger.warn("Migration {} ({}) has changed since it was applied", migration.version,
+							migration.script);
+				continue;
+			}
+			long start = System.currentTimeMillis();
+			helperApply(conn, migration, script, showResults);
+			logger.info("Applied schema migration {} ({}) in {} ms", migration.version, migration.description,
+					System.currentTimeMillis() - start);
+			rtVal++;
+		}
+		return rtVal;
+	}
+
+	private static void helperApply(Connection conn, Migration migration, String script, boolean showResults)
+			throws SQLException {
+		List<String> statements = splitStatements(script);
+		if (!migration.transactional) {
+			// statements that ran before a failure stay applied so the script must be safe to re-run
+			helperDropInvalidIndexes(conn, statements);
+			helperExecute(conn, migration, statements, showResults);
+			helperRecordVersion(conn, migration, migration.description, script);
+			return;
+		}
+		conn.setAutoCommit(false);
+		try {
+			helperExecute(conn, migration, statements, showResults);
+			helperRecordVersion(conn, migration, migration.description, script);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	private static void helperExecute(Connection conn, Migration migration, List<String> statements,
+			boolean showResults) throws SQLException {
+		try (Statement stmt = conn.createStatement()) {
+			for (int x = 0; x < statements.size(); x++) {
+				if (showResults)
+					System.out.println(statements.get(x) + ";");
+				try {
+					stmt.execute(statements.get(x));
+				} catch (SQLException e) {
+					throw new SQLException(String.format("migration %d (%s) statement %d failed: %s", migration.version,
+							migration.script, x + 1, e.getMessage()), e.getSQLState(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A concurrent index build that fails leaves an invalid index behind which
+	 * IF NOT EXISTS would skip, so drop the script's invalid indexes first.
+	 */
+	private static void helperDropInvalidIndexes(Connection conn, List<String> statements) throws SQLException {
+		List<String> names = new ArrayList<String>();
+		for (String sql : statements) {
+			Matcher m = CREATE_INDEX.matcher(sql);
+			if (m.find())
+				names.add(m.group(1).toLowerCase(Locale.ROOT));
+		}
+		if (names.isEmpty())
+			return;
+		List<String> invalid = new ArrayList<String>();
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_INVALID_INDEXES)) {
+			pstmt.setArray(1, conn.createArrayOf("varchar", names.toArray()));
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next())
+					invalid.add(rs.getString(1));
+			}
+		}
+		try (Statement stmt = conn.createStatement()) {
+			for (String index : invalid) {
+				logger.warn("Dropping invalid index {} left by a failed build", index);
+				stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index);
+			}
+		}
+	}
+
+	private static void helperRecordVersion(Connection conn, Migration migration, String description, String script)
+			throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERT_VERSION)) {
+			pstmt.setInt(1, migration.version);
+			pstmt.setString(2, description);
+			pstmt.setString(3, migration.script);
+			pstmt.setLong(4, checksum(script));
+			pstmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * @return the CRC32 of the script ignoring line endings (so a checkout with
+	 *         CRLF line endings has the same checksum).
+	 */
+	static long checksum(String script) {
+		CRC32 crc = new CRC32();
+		crc.update(script.replace("\r", "").getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/**
+	 * One numbered schema change.
+	 */
+	public static final class Migration {
+		private final int version;
+		private final String description;
+		private final String script; // resource name in GlobalConstants.DB_MIGRATIONS_PATH
+		private final boolean transactional;
+
+		Migration(int version, String description, String script, boolean transactional) {
+			this.version = version;
+			this.description = description;
+			this.script = script;
+			this.transactional = transactional;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getScript() {
+			return script;
+		}
+
+		/**
+		 * @return false for scripts that must run outside of a transaction (CREATE
+		 *         INDEX CONCURRENTLY).
+		 */
+		public boolean isTransactional() {
+			return transactional;
+		}
+
+		public String readScript() throws IOException {
+			try (InputStream in = Resources.getResourceAsStream(GlobalConstants.DB_MIGRATIONS_PATH + script)) {
+				return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d: %s (%s)", version, description, script);
+		}
+	}
+}
@@ -21,6 +21,8 @@ public class Series {
 	
 	private int numberBooksInSeries;
 	private series_status_enum seriesStatus;
+	private float averageRating = 0.0f; // average of the ratings of every book in the series
+	private long ratingCount = 0;
 
 	public Series(int series_id, String seriesName, int primaryAuthorID, int numberBooksInSeries,
 			series_status_enum seriesStatus) {
@@ -70,4 +72,20 @@ public class Series {
 	public void setPrimaryAuthorID(int primaryAuthorID) {
 		this.primaryAuthorID = primaryAuthorID;
 	}
+
+	public float getAverageRating() {
+		return averageRating;
+	}
+
+	public void setAverageRating(float averageRating) {
+		this.averageRating = averageRating;
+	}
+
+	public long getRatingCount() {
+		return ratingCount;
+	}
+
+	public void setRatingCount(long ratingCount) {
+		this.ratingCount = ratingCount;
+	}
 }
@@ -1,13 +1,13 @@
 package com.BryceBG.DatabaseTools.Database.Series;
 
-import static com.BryceBG.DatabaseTools.Database.DAORoot.userDao;
-
 import java.util.ArrayList;
 
 import org.javatuples.Pair;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
 import com.BryceBG.DatabaseTools.Database.Author.Author;
+import com.BryceBG.DatabaseTools.Database.User.Session;
 import com.BryceBG.DatabaseTools.Database.User.UserController;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
@@ -27,14 +27,32 @@ public class SeriesController {
 	 */
 	public static Pair<Boolean, String> createSeries(String username, String password, String series_name,
 			Pair<String, String>[] authorNames) {
+		// 0. ensure user exists and has correct password
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperCreateSeries(caller, series_name, authorNames));
+	}
+
+	/**
+	 * Same as createSeries() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> createSeries(String sessionToken, String series_name,
+			Pair<String, String>[] authorNames) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperCreateSeries(caller, series_name, authorNames));
+	}
+
+	private static Pair<Boolean, String> helperCreateSeries(Session caller, String series_name,
+			Pair<String, String>[] authorNames) {
 		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 
-		// 0. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
 
 		// 0.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 1. validate inputs
@@ -101,14 +119,32 @@ public class SeriesController {
 	 */
 	public static Pair<Boolean, String> removeSeries(String username, String password, String series_name,
 			Pair<String, String>[] authorNames) {
+		// 0. ensure user exists and has correct password
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperRemoveSeries(caller, series_name, authorNames));
+	}
+
+	/**
+	 * Same as removeSeries() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> removeSeries(String sessionToken, String series_name,
+			Pair<String, String>[] authorNames) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperRemoveSeries(caller, series_name, authorNames));
+	}
+
+	private static Pair<Boolean, String> helperRemoveSeries(Session caller, String series_name,
+			Pair<String, String>[] authorNames) {
 		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 
-		// 0. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
 
 		// 0.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 1. validate inputs
@@ -185,14 +221,34 @@ public class SeriesController {
 	public static Pair<Boolean, String> updateSeries(String username, String password, String series_name,
 			Pair<String, String>[] authorNames, SeriesDao.UpdateType newUpdateType,
 			Series.series_status_enum newSeriesStatus) {
+		// 0. ensure user exists and has correct password
+		Session caller = UserController.authenticateSession(username, password);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		return UnitOfWork.run(() -> helperUpdateSeries(caller, series_name, authorNames, newUpdateType, newSeriesStatus));
+	}
+
+	/**
+	 * Same as updateSeries() but the caller is identified by the session token
+	 * returned by UserController.login() instead of their username and password.
+	 */
+	public static Pair<Boolean, String> updateSeries(String sessionToken, String series_name,
+			Pair<String, String>[] authorNames, SeriesDao.UpdateType newUpdateType,
+			Series.series_status_enum newSeriesStatus) {
+		Session caller = UserController.getSession(sessionToken);
+		if (caller == null)
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		return UnitOfWork.run(() -> helperUpdateSeries(caller, series_name, authorNames, newUpdateType, newSeriesStatus));
+	}
+
+	private static Pair<Boolean, String> helperUpdateSeries(Session caller, String series_name,
+			Pair<String, String>[] authorNames, SeriesDao.UpdateType newUpdateType,
+			Series.series_status_enum newSeriesStatus) {
 		Pair<Boolean, String> rtVal = new Pair<Boolean, String>(Boolean.FALSE, "");
 
-		// 0. ensure user exists and has correct password
-		if (!UserController.authenticate(username, password))
-			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER);
 
 		// 0.b ensure user has permission to perform operation
-		if (userDao.getUserByUsername(username).isAdmin() == false)
+		if (caller.isAdmin() == false)
 			return rtVal.setAt1(GlobalConstants.MSG_INVALID_USER_PERMISSIONS);
 
 		// 1. validate inputs
@@ -4,19 +4,27 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.BryceBG.DatabaseTools.Database.CursorScanner;
 import com.BryceBG.DatabaseTools.Database.DAORoot; //for our instantiated objects inheritence
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
 
 
 public class SeriesDao {
 	private static final Logger logger = LogManager.getLogger(SeriesDao.class.getName());
 
+	// the kind of the page tokens from getAllSeriesPage() (see PageToken)
+	public static final String PAGE_KIND = "series";
+
 	/**
 	 * enum used by updateSeriesBookCount to indicate if we want to increment (INC) or decrement (DEC) the number of books in a series.
 	 * @author Bryce-BG
@@ -99,6 +107,8 @@ public class SeriesDao {
 			if (rs == 1) {
 				// update was successful
 				rtVal = true;
+				// books in the series are moved out of it (series_id ON DELETE SET DEFAULT)
+				DAORoot.bookDao.invalidateCachedBooks();
 			} else {
 				logger.info(String.format("The removeSeries failed: the execute update returned: %d", rs));
 				rtVal = false;
@@ -134,14 +144,8 @@ public class SeriesDao {
 			try (ResultSet rs = pstmt.executeQuery()) {
 
 				if (rs.next()) { // 3. check if sql query for series returned an answer.
-					// 4. extract results from result set needed to create Series object
-					int series_id = rs.getInt("series_id");
-					int primary_author_id = rs.getInt("primary_author_id");
-					String series_name = rs.getString("series_name");
-					int number_books_in_series = rs.getInt("number_books_in_series");
-					Series.series_status_enum status = Series.series_status_enum.valueOf(rs.getString("series_status"));
-					// 5. create our return object with the values
-					rtVal = new Series(series_id, series_name, primary_author_id, number_books_in_series, status);
+					// 4. create our return object with the values
+					rtVal = helperGetSeriesFromRow(rs);
 				} else {
 					logger.info(String.format(
 							"The query for (series: %s, authorID: %d) returned null. I.e. no match was found in the database.",
@@ -178,14 +182,8 @@ public class SeriesDao {
 			try (ResultSet rs = pstmt.executeQuery()) {
 
 				if (rs.next()) { // 3. check if sql query for series returned an answer.
-					// 4. extract results from result set needed to create Series object
-					int primary_author_id = rs.getInt("primary_author_id");
-					String series_name = rs.getString("series_name");
-					int number_books_in_series = rs.getInt("number_books_in_series");
-					Series.series_status_enum status = Series.series_status_enum.valueOf(rs.getString("series_status"));
-					// 5. create our return object with the values
-					
-					rtVal = new Series(seriesID, series_name, primary_author_id, number_books_in_series, status);
+					// 4. create our return object with the values
+					rtVal = helperGetSeriesFromRow(rs);
 				} else {
 					logger.info(String.format(
 							"The query for series with ID %d returned null. I.e. no match was found in the database.",
@@ -217,72 +215,247 @@ public class SeriesDao {
 			try (ResultSet rs = pstmt.executeQuery()) {
 				// 3. loop through records returned to parse our data.
 				while (rs.next()) {
-					// 4. extract results from result set needed to create Series object
+					// 4. create our return object with the values from the row
+					rtVal.add(helperGetSeriesFromRow(rs));
+				}
 
-					int seriesID = rs.getInt("series_id");
-					int primary_author_id = rs.getInt("primary_author_id");
-					String series_name = rs.getString("series_name");
-					int number_books_in_series = rs.getInt("number_books_in_series");
-					Series.series_status_enum status = Series.series_status_enum.valueOf(rs.getString("series_status"));
+			} // end of try-with-resources: result set
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
 
-					// 5. create our return object with the values
+	/**
+	 * Paged version of getAllSeries(). Uses keyset pagination so every page costs the
+	 * same no matter how deep into the results it is.
+	 * 
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of results on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid or an error occurred. Otherwise
+	 *         the page of results.
+	 */
+	public Page<Series> getAllSeriesPage(String pageToken, int pageSize) {
+		String kind = PAGE_KIND;
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+		ArrayList<Series> rows = new ArrayList<Series>();
+		String sql = "SELECT * FROM series WHERE (series_name, series_id) > (?, ?) ORDER BY series_name, series_id LIMIT ?";
 
-					rtVal.add(new Series(seriesID, series_name, primary_author_id, number_books_in_series, status));
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setString(1, token.getSortKey());
+			pstmt.setLong(2, token.getID());
+			pstmt.setInt(3, pageSize + 1);
+			// 2. execute our query and read the rows (one more than the page size so we
+			// know if there is another page).
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rows.add(helperGetSeriesFromRow(rs));
 				}
-
 			} // end of try-with-resources: result set
 		} // end of try-with-resources: connection
 			// catch blocks for try-with-resources: connection
 		catch (ClassNotFoundException e) {
 			logger.error("Exception occured during connectToDB: " + e.getMessage());
+			return null;
 		} catch (SQLException e) {
 			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			return null;
 		}
-		return rtVal;
+		return Page.fromRows(rows, pageSize, kind, Series::getSeriesName, Series::getSeriesID);
+	}
+
+	/**
+	 * Function to visit every series in the database without holding them all in
+	 * memory (see CursorScanner).
+	 * 
+	 * @param action called once for every series (in no particular order).
+	 * @return true if every series was visited without errors.
+	 */
+	public boolean forEachSeries(Consumer<? super Series> action) {
+		return CursorScanner.scan("SELECT * FROM series", CursorScanner.DEFAULT_FETCH_SIZE,
+				this::helperGetSeriesFromRow, (conn, chunk) -> {
+					chunk.forEach(action);
+					return true;
+				});
+	}
+
+	/**
+	 * Helper function that creates a Series from the current row of a result set
+	 * over the series table.
+	 */
+	private Series helperGetSeriesFromRow(ResultSet rs) throws SQLException {
+		int seriesID = rs.getInt("series_id");
+		int primary_author_id = rs.getInt("primary_author_id");
+		String series_name = rs.getString("series_name");
+		int number_books_in_series = rs.getInt("number_books_in_series");
+		Series.series_status_enum status = Series.series_status_enum.valueOf(rs.getString("series_status"));
+		Series series = new Series(seriesID, series_name, primary_author_id, number_books_in_series, status);
+		long ratingCount = rs.getLong("rating_count");
+		series.setRatingCount(ratingCount);
+		if (ratingCount > 0)
+			series.setAverageRating(rs.getBigDecimal("rating_sum").floatValue() / ratingCount);
+		return series;
 	}
 
 	/**
 	 * This function is to allow the increment and decrement of series.number_books_in_series
 	 * count. This should be called whenever a new book is added or removed from a series.
 	 * 
+	 * The count is changed by the database (number_books_in_series + 1) in a single
+	 * statement so concurrent updates to the same series can't overwrite each other.
+	 * 
 	 * @param seriesName The name of the series we are modifying.
 	 * @param authorID   The ID of the author who wrote the series.
 	 * @param updateType The type of update we are performing on our series (can be to increment or decrement the amount of books in the series).
-	 * @return True if update was successful. False otherwise.
+	 * @return True if update was successful. False otherwise (including when the
+	 *         series doesn't exist or the count would drop below 0).
 	 */
 	public boolean updateSeriesBookCount(String seriesName, int authorID, UpdateType updateType) {
-		boolean rtVal = false;
-		// 0. ensure series exists
-		Series theSeries = DAORoot.seriesDao.getSeriesByNameAndAuthorID(seriesName, authorID);
-		if (theSeries != null && updateType!=null) {
-			String sql = "UPDATE series SET number_books_in_series=? WHERE series_name=? AND primary_author_id=?";
+		if (!DaoUtils.stringIsOk(seriesName))
+			return false;
+		String sql = "UPDATE series SET number_books_in_series = number_books_in_series + ? WHERE series_name=? AND primary_author_id=?";
+		return helperUpdateSeriesBookCount(sql, updateType, pstmt -> {
+			pstmt.setString(2, seriesName);
+			pstmt.setInt(3, authorID);
+		});
+	}
 
-			// 1. establish connection to our database
-			try (Connection conn = DAORoot.library.connectToDB();
-					PreparedStatement pstmt = conn.prepareStatement(sql);) {
-				// 2. set parameters in the prepared statement
-		        int updateBy = (updateType.equals(UpdateType.INC)) ? 1 : -1; //should we increment or decrement
-				pstmt.setInt(1, theSeries.getNumberBooksInSeries()+updateBy);
-				pstmt.setString(2, seriesName);
-				pstmt.setInt(3, authorID);
+	/**
+	 * Same as updateSeriesBookCount(String, int, UpdateType) but keyed by the
+	 * series_id (books reference their series by ID so callers don't have to look
+	 * up the series first).
+	 * 
+	 * @param seriesID   The ID of the series we are modifying.
+	 * @param updateType INC or DEC
+	 * @return True if update was successful. False otherwise.
+	 */
+	public boolean updateSeriesBookCount(int seriesID, UpdateType updateType) {
+		String sql = "UPDATE series SET number_books_in_series = number_books_in_series + ? WHERE series_id=?";
+		return helperUpdateSeriesBookCount(sql, updateType, pstmt -> pstmt.setInt(2, seriesID));
+	}
 
-				// 3. execute our query for to update count.
-				int rtUp = pstmt.executeUpdate();
+	/**
+	 * Sets parameters 2+ of a count update (the WHERE clause).
+	 */
+	private interface SeriesKeySetter {
+		void set(PreparedStatement pstmt) throws SQLException;
+	}
 
-				// 4. check if sql update performed operation and updated only one row.
-				if (rtUp == 1) {
-					rtVal = true;
-				} else {
-					logger.warn(
-							String.format("Updating the number_books_in_series has incorrectly updated %s rows", rtUp));
-				}
-			} // end of try-with-resources: connection
-				// catch blocks for try-with-resources: connection
-			catch (ClassNotFoundException e) {
-				logger.error("Exception occured during connectToDB: " + e.getMessage());
-			} catch (SQLException e) {
-				logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+	private boolean helperUpdateSeriesBookCount(String sql, UpdateType updateType, SeriesKeySetter keySetter) {
+		boolean rtVal = false;
+		if (updateType != UpdateType.INC && updateType != UpdateType.DEC)
+			return false;
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			// 2. set parameters in the prepared statement
+			int updateBy = (updateType.equals(UpdateType.INC)) ? 1 : -1; // should we increment or decrement
+			pstmt.setInt(1, updateBy);
+			keySetter.set(pstmt);
+
+			// 3. execute our query for to update count (the protect_in_use_series_entry_update
+			// rule turns an update that would make the count negative into a no-op).
+			int rtUp = pstmt.executeUpdate();
+
+			// 4. check if sql update performed operation and updated only one row.
+			if (rtUp == 1) {
+				rtVal = true;
+			} else {
+				logger.warn(String.format("Updating the number_books_in_series has incorrectly updated %s rows", rtUp));
 			}
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Recompute number_books_in_series for every series from the books table in one
+	 * statement. The counts are kept up to date incrementally, this repairs any
+	 * that drifted (e.g. books edited by hand in the database or counts written
+	 * before the updates were atomic).
+	 * 
+	 * The series table is locked against count updates while the counts are
+	 * recomputed so an import running at the same time can't have its increments
+	 * overwritten.
+	 * 
+	 * @return The number of series whose count was corrected or -1 if the
+	 *         reconciliation failed.
+	 */
+	public int reconcileSeriesBookCounts() {
+		int rtVal = -1;
+		String sql = "UPDATE series s SET number_books_in_series = c.num_books "
+				+ "FROM (SELECT series.series_id, count(books.book_id) AS num_books FROM series "
+				+ "LEFT JOIN books ON books.series_id = series.series_id GROUP BY series.series_id) c "
+				+ "WHERE s.series_id = c.series_id AND s.number_books_in_series IS DISTINCT FROM c.num_books";
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); Statement stmt = conn.createStatement();) {
+			conn.setAutoCommit(false);
+			// 2. block count updates (but not reads) until we commit
+			stmt.execute("LOCK TABLE series IN SHARE ROW EXCLUSIVE MODE");
+			// 3. recompute
+			rtVal = stmt.executeUpdate(sql);
+			conn.commit();
+			if (rtVal > 0)
+				logger.info("Reconciled the book count of {} series", rtVal);
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+			rtVal = -1;
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Move a book's ratings (books.rating_sum and rating_count) out of one series'
+	 * rating totals and into another's. Called when a book leaves or joins a series
+	 * so the series average stays up to date without recomputing it. The book's row
+	 * is locked until the caller's transaction ends so no rating can change it in
+	 * between.
+	 * 
+	 * @param bookID       ID of the book that is moving
+	 * @param fromSeriesID the series it is leaving (0 if it wasn't in one)
+	 * @param toSeriesID   the series it is joining (0 if it is being removed)
+	 * @return True if the update was successful. False otherwise.
+	 */
+	public boolean moveBookRatings(long bookID, int fromSeriesID, int toSeriesID) {
+		boolean rtVal = false;
+		String sql = "WITH b AS (SELECT rating_sum, rating_count FROM books WHERE book_id=? FOR UPDATE) "
+				+ "UPDATE series SET rating_sum = series.rating_sum + CASE WHEN series.series_id=? THEN b.rating_sum ELSE -b.rating_sum END, "
+				+ "rating_count = series.rating_count + CASE WHEN series.series_id=? THEN b.rating_count ELSE -b.rating_count END "
+				+ "FROM b WHERE series.series_id IN (?, ?)";
+		if (fromSeriesID == toSeriesID)
+			return true;
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setLong(1, bookID);
+			pstmt.setInt(2, toSeriesID);
+			pstmt.setInt(3, toSeriesID);
+			pstmt.setInt(4, fromSeriesID);
+			pstmt.setInt(5, toSeriesID);
+			// 2. execute (a series ID of 0 matches no row)
+			pstmt.executeUpdate();
+			rtVal = true;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
 		}
 		return rtVal;
 	}
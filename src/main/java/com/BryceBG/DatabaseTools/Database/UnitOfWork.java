@@ -0,0 +1,380 @@
+package com.BryceBG.DatabaseTools.Database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.TransactionState;
+import org.postgresql.jdbc.AutoSave;
+
+/**
+ * A database transaction bound to the current thread. While a unit of work is
+ * open every LibraryDB.connectToDB() call on the thread (i.e. every DAO call)
+ * joins it: they share one pooled connection and nothing is committed until the
+ * unit is. This lets a controller run several DAO calls as one atomic operation
+ * without passing a connection around:
+ *
+ * <pre>
+ * try (UnitOfWork uow = UnitOfWork.begin()) {
+ * 	DAORoot.bookDao.removeBook(bookID);
+ * 	DAORoot.seriesDao.updateSeriesBookCount(...);
+ * 	uow.commit();
+ * } // rolled back if commit() wasn't reached
+ * </pre>
+ *
+ * DAOs keep working unchanged inside a unit. On a joined connection:<br>
+ * 1. close() leaves the connection open for the rest of the unit<br>
+ * 2. setAutoCommit(false) starts a savepoint, commit() releases it and
+ * rollback() rolls back to it, so a DAO's own "transaction" becomes a nested
+ * one that can fail without undoing the rest of the unit<br>
+ * 3. a statement that fails outside of a DAO transaction aborts the whole unit
+ * (postgres refuses further statements) and the unit is rolled back instead of
+ * committed<br>
+ * 4. setReadOnly() is only remembered, as the unit's transaction may already
+ * be open (postgres refuses to change it then).
+ *
+ * Units nest: begin() inside a unit joins it and only the outermost commit()
+ * commits. A nested unit closed without commit() makes the whole unit roll
+ * back.
+ *
+ * beginIsolated() starts a unit that is never committed, for tests: units
+ * begun inside it act as outermost units that commit to (or roll back to) a
+ * savepoint, so the code under test behaves as usual and everything it did is
+ * undone when the isolated unit is closed.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class UnitOfWork implements AutoCloseable {
+	private static final Logger logger = LogManager.getLogger(UnitOfWork.class.getName());
+
+	private static final ThreadLocal<Scope> currentScope = new ThreadLocal<Scope>();
+
+	private final Scope scope;
+	private final boolean outermost;
+	private boolean finished = false; // commit() or close() was called
+
+	private UnitOfWork(Scope scope, boolean outermost) {
+		this.scope = scope;
+		this.outermost = outermost;
+	}
+
+	/**
+	 * Start a unit of work on the current thread (or join the one that is already
+	 * open).
+	 *
+	 * @throws ClassNotFoundException if no postgres driver was able to be used
+	 * @throws SQLException           if a connection couldn't be borrowed
+	 */
+	public static UnitOfWork begin() throws SQLException, ClassNotFoundException {
+		Scope scope = currentScope.get();
+		if (scope != null && scope.isolated) { // acts as the outermost unit, on a savepoint
+			Scope inner = new Scope(scope.library, scope.conn);
+			inner.parent = scope;
+			inner.savepoint = scope.conn.setSavepoint();
+			currentScope.set(inner);
+			return new UnitOfWork(inner, true);
+		}
+		if (scope != null)
+			return new UnitOfWork(scope, false);
+		return new UnitOfWork(helperOpenScope(), true);
+	}
+
+	/**
+	 * Start a unit of work that is always rolled back when it is closed (tests run
+	 * in one so their changes never reach the database). Units begun inside it
+	 * commit to and roll back to savepoints instead of joining it, and a failed
+	 * statement only undoes itself (the connection is switched to pgjdbc's
+	 * autosave=always for the unit) so the unit can keep going.
+	 *
+	 * @throws ClassNotFoundException if no postgres driver was able to be used
+	 * @throws SQLException           if the thread is already in a unit of work or
+	 *                                a connection couldn't be borrowed
+	 */
+	public static UnitOfWork beginIsolated() throws SQLException, ClassNotFoundException {
+		if (currentScope.get() != null)
+			throw new SQLException("An isolated unit of work can't be nested in another unit");
+		UnitOfWork rtVal = new UnitOfWork(helperOpenScope(), true);
+		rtVal.scope.isolated = true;
+		rtVal.scope.rollbackOnly = true;
+		try {
+			rtVal.scope.conn.unwrap(PGConnection.class).setAutosave(AutoSave.ALWAYS);
+		} catch (SQLException e) {
+			rtVal.close();
+			throw e;
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Borrow a connection and make it the current thread's unit of work.
+	 */
+	private static Scope helperOpenScope() throws SQLException, ClassNotFoundException {
+		LibraryDB library = DAORoot.library;
+		Connection conn = library.connectToDB();
+		try {
+			conn.setAutoCommit(false);
+		} catch (SQLException e) {
+			conn.close();
+			throw e;
+		}
+		Scope scope = new Scope(library, conn);
+		currentScope.set(scope);
+		return scope;
+	}
+
+	/**
+	 * Run a controller operation in a unit of work. The unit is committed if the
+	 * operation returns True and rolled back otherwise.
+	 *
+	 * @param operation returns (True, message) or (False, reason for failure)
+	 * @return the operation's result or (False, reason) if the unit couldn't be
+	 *         started or committed.
+	 */
+	public static Pair<Boolean, String> run(Supplier<Pair<Boolean, String>> operation) {
+		try (UnitOfWork uow = begin()) {
+			Pair<Boolean, String> rtVal = operation.get();
+			if (rtVal.getValue0().booleanValue())
+				uow.commit();
+			return rtVal;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during commit: " + e.getMessage());
+		}
+		return new Pair<Boolean, String>(Boolean.FALSE, "Operation failed and was undone. Please try again.");
+	}
+
+	/**
+	 * @return true if the current thread is in a unit of work.
+	 */
+	public static boolean isActive() {
+		return currentScope.get() != null;
+	}
+
+	/**
+	 * Run an action once the current unit of work is over (committed or rolled
+	 * back), or now if there isn't one. Used to drop cached copies of rows the unit
+	 * changed once other threads can see the change.
+	 */
+	public static void afterCompletion(Runnable action) {
+		Scope scope = currentScope.get();
+		if (scope == null)
+			action.run();
+		else
+			scope.afterCompletion.add(action);
+	}
+
+	/**
+	 * Called by LibraryDB.connectToDB().
+	 *
+	 * @return a handle to the current unit's connection or null if the thread
+	 *         isn't in a unit of work on this library.
+	 */
+	static Connection join(LibraryDB library) {
+		Scope scope = currentScope.get();
+		if (scope == null || scope.library != library)
+			return null;
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new JoinedHandle(scope));
+	}
+
+	/**
+	 * Commit the unit (only the outermost unit actually commits).
+	 *
+	 * @throws SQLException if the unit failed (was marked rollback only or had a
+	 *                      failed statement) and was rolled back instead, or the
+	 *                      commit itself failed.
+	 */
+	public void commit() throws SQLException {
+		if (finished)
+			throw new SQLException("Unit of work is already finished");
+		finished = true;
+		if (!outermost)
+			return;
+		if (scope.rollbackOnly || isFailed(scope.conn)) {
+			scope.rollback();
+			scope.rolledBack = true;
+			scope.completed = true;
+			throw new SQLException("Unit of work was rolled back because part of it failed");
+		}
+		if (scope.savepoint != null)
+			scope.conn.releaseSavepoint(scope.savepoint);
+		else
+			scope.conn.commit();
+		scope.completed = true;
+	}
+
+	/**
+	 * Make the unit roll back when it is closed (even if commit() is called).
+	 */
+	public void setRollbackOnly() {
+		scope.rollbackOnly = true;
+	}
+
+	/**
+	 * End the unit. Rolls back if commit() wasn't called.
+	 */
+	@Override
+	public void close() {
+		if (!finished) { // no commit: the operation failed part way
+			finished = true;
+			scope.rollbackOnly = true;
+		}
+		if (!outermost)
+			return;
+		if (scope.parent != null)
+			currentScope.set(scope.parent);
+		else
+			currentScope.remove();
+		scope.completed = true;
+		try {
+			if (scope.rollbackOnly && !scope.rolledBack)
+				scope.rollback();
+		} catch (SQLException e) {
+			logger.error("Exception occured during rollback: " + e.getMessage());
+		} finally {
+			try {
+				if (scope.isolated)
+					scope.conn.unwrap(PGConnection.class).setAutosave(AutoSave.NEVER);
+				if (scope.parent == null)
+					scope.conn.close(); // the pool restores auto-commit
+			} catch (SQLException e) {
+				logger.error("Exception occured during close: " + e.getMessage());
+			}
+			for (Runnable action : scope.afterCompletion)
+				action.run();
+		}
+	}
+
+	private static boolean isFailed(Connection conn) {
+		try {
+			return conn.unwrap(BaseConnection.class).getTransactionState() == TransactionState.FAILED;
+		} catch (SQLException e) { // not a postgres connection
+			return false;
+		}
+	}
+
+	/**
+	 * State shared by a unit and the units nested in it.
+	 */
+	private static final class Scope {
+		final LibraryDB library;
+		final Connection conn;
+		final List<Runnable> afterCompletion = new ArrayList<Runnable>();
+		boolean rollbackOnly = false;
+		boolean rolledBack = false;
+		boolean completed = false; // committed or closed (its savepoints are gone)
+		boolean isolated = false; // see beginIsolated()
+		Scope parent; // the isolated unit this one runs in
+		Savepoint savepoint; // where this unit starts if it has a parent
+
+		Scope(LibraryDB library, Connection conn) {
+			this.library = library;
+			this.conn = conn;
+		}
+
+		void rollback() throws SQLException {
+			if (savepoint != null)
+				conn.rollback(savepoint);
+			else
+				conn.rollback();
+		}
+	}
+
+	/**
+	 * The connection DAOs get while a unit of work is open. See the class comment
+	 * for how it differs from a pooled connection.
+	 */
+	private static final class JoinedHandle implements InvocationHandler {
+		private final Scope scope;
+		private boolean closed = false;
+		private boolean autoCommit = true; // as seen by the DAO
+		private boolean readOnly = false; // as seen by the DAO (the unit's transaction may already be open)
+		private Savepoint savepoint; // start of the DAO's own transaction
+
+		JoinedHandle(Scope scope) {
+			this.scope = scope;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("toString".equals(name)) {
+				return "UnitOfWorkConnection[" + scope.conn + "]";
+			} else if ("isClosed".equals(name)) {
+				return closed || scope.conn.isClosed();
+			} else if ("close".equals(name)) {
+				if (!closed) {
+					closed = true;
+					if (scope.completed) { // e.g. closed after the unit's commit(): nothing left to undo
+						savepoint = null;
+					} else if (savepoint != null) { // a DAO transaction left open is undone, like on a pooled connection
+						scope.conn.rollback(savepoint);
+						scope.conn.releaseSavepoint(savepoint);
+						savepoint = null;
+					} else if (isFailed(scope.conn)) {
+						scope.rollbackOnly = true;
+					}
+				}
+				return null;
+			}
+			if (closed)
+				throw new SQLException("Connection has already been closed");
+
+			if ("isReadOnly".equals(name)) {
+				return readOnly;
+			} else if ("setReadOnly".equals(name)) {
+				// a hint only: postgres can't make the unit's open transaction read only
+				readOnly = (Boolean) args[0];
+				return null;
+			} else if ("getAutoCommit".equals(name)) {
+				return autoCommit;
+			} else if ("setAutoCommit".equals(name)) {
+				boolean newAutoCommit = (Boolean) args[0];
+				if (autoCommit && !newAutoCommit) {
+					savepoint = scope.conn.setSavepoint();
+				} else if (!autoCommit && newAutoCommit && savepoint != null) { // commits, as in JDBC
+					scope.conn.releaseSavepoint(savepoint);
+					savepoint = null;
+				}
+				autoCommit = newAutoCommit;
+				return null;
+			} else if ("commit".equals(name) && (args == null || args.length == 0)) {
+				if (savepoint != null) { // the DAO may keep going in a new "transaction"
+					scope.conn.releaseSavepoint(savepoint);
+					savepoint = scope.conn.setSavepoint();
+				}
+				return null;
+			} else if ("rollback".equals(name) && (args == null || args.length == 0)) {
+				if (savepoint != null)
+					scope.conn.rollback(savepoint);
+				else
+					scope.rollbackOnly = true;
+				return null;
+			}
+
+			try {
+				return method.invoke(scope.conn, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.BryceBG.DatabaseTools.Database.User;
+
+import com.BryceBG.DatabaseTools.Database.LibraryDB;
+
+/**
+ * The user (and their permissions) that is calling a controller function. A
+ * Session is either looked up from a session token (see SessionManager) or
+ * built on the spot for a caller that authenticated with their password.
+ *
+ * The admin flag is captured when the session is created so it can be checked
+ * without going back to the database.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class Session {
+	private final String username;
+	private final long userID;
+	private final boolean isAdmin;
+	// the library the user authenticated against
+	private final LibraryDB library;
+	// System.currentTimeMillis() the session stops being valid at
+	private final long expiresAt;
+
+	Session(User user, LibraryDB library, long expiresAt) {
+		this.username = user.getUsername();
+		this.userID = user.getUserId();
+		this.isAdmin = user.isAdmin();
+		this.library = library;
+		this.expiresAt = expiresAt;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public long getUserID() {
+		return userID;
+	}
+
+	public boolean isAdmin() {
+		return isAdmin;
+	}
+
+	LibraryDB getLibrary() {
+		return library;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	public boolean isExpired(long now) {
+		return now >= expiresAt;
+	}
+}
@@ -0,0 +1,208 @@
+package com.BryceBG.DatabaseTools.Database.User;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+
+/**
+ * An in-memory store of logged in users. Logging in (which runs BCrypt once)
+ * hands out an opaque session token and every later call made with that token
+ * is verified with an HMAC and a hash map lookup instead of re-hashing the
+ * user's password.
+ *
+ * A token is the url safe base64 of: session id (16 random bytes) | expiry
+ * (8 bytes) | HMAC-SHA256 of the first two parts (truncated to 16 bytes). The
+ * HMAC key is generated at startup so forged, tampered or expired tokens are
+ * rejected before the store is even looked at, and every token becomes invalid
+ * when the application restarts (the sessions are gone at that point anyway).
+ *
+ * Sessions can be revoked one at a time (logout) or for a whole user (password
+ * change, account deletion).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class SessionManager {
+	private static final Logger logger = LogManager.getLogger(SessionManager.class.getName());
+
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int ID_LENGTH = 16;
+	private static final int MAC_LENGTH = 16;
+	private static final int TOKEN_LENGTH = ID_LENGTH + Long.BYTES + MAC_LENGTH;
+
+	private final long ttlMillis;
+	private final SecureRandom random = new SecureRandom();
+	private final SecretKeySpec key;
+	// Mac objects are not thread safe so each thread gets its own
+	private final ThreadLocal<Mac> macs;
+	// session id (base64) -> session
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	// when we next drop expired sessions from the store
+	private volatile long nextSweep;
+
+	/**
+	 * @param ttlSeconds how long a session stays valid after login.
+	 */
+	public SessionManager(int ttlSeconds) {
+		this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+		byte[] keyBytes = new byte[32];
+		random.nextBytes(keyBytes);
+		this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+		this.macs = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(key);
+				return mac;
+			} catch (GeneralSecurityException e) { // HmacSHA256 is required on every JVM
+				throw new IllegalStateException("Unable to create " + HMAC_ALGORITHM + ": " + e.getMessage(), e);
+			}
+		});
+		this.nextSweep = System.currentTimeMillis() + ttlMillis;
+	}
+
+	/**
+	 * Start a session for a user that has already been authenticated.
+	 *
+	 * @param user the authenticated user.
+	 * @return the session token to pass to the controller functions.
+	 */
+	public String createSession(User user) {
+		long now = System.currentTimeMillis();
+		sweepExpired(now);
+
+		byte[] id = new byte[ID_LENGTH];
+		random.nextBytes(id);
+		long expiresAt = now + ttlMillis;
+		sessions.put(encode(id), new Session(user, DAORoot.library, expiresAt));
+
+		ByteBuffer token = ByteBuffer.allocate(TOKEN_LENGTH);
+		token.put(id).putLong(expiresAt);
+		token.put(sign(token.array()));
+		return encode(token.array());
+	}
+
+	/**
+	 * Get the session a token belongs to.
+	 *
+	 * @param token a token returned by createSession().
+	 * @return the session or null if the token is malformed, forged, expired,
+	 *         revoked or was issued against a different database.
+	 */
+	public Session getSession(String token) {
+		byte[] id = verify(token);
+		if (id == null)
+			return null;
+		String sessionID = encode(id);
+		Session session = sessions.get(sessionID);
+		if (session == null)
+			return null;
+		if (session.isExpired(System.currentTimeMillis()) || session.getLibrary() != DAORoot.library) {
+			sessions.remove(sessionID);
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * End the session a token belongs to.
+	 *
+	 * @return true if there was a session to end.
+	 */
+	public boolean revoke(String token) {
+		byte[] id = verify(token);
+		return id != null && sessions.remove(encode(id)) != null;
+	}
+
+	/**
+	 * End every session of a user.
+	 *
+	 * @return the amount of sessions ended.
+	 */
+	public int revokeUser(String username) {
+		int before = sessions.size();
+		sessions.values().removeIf(s -> s.getUsername().equalsIgnoreCase(username));
+		return Math.max(0, before - sessions.size());
+	}
+
+	/**
+	 * End every session.
+	 */
+	public void revokeAll() {
+		sessions.clear();
+	}
+
+	/**
+	 * @return the number of sessions in the store (including expired ones that
+	 *         haven't been swept yet).
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Check the signature and expiry of a token.
+	 *
+	 * @return the session id in the token or null if it isn't valid.
+	 */
+	private byte[] verify(String token) {
+		if (token == null)
+			return null;
+		byte[] raw;
+		try {
+			raw = Base64.getUrlDecoder().decode(token);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (raw.length != TOKEN_LENGTH)
+			return null;
+
+		ByteBuffer buf = ByteBuffer.wrap(raw);
+		byte[] id = new byte[ID_LENGTH];
+		buf.get(id);
+		long expiresAt = buf.getLong();
+		byte[] mac = new byte[MAC_LENGTH];
+		buf.get(mac);
+
+		byte[] expected = sign(ByteBuffer.allocate(ID_LENGTH + Long.BYTES).put(id).putLong(expiresAt).array());
+		if (!MessageDigest.isEqual(mac, expected)) // constant time compare
+			return null;
+		if (System.currentTimeMillis() >= expiresAt)
+			return null;
+		return id;
+	}
+
+	// HMAC of the id and expiry (the first ID_LENGTH + 8 bytes of data)
+	private byte[] sign(byte[] data) {
+		Mac mac = macs.get();
+		mac.update(data, 0, ID_LENGTH + Long.BYTES);
+		byte[] full = mac.doFinal();
+		byte[] truncated = new byte[MAC_LENGTH];
+		System.arraycopy(full, 0, truncated, 0, MAC_LENGTH);
+		return truncated;
+	}
+
+	private static String encode(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	// drop expired sessions so users that never log out don't pile up
+	private void sweepExpired(long now) {
+		if (now < nextSweep)
+			return;
+		nextSweep = now + ttlMillis;
+		int before = sessions.size();
+		sessions.values().removeIf(s -> s.isExpired(now));
+		logger.debug("Swept {} expired sessions", before - sessions.size());
+	}
+}
@@ -7,6 +7,8 @@ import org.mindrot.jbcrypt.BCrypt;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
 import com.BryceBG.DatabaseTools.utils.DaoUtils;
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
+import com.BryceBG.DatabaseTools.utils.Utils;
 
 /**
  * This class acts as a thin wrapper and provides higher level functionality to
@@ -14,12 +16,22 @@ import com.BryceBG.DatabaseTools.utils.DaoUtils;
  * editing user accounts, creating and deleting accounts and authenticating
  * current users.
  * 
+ * Logging in with login() creates a session whose token can be passed to the
+ * controller functions in place of a username and password. Checking a token
+ * is a hash map lookup where checking a password runs BCrypt (slow on
+ * purpose), so callers making many changes should log in once and use the
+ * token.
+ * 
  * @author Bryce-BG
  *
  */
 public class UserController {
 	private static final Logger logger = LogManager.getLogger(UserController.class.getName());
 
+	// sessions handed out by login()
+	private static final SessionManager sessionManager = new SessionManager(
+			Utils.getConfigInteger("session.ttl_s", 3600));
+
 	// Authenticate the user by hashing the inputted password using the stored salt,
 	// then comparing the generated hashed password to the stored hashed password
 	/**
@@ -33,15 +45,86 @@ public class UserController {
 	 *         False otherwise.
 	 */
 	public static boolean authenticate(String username, String password) {
+		return helperAuthenticate(username, password) != null;
+	}
+
+	/**
+	 * Authenticate a user for a single call. This runs BCrypt just like
+	 * authenticate() and the session returned is not stored (it has no token).
+	 * 
+	 * @param username The username for the user making the call
+	 * @param password The plaintext password of the user making the call
+	 * @return the caller's session or null if the username/password is invalid.
+	 */
+	public static Session authenticateSession(String username, String password) {
+		User user = helperAuthenticate(username, password);
+		if (user == null) {
+			return null;
+		}
+		return new Session(user, DAORoot.library, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Log a user in. The token returned can be passed to the controller functions
+	 * instead of the username and password until it expires ("session.ttl_s"
+	 * seconds) or logout() is called.
+	 * 
+	 * @param username The username for the user trying to login
+	 * @param password The plaintext password of the user trying to login
+	 * @return (session token, GlobalConstants.MSG_SUCCESS) or (null, reason for
+	 *         failure)
+	 */
+	public static Pair<String, String> login(String username, String password) {
+		User user = helperAuthenticate(username, password);
+		if (user == null) {
+			logger.info(String.format("Failed login attempt on account %s", username));
+			return new Pair<String, String>(null, GlobalConstants.MSG_INVALID_USER);
+		}
+		return new Pair<String, String>(sessionManager.createSession(user), GlobalConstants.MSG_SUCCESS);
+	}
+
+	/**
+	 * End the session a token belongs to.
+	 * 
+	 * @param sessionToken a token returned by login()
+	 * @return (True, GlobalConstants.MSG_SUCCESS) or (False, reason for failure)
+	 */
+	public static Pair<Boolean, String> logout(String sessionToken) {
+		if (sessionManager.revoke(sessionToken)) {
+			return new Pair<Boolean, String>(Boolean.TRUE, GlobalConstants.MSG_SUCCESS);
+		}
+		return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+	}
+
+	/**
+	 * Look up the session a token belongs to. This does not touch the database.
+	 * 
+	 * @param sessionToken a token returned by login()
+	 * @return the session or null if the token is invalid, expired or was logged
+	 *         out.
+	 */
+	public static Session getSession(String sessionToken) {
+		return sessionManager.getSession(sessionToken);
+	}
+
+	/**
+	 * Helper function that checks a username/password combo.
+	 * 
+	 * @return the user if the password hashes to the stored value. Otherwise null.
+	 */
+	private static User helperAuthenticate(String username, String password) {
 		if (DaoUtils.stringIsOk(username) == false || password == null) {
-			return false;
+			return null;
 		}
 		User user = DAORoot.userDao.getUserByUsername(username);
 		if (user == null) {
-			return false;
+			return null;
 		}
 		String hashedPassword = BCrypt.hashpw(password, user.getSalt());
-		return hashedPassword.equals(user.getHashedPassword()); // did it hash correctly or not
+		if (hashedPassword.equals(user.getHashedPassword())) { // did it hash correctly or not
+			return user;
+		}
+		return null;
 	}
 
 	/**
@@ -63,6 +146,8 @@ public class UserController {
 					return new Pair<Boolean, String>(Boolean.FALSE,
 							"Password change unexpectedly failed. Please try again.");
 				} else {
+					// anyone logged in with the old password is logged out
+					sessionManager.revokeUser(username);
 					return new Pair<Boolean, String>(Boolean.TRUE, "SUCCESS!");
 				}
 			} else {
@@ -98,11 +183,34 @@ public class UserController {
 	public static Pair<Boolean, String> createNewUser(String creatingUsername, String creatingUserPass, String username,
 			String password, String fName, String lName, String email, boolean is_admin) {
 		// 1. Ensure user creating the new account is valid user
-		if (!authenticate(creatingUsername, creatingUserPass)) {
+		Session caller = authenticateSession(creatingUsername, creatingUserPass);
+		if (caller == null) {
 			return new Pair<Boolean, String>(Boolean.FALSE, "Invalid user performing Create User action");
 		}
+		return helperCreateNewUser(caller, username, password, fName, lName, email, is_admin);
+	}
+
+	/**
+	 * Same as createNewUser() but the admin creating the account is identified by
+	 * their session token.
+	 * 
+	 * @param sessionToken token returned by login() for the admin creating the
+	 *                     account
+	 */
+	public static Pair<Boolean, String> createNewUser(String sessionToken, String username, String password,
+			String fName, String lName, String email, boolean is_admin) {
+		Session caller = getSession(sessionToken);
+		if (caller == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		}
+		return helperCreateNewUser(caller, username, password, fName, lName, email, is_admin);
+	}
+
+	private static Pair<Boolean, String> helperCreateNewUser(Session caller, String username, String password,
+			String fName, String lName, String email, boolean is_admin) {
+		String creatingUsername = caller.getUsername();
 		// 2. ensure user creating new account is an admin
-		if (!DAORoot.userDao.getUserByUsername(creatingUsername).isAdmin()) {
+		if (!caller.isAdmin()) {
 			return new Pair<Boolean, String>(Boolean.FALSE,
 					"Invalid user performing Create User action (no account creation permission)");
 		}
@@ -147,16 +255,40 @@ public class UserController {
 			String userToRemove) {
 		// 1. call authenticate() to ensure user trying to delete account is a valid
 		// user
-		if (!authenticate(deleteAuthorizingUsername, deleteAuthorizingUserPass)) {
+		Session caller = authenticateSession(deleteAuthorizingUsername, deleteAuthorizingUserPass);
+		if (caller == null) {
 			// not a successful authentication
 			logger.info(
 					String.format("And invalid user attempted to perform delete operation on user %s", userToRemove));
 			return new Pair<Boolean, String>(Boolean.FALSE, "Invalid user performing Delete User action");
 		}
+		return helperDeleteUser(caller, userToRemove);
+	}
+
+	/**
+	 * Same as deleteUser() but the user deleting the account is identified by
+	 * their session token.
+	 * 
+	 * @param sessionToken token returned by login() for the owner of the account
+	 *                     or an admin
+	 * @param userToRemove The username of the user we are removing from the
+	 *                     system.
+	 */
+	public static Pair<Boolean, String> deleteUser(String sessionToken, String userToRemove) {
+		Session caller = getSession(sessionToken);
+		if (caller == null) {
+			logger.info(String.format("An invalid session attempted to perform delete operation on user %s",
+					userToRemove));
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		}
+		return helperDeleteUser(caller, userToRemove);
+	}
+
+	private static Pair<Boolean, String> helperDeleteUser(Session caller, String userToRemove) {
+		String deleteAuthorizingUsername = caller.getUsername();
 		// 2. check they have requisite permissions to delete user. I.e. they are an
 		// administrator or the owner of the account.
-		if (!deleteAuthorizingUsername.equalsIgnoreCase(userToRemove)
-				&& !DAORoot.userDao.getUserByUsername(deleteAuthorizingUsername).isAdmin()) {
+		if (!deleteAuthorizingUsername.equalsIgnoreCase(userToRemove) && !caller.isAdmin()) {
 			logger.info(String.format(
 					"User %s attempted to perform delete operation on user %s. However, they lack access to do so.",
 					deleteAuthorizingUsername, userToRemove));
@@ -170,11 +302,93 @@ public class UserController {
 		if (rtnedVal == false) {
 			return new Pair<Boolean, String>(Boolean.FALSE, "Account deletion unexpectedly failed. Please try again.");
 		} else {
+			sessionManager.revokeUser(userToRemove);
 			return new Pair<Boolean, String>(Boolean.TRUE, "SUCCESS!");
 		}
 
 	}
 
+	/**
+	 * Rate a book (a user's new rating replaces their old one). The book's average
+	 * rating and rating count are updated with it.
+	 * 
+	 * @param username The username of the user rating the book
+	 * @param password The plaintext password of the user rating the book
+	 * @param bookID   ID of the book being rated
+	 * @param rating   The rating (0-10)
+	 * @return (True, GlobalConstants.MSG_SUCCESS) or (False, reason for failure)
+	 */
+	public static Pair<Boolean, String> rateBook(String username, String password, long bookID, float rating) {
+		Session caller = authenticateSession(username, password);
+		if (caller == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		}
+		return helperRateBook(caller, bookID, rating);
+	}
+
+	/**
+	 * Same as rateBook() but the user is identified by their session token.
+	 * 
+	 * @param sessionToken token returned by login()
+	 */
+	public static Pair<Boolean, String> rateBook(String sessionToken, long bookID, float rating) {
+		Session caller = getSession(sessionToken);
+		if (caller == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		}
+		return helperRateBook(caller, bookID, rating);
+	}
+
+	private static Pair<Boolean, String> helperRateBook(Session caller, long bookID, float rating) {
+		if (Float.isNaN(rating) || rating < 0 || rating > 10) {
+			return new Pair<Boolean, String>(Boolean.FALSE,
+					"Rating was outside the acceptable range. (rating should be between 0-10)");
+		}
+		if (DAORoot.bookDao.getBookByBookID(bookID) == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, String.format("No book with id: %d, exists.", bookID));
+		}
+		if (DAORoot.userDao.rateBook(caller.getUserID(), bookID, rating)) {
+			return new Pair<Boolean, String>(Boolean.TRUE, GlobalConstants.MSG_SUCCESS);
+		}
+		return new Pair<Boolean, String>(Boolean.FALSE, "Rating the book unexpectedly failed. Please try again.");
+	}
+
+	/**
+	 * Remove the rating a user gave a book.
+	 * 
+	 * @param username The username of the user who rated the book
+	 * @param password The plaintext password of the user who rated the book
+	 * @param bookID   ID of the book that was rated
+	 * @return (True, GlobalConstants.MSG_SUCCESS) or (False, reason for failure)
+	 */
+	public static Pair<Boolean, String> removeRating(String username, String password, long bookID) {
+		Session caller = authenticateSession(username, password);
+		if (caller == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_USER);
+		}
+		return helperRemoveRating(caller, bookID);
+	}
+
+	/**
+	 * Same as removeRating() but the user is identified by their session token.
+	 * 
+	 * @param sessionToken token returned by login()
+	 */
+	public static Pair<Boolean, String> removeRating(String sessionToken, long bookID) {
+		Session caller = getSession(sessionToken);
+		if (caller == null) {
+			return new Pair<Boolean, String>(Boolean.FALSE, GlobalConstants.MSG_INVALID_SESSION);
+		}
+		return helperRemoveRating(caller, bookID);
+	}
+
+	private static Pair<Boolean, String> helperRemoveRating(Session caller, long bookID) {
+		if (DAORoot.userDao.removeRating(caller.getUserID(), bookID)) {
+			return new Pair<Boolean, String>(Boolean.TRUE, GlobalConstants.MSG_SUCCESS);
+		}
+		return new Pair<Boolean, String>(Boolean.FALSE, "You haven't rated this book.");
+	}
+
 	// Helper functions for createNewUser
 	/**
 	 * A helper function for createNewUser() This function takes in the parameters
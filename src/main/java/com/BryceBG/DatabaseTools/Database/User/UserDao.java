@@ -1,6 +1,8 @@
 package com.BryceBG.DatabaseTools.Database.User;
 
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,6 +13,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot; //for our instantiated objects inheritence
+import com.BryceBG.DatabaseTools.Database.Page;
+import com.BryceBG.DatabaseTools.Database.PageToken;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
 /**
  * This class is our Data Access object for querying the database for user related information.
  * Most of the functions in here should not be called directly. Instead, most of these functions have an interface
@@ -19,6 +24,38 @@ import com.BryceBG.DatabaseTools.Database.DAORoot; //for our instantiated object
  */
 public class UserDao {
 	private static final Logger logger = LogManager.getLogger(UserDao.class.getName());
+
+	// Ratings. Each one is a single statement that changes the user's rating and
+	// applies the difference to the book's rating_sum/rating_count/average_rating
+	// and to its series' rating_sum/rating_count, so the cost of a rating doesn't
+	// depend on how many ratings the book already has. The book's row is locked
+	// first (SQL_LOCK_BOOK) so ratings of the same book are applied one at a time.
+	private static final String SQL_LOCK_BOOK = "SELECT book_id FROM books WHERE book_id=? FOR UPDATE";
+	private static final String SQL_RATE_BOOK = "WITH prev AS (SELECT rating FROM user_book_rating WHERE user_id=? AND book_id=?), "
+			+ "r AS (INSERT INTO user_book_rating (user_id, book_id, rating) VALUES (?, ?, ?) "
+			+ "ON CONFLICT (user_id, book_id) DO UPDATE SET rating=EXCLUDED.rating RETURNING rating), "
+			+ "d AS (SELECT r.rating - COALESCE((SELECT rating FROM prev), 0) AS d_sum, "
+			+ "CASE WHEN EXISTS (SELECT 1 FROM prev) THEN 0 ELSE 1 END AS d_count FROM r), "
+			+ "b AS (UPDATE books SET rating_sum=books.rating_sum+d.d_sum, rating_count=books.rating_count+d.d_count, "
+			+ "average_rating=round((books.rating_sum+d.d_sum) / (books.rating_count+d.d_count), 2) "
+			+ "FROM d WHERE books.book_id=? RETURNING books.series_id, d.d_sum, d.d_count), "
+			+ "s AS (UPDATE series SET rating_sum=series.rating_sum+b.d_sum, rating_count=series.rating_count+b.d_count "
+			+ "FROM b WHERE series.series_id=b.series_id) SELECT count(*) FROM b";
+	private static final String SQL_REMOVE_RATING = "WITH r AS (DELETE FROM user_book_rating WHERE user_id=? AND book_id=? RETURNING rating), "
+			+ "b AS (UPDATE books SET rating_sum=books.rating_sum-r.rating, rating_count=books.rating_count-1, "
+			+ "average_rating=COALESCE(round((books.rating_sum-r.rating) / NULLIF(books.rating_count-1, 0), 2), 0) "
+			+ "FROM r WHERE books.book_id=? RETURNING books.series_id, r.rating), "
+			+ "s AS (UPDATE series SET rating_sum=series.rating_sum-b.rating, rating_count=series.rating_count-1 "
+			+ "FROM b WHERE series.series_id=b.series_id) SELECT count(*) FROM r";
+	// every rating of a user being deleted (one rating per book so each book is updated once)
+	private static final String SQL_REMOVE_USER_RATINGS = "WITH r AS (SELECT book_id, rating FROM user_book_rating "
+			+ "WHERE user_id=(SELECT user_id FROM users WHERE username=?)), "
+			+ "b AS (UPDATE books SET rating_sum=books.rating_sum-r.rating, rating_count=books.rating_count-1, "
+			+ "average_rating=COALESCE(round((books.rating_sum-r.rating) / NULLIF(books.rating_count-1, 0), 2), 0) "
+			+ "FROM r WHERE books.book_id=r.book_id RETURNING books.series_id, r.rating) "
+			+ "UPDATE series SET rating_sum=series.rating_sum-t.rating_sum, rating_count=series.rating_count-t.rating_count "
+			+ "FROM (SELECT series_id, sum(rating) AS rating_sum, count(*) AS rating_count FROM b GROUP BY series_id) t "
+			+ "WHERE series.series_id=t.series_id";
 	
 
 	/**
@@ -156,6 +193,49 @@ public class UserDao {
         }
         return userNames;
     }
+
+	/**
+	 * Paged version of getAllUserNames(). username is the primary key so it is the
+	 * only sort key used.
+	 * 
+	 * @param pageToken the token from the previous page or null for the first
+	 *                  page.
+	 * @param pageSize  the max number of results on the page (see
+	 *                  PageToken.clampPageSize()).
+	 * @return null if the page token is invalid. Otherwise the page of results
+	 *         (empty if an error occurred).
+	 */
+	public Page<String> getAllUserNamesPage(String pageToken, int pageSize) {
+		String kind = "usernames";
+		PageToken token = PageToken.decode(kind, pageToken);
+		if (token == null) {
+			logger.warn("Invalid page token passed in for {}: {}", kind, pageToken);
+			return null;
+		}
+		pageSize = PageToken.clampPageSize(pageSize);
+		ArrayList<String> rows = new ArrayList<String>();
+		String sql = "SELECT username FROM users WHERE username > ? ORDER BY username LIMIT ?";
+
+		// 1. establish connection to our database
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setString(1, token.getSortKey());
+			pstmt.setInt(2, pageSize + 1);
+			// 2. execute our query and read the rows (one more than the page size so we
+			// know if there is another page).
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					rows.add(rs.getString("USERNAME"));
+				}
+			} // end of try-with-resources: result set
+		} // end of try-with-resources: connection
+			// catch blocks for try-with-resources: connection
+		catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return Page.fromRows(rows, pageSize, kind, u -> u, u -> 0);
+	}
     	
     	
 
@@ -263,17 +343,24 @@ public class UserDao {
 	public boolean removeUser(String userToRemove) {
 		boolean rtVal = false;
 		String sql = "DELETE FROM USERS WHERE username=?";
-		//1. establish connection to our database
-    	try (Connection conn = DAORoot.library.connectToDB();        
+		//1. establish connection to our database (the user's ratings are taken out of the
+		//averages in the same unit of work as the delete cascades to them)
+    	try (UnitOfWork uow = UnitOfWork.begin();
+    			Connection conn = DAORoot.library.connectToDB();        
+    			PreparedStatement unrateStmt = conn.prepareStatement(SQL_REMOVE_USER_RATINGS);
 	            PreparedStatement pstmt = conn.prepareStatement(sql);
 	            ) {
+    		unrateStmt.setString(1, userToRemove);
+    		unrateStmt.execute();
     		pstmt.setString(1, userToRemove);
     		//2. execute our DELETE update for selected  user.
             int rs = pstmt.executeUpdate();
           //3. check if sql query for user returned correct answer.
             if (rs == 1) { 
 	           	//update was successful
+            	uow.commit();
             	rtVal = true;
+            	UnitOfWork.afterCompletion(() -> DAORoot.bookDao.getBookCache().invalidateAll());
             }
             else {
             	logger.info(String.format("The removeUser failed: the execute update returned: %d", rs));
@@ -288,8 +375,128 @@ public class UserDao {
         }
         return rtVal;
 	}
-	
 
-	
+	/**
+	 * Set a user's rating of a book (replacing their old rating if they had one).
+	 * The book's average rating, rating count and its series' rating totals are
+	 * updated in the same transaction.
+	 * 
+	 * @param userID ID of the user rating the book
+	 * @param bookID ID of the book being rated
+	 * @param rating 0-10 (stored with 2 decimal places)
+	 * @return True if the rating was saved. False otherwise (e.g. the book or user
+	 *         doesn't exist or the rating is out of range).
+	 */
+	public boolean rateBook(long userID, long bookID, float rating) {
+		boolean rtVal = false;
+		if (rating < 0 || rating > 10) // DB will reject it too but quicker to check here
+			return false;
+		BigDecimal newRating = new BigDecimal(Float.toString(rating)).setScale(2, RoundingMode.HALF_UP);
+		//1. establish connection to our database
+		try (UnitOfWork uow = UnitOfWork.begin();
+				Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement lockStmt = conn.prepareStatement(SQL_LOCK_BOOK);
+				PreparedStatement pstmt = conn.prepareStatement(SQL_RATE_BOOK);) {
+			//2. lock the book (and check it exists)
+			lockStmt.setLong(1, bookID);
+			try (ResultSet rs = lockStmt.executeQuery()) {
+				if (!rs.next()) {
+					logger.info(String.format("The rateBook() failed: no book with ID %d", bookID));
+					return false;
+				}
+			}
+			//3. upsert the rating and apply it to the book and series
+			pstmt.setLong(1, userID);
+			pstmt.setLong(2, bookID);
+			pstmt.setLong(3, userID);
+			pstmt.setLong(4, bookID);
+			pstmt.setBigDecimal(5, newRating);
+			pstmt.setLong(6, bookID);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next() && rs.getInt(1) == 1) {
+					uow.commit();
+					rtVal = true;
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		helperInvalidateBook(bookID);
+		return rtVal;
+	}
+
+	/**
+	 * Remove a user's rating of a book and take it out of the book's and series'
+	 * ratings.
+	 * 
+	 * @param userID ID of the user who rated the book
+	 * @param bookID ID of the book that was rated
+	 * @return True if the rating was removed. False if there was no such rating or
+	 *         the removal failed.
+	 */
+	public boolean removeRating(long userID, long bookID) {
+		boolean rtVal = false;
+		//1. establish connection to our database
+		try (UnitOfWork uow = UnitOfWork.begin();
+				Connection conn = DAORoot.library.connectToDB();
+				PreparedStatement lockStmt = conn.prepareStatement(SQL_LOCK_BOOK);
+				PreparedStatement pstmt = conn.prepareStatement(SQL_REMOVE_RATING);) {
+			//2. lock the book
+			lockStmt.setLong(1, bookID);
+			lockStmt.executeQuery().close();
+			//3. delete the rating and take it out of the book and series
+			pstmt.setLong(1, userID);
+			pstmt.setLong(2, bookID);
+			pstmt.setLong(3, bookID);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next() && rs.getInt(1) == 1) {
+					uow.commit();
+					rtVal = true;
+				} else {
+					logger.info(String.format("The removeRating() failed: user %d hasn't rated book %d", userID, bookID));
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		helperInvalidateBook(bookID);
+		return rtVal;
+	}
 
+	/**
+	 * @param userID ID of the user
+	 * @param bookID ID of the book
+	 * @return the user's rating of the book or -1 if they haven't rated it (or the
+	 *         lookup failed).
+	 */
+	public float getRating(long userID, long bookID) {
+		float rtVal = -1;
+		String sql = "SELECT rating FROM user_book_rating WHERE user_id=? AND book_id=?";
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql);) {
+			pstmt.setLong(1, userID);
+			pstmt.setLong(2, bookID);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next())
+					rtVal = rs.getFloat("rating");
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: " + e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: " + e.getMessage());
+		}
+		return rtVal;
+	}
+
+	/**
+	 * Drop the book from the book cache now and again once the current unit of
+	 * work (if any) is over.
+	 */
+	private void helperInvalidateBook(long bookID) {
+		DAORoot.bookDao.getBookCache().invalidate(bookID);
+		UnitOfWork.afterCompletion(() -> DAORoot.bookDao.getBookCache().invalidate(bookID));
+	}
 }
@@ -0,0 +1,215 @@
+package com.BryceBG.DatabaseTools.Scraper;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Database.Book.BookRecord;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
+import com.BryceBG.DatabaseTools.utils.DaoUtils;
+
+/**
+ * The metadata of an epub as it was read from the book's .opf package file
+ * (see EpubReader). Values are kept as they appear in the file;
+ * toBookRecord() normalizes them into what our database expects.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class EpubMetadata {
+	private static final Pattern DATE_PATTERN = Pattern.compile("^(\\d{4})(?:-(\\d{2})(?:-(\\d{2}))?)?");
+	private static final Pattern ISBN_PATTERN = Pattern.compile("^(?:\\d{9}[\\dX]|\\d{13})$");
+	private static final Pattern UUID_PATTERN = Pattern
+			.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
+
+	private final Path path;
+	String title;
+	String description;
+	String publisher;
+	String date;
+	// <name, file-as name (or null)> of the authors (creators with no role or the
+	// "aut" role)
+	final List<Pair<String, String>> creators = new ArrayList<Pair<String, String>>();
+	// <scheme (or null), value>
+	final List<Pair<String, String>> identifiers = new ArrayList<Pair<String, String>>();
+	final List<String> subjects = new ArrayList<String>();
+
+	EpubMetadata(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * @return the epub file this metadata was read from.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getPublisher() {
+		return publisher;
+	}
+
+	public String getDate() {
+		return date;
+	}
+
+	public List<Pair<String, String>> getCreators() {
+		return creators;
+	}
+
+	public List<Pair<String, String>> getIdentifiers() {
+		return identifiers;
+	}
+
+	public List<String> getSubjects() {
+		return subjects;
+	}
+
+	/**
+	 * Convert the metadata into a book that can be loaded with the
+	 * BookBulkLoader.
+	 *
+	 * @param genreIndex the genres the subjects are matched against (see
+	 *                   GenreIndex.suggest()). Subjects that don't mention a genre
+	 *                   are dropped.
+	 * @return the book.
+	 */
+	@SuppressWarnings("unchecked")
+	public BookRecord toBookRecord(GenreIndex genreIndex) {
+		ArrayList<Pair<String, String>> authorNames = new ArrayList<Pair<String, String>>();
+		for (Pair<String, String> creator : creators) {
+			// the file-as form ("Last, First") is unambiguous so prefer it
+			String raw = (creator.getValue1() != null) ? creator.getValue1() : creator.getValue0();
+			Pair<String, String> name = splitName(raw);
+			if (name != null)
+				authorNames.add(name);
+		}
+		BookRecord rtVal = new BookRecord(title, authorNames.toArray(new Pair[authorNames.size()]));
+		rtVal.setDescription(description == null ? null : stripMarkup(description));
+		rtVal.setPublisher(publisher);
+		rtVal.setPublishDate(parseDate(date));
+
+		// subjects are often "Fiction / Science Fiction / General"
+		List<String> genres = genreIndex.suggest(subjects);
+		rtVal.setGenres(genres.toArray(new String[genres.size()]));
+
+		LinkedHashSet<Pair<String, String>> ids = new LinkedHashSet<Pair<String, String>>();
+		for (Pair<String, String> identifier : identifiers) {
+			Pair<String, String> id = normalizeIdentifier(identifier.getValue0(), identifier.getValue1());
+			if (id != null)
+				ids.add(id);
+		}
+		rtVal.setIdentifiers(ids.toArray(new Pair[ids.size()]));
+		return rtVal;
+	}
+
+	/**
+	 * Split an author's name into <first name, last name>. Handles both "First
+	 * Middle Last" and the "Last, First" form used by file-as attributes.
+	 *
+	 * @return the name or null if it can't be split (e.g. a single name).
+	 */
+	static Pair<String, String> splitName(String name) {
+		if (!DaoUtils.stringIsOk(name))
+			return null;
+		name = name.strip().replaceAll("\\s+", " ");
+		int comma = name.indexOf(',');
+		String first;
+		String last;
+		if (comma >= 0) {
+			last = name.substring(0, comma).strip();
+			first = name.substring(comma + 1).strip();
+		} else {
+			int space = name.lastIndexOf(' ');
+			if (space < 0)
+				return null;
+			first = name.substring(0, space).strip();
+			last = name.substring(space + 1).strip();
+		}
+		if (first.isEmpty() || last.isEmpty())
+			return null;
+		return new Pair<String, String>(first, last);
+	}
+
+	/**
+	 * Turn an epub identifier into an <identifier_type, identifier_value> pair.
+	 * The scheme comes from the opf:scheme attribute, a "urn:scheme:" prefix or
+	 * the shape of the value (isbn, uuid).
+	 *
+	 * @return the identifier or null if its scheme can't be worked out.
+	 */
+	static Pair<String, String> normalizeIdentifier(String scheme, String value) {
+		if (!DaoUtils.stringIsOk(value))
+			return null;
+		value = value.strip();
+		String lower = value.toLowerCase(Locale.ROOT);
+		if (lower.startsWith("urn:")) {
+			int colon = lower.indexOf(':', 4);
+			if (colon > 0) {
+				scheme = lower.substring(4, colon);
+				value = value.substring(colon + 1);
+			}
+		} else if (lower.startsWith("isbn:")) {
+			scheme = "isbn";
+			value = value.substring(5);
+		}
+
+		if (scheme != null)
+			scheme = scheme.strip().toLowerCase(Locale.ROOT);
+		if ("isbn".equals(scheme) || scheme == null) {
+			String digits = value.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+			if (ISBN_PATTERN.matcher(digits).matches())
+				return new Pair<String, String>("isbn", digits);
+		}
+		if ("uuid".equals(scheme) || scheme == null) {
+			if (UUID_PATTERN.matcher(value.toLowerCase(Locale.ROOT)).matches())
+				return new Pair<String, String>("uuid", value.toLowerCase(Locale.ROOT));
+		}
+		if (scheme == null || scheme.isEmpty() || "isbn".equals(scheme) || "uuid".equals(scheme))
+			return null; // unknown or malformed
+		return new Pair<String, String>(scheme, value);
+	}
+
+	/**
+	 * Parse the start of a dc:date ("2004", "2004-07" or "2004-07-21...").
+	 *
+	 * @return the date or null if it couldn't be parsed.
+	 */
+	static Timestamp parseDate(String date) {
+		if (date == null)
+			return null;
+		Matcher m = DATE_PATTERN.matcher(date.strip());
+		if (!m.find())
+			return null;
+		try {
+			int year = Integer.parseInt(m.group(1));
+			int month = m.group(2) == null ? 1 : Integer.parseInt(m.group(2));
+			int day = m.group(3) == null ? 1 : Integer.parseInt(m.group(3));
+			return Timestamp.valueOf(LocalDate.of(year, month, day).atStartOfDay());
+		} catch (DateTimeException e) { // e.g. month 13
+			return null;
+		}
+	}
+
+	// descriptions are frequently escaped html
+	private static String stripMarkup(String text) {
+		return text.replaceAll("<[^>]*>", " ").replaceAll("[ \\t]+", " ").strip();
+	}
+}
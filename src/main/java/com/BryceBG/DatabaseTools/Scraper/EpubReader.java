@@ -0,0 +1,326 @@
+package com.BryceBG.DatabaseTools.Scraper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.javatuples.Pair;
+
+/**
+ * Reads the metadata of an epub without extracting it. The zip's central
+ * directory is used to jump straight to META-INF/container.xml (which names
+ * the .opf package file) and then to the .opf itself. Both are parsed with
+ * StAX and parsing stops at the end of the .opf's metadata section so the
+ * (often large) manifest and spine are never read.
+ *
+ * Supports epub 2 (opf:role/opf:file-as/opf:scheme attributes) and epub 3
+ * (meta refines) metadata.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class EpubReader {
+	static final String CONTAINER_PATH = "META-INF/container.xml";
+	static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+	static final String OPF_NS = "http://www.idpf.org/2007/opf";
+	// covers are a few hundred KB; anything this big is not a cover we want
+	static final int MAX_COVER_BYTES = 20 * 1024 * 1024;
+
+	// configured once; creating readers from a configured factory is thread safe
+	private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+	static {
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		// epubs come from anywhere, don't resolve DTDs or external entities
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private EpubReader() {
+	}
+
+	/**
+	 * Read the metadata of an epub.
+	 *
+	 * @param epub the .epub file.
+	 * @return the metadata of the book.
+	 * @throws IOException        if the file isn't a readable zip or is missing
+	 *                            its container.xml or .opf.
+	 * @throws XMLStreamException if the container.xml or .opf is malformed.
+	 */
+	public static EpubMetadata read(Path epub) throws IOException, XMLStreamException {
+		try (ZipFile zip = new ZipFile(epub.toFile())) {
+			ZipEntry opf = helperFindOpf(zip);
+			EpubMetadata rtVal = new EpubMetadata(epub);
+			try (InputStream in = zip.getInputStream(opf)) {
+				readOpf(in, rtVal);
+			}
+			return rtVal;
+		}
+	}
+
+	/**
+	 * Read the cover image of an epub.
+	 *
+	 * @param epub the .epub file.
+	 * @return the raw bytes of the cover image or null if the book doesn't name
+	 *         one.
+	 * @throws IOException        if the file isn't a readable zip, is missing its
+	 *                            container.xml or .opf or the cover is too large.
+	 * @throws XMLStreamException if the container.xml or .opf is malformed.
+	 */
+	public static byte[] readCover(Path epub) throws IOException, XMLStreamException {
+		try (ZipFile zip = new ZipFile(epub.toFile())) {
+			ZipEntry opf = helperFindOpf(zip);
+			String href;
+			try (InputStream in = zip.getInputStream(opf)) {
+				href = readCoverHref(in);
+			}
+			if (href == null)
+				return null;
+			// hrefs are relative to the .opf and url encoded
+			String opfDir = opf.getName().contains("/") ? opf.getName().substring(0, opf.getName().lastIndexOf('/') + 1)
+					: "";
+			String path = URI.create(opfDir.replace(" ", "%20")).resolve(href.replace(" ", "%20")).getPath();
+			ZipEntry cover = zip.getEntry(path);
+			if (cover == null)
+				return null;
+			if (cover.getSize() > MAX_COVER_BYTES)
+				throw new IOException("Cover is too large: " + cover.getSize() + " bytes");
+			try (InputStream in = zip.getInputStream(cover)) {
+				byte[] rtVal = in.readNBytes(MAX_COVER_BYTES + 1);
+				if (rtVal.length > MAX_COVER_BYTES) // the size in the zip can lie
+					throw new IOException("Cover is too large");
+				return rtVal;
+			}
+		} catch (IllegalArgumentException e) { // malformed href
+			throw new IOException("Invalid cover href: " + e.getMessage());
+		}
+	}
+
+	// find the .opf package file through META-INF/container.xml
+	private static ZipEntry helperFindOpf(ZipFile zip) throws IOException, XMLStreamException {
+		ZipEntry container = zip.getEntry(CONTAINER_PATH);
+		if (container == null)
+			throw new IOException("Missing " + CONTAINER_PATH);
+		String opfPath;
+		try (InputStream in = zip.getInputStream(container)) {
+			opfPath = readOpfPath(in);
+		}
+		if (opfPath == null)
+			throw new IOException("No rootfile listed in " + CONTAINER_PATH);
+
+		ZipEntry opf = zip.getEntry(opfPath);
+		if (opf == null)
+			throw new IOException("Missing package file " + opfPath);
+		return opf;
+	}
+
+	/**
+	 * Find the href of the cover image in an .opf. Looks for (in order) the epub 3
+	 * "cover-image" manifest property, the epub 2 &lt;meta name="cover"&gt; and
+	 * finally an image whose id or href mentions "cover".
+	 *
+	 * @return the href (relative to the .opf) or null if there isn't a cover.
+	 */
+	static String readCoverHref(InputStream opf) throws XMLStreamException {
+		String coverID = null;
+		HashMap<String, String> imageHrefs = new HashMap<String, String>(); // id -> href
+		String guess = null;
+		XMLStreamReader reader = factory.createXMLStreamReader(opf);
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT && "manifest".equals(reader.getLocalName()))
+					break; // the spine and guide come after the manifest
+				if (event != XMLStreamConstants.START_ELEMENT)
+					continue;
+				String name = reader.getLocalName();
+				if ("meta".equals(name) && "cover".equals(reader.getAttributeValue(null, "name"))) {
+					coverID = reader.getAttributeValue(null, "content");
+				} else if ("item".equals(name)) {
+					String id = reader.getAttributeValue(null, "id");
+					String href = reader.getAttributeValue(null, "href");
+					String mediaType = reader.getAttributeValue(null, "media-type");
+					String properties = reader.getAttributeValue(null, "properties");
+					if (href == null || mediaType == null || !mediaType.startsWith("image/"))
+						continue;
+					if (properties != null && Arrays.asList(properties.split("\\s+")).contains("cover-image"))
+						return href;
+					if (id != null)
+						imageHrefs.put(id, href);
+					if (guess == null && ((id != null && id.toLowerCase(Locale.ROOT).contains("cover"))
+							|| href.toLowerCase(Locale.ROOT).contains("cover")))
+						guess = href;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (coverID != null && imageHrefs.containsKey(coverID))
+			return imageHrefs.get(coverID);
+		return guess;
+	}
+
+	/**
+	 * @return the full-path of the first rootfile in a container.xml or null if
+	 *         there isn't one.
+	 */
+	static String readOpfPath(InputStream container) throws XMLStreamException {
+		XMLStreamReader reader = factory.createXMLStreamReader(container);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "rootfile".equals(reader.getLocalName())) {
+					String path = reader.getAttributeValue(null, "full-path");
+					if (path != null && !path.isBlank())
+						return path.strip();
+				}
+			}
+			return null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Stream the metadata section of an .opf into metadata.
+	 */
+	static void readOpf(InputStream opf, EpubMetadata metadata) throws XMLStreamException {
+		// epub 3 puts roles and file-as names in <meta refines="#id" property="...">
+		HashMap<String, String> creatorIDs = new HashMap<String, String>(); // id -> name
+		HashMap<String, String> roles = new HashMap<String, String>(); // id -> role
+		HashMap<String, String> fileAs = new HashMap<String, String>(); // id/name -> file-as
+		HashMap<String, String> epub2Roles = new HashMap<String, String>(); // name -> role
+
+		XMLStreamReader reader = factory.createXMLStreamReader(opf);
+		try {
+			boolean inMetadata = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT && "metadata".equals(reader.getLocalName()))
+					break; // nothing we need after the metadata
+				if (event != XMLStreamConstants.START_ELEMENT)
+					continue;
+				String name = reader.getLocalName();
+				if ("metadata".equals(name)) {
+					inMetadata = true;
+					continue;
+				}
+				if (!inMetadata)
+					continue;
+
+				if (DC_NS.equals(reader.getNamespaceURI())) {
+					String id = reader.getAttributeValue(null, "id");
+					String role = reader.getAttributeValue(OPF_NS, "role");
+					String fileAsName = reader.getAttributeValue(OPF_NS, "file-as");
+					String scheme = reader.getAttributeValue(OPF_NS, "scheme");
+					String dateEvent = reader.getAttributeValue(OPF_NS, "event");
+					String text = readText(reader);
+					if (text.isEmpty())
+						continue;
+					switch (name) {
+					case "title":
+						if (metadata.title == null) // the first title is the main one
+							metadata.title = text;
+						break;
+					case "creator":
+						if (id != null)
+							creatorIDs.put(id, text);
+						if (role != null)
+							epub2Roles.put(text, role);
+						if (fileAsName != null)
+							fileAs.put(text, fileAsName);
+						metadata.creators.add(new Pair<String, String>(text, null));
+						break;
+					case "identifier":
+						metadata.identifiers.add(new Pair<String, String>(scheme, text));
+						break;
+					case "subject":
+						metadata.subjects.add(text);
+						break;
+					case "publisher":
+						if (metadata.publisher == null)
+							metadata.publisher = text;
+						break;
+					case "date":
+						// epub 2 may list several dates (creation, modification...)
+						if (metadata.date == null || "publication".equals(dateEvent))
+							metadata.date = text;
+						break;
+					case "description":
+						if (metadata.description == null)
+							metadata.description = text;
+						break;
+					default:
+						break;
+					}
+				} else if ("meta".equals(name)) {
+					String refines = reader.getAttributeValue(null, "refines");
+					String property = reader.getAttributeValue(null, "property");
+					if (refines == null || property == null || !refines.startsWith("#"))
+						continue;
+					String target = refines.substring(1);
+					if ("role".equals(property))
+						roles.put(target, readText(reader));
+					else if ("file-as".equals(property))
+						fileAs.put(target, readText(reader));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		// apply roles and file-as names, only keeping the authors
+		HashMap<String, String> idsByName = new HashMap<String, String>();
+		for (Map.Entry<String, String> e : creatorIDs.entrySet())
+			idsByName.put(e.getValue(), e.getKey());
+		List<Pair<String, String>> authors = new ArrayList<Pair<String, String>>();
+		for (Pair<String, String> creator : metadata.creators) {
+			String name = creator.getValue0();
+			String id = idsByName.get(name);
+			String role = (id != null && roles.containsKey(id)) ? roles.get(id) : epub2Roles.get(name);
+			if (role != null && !"aut".equalsIgnoreCase(role.strip()))
+				continue; // editor, illustrator, translator...
+			String sortName = (id != null && fileAs.containsKey(id)) ? fileAs.get(id) : fileAs.get(name);
+			authors.add(new Pair<String, String>(name, sortName));
+		}
+		// a book where every creator has some other role is better than no authors
+		if (!authors.isEmpty() || metadata.creators.isEmpty()) {
+			metadata.creators.clear();
+			metadata.creators.addAll(authors);
+		}
+	}
+
+	/**
+	 * Read the text content of the current element (including the text of any
+	 * child elements) and leave the reader on its end tag.
+	 */
+	private static String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)
+				sb.append(reader.getText());
+		}
+		return sb.toString().strip();
+	}
+}
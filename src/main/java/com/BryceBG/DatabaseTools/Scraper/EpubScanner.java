@@ -0,0 +1,347 @@
+package com.BryceBG.DatabaseTools.Scraper;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Covers.CoverPipeline;
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.BookBulkLoader;
+import com.BryceBG.DatabaseTools.Database.Book.BookRecord;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Scans a directory tree for .epub files and adds them to the library.
+ *
+ * The tree is walked in parallel on a ForkJoinPool (one task per directory, so
+ * listing directories is parallel too) and each epub's metadata is read by the
+ * task that found it (see EpubReader). Books are handed over a bounded queue to
+ * a single loader thread that inserts them in batches with the BookBulkLoader.
+ * When the loader falls behind the scanning tasks block on the queue, so memory
+ * use stays bounded by the queue size no matter how large the library is. If
+ * the loader thread dies the tasks stop waiting on it and the books left are
+ * reported as failed.
+ * Covers of loaded books are handed to an optional CoverPipeline.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class EpubScanner {
+	private static final Logger logger = LogManager.getLogger(EpubScanner.class.getName());
+
+	// marks the end of the scan for the loader thread
+	private static final Pair<Path, BookRecord> END_OF_SCAN = new Pair<Path, BookRecord>(null, null);
+	// how often a task waiting on a full queue checks the loader is still running
+	private static final long PUT_WAIT_MS = 200;
+	private static final String MSG_LOADER_STOPPED = "The loader stopped before the book could be loaded";
+
+	private final int threads;
+	private final int batchSize;
+	private final boolean createMissingAuthors;
+	private CoverPipeline coverPipeline; // null to skip covers
+
+	/**
+	 * A scanner that uses "scanner.threads" threads (default: number of cores),
+	 * the bulk loader's batch size and creates authors it hasn't seen before.
+	 */
+	public EpubScanner() {
+		this(Utils.getConfigInteger("scanner.threads", Runtime.getRuntime().availableProcessors()),
+				Utils.getConfigInteger("db.bulk.batch_size", BookBulkLoader.DEFAULT_BATCH_SIZE), true);
+	}
+
+	/**
+	 * @param threads              number of threads reading epubs.
+	 * @param batchSize            number of books inserted per transaction.
+	 * @param createMissingAuthors if false books by authors that aren't in the
+	 *                             database fail to load.
+	 */
+	public EpubScanner(int threads, int batchSize, boolean createMissingAuthors) {
+		this.threads = Math.max(1, threads);
+		this.batchSize = Math.max(1, batchSize);
+		this.createMissingAuthors = createMissingAuthors;
+	}
+
+	/**
+	 * @param coverPipeline extracts the covers of loaded books (null to skip
+	 *                      covers). The caller closes it once the scan is done.
+	 */
+	public void setCoverPipeline(CoverPipeline coverPipeline) {
+		this.coverPipeline = coverPipeline;
+	}
+
+	/**
+	 * Scan a directory tree and load every epub in it.
+	 *
+	 * @param root the directory to scan.
+	 * @return the results of the scan.
+	 */
+	public ScanReport scan(Path root) {
+		long start = System.nanoTime();
+		ScanReport report = new ScanReport();
+		if (!Files.isDirectory(root)) {
+			report.fail(root, "Not a directory");
+			return report;
+		}
+		GenreIndex genreIndex = DAORoot.genreDao.getGenreIndex();
+		// a couple of batches worth of books can be waiting on the loader
+		BlockingQueue<Pair<Path, BookRecord>> queue = new ArrayBlockingQueue<Pair<Path, BookRecord>>(
+				batchSize * 2);
+
+		ExecutorService loaderThread = Executors.newSingleThreadExecutor(r -> new Thread(r, "epub-loader"));
+		Future<?> loader = loaderThread.submit(() -> runLoader(queue, report));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new ScanTask(root, queue, loader, genreIndex, report));
+			putBlocking(queue, END_OF_SCAN, loader);
+			loader.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			loader.cancel(true);
+			logger.warn("Epub scan of {} was interrupted", root);
+		} catch (ExecutionException e) {
+			logger.error("Exception occured while loading scanned books: " + e.getCause().getMessage());
+		} finally {
+			pool.shutdownNow();
+			loaderThread.shutdownNow();
+		}
+		report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		logger.info("Epub scan of {} finished: {}", root, report);
+		return report;
+	}
+
+	/**
+	 * Drains the queue into the database a batch at a time until the end of the
+	 * scan.
+	 */
+	private void runLoader(BlockingQueue<Pair<Path, BookRecord>> queue, ScanReport report) {
+		BookBulkLoader bulkLoader = new BookBulkLoader(batchSize, createMissingAuthors);
+		List<Pair<Path, BookRecord>> batch = new ArrayList<Pair<Path, BookRecord>>(batchSize);
+		boolean done = false;
+		while (!done) {
+			try {
+				// wait for at least one book then take whatever else is ready
+				Pair<Path, BookRecord> first = queue.take();
+				if (first != END_OF_SCAN) {
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+				}
+				done = first == END_OF_SCAN || batch.remove(END_OF_SCAN);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (batch.isEmpty())
+				continue;
+
+			List<BookRecord> records = new ArrayList<BookRecord>(batch.size());
+			for (Pair<Path, BookRecord> x : batch)
+				records.add(x.getValue1());
+			try {
+				BookBulkLoader.Report loaded = bulkLoader.load(records.iterator());
+				report.inserted.addAndGet(loaded.getInsertedCount());
+				report.updated.addAndGet(loaded.getUpdatedCount());
+				for (Pair<Integer, String> failure : loaded.getFailures())
+					report.fail(batch.get(failure.getValue0() - 1).getValue0(), failure.getValue1());
+				if (coverPipeline != null) {
+					for (int x = 0; x < batch.size(); x++)
+						coverPipeline.submit(loaded.getBookID(x + 1), batch.get(x).getValue0());
+				}
+			} catch (RuntimeException e) {
+				// keep draining the queue, otherwise the scanning threads block forever
+				logger.error("Exception occured while loading scanned books: " + e.getMessage());
+				for (Pair<Path, BookRecord> x : batch)
+					report.fail(x.getValue0(), e.getMessage());
+			}
+			batch.clear();
+		}
+	}
+
+	static boolean isEpub(Path file) {
+		return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".epub");
+	}
+
+	/**
+	 * Blocking put that lets the ForkJoinPool add a thread while we wait. The wait
+	 * is given up if the loader (the queue's only consumer) stops.
+	 *
+	 * @return true if the item was queued, false if the loader has stopped.
+	 */
+	private static <T> boolean putBlocking(BlockingQueue<T> queue, T item, Future<?> loader)
+			throws InterruptedException {
+		QueuePut<T> put = new QueuePut<T>(queue, item, loader);
+		ForkJoinPool.managedBlock(put);
+		return put.done;
+	}
+
+	private static class QueuePut<T> implements ForkJoinPool.ManagedBlocker {
+		private final BlockingQueue<T> queue;
+		private final T item;
+		private final Future<?> loader;
+		private boolean done = false;
+
+		private QueuePut(BlockingQueue<T> queue, T item, Future<?> loader) {
+			this.queue = queue;
+			this.item = item;
+			this.loader = loader;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			// a timed offer so a dead loader is noticed
+			while (!done && !loader.isDone())
+				done = queue.offer(item, PUT_WAIT_MS, TimeUnit.MILLISECONDS);
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done || (done = queue.offer(item)) || loader.isDone();
+		}
+	}
+
+	/**
+	 * Reads the epubs in one directory and forks a task per sub directory.
+	 */
+	private static class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
+		private final BlockingQueue<Pair<Path, BookRecord>> queue;
+		private final Future<?> loader;
+		private final GenreIndex genreIndex;
+		private final ScanReport report;
+
+		private ScanTask(Path dir, BlockingQueue<Pair<Path, BookRecord>> queue, Future<?> loader,
+				GenreIndex genreIndex, ScanReport report) {
+			this.dir = dir;
+			this.queue = queue;
+			this.loader = loader;
+			this.genreIndex = genreIndex;
+			this.report = report;
+		}
+
+		@Override
+		protected void compute() {
+			List<ScanTask> subDirs = new ArrayList<ScanTask>();
+			List<Path> epubs = new ArrayList<Path>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				for (Path entry : entries) {
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+						subDirs.add(new ScanTask(entry, queue, loader, genreIndex, report));
+					else if (isEpub(entry) && Files.isRegularFile(entry))
+						epubs.add(entry);
+				}
+			} catch (IOException e) {
+				report.fail(dir, "Unable to list directory: " + e.getMessage());
+				return;
+			}
+			// fork the sub directories so idle threads can steal them while we read this
+			// directory's epubs
+			for (ScanTask subDir : subDirs)
+				subDir.fork();
+
+			for (Path epub : epubs) {
+				report.found.incrementAndGet();
+				if (loader.isDone()) { // nothing will take the book off the queue
+					report.fail(epub, MSG_LOADER_STOPPED);
+					continue;
+				}
+				try {
+					BookRecord record = EpubReader.read(epub).toBookRecord(genreIndex);
+					if (!putBlocking(queue, new Pair<Path, BookRecord>(epub, record), loader))
+						report.fail(epub, MSG_LOADER_STOPPED);
+				} catch (IOException | XMLStreamException e) {
+					report.unreadable.incrementAndGet();
+					report.fail(epub, "Unable to read epub: " + e.getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			for (ScanTask subDir : subDirs)
+				subDir.join();
+		}
+	}
+
+	/**
+	 * The outcome of a scan. Counts are updated as the scan runs.
+	 */
+	public static class ScanReport {
+		private final AtomicInteger found = new AtomicInteger();
+		private final AtomicInteger unreadable = new AtomicInteger();
+		private final AtomicInteger inserted = new AtomicInteger();
+		private final AtomicInteger updated = new AtomicInteger();
+		// <file, reason>
+		private final List<Pair<Path, String>> failures = Collections
+				.synchronizedList(new ArrayList<Pair<Path, String>>());
+		private long elapsedMillis;
+
+		private void fail(Path file, String reason) {
+			failures.add(new Pair<Path, String>(file, reason));
+		}
+
+		/**
+		 * @return how many epubs were found.
+		 */
+		public int getFoundCount() {
+			return found.get();
+		}
+
+		/**
+		 * @return how many epubs couldn't be opened or parsed.
+		 */
+		public int getUnreadableCount() {
+			return unreadable.get();
+		}
+
+		public int getInsertedCount() {
+			return inserted.get();
+		}
+
+		public int getUpdatedCount() {
+			return updated.get();
+		}
+
+		/**
+		 * @return <file, reason> for every file (or directory) that failed.
+		 */
+		public List<Pair<Path, String>> getFailures() {
+			synchronized (failures) {
+				return new ArrayList<Pair<Path, String>>(failures);
+			}
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("found=%d, inserted=%d, updated=%d, unreadable=%d, failed=%d in %dms", found.get(),
+					inserted.get(), updated.get(), unreadable.get(), failures.size(), elapsedMillis);
+		}
+	}
+}
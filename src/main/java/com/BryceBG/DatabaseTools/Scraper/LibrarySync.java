@@ -0,0 +1,510 @@
+package com.BryceBG.DatabaseTools.Scraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.javatuples.Pair;
+
+import com.BryceBG.DatabaseTools.Covers.CoverPipeline;
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Author.Author;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Book.BookBulkLoader;
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+import com.BryceBG.DatabaseTools.Database.Book.BookPatch;
+import com.BryceBG.DatabaseTools.Database.Book.BookRecord;
+import com.BryceBG.DatabaseTools.Database.FileState.FileState;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
+import com.BryceBG.DatabaseTools.utils.IdentifierUtils;
+import com.BryceBG.DatabaseTools.utils.Utils;
+
+/**
+ * Keeps the catalog in sync with a directory of epubs. The file_state table
+ * remembers the size, modified time and content hash of every file from the
+ * last sync and the book it was loaded as, so a sync only does work for files
+ * that changed:<br>
+ * - unchanged files (same size and mtime) cost a stat call and a hash map
+ * lookup<br>
+ * - new files are read and added with the BookBulkLoader<br>
+ * - changed files (new hash) are re-read and the fields of their book that
+ * differ are edited with one BookPatch<br>
+ * - deleted files have their book removed with removeBook()<br>
+ * - a file that was only touched (same hash) or moved (a new path with the hash
+ * of a deleted file) keeps its book.
+ *
+ * Files that failed to load are remembered with no book and are only retried
+ * once they change. Books removed from the catalog by hand are not re-added
+ * either (the file's entry loses its book_id when the book is deleted).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class LibrarySync {
+	private static final Logger logger = LogManager.getLogger(LibrarySync.class.getName());
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+	private final int threads;
+	private final int batchSize;
+	private final boolean createMissingAuthors;
+	private CoverPipeline coverPipeline; // null to skip covers
+
+	/**
+	 * A sync that hashes and reads files on "scanner.threads" threads, loads new
+	 * books in batches of "db.bulk.batch_size" and creates authors it hasn't seen
+	 * before.
+	 */
+	public LibrarySync() {
+		this(Utils.getConfigInteger("scanner.threads", Runtime.getRuntime().availableProcessors()),
+				Utils.getConfigInteger("db.bulk.batch_size", BookBulkLoader.DEFAULT_BATCH_SIZE), true);
+	}
+
+	/**
+	 * @param threads              number of threads hashing and reading files.
+	 * @param batchSize            number of new books loaded per transaction.
+	 * @param createMissingAuthors if false new books by authors that aren't in
+	 *                             the database fail to load.
+	 */
+	public LibrarySync(int threads, int batchSize, boolean createMissingAuthors) {
+		this.threads = Math.max(1, threads);
+		this.batchSize = Math.max(1, batchSize);
+		this.createMissingAuthors = createMissingAuthors;
+	}
+
+	/**
+	 * @param coverPipeline extracts the covers of added and changed books (null to
+	 *                      skip covers). The caller closes it once the sync is
+	 *                      done.
+	 */
+	public void setCoverPipeline(CoverPipeline coverPipeline) {
+		this.coverPipeline = coverPipeline;
+	}
+
+	/**
+	 * Bring the catalog up to date with the epubs under a directory.
+	 *
+	 * @param root the library directory.
+	 * @return what the sync did.
+	 */
+	public SyncReport sync(Path root) {
+		long start = System.nanoTime();
+		SyncReport report = new SyncReport();
+		root = root.toAbsolutePath().normalize();
+		if (!Files.isDirectory(root)) {
+			report.fail(root.toString(), "Not a directory");
+			return report;
+		}
+		String prefix = root.toString().endsWith(File.separator) ? root.toString() : root + File.separator;
+		HashMap<String, FileState> index = DAORoot.fileStateDao.getFileStates(prefix);
+		if (index == null) {
+			report.fail(root.toString(), "Unable to read the file_state table");
+			return report;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// 1. stat every file and keep the ones that differ from the index
+			List<FileState> candidates = new ArrayList<FileState>();
+			HashSet<String> seen = new HashSet<String>();
+			helperWalk(root, index, candidates, seen, report);
+
+			HashMap<String, FileState> deleted = new HashMap<String, FileState>();
+			for (FileState state : index.values()) {
+				if (!seen.contains(state.getPath()))
+					deleted.put(state.getPath(), state);
+			}
+
+			// 2. hash the candidates to tell real changes from touched files
+			pool.submit(() -> candidates.parallelStream().forEach(state -> {
+				try {
+					state.setContentHash(hashFile(Paths.get(state.getPath())));
+				} catch (IOException e) {
+					report.fail(state.getPath(), "Unable to read file: " + e.getMessage());
+				}
+			})).get();
+
+			HashMap<String, FileState> deletedByHash = new HashMap<String, FileState>();
+			for (FileState state : deleted.values()) {
+				if (state.getBookID() > 0)
+					deletedByHash.put(state.getContentHash(), state);
+			}
+
+			// 3. sort the candidates into touched/moved, changed and new files
+			List<FileState> toSave = new ArrayList<FileState>();
+			List<Pair<FileState, FileState>> changed = new ArrayList<Pair<FileState, FileState>>(); // <old, new>
+			List<FileState> added = new ArrayList<FileState>();
+			for (FileState state : candidates) {
+				if (state.getContentHash() == null) // couldn't be read
+					continue;
+				FileState old = index.get(state.getPath());
+				FileState moved = (old == null) ? deletedByHash.remove(state.getContentHash()) : null;
+				if (old != null && old.getContentHash().equals(state.getContentHash())) {
+					state.setBookID(old.getBookID()); // touched
+					toSave.add(state);
+				} else if (moved != null) {
+					deleted.remove(moved.getPath());
+					state.setBookID(moved.getBookID());
+					toSave.add(state);
+					report.moved++;
+				} else if (old != null && old.getBookID() > 0) {
+					changed.add(new Pair<FileState, FileState>(old, state));
+				} else {
+					added.add(state);
+				}
+			}
+
+			// 4. update the books of changed files (or re-add them if they are now a
+			// different book)
+			GenreIndex genreIndex = DAORoot.genreDao.getGenreIndex();
+			List<FileState> orphaned = new ArrayList<FileState>();
+			for (Pair<FileState, FileState> change : changed) {
+				FileState state = change.getValue1();
+				BookRecord record = helperRead(state, report, genreIndex);
+				if (record == null) {
+					state.setBookID(change.getValue0().getBookID()); // keep the old book until it can be read
+					toSave.add(state);
+					continue;
+				}
+				Book book = DAORoot.bookDao.getBookByBookID(change.getValue0().getBookID());
+				if (book != null && record.getTitle() != null && book.getTitle().equals(record.getTitle().strip())) {
+					state.setBookID(book.getBookID());
+					toSave.add(state);
+					if (helperApplyEdits(book, record)) {
+						report.updated++;
+						if (coverPipeline != null) // the cover may have changed too
+							coverPipeline.submit(book.getBookID(), Paths.get(state.getPath()));
+					}
+					else
+						report.fail(state.getPath(), "Unable to update book " + book.getBookID());
+				} else {
+					orphaned.add(change.getValue0());
+					added.add(state);
+				}
+			}
+
+			// 5. load the new files a batch at a time
+			for (int x = 0; x < added.size(); x += batchSize) {
+				List<FileState> batch = added.subList(x, Math.min(added.size(), x + batchSize));
+				toSave.addAll(helperLoad(pool, batch, genreIndex, report));
+			}
+
+			// 6. remove the books of deleted (or now different) files unless another file
+			// is still that book
+			HashSet<String> candidatePaths = new HashSet<String>();
+			for (FileState state : candidates)
+				candidatePaths.add(state.getPath());
+			HashSet<Long> inUse = new HashSet<Long>();
+			for (FileState state : index.values()) {
+				if (seen.contains(state.getPath()) && !candidatePaths.contains(state.getPath())) // unchanged
+					inUse.add(state.getBookID());
+			}
+			for (FileState state : toSave)
+				inUse.add(state.getBookID());
+			HashSet<Long> toRemove = new HashSet<Long>();
+			for (FileState state : deleted.values())
+				toRemove.add(state.getBookID());
+			for (FileState state : orphaned)
+				toRemove.add(state.getBookID());
+			for (Long bookID : toRemove) {
+				if (bookID <= 0 || inUse.contains(bookID))
+					continue;
+				if (DAORoot.bookDao.removeBook(bookID))
+					report.removed++;
+				else if (DAORoot.bookDao.getBookByBookID(bookID) != null)
+					report.fail(String.valueOf(bookID), "Unable to remove book of deleted file");
+			}
+
+			// 7. save the new index
+			if (!DAORoot.fileStateDao.saveFileStates(toSave))
+				report.fail(root.toString(), "Unable to save the file_state table");
+			if (!DAORoot.fileStateDao.removeFileStates(deleted.keySet()))
+				report.fail(root.toString(), "Unable to remove deleted files from the file_state table");
+		} catch (IOException e) {
+			report.fail(root.toString(), "Unable to walk directory: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Library sync of {} was interrupted", root);
+		} catch (ExecutionException e) {
+			logger.error("Exception occured while hashing files: " + e.getCause().getMessage());
+			report.fail(root.toString(), e.getCause().getMessage());
+		} finally {
+			pool.shutdownNow();
+		}
+		report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		logger.info("Library sync of {} finished: {}", root, report);
+		return report;
+	}
+
+	/**
+	 * Walk the library, recording every epub we see and which ones don't match
+	 * their index entry. Only the attributes the directory walk already has are
+	 * used, so unchanged files are never opened.
+	 */
+	private void helperWalk(Path root, HashMap<String, FileState> index, List<FileState> candidates,
+			HashSet<String> seen, SyncReport report) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (!attrs.isRegularFile() || !EpubScanner.isEpub(file))
+					return FileVisitResult.CONTINUE;
+				String path = file.toString();
+				long size = attrs.size();
+				long mtime = attrs.lastModifiedTime().toMillis();
+				seen.add(path);
+				report.scanned++;
+				FileState state = index.get(path);
+				if (state != null && state.matches(size, mtime))
+					report.unchanged++;
+				else
+					candidates.add(new FileState(path, size, mtime, null, 0));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				report.fail(file.toString(), "Unable to read file: " + e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Read a batch of new files (in parallel) and add them with the bulk loader.
+	 *
+	 * @return the states of the batch with their new book_ids (0 if they failed).
+	 */
+	private List<FileState> helperLoad(ForkJoinPool pool, List<FileState> batch, GenreIndex genreIndex,
+			SyncReport report) throws InterruptedException, ExecutionException {
+		BookRecord[] records = new BookRecord[batch.size()];
+		pool.submit(() -> IntStream.range(0, records.length).parallel()
+				.forEach(x -> records[x] = helperRead(batch.get(x), report, genreIndex))).get();
+
+		List<BookRecord> readable = new ArrayList<BookRecord>();
+		List<FileState> readableStates = new ArrayList<FileState>();
+		for (int x = 0; x < records.length; x++) {
+			if (records[x] != null) {
+				readable.add(records[x]);
+				readableStates.add(batch.get(x));
+			}
+		}
+		BookBulkLoader.Report loaded = new BookBulkLoader(batchSize, createMissingAuthors)
+				.load(readable.iterator());
+		for (Pair<Integer, String> failure : loaded.getFailures())
+			report.fail(readableStates.get(failure.getValue0() - 1).getPath(), failure.getValue1());
+		for (int x = 0; x < readableStates.size(); x++) {
+			readableStates.get(x).setBookID(Math.max(0, loaded.getBookID(x + 1)));
+			if (coverPipeline != null)
+				coverPipeline.submit(readableStates.get(x).getBookID(), Paths.get(readableStates.get(x).getPath()));
+		}
+		report.added += loaded.getInsertedCount();
+		report.updated += loaded.getUpdatedCount();
+		// unreadable files are remembered too so they aren't re-read until they change
+		return batch;
+	}
+
+	private BookRecord helperRead(FileState state, SyncReport report, GenreIndex genreIndex) {
+		try {
+			return EpubReader.read(Paths.get(state.getPath())).toBookRecord(genreIndex);
+		} catch (IOException | XMLStreamException e) {
+			report.fail(state.getPath(), "Unable to read epub: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Edit the fields of a book that differ from the file's metadata (in one
+	 * transaction). Authors the file lists that the book doesn't have are added
+	 * (created first if createMissingAuthors is set) and the book's other authors
+	 * removed.
+	 *
+	 * @return true if every edit succeeded (or none were needed).
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean helperApplyEdits(Book book, BookRecord record) {
+		BookPatch patch = new BookPatch();
+		String description = (record.getDescription() == null) ? "" : record.getDescription();
+		if (!description.equals(Objects.toString(book.getDescription(), "")))
+			patch.set(EDIT_TYPE.SET_DESCRIPTION, description);
+		String publisher = (record.getPublisher() == null) ? "" : record.getPublisher().strip();
+		if (!publisher.equals(Objects.toString(book.getPublisher(), "")))
+			patch.set(EDIT_TYPE.SET_PUBLISHER, publisher);
+		if (record.getPublishDate() != null && !record.getPublishDate().equals(book.getPublishDate()))
+			patch.set(EDIT_TYPE.SET_PUBLISH_DATE, record.getPublishDate());
+		// (no genres or identifiers in the file clears them from the book)
+		if (!sameElements(record.getGenres(), book.getGenres()))
+			patch.set(EDIT_TYPE.SET_GENRES, (record.getGenres() == null) ? new String[0] : record.getGenres());
+		// the book's identifiers were formatted when they were saved so the file's
+		// are too before comparing (editBook() rejects incomplete ones)
+		Pair<String, String>[] identifiers = (record.getIdentifiers() == null) ? new Pair[0]
+				: record.getIdentifiers().clone();
+		if (Arrays.stream(identifiers).allMatch(x -> x != null && x.getValue0() != null && x.getValue1() != null))
+			identifiers = IdentifierUtils.formatIdentifiers(identifiers);
+		if (!sameElements(identifiers, book.getIdentifiers()))
+			patch.set(EDIT_TYPE.SET_IDENTIFIERS, identifiers);
+		if (record.getAuthorNames() != null && record.getAuthorNames().length > 0) {
+			LinkedHashSet<Integer> authorIDs = helperFindAuthors(record.getAuthorNames());
+			if (authorIDs == null)
+				return false;
+			int[] oldAuthorIDs = (book.getAuthorIDs() == null) ? new int[0] : book.getAuthorIDs();
+			for (int authorID : authorIDs) {
+				if (IntStream.of(oldAuthorIDs).noneMatch(x -> x == authorID))
+					patch.set(EDIT_TYPE.ADD_AUTHOR, authorID);
+			}
+			for (int authorID : oldAuthorIDs) {
+				if (!authorIDs.contains(authorID))
+					patch.set(EDIT_TYPE.REMOVE_AUTHOR, authorID);
+			}
+		}
+		return patch.isEmpty() || DAORoot.bookDao.editBook(book.getBookID(), patch);
+	}
+
+	/**
+	 * @return the ids of the authors named (in order) or null if one of them isn't
+	 *         in the database and can't be created.
+	 */
+	private LinkedHashSet<Integer> helperFindAuthors(Pair<String, String>[] names) {
+		LinkedHashSet<Integer> rtVal = new LinkedHashSet<Integer>();
+		for (Pair<String, String> name : names) {
+			if (name == null)
+				return null;
+			Author author = DAORoot.authorDao.getAuthor(name.getValue0(), name.getValue1());
+			if (author == null && createMissingAuthors
+					&& DAORoot.authorDao.addAuthor(name.getValue0(), name.getValue1()))
+				author = DAORoot.authorDao.getAuthor(name.getValue0(), name.getValue1());
+			if (author == null) {
+				logger.debug("Author {} {} isn't in the database", name.getValue0(), name.getValue1());
+				return null;
+			}
+			rtVal.add(author.getAuthorID());
+		}
+		return rtVal;
+	}
+
+	private static boolean sameElements(Object[] a, Object[] b) {
+		if (a == null || b == null)
+			return (a == null || a.length == 0) && (b == null || b.length == 0);
+		return new HashSet<Object>(Arrays.asList(a)).equals(new HashSet<Object>(Arrays.asList(b)));
+	}
+
+	/**
+	 * @return the hex SHA-256 of a file's contents.
+	 */
+	static String hashFile(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) { // SHA-256 is required on every JVM
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[HASH_BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * What a sync did.
+	 */
+	public static class SyncReport {
+		private int scanned = 0;
+		private int unchanged = 0;
+		private int added = 0;
+		private int updated = 0;
+		private int moved = 0;
+		private int removed = 0;
+		// <path (or book_id), reason>
+		private final List<Pair<String, String>> failures = Collections
+				.synchronizedList(new ArrayList<Pair<String, String>>());
+		private long elapsedMillis;
+
+		private void fail(String path, String reason) {
+			failures.add(new Pair<String, String>(path, reason));
+		}
+
+		/**
+		 * @return how many epubs were found.
+		 */
+		public int getScannedCount() {
+			return scanned;
+		}
+
+		/**
+		 * @return how many epubs were skipped because their size and mtime hadn't
+		 *         changed.
+		 */
+		public int getUnchangedCount() {
+			return unchanged;
+		}
+
+		public int getAddedCount() {
+			return added;
+		}
+
+		public int getUpdatedCount() {
+			return updated;
+		}
+
+		/**
+		 * @return how many files had been moved/renamed (and kept their book).
+		 */
+		public int getMovedCount() {
+			return moved;
+		}
+
+		public int getRemovedCount() {
+			return removed;
+		}
+
+		/**
+		 * @return <path, reason> for every file that failed.
+		 */
+		public List<Pair<String, String>> getFailures() {
+			synchronized (failures) {
+				return new ArrayList<Pair<String, String>>(failures);
+			}
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"scanned=%d, unchanged=%d, added=%d, updated=%d, moved=%d, removed=%d, failed=%d in %dms", scanned,
+					unchanged, added, updated, moved, removed, failures.size(), elapsedMillis);
+		}
+	}
+}
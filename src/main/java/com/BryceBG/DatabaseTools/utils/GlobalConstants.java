@@ -31,14 +31,19 @@ public class GlobalConstants {
 	// this is the database we use that is an alternative to our main library
 	// database.
 	public static final String TEST_DBNAME = "librarytest";
+	// the tests copy TEST_DBNAME from this template (schema and test entries, see UtilsForTests.createTestDB())
+	public static final String TEST_TEMPLATE_DBNAME = "librarytest_template";
 	
-	public static final String DB_INSTALL_SCRIPT_PATH = "install.sql"; 
+	// resource directory of the numbered schema migration scripts (see SchemaMigrator)
+	public static final String DB_MIGRATIONS_PATH = "migrations/";
 
 	
 	/**error messages used in our functions to indicate reason for failure**/
 	public static final String MSG_SUCCESS = "Success!";
 	public static final String MSG_INVALID_USER = "Invalid Username/Password combo";
 	public static final String MSG_INVALID_USER_PERMISSIONS = "User lacks permissions to perform selected operation";
+	public static final String MSG_INVALID_SESSION = "Session is invalid or has expired. Please log in again.";
+	public static final String MSG_QUERY_FAILED = "Unable to load the results. Please try again.";
 	
 	
 }
@@ -0,0 +1,127 @@
+package com.BryceBG.DatabaseTools.utils;
+
+import java.lang.reflect.Array;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.javatuples.Pair;
+
+/**
+ * A small JSON writer for the REST API. It writes the plain values the API
+ * builds its responses from (maps, lists, arrays, strings, numbers, booleans,
+ * enums, dates and Pairs) so the API doesn't need a reflection based mapper.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * @param value null, a CharSequence, Number, Boolean, Enum, Date (written as an
+	 *              ISO-8601 instant), Pair (written as a 2 element array), Map,
+	 *              Iterable or array of any of these.
+	 * @return the value as JSON.
+	 * @throws IllegalArgumentException if the value (or something in it) is of
+	 *                                  another type.
+	 */
+	public static String toJson(Object value) {
+		StringBuilder sb = new StringBuilder();
+		write(sb, value);
+		return sb.toString();
+	}
+
+	private static void write(StringBuilder sb, Object value) {
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof CharSequence) {
+			writeString(sb, value.toString());
+		} else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) // not representable in JSON
+				sb.append("null");
+			else
+				sb.append(value.toString());
+		} else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value.toString());
+		} else if (value instanceof Enum) {
+			writeString(sb, ((Enum<?>) value).name());
+		} else if (value instanceof Date) {
+			writeString(sb, ((Date) value).toInstant().toString());
+		} else if (value instanceof Pair) {
+			Pair<?, ?> pair = (Pair<?, ?>) value;
+			sb.append('[');
+			write(sb, pair.getValue0());
+			sb.append(',');
+			write(sb, pair.getValue1());
+			sb.append(']');
+		} else if (value instanceof Map) {
+			sb.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first)
+					sb.append(',');
+				first = false;
+				writeString(sb, String.valueOf(entry.getKey()));
+				sb.append(':');
+				write(sb, entry.getValue());
+			}
+			sb.append('}');
+		} else if (value instanceof Iterable) {
+			sb.append('[');
+			Iterator<?> it = ((Iterable<?>) value).iterator();
+			while (it.hasNext()) {
+				write(sb, it.next());
+				if (it.hasNext())
+					sb.append(',');
+			}
+			sb.append(']');
+		} else if (value.getClass().isArray()) { // handles primitive arrays too
+			sb.append('[');
+			int length = Array.getLength(value);
+			for (int x = 0; x < length; x++) {
+				if (x > 0)
+					sb.append(',');
+				write(sb, Array.get(value, x));
+			}
+			sb.append(']');
+		} else {
+			throw new IllegalArgumentException("Can't write " + value.getClass().getName() + " as JSON");
+		}
+	}
+
+	private static void writeString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int x = 0; x < s.length(); x++) {
+			char c = s.charAt(x);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				// control characters must be escaped, the line/paragraph separators break
+				// javascript that embeds the JSON
+				if (c < 0x20 || c == '\u2028' || c == '\u2029')
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -1,3 +1,5 @@
+--schema version 1: the schema libraries were created with before schema_version existed (see SchemaMigrator).
+--Applied migrations are never edited; later changes go in the next V<n>__ script.
 --This is our main script to create our database tables for our system.
 --TODO:
 -- rewrite our foreign references see:
@@ -0,0 +1,58 @@
+--schema version 2: rating sums, full text search, rating constraint fixes and the file_state table.
+--Libraries created before schema_version existed may already have some of this (SchemaMigrator baselines them at
+--version 1) so every statement checks first.
+
+--trigram matching for fuzzy/substring searches on book titles (trusted extension so the db owner can create it)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+--sum and number of the ratings of the books in the series, kept up to date with each rating (see UserDao.rateBook())
+ALTER TABLE series
+    ADD COLUMN IF NOT EXISTS rating_sum   NUMERIC DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_count BIGINT  DEFAULT 0;
+
+--sum of the votes (average_rating is rating_sum / rating_count rounded)
+ALTER TABLE books
+    ADD COLUMN IF NOT EXISTS rating_sum NUMERIC DEFAULT 0;
+
+--full text search document (title is weighted highest then description then publisher). see BookDao.searchBooksByText()
+--(adding it rewrites the books table once)
+ALTER TABLE books
+    ADD COLUMN IF NOT EXISTS search_vector TSVECTOR GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(description, '')), 'B') ||
+        setweight(to_tsvector('english', coalesce(publisher, '')), 'C')) STORED;
+
+--the sums of existing ratings (rating_sum was only kept from version 2 on)
+UPDATE books
+SET rating_sum = average_rating * rating_count
+WHERE rating_sum = 0
+  AND rating_count > 0;
+UPDATE series s
+SET (rating_sum, rating_count) = (SELECT COALESCE(sum(b.rating_sum), 0), COALESCE(sum(b.rating_count), 0)
+                                  FROM books b
+                                  WHERE b.series_id = s.series_id);
+
+--ratings are 0 to 10 (version 1 only allowed 10) and go with the user or book they belong to
+ALTER TABLE user_book_rating
+    DROP CONSTRAINT IF EXISTS user_book_rating_rating_check,
+    DROP CONSTRAINT IF EXISTS user_book_rating_user_id_fkey,
+    DROP CONSTRAINT IF EXISTS user_book_rating_book_id_fkey;
+ALTER TABLE user_book_rating
+    ADD CONSTRAINT user_book_rating_rating_check CHECK (rating >= 0 AND rating <= 10),
+    ADD CONSTRAINT user_book_rating_user_id_fkey FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE, --UserDao.removeUser() takes the ratings out of the averages first
+    ADD CONSTRAINT user_book_rating_book_id_fkey FOREIGN KEY (book_id) REFERENCES books (book_id) ON DELETE CASCADE;
+
+-- #####LIBRARY FILES TABLES
+--the book files the catalog was last synced with (see LibrarySync). A file whose size and mtime still match its
+--entry is assumed to be unchanged so a sync only has to read new and modified files.
+CREATE TABLE IF NOT EXISTS file_state
+(
+    path         VARCHAR,             --absolute path of the file
+    size         BIGINT  NOT NULL,    --bytes
+    mtime        BIGINT  NOT NULL,    --last modified time (ms since epoch)
+    content_hash VARCHAR NOT NULL,    --sha-256 of the file's contents (hex)
+    book_id      BIGINT DEFAULT NULL, --the book the file was loaded as (null if it failed to load)
+    PRIMARY KEY (path),
+    --a file whose book is removed by hand keeps its entry (so it isn't re-added on the next sync)
+    FOREIGN KEY (book_id) REFERENCES books (book_id) ON DELETE SET NULL
+);
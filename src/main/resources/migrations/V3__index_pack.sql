@@ -0,0 +1,43 @@
+--schema version 3: the indexes behind every lookup the DAOs make. Primary keys and UNIQUE constraints already cover:
+--users(username), users(email), authors(fname, lname), series(series_name, primary_author_id), genres(genre_name),
+--book_genres/book_authors/book_identifier by book_id and user_book_rating by user_id.
+--Built CONCURRENTLY so upgrading a library that is in use doesn't block writes to its tables (SchemaMigrator runs
+--this script outside of a transaction and drops an index a failed concurrent build left invalid before retrying).
+--IndexAdvisor (-a/--index_advisor) reports the indexes created by the migrations that are missing or never used.
+
+--lets random book picks within a genre seek straight to a book_id (the primary key leads with book_id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_genres_genre_name_idx ON book_genres (genre_name, book_id);
+--keyset pagination indexes: each page is a range scan starting at the (sort_key, id) of the last row seen
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_authors_author_id_idx ON book_authors (author_id, book_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS books_title_idx ON books (title, book_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS books_series_idx ON books (series_id, COALESCE(book_index_in_series, 0), book_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS authors_lname_idx ON authors (lname, author_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS series_name_idx ON series (series_name, series_id);
+--deleting a book has to find the ratings of it (the primary key leads with user_id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS user_book_rating_book_id_idx ON user_book_rating (book_id);
+--deleting a book has to find the file_state entries that point at it
+CREATE INDEX CONCURRENTLY IF NOT EXISTS file_state_book_id_idx ON file_state (book_id);
+--full text and fuzzy title search (the trigram index also serves getBooksByTitle()'s ILIKE '%term%')
+CREATE INDEX CONCURRENTLY IF NOT EXISTS books_search_vector_idx ON books USING GIN (search_vector);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS books_title_trgm_idx ON books USING GIN (title gin_trgm_ops);
+
+--searching by identifier (BookDao.getBookByIdentifier()) (the primary key leads with book_id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS book_identifier_value_idx ON book_identifier (identifier_type, identifier_value);
+--AuthorDao.getAuthor(full name) matches fname || ' ' || lname with ILIKE
+CREATE INDEX CONCURRENTLY IF NOT EXISTS authors_full_name_trgm_idx ON authors USING GIN ((fname || ' ' || lname) gin_trgm_ops);
+--LibrarySync reads the entries under a directory with path LIKE 'dir/%' (the primary key can't serve LIKE
+--unless the database uses the C collation)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS file_state_path_prefix_idx ON file_state (path text_pattern_ops);
+--deleting an author cascades to their books and series and sets verified_user_id back for a deleted user
+CREATE INDEX CONCURRENTLY IF NOT EXISTS books_primary_author_id_idx ON books (primary_author_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS series_primary_author_id_idx ON series (primary_author_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS authors_verified_user_id_idx ON authors (verified_user_id);
+--deleting a genre sets its subgenres' parent to null
+CREATE INDEX CONCURRENTLY IF NOT EXISTS genres_parent_idx ON genres (parent);
+--foreign keys whose referencing column isn't first in the primary key (deleting a book, series or author checks them)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS comments_book_id_idx ON comments (book_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS comments_series_series_id_idx ON comments_series (series_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS comments_author_author_id_idx ON comments_author (author_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS recommendation_series_to_series_series2_id_idx ON recommendation_series_to_series (series2_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS recommendation_book_to_series_book2_id_idx ON recommendation_book_to_series (book2_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS recommendation_book_to_book_book2_id_idx ON recommendation_book_to_book (book2_id);
@@ -0,0 +1,42 @@
+package testUtils;
+
+import org.junit.rules.ExternalResource;
+
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
+
+/**
+ * Runs each test in an isolated UnitOfWork (UnitOfWork.beginIsolated()) that
+ * is rolled back once the test is over, so every test starts from the entries
+ * the test database was copied with without having to call
+ * UtilsForTests.resetDB(). The code under test still commits and rolls back
+ * its own units as usual (to savepoints).
+ *
+ * Only for tests whose database work all happens on the test's thread (other
+ * threads can't see the uncommitted changes). The rule has to run inside the
+ * timeout rule as that runs the test on a thread of its own:
+ *
+ * <pre>
+ * &#64;Rule(order = 0)
+ * public Timeout globalTimeout = Timeout.seconds(20);
+ * &#64;Rule(order = 1)
+ * public RollbackRule rollback = new RollbackRule();
+ * </pre>
+ *
+ * @author Bryce-BG
+ *
+ */
+public class RollbackRule extends ExternalResource {
+	private UnitOfWork unit;
+
+	@Override
+	protected void before() throws Throwable {
+		unit = UnitOfWork.beginIsolated();
+	}
+
+	@Override
+	protected void after() {
+		unit.close();
+		// anything cached while the test ran may be gone now
+		UtilsForTests.invalidateCaches();
+	}
+}
@@ -0,0 +1,61 @@
+package testUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Helpers that write small epubs for the scraper tests.
+ */
+public class TestEpubs {
+
+	public static final String CONTAINER = "<?xml version=\"1.0\"?>"
+			+ "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">"
+			+ "<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/>"
+			+ "</rootfiles></container>";
+
+	/**
+	 * @return an epub 2 .opf with a title, a single author and a description.
+	 */
+	public static String opf(String title, String author, String description) {
+		return "<?xml version=\"1.0\"?>" + "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\">"
+				+ "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">"
+				+ "<dc:title>" + title + "</dc:title>" + "<dc:creator opf:role=\"aut\">" + author + "</dc:creator>"
+				+ "<dc:description>" + description + "</dc:description>" + "</metadata></package>";
+	}
+
+	/**
+	 * Write an epub (mimetype, container.xml and OEBPS/content.opf).
+	 */
+	public static Path writeEpub(Path epub, String opf) throws IOException {
+		return writeEpub(epub, opf, Collections.<String, byte[]>emptyMap());
+	}
+
+	/**
+	 * Write an epub with extra entries (e.g. images) next to the .opf.
+	 *
+	 * @param entries zip entry name -> content.
+	 */
+	public static Path writeEpub(Path epub, String opf, Map<String, byte[]> entries) throws IOException {
+		Files.createDirectories(epub.toAbsolutePath().getParent());
+		try (OutputStream out = Files.newOutputStream(epub); ZipOutputStream zip = new ZipOutputStream(out)) {
+			zip.putNextEntry(new ZipEntry("mimetype"));
+			zip.write("application/epub+zip".getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+			zip.write(CONTAINER.getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("OEBPS/content.opf"));
+			zip.write(opf.getBytes(StandardCharsets.UTF_8));
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey()));
+				zip.write(entry.getValue());
+			}
+		}
+		return epub;
+	}
+}
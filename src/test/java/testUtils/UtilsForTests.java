@@ -2,24 +2,41 @@ package testUtils;
 
 import static com.BryceBG.DatabaseTools.utils.GlobalConstants.*;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
 
-import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
 import com.BryceBG.DatabaseTools.Database.LibraryDB;
+import com.BryceBG.DatabaseTools.Database.SchemaMigrator;
 import com.BryceBG.DatabaseTools.utils.Utils;
 
 public class UtilsForTests {
 	private static final Logger logger = LogManager.getLogger(UtilsForTests.class.getName());
 
+	// the entries every test starts with (see resetDB())
+	private static final String RESET_SCRIPT_PATH = "resetDBEntries.sql";
+	private static final String SQL_DATABASE_COMMENT = "SELECT shobj_description(oid, 'pg_database') FROM pg_database WHERE datname = ?";
+
+	// pg_advisory_lock() key held while a fork checks or builds the template
+	private static final long TEMPLATE_LOCK_KEY = 0x4c696254657374L;
+
+	private static String resetScript; // read once
+	private static boolean templateReady = false; // the template has been checked (or built) by this JVM
+
 	public static void setupForTests() {
 		// set up our logger (can change last param to Level.Debug for more information
 		com.BryceBG.DatabaseTools.utils.Utils.initializeAppLogger(TEST_LOGGER_OUT_FILE_NAME, TEST_LOGGER_PATTERN, TEST_LOGGER_LEVEL);
@@ -31,13 +48,24 @@ public class UtilsForTests {
 	/**
 	 * This function is used to create the database of name:
 	 * GlobalConstants.TESTDB_NAME This database is a mockup of our real library
-	 * database with the same schema defined in resources/install.sql it also
+	 * database with the same schema (resources/migrations, see SchemaMigrator) it also
 	 * switches our system to operate on it if successful)
+	 * 
+	 * Unless "tests.template_db" is false the database is a copy of a template
+	 * database (GlobalConstants.TEST_TEMPLATE_DBNAME) that already has the schema
+	 * and the resetDBEntries.sql entries, so creating it is a single CREATE
+	 * DATABASE ... TEMPLATE. The template is built the first time it is needed and
+	 * rebuilt when the migrations or resetDBEntries.sql change.
 	 */
 	public static void createTestDB() {
-		// 1. create our empty testing database
-		if (!LibraryDB.createDB(TEST_DBNAME, false)) {
-			logger.error("Trying to create our test database: {} failed", TEST_DBNAME);
+		// 1. create our testing database
+		boolean created;
+		if (Utils.getConfigBoolean("tests.template_db", true))
+			created = helperPrepareTemplate() && LibraryDB.createDBFromTemplate(getTestDBName(), TEST_TEMPLATE_DBNAME);
+		else
+			created = LibraryDB.createDB(getTestDBName(), false) && helperRunResetScript(false);
+		if (!created) {
+			logger.error("Trying to create our test database: {} failed", getTestDBName());
 			// This statement below will usually cause the tests to crash because of a
 			// switch to a database that wasn't created.
 			// (Unless it couldn't be created because it already exists and a user had an
@@ -45,12 +73,24 @@ public class UtilsForTests {
 			// However, it ensures that even if DB creation fails we don't opperate on the
 			// REAL database and mess it up with our tests
 			boolean rtnedVal = DAORoot.changeDB(Utils.getConfigString("app.dbhost", null),
-					Utils.getConfigString("app.dbport", null), TEST_DBNAME, Utils.getConfigString("app.dbpass", null),
+					Utils.getConfigString("app.dbport", null), getTestDBName(), Utils.getConfigString("app.dbpass", null),
 					Utils.getConfigString("app.dbuser", null));
 			if(!rtnedVal)
 				logger.error("DB connection for tests failed.");
 		}
+		// nothing cached from the last test database is in this one
+		invalidateCaches();
+	}
 
+	/**
+	 * @return the name of this JVM's test database: GlobalConstants.TEST_DBNAME
+	 *         followed by the surefire fork number when there is one (the
+	 *         "test.fork" system property set in the pom) so test classes can run
+	 *         in parallel forks without sharing a database.
+	 */
+	public static String getTestDBName() {
+		String fork = System.getProperty("test.fork");
+		return fork == null || fork.isBlank() ? TEST_DBNAME : TEST_DBNAME + "_" + fork;
 	}
 
 	/**
@@ -61,37 +101,147 @@ public class UtilsForTests {
 	 * 
 	 */
 	public static void resetDB(boolean showExecution) {
-		try (Connection conn = DAORoot.library.connectToDB();) {
-
-			// Initialize the script runner
-			ScriptRunner sr = new ScriptRunner(conn);
-			if (!showExecution)
-				sr.setLogWriter(null); // hide output from the scriptrunner
-			// Creating a reader object
-
-			File resetFile = new File("resetDBEntries.sql");
-			BufferedReader reader;
+		helperRunResetScript(showExecution);
+	}
 
-			reader = new BufferedReader(new FileReader(resetFile));
+	/**
+	 * Run resetDBEntries.sql on the current database. The whole script is sent
+	 * in one round trip and one transaction (it starts with a single TRUNCATE ...
+	 * RESTART IDENTITY of every table).
+	 * 
+	 * @return true if the script ran.
+	 */
+	private static boolean helperRunResetScript(boolean showExecution) {
+		try (Connection conn = DAORoot.library.connectToDB(); Statement stmt = conn.createStatement()) {
+			String script = helperResetScript();
+			if (showExecution)
+				System.out.println(script);
+			conn.setAutoCommit(false);
+			stmt.execute(script);
+			conn.commit();
+			// the script changed the tables behind the daos' backs
+			invalidateCaches();
+			return true;
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: {}", e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Error occured during execution of our sql during DB reset: {}", e.getMessage());
+		} catch (IOException e) {
+			logger.error("Exception occured during trying to read reset script {}. The exception was: {}",
+					RESET_SCRIPT_PATH, e.getMessage());
+		}
+		return false;
+	}
 
-//			Reader r = Resources.getResourceAsReader(GlobalConstants.DB_INSTALL_SCRIPT_PATH);
+	private static synchronized String helperResetScript() throws IOException {
+		if (resetScript == null)
+			resetScript = new String(Files.readAllBytes(Paths.get(RESET_SCRIPT_PATH)), StandardCharsets.UTF_8);
+		return resetScript;
+	}
 
-			// 3.c.Running the script to add tables and rules
-			sr.runScript(reader);
+	/**
+	 * Run a query whose first column is a book_id (e.g. to get the order the
+	 * database's collation sorts titles in rather than Java's).
+	 * 
+	 * @return the book_ids in the order the query returned them (empty if an
+	 *         error occurred).
+	 */
+	public static List<Long> queryBookIDs(String sql, Object... params) {
+		List<Long> rtVal = new ArrayList<Long>();
+		try (Connection conn = DAORoot.library.connectToDB(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			for (int x = 0; x < params.length; x++)
+				pstmt.setObject(x + 1, params[x]);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next())
+					rtVal.add(rs.getLong(1));
+			}
+		} catch (ClassNotFoundException e) {
+			logger.error("Exception occured during connectToDB: {}", e.getMessage());
+		} catch (SQLException e) {
+			logger.error("Exception occured during executing SQL statement: {}", e.getMessage());
+		}
+		return rtVal;
+	}
 
-			// 4. commit results
-			conn.commit();
-			reader.close();
+	/**
+	 * Drop everything the daos cached (after the tables were changed behind their
+	 * backs).
+	 */
+	public static void invalidateCaches() {
+		DAORoot.bookDao.getBookCache().invalidateAll();
+		DAORoot.genreDao.invalidateGenreCaches();
+	}
 
+	/**
+	 * Make sure the template database exists and matches the current migrations
+	 * and resetDBEntries.sql (the version is kept in the template's database
+	 * comment), building it if it doesn't. Only checked once per JVM, and by one
+	 * test fork at a time (the others wait on an advisory lock).
+	 * 
+	 * @return true if the template is ready to be copied.
+	 */
+	private static synchronized boolean helperPrepareTemplate() {
+		if (templateReady)
+			return true;
+		try (Connection conn = helperConnectToPostgres()) {
+			// released when the connection is closed
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute("SELECT pg_advisory_lock(" + TEMPLATE_LOCK_KEY + ")");
+			}
+			String version = helperTemplateVersion();
+			try (PreparedStatement pstmt = conn.prepareStatement(SQL_DATABASE_COMMENT)) {
+				pstmt.setString(1, TEST_TEMPLATE_DBNAME);
+				try (ResultSet rs = pstmt.executeQuery()) {
+					if (rs.next() && version.equals(rs.getString(1))) {
+						templateReady = true;
+						return true;
+					}
+				}
+			}
+
+			logger.info("Building the test template database {} ({})", TEST_TEMPLATE_DBNAME, version);
+			if (!LibraryDB.createDB(TEST_TEMPLATE_DBNAME, false) || !helperRunResetScript(false))
+				return false;
+			try (Connection templateConn = DAORoot.library.connectToDB();
+					Statement stmt = templateConn.createStatement()) {
+				// up to date statistics are copied along with the tables
+				stmt.execute("ANALYZE");
+				stmt.execute(String.format("COMMENT ON DATABASE %s IS '%s'", TEST_TEMPLATE_DBNAME, version));
+			}
+			// nothing may be connected to the template while other forks copy it
+			DAORoot.library.close();
+			templateReady = true;
+			return true;
 		} catch (ClassNotFoundException e) {
 			logger.error("Exception occured during connectToDB: {}", e.getMessage());
 		} catch (SQLException e) {
-			logger.error("Error occured during execution of our sql during DB creation: {}", e.getMessage());
+			logger.error("Error occured preparing the test template database: {}", e.getMessage());
 		} catch (IOException e) {
-			logger.error("Exception occured during trying to read install script {}. The exception was: {}",
-					DB_INSTALL_SCRIPT_PATH, e.getMessage());
+			logger.error("Exception occured during trying to read the template scripts. The exception was: {}",
+					e.getMessage());
 		}
+		return false;
+	}
+
+	/**
+	 * @return the schema version and a checksum of everything the template is
+	 *         built from.
+	 */
+	private static String helperTemplateVersion() throws IOException {
+		CRC32 crc = new CRC32();
+		for (SchemaMigrator.Migration migration : SchemaMigrator.getMigrations())
+			crc.update(migration.readScript().replace("\r", "").getBytes(StandardCharsets.UTF_8));
+		crc.update(helperResetScript().replace("\r", "").getBytes(StandardCharsets.UTF_8));
+		return String.format("schema %d, checksum %d", SchemaMigrator.getLatestVersion(), crc.getValue());
+	}
 
+	// connects to the server's default database (so the template can be checked without connecting to it)
+	private static Connection helperConnectToPostgres() throws SQLException, ClassNotFoundException {
+		Class.forName("org.postgresql.Driver"); // register the driver
+		String url = String.format("jdbc:postgresql://%s:%s/?", Utils.getConfigString("app.dbhost", null),
+				Utils.getConfigString("app.dbport", null));
+		return DriverManager.getConnection(url, Utils.getConfigString("app.dbuser", null),
+				Utils.getConfigString("app.dbpass", null));
 	}
 
 }
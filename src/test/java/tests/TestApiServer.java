@@ -0,0 +1,138 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Api.ApiServer;
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+
+import testUtils.UtilsForTests;
+
+public class TestApiServer {
+
+	final String username = "admin";
+	final String password = "Password1";
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(20);
+
+	private ApiServer server;
+	private HttpClient client;
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Before
+	public void runBeforeTest() {
+		UtilsForTests.resetDB(false); // reset database to initial state
+		server = new ApiServer(2, 10, 60).start(0);
+		client = HttpClient.newHttpClient();
+	}
+
+	@After
+	public void runAfterTest() {
+		server.stop();
+	}
+
+	@Test
+	public void testGetBook() throws IOException, InterruptedException {
+		Book book = DAORoot.bookDao.getBooksByTitle("TestBook1")[0];
+
+		// Test 1: book is returned as cacheable json
+		HttpResponse<String> res = send(request("/api/books/" + book.getBookID()).GET().build());
+		assertEquals(200, res.statusCode());
+		assertTrue(res.body(), res.body().contains("\"title\":\"TestBook1\""));
+		assertEquals("public, max-age=60", res.headers().firstValue("Cache-Control").get());
+		String etag = res.headers().firstValue("ETag").get();
+
+		// Test 2: revalidating an unchanged book returns 304 without a body
+		res = send(request("/api/books/" + book.getBookID()).header("If-None-Match", etag).GET().build());
+		assertEquals(304, res.statusCode());
+		assertEquals("", res.body());
+
+		// Test 3: unknown book
+		res = send(request("/api/books/999999").GET().build());
+		assertEquals(404, res.statusCode());
+		assertEquals("no-store", res.headers().firstValue("Cache-Control").get());
+
+		// Test 4: invalid id
+		res = send(request("/api/books/abc").GET().build());
+		assertEquals(400, res.statusCode());
+	}
+
+	@Test
+	public void testSearchBooks() throws IOException, InterruptedException {
+		// Test 1: title search is paged
+		HttpResponse<String> res = send(request("/api/books?title=TestBook&page_size=1").GET().build());
+		assertEquals(res.body(), 200, res.statusCode());
+		assertTrue(res.body(), res.body().contains("\"next_page_token\":\""));
+
+		// Test 2: no search term
+		res = send(request("/api/books").GET().build());
+		assertEquals(400, res.statusCode());
+	}
+
+	@Test
+	public void testEditBook() throws IOException, InterruptedException {
+		Book book = DAORoot.bookDao.getBooksByTitle("TestBook1")[0];
+		String path = "/api/books/" + book.getBookID();
+
+		// Test 1: edits need a session
+		HttpResponse<String> res = send(request(path).method("PATCH", form("field", "description", "value", "new"))
+				.build());
+		assertEquals(401, res.statusCode());
+
+		// Test 2: login then edit
+		res = send(request("/api/login").POST(form("username", username, "password", password)).build());
+		assertEquals(res.body(), 200, res.statusCode());
+		String token = res.body().replaceAll(".*\"token\":\"([^\"]+)\".*", "$1");
+		res = send(request(path).header("Authorization", "Bearer " + token)
+				.method("PATCH", form("field", "description", "value", "new")).build());
+		assertEquals(res.body(), 200, res.statusCode());
+		assertEquals("new", DAORoot.bookDao.getBookByBookID(book.getBookID()).getDescription());
+
+		// Test 3: unknown field
+		res = send(request(path).header("Authorization", "Bearer " + token)
+				.method("PATCH", form("field", "title", "value", "x")).build());
+		assertEquals(400, res.statusCode());
+	}
+
+	private HttpRequest.Builder request(String path) {
+		return HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).header("Content-Type",
+				"application/x-www-form-urlencoded");
+	}
+
+	private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	// name, value, name, value...
+	private static HttpRequest.BodyPublisher form(String... params) {
+		StringBuilder sb = new StringBuilder();
+		for (int x = 0; x < params.length; x += 2) {
+			if (x > 0)
+				sb.append('&');
+			sb.append(URLEncoder.encode(params[x], StandardCharsets.UTF_8)).append('=')
+					.append(URLEncoder.encode(params[x + 1], StandardCharsets.UTF_8));
+		}
+		return HttpRequest.BodyPublishers.ofString(sb.toString());
+	}
+}
@@ -3,7 +3,6 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.javatuples.Pair;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
@@ -11,24 +10,24 @@ import org.junit.rules.Timeout;
 
 import com.BryceBG.DatabaseTools.Database.Author.AuthorController;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class TestAuthorController {
 
 	// global timeout to ensure no issues
-	@Rule
+	@Rule(order = 0)
 	public Timeout globalTimeout = Timeout.seconds(20);
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule(order = 1)
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void runBeforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testAddAuthor() {
 		// Test 1: add a valid author
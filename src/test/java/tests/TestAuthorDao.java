@@ -3,34 +3,34 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
 import com.BryceBG.DatabaseTools.Database.Author.Author;
 import com.BryceBG.DatabaseTools.Database.User.User;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class TestAuthorDao {
 
 	// global timeout to ensure no issues
-	@Rule
+	@Rule(order = 0)
 	public Timeout globalTimeout = Timeout.seconds(20);
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule(order = 1)
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void runBeforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testGetAllAuthors() {
 		ArrayList<Author> authors = DAORoot.authorDao.getAllAuthors();
@@ -46,6 +46,38 @@ public class TestAuthorDao {
 		assertEquals("Author bib was not what it should have been", "TEST AUTHOR", t.getAuthorBib());
 	}
 
+	// DEPENDENCIES: AuthorDao.getAllAuthors()
+	@Test
+	public void testForEachAuthor() {
+		ArrayList<Author> authors = DAORoot.authorDao.getAllAuthors();
+		ArrayList<Integer> visited = new ArrayList<Integer>();
+
+		// Test 1: every author is visited exactly once
+		assertTrue(DAORoot.authorDao.forEachAuthor(a -> visited.add(a.getAuthorID())));
+		assertEquals(authors.size(), visited.size());
+		for (Author a : authors) {
+			assertTrue(visited.contains(a.getAuthorID()));
+		}
+	}
+
+	// DEPENDENCIES: AuthorDao.getAllAuthors()
+	@Test
+	public void testGetAllAuthorsPage() {
+		// Test 1: one author per page still returns every author
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		Page<Author> page = DAORoot.authorDao.getAllAuthorsPage(null, 1);
+		ids.add(page.getItems().get(0).getAuthorID());
+		assertTrue(page.hasNextPage());
+		page = DAORoot.authorDao.getAllAuthorsPage(page.getNextPageToken(), 1);
+		ids.add(page.getItems().get(0).getAuthorID());
+		assertFalse(page.hasNextPage());
+		assertEquals(DAORoot.authorDao.getAllAuthors().size(), ids.size());
+		assertNotEquals(ids.get(0), ids.get(1));
+
+		// Test 2: invalid token
+		assertNull(DAORoot.authorDao.getAllAuthorsPage("bad token", 1));
+	}
+
 	@Test
 	public void testGetAuthor() {
 		// pre-inserted entry as mock data
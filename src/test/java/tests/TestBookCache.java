@@ -0,0 +1,134 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Book.BookCache;
+import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreDao;
+
+import testUtils.UtilsForTests;
+
+/**
+ * Tests for the cache BookDao.getBookByBookID() reads through. Not run in a
+ * RollbackRule unit: reads made in a unit of work are never cached.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class TestBookCache {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(20);
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Before
+	public void runBeforeTest() {
+		UtilsForTests.resetDB(false); // reset database to initial state
+	}
+
+	// Dependencies: getBookByBookID(), editBook(), removeBook()
+	@Test
+	public void testBookCache() {
+		BookCache cache = DAORoot.bookDao.getBookCache();
+		long bookID = DAORoot.bookDao.getBooksByTitle("TestBook1")[0].getBookID();
+
+		// Test 1: the second read is served from the cache
+		Book first = DAORoot.bookDao.getBookByBookID(bookID);
+		long hits = cache.getHitCount();
+		Book second = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(hits + 1, cache.getHitCount());
+		assertEquals(first, second);
+
+		// Test 2: changing a returned book doesn't change what is cached
+		second.setTitle("Changed");
+		second.getAuthorIDs()[0] = -5;
+		Book third = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(hits + 2, cache.getHitCount());
+		assertEquals(first, third);
+
+		// Test 3: editing the book invalidates it (the next read misses and is cached
+		// again)
+		assertTrue(DAORoot.bookDao.editBook(bookID, EDIT_TYPE.SET_DESCRIPTION, "new description"));
+		long misses = cache.getMissCount();
+		assertEquals("new description", DAORoot.bookDao.getBookByBookID(bookID).getDescription());
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals("new description", DAORoot.bookDao.getBookByBookID(bookID).getDescription());
+		assertEquals(hits + 3, cache.getHitCount());
+
+		// Test 4: removing the book invalidates it
+		assertTrue(DAORoot.bookDao.removeBook(bookID));
+		assertNull(DAORoot.bookDao.getBookByBookID(bookID));
+	}
+
+	// Dependencies: getBookByBookID()
+	@Test
+	public void testNotCachedInUnitOfWork() throws ClassNotFoundException, SQLException {
+		BookCache cache = DAORoot.bookDao.getBookCache();
+		long bookID = DAORoot.bookDao.getBooksByTitle("TestBook1")[0].getBookID();
+		cache.invalidate(bookID);
+
+		// Test 1: a read in a unit of work may never be committed so it isn't cached
+		try (UnitOfWork uow = UnitOfWork.beginIsolated()) {
+			assertNotNull(DAORoot.bookDao.getBookByBookID(bookID));
+			long misses = cache.getMissCount();
+			assertNotNull(DAORoot.bookDao.getBookByBookID(bookID));
+			assertEquals(misses + 1, cache.getMissCount());
+		}
+	}
+
+	// Dependencies: getBookByBookID(), removeGenre(), editGenre(), removeAuthor()
+	@Test
+	public void testCascadesInvalidate() throws ClassNotFoundException, SQLException, InterruptedException {
+		long bookID = DAORoot.bookDao.getBooksByTitle("TestBook3")[0].getBookID();
+		assertTrue(genresOf(DAORoot.bookDao.getBookByBookID(bookID)).contains("TestGenre1"));
+
+		// Test 1: removing a genre drops it from cached books
+		assertTrue(DAORoot.genreDao.removeGenre("TestGenre1"));
+		assertFalse(genresOf(DAORoot.bookDao.getBookByBookID(bookID)).contains("TestGenre1"));
+
+		// Test 2: renaming a genre renames it in cached books
+		assertTrue(genresOf(DAORoot.bookDao.getBookByBookID(bookID)).contains("TestGenre2"));
+		assertTrue(DAORoot.genreDao.editGenre(GenreDao.GENRE_NAME, "TestGenre2", "RenamedGenre"));
+		List<String> genres = genresOf(DAORoot.bookDao.getBookByBookID(bookID));
+		assertTrue(genres.contains("RenamedGenre"));
+		assertFalse(genres.contains("TestGenre2"));
+
+		// Test 3: a book another thread caches while an author is being removed in a
+		// unit of work is dropped again once the unit commits
+		Book book = DAORoot.bookDao.getBooksByTitle("TestBook1")[0];
+		DAORoot.bookDao.getBookByBookID(book.getBookID());
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			assertTrue(DAORoot.authorDao.removeAuthor(book.getPrimaryAuthorID()));
+			Thread reader = new Thread(() -> DAORoot.bookDao.getBookByBookID(book.getBookID()));
+			reader.start();
+			reader.join();
+			uow.commit();
+		}
+		Book after = DAORoot.bookDao.getBookByBookID(book.getBookID());
+		assertTrue(after == null || !ArrayUtils.contains(after.getAuthorIDs(), book.getPrimaryAuthorID()));
+	}
+
+	private static List<String> genresOf(Book book) {
+		return (book.getGenres() == null) ? new ArrayList<String>() : Arrays.asList(book.getGenres());
+	}
+}
@@ -0,0 +1,77 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.ConnectionPool;
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+
+import testUtils.UtilsForTests;
+
+/**
+ * Tests for the connection pool that sits behind LibraryDB.connectToDB()
+ *
+ * @author Bryce-BG
+ *
+ */
+public class TestConnectionPool {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(5);
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Test
+	public void testConnectionIsReturnedToPool() throws ClassNotFoundException, SQLException {
+		ConnectionPool pool = DAORoot.library.getPool();
+		pool.evictIdleConnections();
+		int borrowedBefore = pool.getBorrowedCount();
+
+		// Test 1: borrowing a connection marks it as in use
+		Connection conn = DAORoot.library.connectToDB();
+		assertTrue(conn.isValid(1));
+		assertEquals(borrowedBefore + 1, pool.getBorrowedCount());
+
+		// Test 2: closing the handle returns it (still open) to the pool
+		conn.close();
+		assertTrue(conn.isClosed());
+		assertEquals(borrowedBefore, pool.getBorrowedCount());
+		assertEquals(1, pool.getIdleCount());
+
+		// Test 3: the handle can't be used once it has been returned.
+		try {
+			conn.createStatement();
+			fail("Returned connection should not be usable");
+		} catch (SQLException e) {
+			// expected
+		}
+
+		// Test 4: the idle connection is reused rather than a new one being opened
+		try (Connection conn2 = DAORoot.library.connectToDB();) {
+			assertEquals(0, pool.getIdleCount());
+		}
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testTransactionStateIsResetOnReturn() throws ClassNotFoundException, SQLException {
+		try (Connection conn = DAORoot.library.connectToDB();) {
+			conn.setAutoCommit(false); // left in a transaction by "forgetful" code
+		}
+		try (Connection conn = DAORoot.library.connectToDB();) {
+			assertTrue(conn.getAutoCommit());
+		}
+	}
+
+}
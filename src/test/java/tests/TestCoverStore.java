@@ -0,0 +1,134 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLStreamException;
+
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.BryceBG.DatabaseTools.Covers.CoverStore;
+import com.BryceBG.DatabaseTools.Scraper.EpubReader;
+
+import testUtils.TestEpubs;
+
+public class TestCoverStore {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String oldRoot;
+
+	@Before
+	public void runBeforeTest() {
+		oldRoot = CoverStore.getRootDirectory();
+		CoverStore.setRootDirectory(folder.getRoot().getAbsolutePath());
+	}
+
+	@After
+	public void runAfterTest() {
+		CoverStore.setRootDirectory(oldRoot);
+	}
+
+	@Test
+	public void testStore() throws IOException {
+		CoverStore store = new CoverStore(100, 400);
+		byte[] image = png(300, 600);
+
+		// Test 1: the cover is sharded by its hash and both sizes are written
+		Pair<String, String> cover = store.store(image);
+		String name = cover.getValue1();
+		assertTrue(name.endsWith(".jpg"));
+		assertEquals(name.substring(0, 2) + File.separator + name.substring(2, 4), cover.getValue0());
+		BufferedImage large = ImageIO.read(new File(CoverStore.resolve(cover.getValue0(), name)));
+		BufferedImage small = ImageIO.read(new File(CoverStore.resolve(cover.getValue0(), CoverStore.smallCoverName(name))));
+		assertEquals(400, large.getHeight());
+		assertEquals(200, large.getWidth()); // aspect ratio is kept
+		assertEquals(100, small.getHeight());
+
+		// Test 2: the same image is stored once
+		Path largePath = new File(CoverStore.resolve(cover.getValue0(), name)).toPath();
+		long modified = Files.getLastModifiedTime(largePath).toMillis();
+		assertEquals(cover, store.store(image));
+		assertEquals(modified, Files.getLastModifiedTime(largePath).toMillis());
+
+		// Test 3: small images are not scaled up
+		Pair<String, String> tiny = store.store(png(20, 50));
+		assertEquals(50, ImageIO.read(new File(CoverStore.resolve(tiny.getValue0(), tiny.getValue1()))).getHeight());
+
+		// Test 4: something that isn't an image is rejected
+		try {
+			store.store("not an image".getBytes());
+			fail("expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// Test 5: images over the pixel limit are rejected, images at it are stored
+		byte[] big = png(200, 200);
+		try {
+			new CoverStore(100, 400, 200 * 199).store(big);
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("200x200"));
+		}
+		assertNotNull(new CoverStore(100, 400, 200 * 200).store(big));
+	}
+
+	@Test
+	public void testSmallCoverName() {
+		assertEquals("abc-S.jpg", CoverStore.smallCoverName("abc.jpg"));
+		assertEquals("a.b-S.png", CoverStore.smallCoverName("a.b.png"));
+		assertEquals("abc-S", CoverStore.smallCoverName("abc"));
+		assertNull(CoverStore.resolve(null, "abc.jpg"));
+	}
+
+	@Test
+	public void testReadCover() throws IOException, XMLStreamException {
+		byte[] image = png(10, 20);
+		HashMap<String, byte[]> entries = new HashMap<String, byte[]>();
+		entries.put("OEBPS/images/front cover.png", image);
+
+		// Test 1: epub 2 <meta name="cover">
+		String opf = TestEpubs.opf("Covered", "James Joyce", "").replace("</metadata></package>",
+				"<meta name=\"cover\" content=\"img1\"/></metadata><manifest>"
+						+ "<item id=\"img1\" href=\"images/front%20cover.png\" media-type=\"image/png\"/>"
+						+ "</manifest></package>");
+		Path epub = TestEpubs.writeEpub(folder.getRoot().toPath().resolve("epub2.epub"), opf, entries);
+		assertArrayEquals(image, EpubReader.readCover(epub));
+
+		// Test 2: epub 3 cover-image property
+		opf = TestEpubs.opf("Covered", "James Joyce", "").replace("</package>",
+				"<manifest><item id=\"x\" href=\"images/front%20cover.png\" media-type=\"image/png\" properties=\"cover-image\"/>"
+						+ "</manifest></package>");
+		epub = TestEpubs.writeEpub(folder.getRoot().toPath().resolve("epub3.epub"), opf, entries);
+		assertArrayEquals(image, EpubReader.readCover(epub));
+
+		// Test 3: no cover
+		epub = TestEpubs.writeEpub(folder.getRoot().toPath().resolve("none.epub"),
+				TestEpubs.opf("Uncovered", "James Joyce", ""));
+		assertNull(EpubReader.readCover(epub));
+	}
+
+	private static byte[] png(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < width; x++)
+			image.setRGB(x, x % height, 0xFF336699);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
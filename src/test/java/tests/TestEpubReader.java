@@ -0,0 +1,129 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.javatuples.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.BryceBG.DatabaseTools.Database.Book.BookRecord;
+import com.BryceBG.DatabaseTools.Database.Genre.Genre;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
+import com.BryceBG.DatabaseTools.Scraper.EpubMetadata;
+import com.BryceBG.DatabaseTools.Scraper.EpubReader;
+
+import testUtils.TestEpubs;
+
+public class TestEpubReader {
+
+	private static final String OPF_EPUB2 = "<?xml version=\"1.0\"?>"
+			+ "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\">"
+			+ "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:opf=\"http://www.idpf.org/2007/opf\">"
+			+ "<dc:title>Ulysses</dc:title>"
+			+ "<dc:creator opf:role=\"aut\" opf:file-as=\"Joyce, James\">James Joyce</dc:creator>"
+			+ "<dc:creator opf:role=\"edt\">Some Editor</dc:creator>"
+			+ "<dc:identifier opf:scheme=\"ISBN\">978-0-19-953556-9</dc:identifier>"
+			+ "<dc:identifier>urn:uuid:50F9F8B1-8A81-4DD5-B104-0766188D7D2C</dc:identifier>"
+			+ "<dc:identifier>calibre-1234</dc:identifier>"
+			+ "<dc:subject>Fiction / testgenre1</dc:subject>" + "<dc:subject>Not A Genre</dc:subject>"
+			+ "<dc:publisher>Oxford</dc:publisher>"
+			+ "<dc:date opf:event=\"modification\">2011-01-01</dc:date>"
+			+ "<dc:date opf:event=\"publication\">1922-02-02</dc:date>"
+			+ "<dc:description>&lt;p&gt;A day in Dublin.&lt;/p&gt;</dc:description>"
+			+ "</metadata><manifest/><spine/></package>";
+
+	private static final String OPF_EPUB3 = "<?xml version=\"1.0\"?>"
+			+ "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"3.0\">"
+			+ "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+			+ "<dc:title>Good Omens</dc:title>"
+			+ "<dc:creator id=\"c1\">Terry Pratchett</dc:creator>"
+			+ "<meta refines=\"#c1\" property=\"role\" scheme=\"marc:relators\">aut</meta>"
+			+ "<dc:creator id=\"c2\">Neil Gaiman</dc:creator>"
+			+ "<meta refines=\"#c2\" property=\"file-as\">Gaiman, Neil</meta>"
+			+ "<dc:creator id=\"c3\">An Illustrator</dc:creator>"
+			+ "<meta refines=\"#c3\" property=\"role\">ill</meta>" + "<dc:date>1990</dc:date>"
+			+ "</metadata></package>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReadEpub2() throws IOException, XMLStreamException {
+		Path epub = writeEpub("ulysses.epub", OPF_EPUB2);
+
+		// Test 1: raw metadata
+		EpubMetadata metadata = EpubReader.read(epub);
+		assertEquals(epub, metadata.getPath());
+		assertEquals("Ulysses", metadata.getTitle());
+		assertEquals(1, metadata.getCreators().size()); // the editor is dropped
+		assertEquals(3, metadata.getIdentifiers().size());
+		assertEquals("1922-02-02", metadata.getDate());
+
+		// Test 2: normalized into a book
+		GenreIndex genres = new GenreIndex(Arrays.asList(new Genre(null, "TestGenre1", null, null, null)));
+		BookRecord book = metadata.toBookRecord(genres);
+		assertArrayEquals(new Pair[] { new Pair<String, String>("James", "Joyce") }, book.getAuthorNames());
+		assertArrayEquals(new String[] { "TestGenre1" }, book.getGenres());
+		assertArrayEquals(new Pair[] { new Pair<String, String>("isbn", "9780199535569"),
+				new Pair<String, String>("uuid", "50f9f8b1-8a81-4dd5-b104-0766188d7d2c") }, book.getIdentifiers());
+		assertEquals("Oxford", book.getPublisher());
+		assertEquals("A day in Dublin.", book.getDescription());
+		assertEquals("1922-02-02 00:00:00.0", book.getPublishDate().toString());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReadEpub3() throws IOException, XMLStreamException {
+		Path epub = writeEpub("omens.epub", OPF_EPUB3);
+
+		BookRecord book = EpubReader.read(epub).toBookRecord(new GenreIndex(new ArrayList<Genre>()));
+		assertEquals("Good Omens", book.getTitle());
+		assertArrayEquals(new Pair[] { new Pair<String, String>("Terry", "Pratchett"),
+				new Pair<String, String>("Neil", "Gaiman") }, book.getAuthorNames());
+		assertEquals(0, book.getGenres().length);
+		assertEquals("1990-01-01 00:00:00.0", book.getPublishDate().toString());
+	}
+
+	@Test
+	public void testUnreadableEpub() throws IOException, XMLStreamException {
+		// Test 1: not a zip
+		Path notZip = folder.newFile("bad.epub").toPath();
+		Files.write(notZip, "not a zip".getBytes(StandardCharsets.UTF_8));
+		try {
+			EpubReader.read(notZip);
+			fail("expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// Test 2: zip with no container.xml
+		Path empty = folder.getRoot().toPath().resolve("empty.epub");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(empty))) {
+			zip.putNextEntry(new ZipEntry("mimetype"));
+			zip.write("application/epub+zip".getBytes(StandardCharsets.UTF_8));
+		}
+		try {
+			EpubReader.read(empty);
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("container.xml"));
+		}
+	}
+
+	private Path writeEpub(String name, String opf) throws IOException {
+		return TestEpubs.writeEpub(folder.getRoot().toPath().resolve(name), opf);
+	}
+}
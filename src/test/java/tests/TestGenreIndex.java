@@ -0,0 +1,86 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.BryceBG.DatabaseTools.Database.Genre.Genre;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
+
+/**
+ * Tests for the in memory genre suggestion index (no database needed).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class TestGenreIndex {
+
+	private static GenreIndex index() {
+		List<Genre> genres = new ArrayList<Genre>();
+		genres.add(new Genre(null, "Fiction", null, "fiction", null));
+		genres.add(new Genre("Fiction", "Science Fiction", null, "sci-fi",
+				new String[] { "space opera", "aliens", null }));
+		genres.add(new Genre("Fiction", "Fantasy", null, "fantasy", new String[] { "dragons", "magic" }));
+		genres.add(new Genre(null, "Mystery", null, "mystery-thriller", new String[] { "detective", "magic" }));
+		return new GenreIndex(genres);
+	}
+
+	@Test
+	public void testLookup() {
+		GenreIndex index = index();
+
+		// Test 1: names, keywords and shelf names ignoring case and punctuation
+		assertEquals("Science Fiction", index.lookup("science fiction"));
+		assertEquals("Science Fiction", index.lookup("Sci-Fi"));
+		assertEquals("Science Fiction", index.lookup("Space  Opera"));
+		assertEquals("Mystery", index.lookup("mystery_thriller"));
+
+		// Test 2: unknown terms
+		assertNull(index.lookup("cookbook"));
+		assertNull(index.lookup(null));
+		assertNull(index.lookup(" - "));
+	}
+
+	@Test
+	public void testSuggest() {
+		GenreIndex index = index();
+
+		// Test 1: the longest term wins ("science fiction" isn't also "fiction")
+		assertEquals(Arrays.asList("Science Fiction"), index.suggest("Science Fiction"));
+		assertEquals(Arrays.asList("Fiction", "Science Fiction"), index.suggest("Fiction / Science Fiction / General"));
+
+		// Test 2: name matches outrank keyword matches, shared keywords count for both
+		assertEquals(Arrays.asList("Fantasy", "Mystery"),
+				index.suggest("The Dragon Detective", "A fantasy of magic and mayhem"));
+
+		// Test 3: repeats count once and titles, descriptions and subjects combine
+		assertEquals(Arrays.asList("Science Fiction", "Fantasy"),
+				index.suggest(Arrays.asList("Aliens aliens aliens", null, "space opera", "dragons")));
+
+		// Test 4: nothing matches
+		assertTrue(index.suggest("A cookbook", "", null).isEmpty());
+	}
+
+	@Test
+	public void testComplete() {
+		GenreIndex index = index();
+
+		// Test 1: prefix of a name, or of any word inside it
+		assertEquals(Arrays.asList("Fantasy"), index.complete("fan", 10));
+		assertEquals(Arrays.asList("Fiction", "Science Fiction"), index.complete("FIC", 10));
+
+		// Test 2: name matches come before keyword only matches
+		assertEquals(Arrays.asList("Mystery", "Fantasy"), index.complete("m", 10));
+		assertEquals(Arrays.asList("Mystery"), index.complete("m", 1));
+		assertEquals(Arrays.asList("Science Fiction"), index.complete("opera", 10));
+
+		// Test 3: nothing matches
+		assertTrue(index.complete("zz", 10).isEmpty());
+		assertTrue(index.complete("", 10).isEmpty());
+		assertTrue(index.complete("f", 0).isEmpty());
+	}
+}
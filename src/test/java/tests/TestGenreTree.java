@@ -0,0 +1,84 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.BryceBG.DatabaseTools.Database.Genre.Genre;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreTree;
+
+/**
+ * Tests for the in memory genre hierarchy (no database needed).
+ *
+ * @author Bryce-BG
+ *
+ */
+public class TestGenreTree {
+
+	// name, parent, name, parent...
+	private static GenreTree tree(String... links) {
+		List<Genre> genres = new ArrayList<Genre>();
+		for (int x = 0; x < links.length; x += 2)
+			genres.add(new Genre(links[x + 1], links[x], null, null, null));
+		return new GenreTree(genres);
+	}
+
+	@Test
+	public void testDescendants() {
+		GenreTree tree = tree("Fantasy", null, "High Fantasy", "Fantasy", "Urban Fantasy", "Fantasy", "Epic",
+				"High Fantasy", "Mystery", null, "Cozy", "Mystery");
+
+		// Test 1: structure
+		assertEquals(6, tree.size());
+		assertEquals(Arrays.asList("Fantasy", "Mystery"), tree.getRoots());
+		assertEquals(Arrays.asList("High Fantasy", "Urban Fantasy"), tree.getChildren("Fantasy"));
+		assertEquals("High Fantasy", tree.getParent("Epic"));
+		assertNull(tree.getParent("Fantasy"));
+
+		// Test 2: descendants and subtree
+		assertEquals(Arrays.asList("High Fantasy", "Epic", "Urban Fantasy"), tree.getDescendants("Fantasy"));
+		assertEquals(Arrays.asList("Fantasy", "High Fantasy", "Epic", "Urban Fantasy"), tree.getSubtree("Fantasy"));
+		assertEquals(Arrays.asList("Epic"), tree.getSubtree("Epic"));
+		assertTrue(tree.getDescendants("Epic").isEmpty());
+
+		// Test 3: ancestors
+		assertEquals(Arrays.asList("High Fantasy", "Fantasy"), tree.getAncestors("Epic"));
+		assertTrue(tree.isAncestorOrSelf("Fantasy", "Epic"));
+		assertTrue(tree.isAncestorOrSelf("Epic", "Epic"));
+		assertFalse(tree.isAncestorOrSelf("Epic", "Fantasy"));
+		assertFalse(tree.isAncestorOrSelf("Mystery", "Epic"));
+
+		// Test 4: unknown genres
+		assertFalse(tree.contains("Horror"));
+		assertTrue(tree.getSubtree("Horror").isEmpty());
+		assertTrue(tree.getChildren("Horror").isEmpty());
+		assertFalse(tree.isAncestorOrSelf("Horror", "Epic"));
+	}
+
+	@Test
+	public void testCycles() {
+		// Test 1: a parent that would form a cycle is detected
+		GenreTree tree = tree("A", null, "B", "A", "C", "B");
+		assertTrue(tree.wouldCreateCycle("A", "C"));
+		assertTrue(tree.wouldCreateCycle("A", "A"));
+		assertFalse(tree.wouldCreateCycle("C", "A"));
+		assertTrue(tree.getCycles().isEmpty());
+
+		// Test 2: a cycle in the data is cut at its first genre (alphabetically)
+		tree = tree("X", "Z", "Y", "X", "Z", "Y", "W", "Y");
+		assertEquals(1, tree.getCycles().size());
+		assertEquals(3, tree.getCycles().get(0).size());
+		assertEquals(Arrays.asList("X"), tree.getRoots());
+		assertEquals(Arrays.asList("X", "Y", "W", "Z"), tree.getSubtree("X"));
+		assertEquals(4, tree.size());
+
+		// Test 3: a parent that isn't a genre is ignored
+		tree = tree("A", "missing");
+		assertEquals(Arrays.asList("A"), tree.getRoots());
+		assertNull(tree.getParent("A"));
+	}
+}
@@ -0,0 +1,38 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.IndexAdvisor;
+import com.BryceBG.DatabaseTools.Database.SchemaMigrator;
+
+import testUtils.UtilsForTests;
+
+public class TestIndexAdvisor {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(20);
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Test
+	public void testAdvise() {
+		// Test 1: a new library has every migration index
+		IndexAdvisor.Report report = new IndexAdvisor().advise();
+		assertNotNull(report);
+		assertTrue(report.getMissingIndexes().toString(), report.getMissingIndexes().isEmpty());
+		assertNotNull(report.toString());
+
+		// Test 2: migrating again changes nothing
+		assertEquals(0, SchemaMigrator.migrate(false));
+		assertTrue(new IndexAdvisor().advise().getMissingIndexes().isEmpty());
+	}
+}
@@ -0,0 +1,47 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.javatuples.Pair;
+import org.junit.Test;
+
+import com.BryceBG.DatabaseTools.Database.Series.Series;
+import com.BryceBG.DatabaseTools.utils.Json;
+
+public class TestJson {
+
+	@Test
+	public void testToJson() {
+		// Test 1: plain values
+		assertEquals("null", Json.toJson(null));
+		assertEquals("42", Json.toJson(42L));
+		assertEquals("1.5", Json.toJson(1.5f));
+		assertEquals("null", Json.toJson(Float.NaN));
+		assertEquals("true", Json.toJson(Boolean.TRUE));
+		assertEquals("\"COMPLETED\"", Json.toJson(Series.series_status_enum.COMPLETED));
+		assertEquals("\"1970-01-01T00:00:00Z\"", Json.toJson(new Timestamp(0)));
+
+		// Test 2: strings are escaped
+		assertEquals("\"a\\\"b\\\\c\\nd\\u0001\\u2028\"", Json.toJson("a\"b\\c\nd\u0001\u2028"));
+
+		// Test 3: containers (primitive arrays, lists, maps and pairs)
+		LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("ids", new int[] { 1, 2 });
+		map.put("names", Arrays.asList("x", null));
+		map.put("pair", new Pair<String, Integer>("isbn", 7));
+		map.put("empty", new String[0]);
+		assertEquals("{\"ids\":[1,2],\"names\":[\"x\",null],\"pair\":[\"isbn\",7],\"empty\":[]}", Json.toJson(map));
+
+		// Test 4: anything else is rejected
+		try {
+			Json.toJson(new Object());
+			fail("expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
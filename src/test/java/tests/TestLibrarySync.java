@@ -0,0 +1,115 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.FileState.FileState;
+import com.BryceBG.DatabaseTools.Scraper.LibrarySync;
+
+import testUtils.TestEpubs;
+import testUtils.UtilsForTests;
+
+public class TestLibrarySync {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(20);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Before
+	public void runBeforeTest() {
+		UtilsForTests.resetDB(false); // reset database to initial state
+	}
+
+	@Test
+	public void testSync() throws IOException {
+		Path root = folder.getRoot().toPath();
+		LibrarySync sync = new LibrarySync(2, 10, true);
+		Path ulysses = TestEpubs.writeEpub(root.resolve("joyce/ulysses.epub"),
+				TestEpubs.opf("Sync Ulysses", "James Joyce", "first"));
+		TestEpubs.writeEpub(root.resolve("joyce/dubliners.epub"), TestEpubs.opf("Sync Dubliners", "James Joyce", ""));
+		Files.write(root.resolve("notes.txt"), "not a book".getBytes());
+
+		// Test 1: first sync adds every epub
+		LibrarySync.SyncReport report = sync.sync(root);
+		assertEquals(report.toString(), 2, report.getScannedCount());
+		assertEquals(2, report.getAddedCount());
+		assertTrue(report.getFailures().isEmpty());
+		HashMap<String, FileState> index = DAORoot.fileStateDao.getFileStates(root.toString());
+		assertEquals(2, index.size());
+		long ulyssesID = index.get(ulysses.toString()).getBookID();
+		assertEquals("Sync Ulysses", DAORoot.bookDao.getBookByBookID(ulyssesID).getTitle());
+
+		// Test 2: nothing changed so nothing is read
+		report = sync.sync(root);
+		assertEquals(2, report.getUnchangedCount());
+		assertEquals(0, report.getAddedCount() + report.getUpdatedCount() + report.getRemovedCount());
+
+		// Test 3: a touched file keeps its book
+		Files.setLastModifiedTime(ulysses, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+		report = sync.sync(root);
+		assertEquals(1, report.getUnchangedCount());
+		assertEquals(0, report.getAddedCount() + report.getUpdatedCount() + report.getRemovedCount());
+
+		// Test 4: a changed file edits its book
+		TestEpubs.writeEpub(ulysses, TestEpubs.opf("Sync Ulysses", "James Joyce", "second"));
+		Files.setLastModifiedTime(ulysses, FileTime.fromMillis(System.currentTimeMillis() + 120000));
+		report = sync.sync(root);
+		assertEquals(report.toString(), 1, report.getUpdatedCount());
+		Book book = DAORoot.bookDao.getBookByBookID(ulyssesID);
+		assertEquals("second", book.getDescription());
+
+		// Test 5: an author added to the file is added to the book
+		TestEpubs.writeEpub(ulysses, TestEpubs.opf("Sync Ulysses", "James Joyce", "second").replace("</dc:creator>",
+				"</dc:creator><dc:creator opf:role=\"aut\">Sylvia Beach</dc:creator>"));
+		Files.setLastModifiedTime(ulysses, FileTime.fromMillis(System.currentTimeMillis() + 180000));
+		report = sync.sync(root);
+		assertEquals(report.toString(), 1, report.getUpdatedCount());
+		book = DAORoot.bookDao.getBookByBookID(ulyssesID);
+		assertEquals(2, book.getAuthorIDs().length);
+		assertNotNull(DAORoot.authorDao.getAuthor("Sylvia", "Beach"));
+
+		// Test 6: a moved file keeps its book
+		Path moved = Files.move(ulysses, root.resolve("ulysses-moved.epub"));
+		report = sync.sync(root);
+		assertEquals(1, report.getMovedCount());
+		assertEquals(0, report.getRemovedCount());
+		assertEquals(ulyssesID, DAORoot.fileStateDao.getFileStates(root.toString()).get(moved.toString()).getBookID());
+
+		// Test 7: a deleted file removes its book
+		Files.delete(moved);
+		report = sync.sync(root);
+		assertEquals(1, report.getRemovedCount());
+		assertNull(DAORoot.bookDao.getBookByBookID(ulyssesID));
+		assertEquals(1, DAORoot.fileStateDao.getFileStates(root.toString()).size());
+
+		// Test 8: an unreadable file is reported and not retried until it changes
+		Files.write(root.resolve("broken.epub"), "not a zip".getBytes());
+		report = sync.sync(root);
+		assertEquals(1, report.getFailures().size());
+		report = sync.sync(root);
+		assertTrue(report.getFailures().isEmpty());
+		assertEquals(2, report.getUnchangedCount());
+	}
+}
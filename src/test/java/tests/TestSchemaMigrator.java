@@ -0,0 +1,85 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.SchemaMigrator;
+
+import testUtils.UtilsForTests;
+
+public class TestSchemaMigrator {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(60);
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Test
+	public void testSplitStatements() {
+		// Test 1: semicolons in quotes and comments don't end a statement, comments are removed
+		String script = "--a comment; that isn't a statement\n" + "CREATE TABLE a (x VARCHAR DEFAULT ';');\n"
+				+ "/* block; comment */ INSERT INTO a VALUES ('it''s; fine'); --trailing comment\n"
+				+ "SELECT \"odd;name\" FROM a;\n\n;";
+		assertEquals(Arrays.asList("CREATE TABLE a (x VARCHAR DEFAULT ';')", "INSERT INTO a VALUES ('it''s; fine')",
+				"SELECT \"odd;name\" FROM a"), SchemaMigrator.splitStatements(script));
+
+		// Test 2: the last statement doesn't need a semicolon
+		assertEquals(Arrays.asList("SELECT 1", "SELECT 2"), SchemaMigrator.splitStatements("SELECT 1;\r\nSELECT 2"));
+
+		// Test 3: nothing to run
+		assertTrue(SchemaMigrator.splitStatements("--only a comment\n\n").isEmpty());
+	}
+
+	@Test
+	public void testMigrations() throws IOException {
+		// Test 1: versions count up from 1 and every script can be read
+		List<SchemaMigrator.Migration> migrations = SchemaMigrator.getMigrations();
+		for (int x = 0; x < migrations.size(); x++) {
+			assertEquals(x + 1, migrations.get(x).getVersion());
+			assertFalse(SchemaMigrator.splitStatements(migrations.get(x).readScript()).isEmpty());
+		}
+		assertEquals(migrations.size(), SchemaMigrator.getLatestVersion());
+
+		// Test 2: the indexes the migrations create (each only once)
+		List<String> names = SchemaMigrator.getIndexNames();
+		assertTrue(names.contains("book_identifier_value_idx"));
+		assertTrue(names.contains("books_title_trgm_idx"));
+		assertEquals(names.size(), new HashSet<String>(names).size());
+	}
+
+	@Test
+	public void testMigrate() throws SQLException, ClassNotFoundException {
+		// Test 1: a new library is at the latest version and migrating it again does nothing
+		assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getCurrentVersion());
+		assertEquals(0, SchemaMigrator.migrate(false));
+		assertTrue(SchemaMigrator.checkOnStartup());
+
+		// Test 2: a library created before schema_version existed is baselined and
+		// brought up to date in place
+		try (Connection conn = DAORoot.library.connectToDB(); Statement stmt = conn.createStatement()) {
+			stmt.execute("DROP TABLE schema_version");
+		}
+		assertEquals(0, SchemaMigrator.getCurrentVersion());
+		assertEquals(SchemaMigrator.getLatestVersion() - 1, SchemaMigrator.migrate(false));
+		assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getCurrentVersion());
+		UtilsForTests.resetDB(false); // the library still works
+		assertNotNull(DAORoot.userDao.getUserByUsername("admin"));
+	}
+}
@@ -4,8 +4,8 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 
 import org.javatuples.Pair;
-import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
@@ -17,6 +17,7 @@ import com.BryceBG.DatabaseTools.Database.Series.SeriesController;
 import com.BryceBG.DatabaseTools.Database.Series.SeriesDao.UpdateType;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class TestSeriesController {
@@ -29,17 +30,15 @@ public class TestSeriesController {
 	// functions)
 	Pair<String, String> authorName = new Pair<String, String>("james", "joyce");
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void beforeTest() {
-		// reset changes to database from tests
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	// DEPENDENCIES: SeriesDao.getAllSeries(), AuthorController.createAuthor()
 	@SuppressWarnings("unchecked")
 	@Test
@@ -216,4 +216,44 @@ public class TestSeriesDao {
 
 	}
 
-};
\ No newline at end of file
+	@Test
+	public void testUpdateSeriesBookCountConcurrently() throws InterruptedException {
+		Series testSeriesObject = DAORoot.seriesDao.getAllSeries().get(0);
+		int numBefore = testSeriesObject.getNumberBooksInSeries();
+
+		// Test 1: concurrent increments by series_id are all counted
+		Thread[] threads = new Thread[4];
+		for (int x = 0; x < threads.length; x++) {
+			threads[x] = new Thread(() -> {
+				for (int y = 0; y < 10; y++)
+					DAORoot.seriesDao.updateSeriesBookCount(testSeriesObject.getSeriesID(), SeriesDao.UpdateType.INC);
+			});
+			threads[x].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(numBefore + 40,
+				DAORoot.seriesDao.getSeriesBySeriesID(testSeriesObject.getSeriesID()).getNumberBooksInSeries());
+
+		// Test 2: series that doesn't exist and update type that isn't a count update
+		assertFalse(DAORoot.seriesDao.updateSeriesBookCount(-1, SeriesDao.UpdateType.INC));
+		assertFalse(DAORoot.seriesDao.updateSeriesBookCount(testSeriesObject.getSeriesID(),
+				SeriesDao.UpdateType.STATUS_CHANGE));
+	}
+
+	@Test
+	public void testReconcileSeriesBookCounts() {
+		Series testSeriesObject = DAORoot.seriesDao.getAllSeries().get(0);
+		int numBooks = DAORoot.bookDao.getBooksBySeries(testSeriesObject.getSeriesID()).length;
+
+		// Test 1: counts that match the books table are left alone
+		assertEquals(0, DAORoot.seriesDao.reconcileSeriesBookCounts());
+
+		// Test 2: a drifted count is recomputed
+		DAORoot.seriesDao.updateSeriesBookCount(testSeriesObject.getSeriesID(), SeriesDao.UpdateType.INC);
+		assertEquals(1, DAORoot.seriesDao.reconcileSeriesBookCounts());
+		assertEquals(numBooks,
+				DAORoot.seriesDao.getSeriesBySeriesID(testSeriesObject.getSeriesID()).getNumberBooksInSeries());
+	}
+
+}
\ No newline at end of file
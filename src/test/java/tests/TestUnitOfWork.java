@@ -0,0 +1,219 @@
+package tests;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.javatuples.Pair;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.UnitOfWork;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+
+import testUtils.UtilsForTests;
+
+/**
+ * Tests for the thread bound UnitOfWork that DAO connections join.
+ *
+ * @author Bryce-BG
+ *
+ */
+public class TestUnitOfWork {
+
+	// global timeout to ensure no issues
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(10);
+
+	@BeforeClass
+	public static void runOnce() {
+		UtilsForTests.setupForTests();
+	}
+
+	@Before
+	public void runBeforeTest() {
+		UtilsForTests.resetDB(false); // reset database to initial state
+	}
+
+	@Test
+	public void testCommitAndRollback() throws ClassNotFoundException, SQLException {
+		int borrowedBefore = DAORoot.library.getPool().getBorrowedCount();
+
+		// Test 1: every DAO call in the unit shares one connection and commits together
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			assertTrue(UnitOfWork.isActive());
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "One"));
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Two"));
+			assertNotNull(DAORoot.authorDao.getAuthor("Unit", "One")); // the unit sees its own changes
+			assertEquals(borrowedBefore + 1, DAORoot.library.getPool().getBorrowedCount());
+			uow.commit();
+		}
+		assertFalse(UnitOfWork.isActive());
+		assertEquals(borrowedBefore, DAORoot.library.getPool().getBorrowedCount());
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "One"));
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Two"));
+
+		// Test 2: a unit closed without commit is rolled back
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Three"));
+			assertTrue(DAORoot.authorDao.removeAuthor("Unit", "One"));
+		}
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Three"));
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "One"));
+	}
+
+	@Test
+	public void testNestedUnitFailureRollsBackAll() throws ClassNotFoundException, SQLException {
+		// Test 1: nested unit closed without commit makes the outer commit fail
+		try (UnitOfWork outer = UnitOfWork.begin()) {
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Outer"));
+			try (UnitOfWork inner = UnitOfWork.begin()) {
+				assertTrue(DAORoot.authorDao.addAuthor("Unit", "Inner"));
+			} // no commit
+			try {
+				outer.commit();
+				fail("Unit with a failed nested unit should not commit");
+			} catch (SQLException e) {
+				// expected
+			}
+		}
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Outer"));
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Inner"));
+
+		// Test 2: a failed statement (duplicate author) aborts the unit
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Dup"));
+			assertFalse(DAORoot.authorDao.addAuthor("Unit", "Dup"));
+			try {
+				uow.commit();
+				fail("Unit with a failed statement should not commit");
+			} catch (SQLException e) {
+				// expected
+			}
+		}
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Dup"));
+	}
+
+	@Test
+	public void testRun() {
+		// Test 1: a successful operation is committed
+		Pair<Boolean, String> rtVal = UnitOfWork.run(() -> {
+			DAORoot.authorDao.addAuthor("Unit", "Run");
+			return new Pair<Boolean, String>(Boolean.TRUE, "ok");
+		});
+		assertTrue(rtVal.getValue0());
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Run"));
+
+		// Test 2: a failed operation is rolled back and its result returned
+		rtVal = UnitOfWork.run(() -> {
+			DAORoot.authorDao.removeAuthor("Unit", "Run");
+			return new Pair<Boolean, String>(Boolean.FALSE, "failed");
+		});
+		assertFalse(rtVal.getValue0());
+		assertEquals("failed", rtVal.getValue1());
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Run"));
+
+		// Test 3: afterCompletion actions run once the unit is over
+		final boolean[] ran = new boolean[1];
+		UnitOfWork.run(() -> {
+			UnitOfWork.afterCompletion(() -> ran[0] = true);
+			assertFalse(ran[0]);
+			return new Pair<Boolean, String>(Boolean.TRUE, "ok");
+		});
+		assertTrue(ran[0]);
+	}
+
+	@Test
+	public void testIsolated() throws ClassNotFoundException, SQLException {
+		try (UnitOfWork isolated = UnitOfWork.beginIsolated()) {
+			// Test 1: units begun inside it still commit and roll back on their own
+			Pair<Boolean, String> rtVal = UnitOfWork.run(() -> {
+				DAORoot.authorDao.addAuthor("Unit", "Kept");
+				return new Pair<Boolean, String>(Boolean.TRUE, "ok");
+			});
+			assertTrue(rtVal.getValue0());
+			rtVal = UnitOfWork.run(() -> {
+				DAORoot.authorDao.addAuthor("Unit", "Undone");
+				return new Pair<Boolean, String>(Boolean.FALSE, "failed");
+			});
+			assertFalse(rtVal.getValue0());
+			assertTrue(UnitOfWork.isActive());
+			assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Kept"));
+			assertNull(DAORoot.authorDao.getAuthor("Unit", "Undone"));
+
+			// Test 2: a failed statement (duplicate author) doesn't stop the unit
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Dup"));
+			assertFalse(DAORoot.authorDao.addAuthor("Unit", "Dup"));
+			assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Dup"));
+
+			// Test 3: isolated units don't nest
+			try {
+				UnitOfWork.beginIsolated();
+				fail("An isolated unit should not start inside another unit");
+			} catch (SQLException e) {
+				// expected
+			}
+		}
+		// Test 4: everything is undone when it is closed
+		assertFalse(UnitOfWork.isActive());
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Kept"));
+		assertNull(DAORoot.authorDao.getAuthor("Unit", "Dup"));
+	}
+
+	@Test
+	public void testDaoConnectionClosedAfterCommit() throws ClassNotFoundException, SQLException {
+		// Test 1: a DAO that committed its own transaction (which starts a new one)
+		// can still close its connection after the unit has committed
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			Connection conn = DAORoot.library.connectToDB();
+			conn.setAutoCommit(false);
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Closed"));
+			conn.commit();
+			uow.commit();
+			conn.close(); // threw "savepoint does not exist" when it rolled back to the ended savepoint
+			assertTrue(conn.isClosed());
+		}
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "Closed"));
+
+		// Test 2: the same inside an isolated unit (the unit commits to a savepoint)
+		try (UnitOfWork isolated = UnitOfWork.beginIsolated()) {
+			try (UnitOfWork uow = UnitOfWork.begin()) {
+				Connection conn = DAORoot.library.connectToDB();
+				conn.setAutoCommit(false);
+				conn.commit();
+				uow.commit();
+				conn.close();
+			}
+			assertTrue(UnitOfWork.isActive());
+		}
+
+		// Test 3: removeBook() (a DAO unit of work) commits and closes cleanly
+		Book book = DAORoot.bookDao.getAllBooks().get(0);
+		assertTrue(DAORoot.bookDao.removeBook(book.getBookID()));
+		assertNull(DAORoot.bookDao.getBookByBookID(book.getBookID()));
+	}
+
+	@Test
+	public void testCursorScanInUnit() throws ClassNotFoundException, SQLException {
+		// Test 1: a cursor scan (read only, auto-commit off) works on a joined
+		// connection and sees the unit's own changes
+		try (UnitOfWork uow = UnitOfWork.begin()) {
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "Scanned"));
+			List<String> lastNames = new ArrayList<String>();
+			assertTrue(DAORoot.authorDao.forEachAuthor(author -> lastNames.add(author.getLastName())));
+			assertTrue(lastNames.contains("Scanned"));
+
+			// Test 2: the unit can still write afterwards
+			assertTrue(DAORoot.authorDao.addAuthor("Unit", "AfterScan"));
+			uow.commit();
+		}
+		assertNotNull(DAORoot.authorDao.getAuthor("Unit", "AfterScan"));
+	}
+}
@@ -1,17 +1,22 @@
 package tests;
 import static org.junit.Assert.*;
 
+import java.util.Base64;
+
 import org.javatuples.Pair;
-import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 
+import com.BryceBG.DatabaseTools.Database.User.Session;
 import com.BryceBG.DatabaseTools.Database.User.User;
 import com.BryceBG.DatabaseTools.Database.User.UserController;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.utils.GlobalConstants;
 
 /**
  * Tests for our UserController class.
@@ -21,16 +26,15 @@ import com.BryceBG.DatabaseTools.Database.DAORoot;
  */
 public class TestUserController {
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void beforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testLogin() {
 		String username = "admin";
@@ -242,6 +246,70 @@ public class TestUserController {
 
 	}
 
+	@Test
+	public void testSessions() {
+		String username = "admin";
+		String password = "Password1";
+
+		// Test 1: login fails with a bad password and works with a good one
+		Pair<String, String> login = UserController.login(username, "admin");
+		assertNull(login.getValue0());
+		assertEquals(GlobalConstants.MSG_INVALID_USER, login.getValue1());
+
+		login = UserController.login(username, password);
+		String token = login.getValue0();
+		assertNotNull(token);
+		Session session = UserController.getSession(token);
+		assertNotNull(session);
+		assertEquals(username, session.getUsername());
+		assertTrue(session.isAdmin());
+
+		// Test 2: garbage and tampered tokens are rejected
+		assertNull(UserController.getSession(null));
+		assertNull(UserController.getSession("not a token"));
+		// flip a bit of the decoded token (changing the last character isn't enough as
+		// it only carries 2 bits of the token so some changes decode to the same bytes)
+		byte[] raw = Base64.getUrlDecoder().decode(token);
+		raw[raw.length - 1] ^= 1;
+		String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+		assertNotEquals(token, tampered);
+		assertNull(UserController.getSession(tampered));
+
+		// Test 3: controller functions accept the token
+		String email = "sessionmember@email.com";
+		Pair<Boolean, String> res = UserController.createNewUser(token, "sessionmember", password, "Wallee", "Dora",
+				email, false);
+		assertTrue(res.getValue1(), res.getValue0().booleanValue());
+		res = UserController.createNewUser(tampered, "sessionmember2", password, "Wallee", "Dora",
+				"sessionmember2@email.com", false);
+		assertFalse(res.getValue0().booleanValue());
+		assertEquals(GlobalConstants.MSG_INVALID_SESSION, res.getValue1());
+
+		// Test 4: a non admin session can't perform admin actions
+		String memberToken = UserController.login("sessionmember", password).getValue0();
+		assertNotNull(memberToken);
+		res = UserController.createNewUser(memberToken, "sessionmember2", password, "Wallee", "Dora",
+				"sessionmember2@email.com", false);
+		assertFalse(res.getValue0().booleanValue());
+
+		// Test 5: deleting a user ends their sessions
+		res = UserController.deleteUser(token, "sessionmember");
+		assertTrue(res.getValue0().booleanValue());
+		assertNull(UserController.getSession(memberToken));
+
+		// Test 6: logout ends the session
+		assertTrue(UserController.logout(token).getValue0().booleanValue());
+		assertNull(UserController.getSession(token));
+		assertFalse(UserController.logout(token).getValue0().booleanValue());
+
+		// Test 7: changing password ends the sessions of the user
+		token = UserController.login(username, password).getValue0();
+		String newPassword = "adminN0gh";
+		assertTrue(UserController.setPassword(username, password, newPassword).getValue0().booleanValue());
+		assertNull(UserController.getSession(token));
+		assertTrue(UserController.setPassword(username, newPassword, password).getValue0().booleanValue());
+	}
+
 	// helper function for some tests
 	public void helperRemoveUser(String username) {
 		DAORoot.userDao.removeUser(username); // wipe out users created by other tests
@@ -3,28 +3,30 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 
-import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.mindrot.jbcrypt.BCrypt;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Series.Series;
 import com.BryceBG.DatabaseTools.Database.User.User;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class TestUserDao {
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void runBeforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testGetUserByUsername() {
 
@@ -209,4 +211,53 @@ public class TestUserDao {
 		assertFalse(users.contains(username)); // should have the user in the list of all users
 
 	}
+
+	@Test
+	public void testRateBook() {
+		Series series = DAORoot.seriesDao.getAllSeries().get(0);
+		long bookID = DAORoot.bookDao.getBooksBySeries(series.getSeriesID())[0].getBookID();
+		long adminID = DAORoot.userDao.getUserByUsername("admin").getUserId();
+		long userID = DAORoot.userDao.getUserByUsername("JamesJoyce").getUserId();
+
+		// Test 1: first rating of a book
+		assertTrue(DAORoot.userDao.rateBook(adminID, bookID, 8));
+		Book book = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(8, book.getAvgRating(), 0.001f);
+		assertEquals(1, book.getRatingCount());
+		assertEquals(8, DAORoot.userDao.getRating(adminID, bookID), 0.001f);
+
+		// Test 2: rating it again replaces the old rating
+		assertTrue(DAORoot.userDao.rateBook(adminID, bookID, 6));
+		book = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(6, book.getAvgRating(), 0.001f);
+		assertEquals(1, book.getRatingCount());
+
+		// Test 3: a second user's rating is averaged in (and the series follows)
+		assertTrue(DAORoot.userDao.rateBook(userID, bookID, 9));
+		book = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(7.5, book.getAvgRating(), 0.001f);
+		assertEquals(2, book.getRatingCount());
+		series = DAORoot.seriesDao.getSeriesBySeriesID(series.getSeriesID());
+		assertEquals(7.5, series.getAverageRating(), 0.001f);
+		assertEquals(2, series.getRatingCount());
+
+		// Test 4: invalid ratings
+		assertFalse(DAORoot.userDao.rateBook(adminID, bookID, 10.5f));
+		assertFalse(DAORoot.userDao.rateBook(adminID, -1, 5));
+
+		// Test 5: removing a rating
+		assertTrue(DAORoot.userDao.removeRating(adminID, bookID));
+		assertFalse(DAORoot.userDao.removeRating(adminID, bookID));
+		assertEquals(-1, DAORoot.userDao.getRating(adminID, bookID), 0.001f);
+		book = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(9, book.getAvgRating(), 0.001f);
+		assertEquals(1, book.getRatingCount());
+
+		// Test 6: deleting a user takes their ratings with them
+		assertTrue(DAORoot.userDao.removeUser("JamesJoyce"));
+		book = DAORoot.bookDao.getBookByBookID(bookID);
+		assertEquals(0, book.getAvgRating(), 0.001f);
+		assertEquals(0, book.getRatingCount());
+		assertEquals(0, DAORoot.seriesDao.getSeriesBySeriesID(series.getSeriesID()).getRatingCount());
+	}
 }
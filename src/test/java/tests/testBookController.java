@@ -3,7 +3,10 @@ package tests;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.javatuples.Pair;
@@ -14,10 +17,15 @@ import org.junit.Test;
 import org.junit.rules.Timeout;
 
 import com.BryceBG.DatabaseTools.Database.DAORoot;
+import com.BryceBG.DatabaseTools.Database.Page;
 import com.BryceBG.DatabaseTools.Database.Author.Author;
 import com.BryceBG.DatabaseTools.Database.Book.Book;
+import com.BryceBG.DatabaseTools.Database.Book.BookBulkLoader;
 import com.BryceBG.DatabaseTools.Database.Book.BookController;
+import com.BryceBG.DatabaseTools.Database.Book.BookRecord;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreDao;
 import com.BryceBG.DatabaseTools.Database.Series.Series;
+import com.BryceBG.DatabaseTools.Database.User.UserController;
 import com.BryceBG.DatabaseTools.utils.GlobalConstants;
 
 import testUtils.UtilsForTests;
@@ -794,6 +802,72 @@ public class testBookController {
 		assertEquals(7, res.getValue0().length);
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testAddBooks() {
+		String token = UserController.login(username, password).getValue0();
+		Pair<String, String>[] authors = new Pair[] { authorName };
+		Pair<String, String>[] newAuthor = new Pair[] { new Pair<String, String>("bulk", "author") };
+
+		// Test 1: must be an admin with a valid session
+		Pair<BookBulkLoader.Report, String> res = BookController.addBooks("bad token", Stream.empty(), false);
+		assertNull(res.getValue0());
+		assertEquals(GlobalConstants.MSG_INVALID_SESSION, res.getValue1());
+		String userToken = UserController.login("JamesJoyce", password).getValue0();
+		res = BookController.addBooks(userToken, Stream.empty(), false);
+		assertEquals(GlobalConstants.MSG_INVALID_USER_PERMISSIONS, res.getValue1());
+
+		// Test 2: good rows load and bad rows are reported without stopping the load
+		List<BookRecord> records = new ArrayList<BookRecord>();
+		BookRecord good = new BookRecord("Bulk\tBook 1", authors); // COPY special characters
+		good.setDescription("line1\nline2\\");
+		good.setGenres(new String[] { "TestGenre1", "TestGenre2" });
+		good.setIdentifiers(new Pair[] { new Pair<String, String>("ISBN", "0-306-40615-2") });
+		records.add(good); // row 1
+		records.add(new BookRecord("Bulk Book 2", newAuthor)); // row 2: unknown author
+		records.add(new BookRecord("  ", authors)); // row 3: invalid title
+		BookRecord badGenre = new BookRecord("Bulk Book 3", authors);
+		badGenre.setGenres(new String[] { "not a genre" });
+		records.add(badGenre); // row 4: unknown genre
+		records.add(new BookRecord("Bulk\tBook 1", authors)); // row 5: duplicate of row 1
+		records.add(new BookRecord("Bulk Book 4", authors)); // row 6
+
+		res = BookController.addBooks(token, records.stream(), false);
+		BookBulkLoader.Report report = res.getValue0();
+		assertEquals(GlobalConstants.MSG_SUCCESS, res.getValue1());
+		assertEquals(2, report.getInsertedCount());
+		assertEquals(0, report.getUpdatedCount());
+		assertEquals(4, report.getFailedCount());
+		HashSet<Integer> failedRows = new HashSet<Integer>();
+		for (Pair<Integer, String> failure : report.getFailures())
+			failedRows.add(failure.getValue0());
+		assertEquals(new HashSet<Integer>(Arrays.asList(2, 3, 4, 5)), failedRows);
+
+		Book loaded = DAORoot.bookDao.getBookByBookID(report.getBookID(1));
+		assertEquals("Bulk\tBook 1", loaded.getTitle());
+		assertEquals("line1\nline2\\", loaded.getDescription());
+		assertEquals(2, loaded.getGenres().length);
+		assertEquals(1, loaded.getIdentifiers().length);
+		assertEquals(-1, report.getBookID(2));
+
+		// Test 3: loading the same book again updates it and replaces its genres
+		good.setDescription("new description");
+		good.setGenres(new String[] { "TestGenre2" });
+		report = BookController.addBooks(token, Stream.of(good), false).getValue0();
+		assertEquals(0, report.getInsertedCount());
+		assertEquals(1, report.getUpdatedCount());
+		assertEquals(loaded.getBookID(), report.getBookID(1));
+		loaded = DAORoot.bookDao.getBookByBookID(loaded.getBookID());
+		assertEquals("new description", loaded.getDescription());
+		assertArrayEquals(new String[] { "TestGenre2" }, loaded.getGenres());
+
+		// Test 4: missing authors can be created
+		report = BookController.addBooks(token, Stream.of(new BookRecord("Bulk Book 2", newAuthor)), true)
+				.getValue0();
+		assertEquals(1, report.getInsertedCount());
+		assertNotNull(DAORoot.authorDao.getAuthor("Bulk", "Author"));
+	}
+
 	@Test
 	public void testGetRandomBook() {
 		HashSet<Book> randomBook = new HashSet<Book>();
@@ -802,4 +876,119 @@ public class testBookController {
 		}
 		assertTrue(1<randomBook.size());
 	}
+
+	@Test
+	public void testSearchBook_paged() {
+		int searchType = BookController.SEARCH_BY_TITLE;
+
+		// Test 1: walk every page of a broad title search
+		List<Book> books = new ArrayList<Book>();
+		String token = null;
+		int pages = 0;
+		do {
+			Pair<Page<Book>, String> res = BookController.searchBook(searchType, "TestBoo", token, 3);
+			assertNotNull(res.getValue1(), res.getValue0());
+			assertTrue(res.getValue0().getItems().size() <= 3);
+			books.addAll(res.getValue0().getItems());
+			token = res.getValue0().getNextPageToken();
+			pages++;
+		} while (token != null);
+		assertEquals(3, pages);
+		assertEquals(7, books.size());
+		assertEquals(7, new HashSet<Book>(books).size()); // no book returned twice
+		// pages are in title order (the database's collation, not String.compareTo())
+		List<Long> expected = UtilsForTests.queryBookIDs(
+				"SELECT book_id FROM books WHERE title ILIKE ? ORDER BY title, book_id", "%TestBoo%");
+		List<Long> bookIDs = new ArrayList<Long>();
+		for (Book bookX : books)
+			bookIDs.add(bookX.getBookID());
+		assertEquals(expected, bookIDs);
+
+		// Test 2: a malformed page token
+		Pair<Page<Book>, String> res = BookController.searchBook(searchType, "TestBoo", "not a token", 3);
+		assertNull(res.getValue0());
+		assertNotNull(res.getValue1());
+
+		// Test 3: a token from one kind of search can't be used for another
+		token = BookController.searchBook(searchType, "TestBoo", null, 3).getValue0().getNextPageToken();
+		Series series = DAORoot.seriesDao.getAllSeries().get(0);
+		res = BookController.searchBook(BookController.SEARCH_BY_SERIES, series.getSeriesID(), token, 3);
+		assertNull(res.getValue0());
+
+		// Test 4: other search types page too
+		res = BookController.searchBook(BookController.SEARCH_BY_AUTHOR, "James Joyce", null, 4);
+		assertEquals(4, res.getValue0().getItems().size());
+		assertTrue(res.getValue0().hasNextPage());
+		res = BookController.searchBook(BookController.SEARCH_BY_AUTHOR, "James Joyce",
+				res.getValue0().getNextPageToken(), 4);
+		assertEquals(2, res.getValue0().getItems().size());
+		assertFalse(res.getValue0().hasNextPage());
+
+		res = BookController.searchBook(BookController.SEARCH_BY_SERIES, series.getSeriesID(), null, 10);
+		assertEquals(3, res.getValue0().getItems().size());
+	}
+
+
+	@Test
+	public void testSearchBook_byText() {
+		int searchType = BookController.SEARCH_BY_TEXT;
+
+		// Test 1: exact title ranks first
+		Pair<Page<Book>, String> res = BookController.searchBook(searchType, "TestBook3", null, 10);
+		assertNull(res.getValue1());
+		assertFalse(res.getValue0().getItems().isEmpty());
+		assertEquals("TestBook3", res.getValue0().getItems().get(0).getTitle());
+
+		// Test 2: an unfinished word is matched as a prefix (titles are TestBook1-7)
+		res = BookController.searchBook(searchType, "testboo", null, 10);
+		assertEquals(7, res.getValue0().getItems().size());
+
+		// Test 3: descriptions are searched too and results page
+		res = BookController.searchBook(searchType, "\"test book\"", null, 2);
+		assertEquals(2, res.getValue0().getItems().size());
+		assertTrue(res.getValue0().hasNextPage());
+		Pair<Page<Book>, String> res2 = BookController.searchBook(searchType, "\"test book\"",
+				res.getValue0().getNextPageToken(), 2);
+		assertFalse(res.getValue0().getItems().contains(res2.getValue0().getItems().get(0)));
+
+		// Test 4: no matches and bad input
+		res = BookController.searchBook(searchType, "zzyzx", null, 10);
+		assertTrue(res.getValue0().getItems().isEmpty());
+		res = BookController.searchBook(searchType, "   ", null, 10);
+		assertNull(res.getValue0());
+
+		// Test 5: non paged search returns the first page
+		Pair<Book[], String> res3 = BookController.searchBook(searchType, "TestBook3");
+		assertEquals("TestBook3", res3.getValue0()[0].getTitle());
+	}
+
+	@Test
+	public void testSearchBook_byGenre() {
+		int searchType = BookController.SEARCH_BY_GENRE;
+
+		// Test 1: books tagged with the genre (TestBook2 has TestGenre1, TestBook3 has both)
+		Pair<Page<Book>, String> res = BookController.searchBook(searchType, "TestGenre1", null, 10);
+		assertNull(res.getValue1());
+		assertEquals(2, res.getValue0().getItems().size());
+		res = BookController.searchBook(searchType, "TestGenre2", null, 10);
+		assertEquals(1, res.getValue0().getItems().size());
+
+		// Test 2: subgenres are included (each book once)
+		assertTrue(DAORoot.genreDao.editGenre(GenreDao.PARENT, "TestGenre1", "TestGenre2"));
+		res = BookController.searchBook(searchType, "TestGenre2", null, 1);
+		assertEquals(1, res.getValue0().getItems().size());
+		assertTrue(res.getValue0().hasNextPage());
+		Pair<Page<Book>, String> res2 = BookController.searchBook(searchType, "TestGenre2",
+				res.getValue0().getNextPageToken(), 1);
+		assertEquals(1, res2.getValue0().getItems().size());
+		assertFalse(res2.getValue0().hasNextPage());
+		assertNotEquals(res.getValue0().getItems().get(0), res2.getValue0().getItems().get(0));
+
+		// Test 3: unknown genre and bad input
+		res = BookController.searchBook(searchType, "Hello I don't exist", null, 10);
+		assertNull(res.getValue0());
+		res = BookController.searchBook(searchType, 5, null, 10);
+		assertNull(res.getValue0());
+	}
+
 }
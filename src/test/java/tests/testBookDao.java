@@ -9,7 +9,6 @@ import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.javatuples.Pair;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
@@ -20,26 +19,27 @@ import com.BryceBG.DatabaseTools.Database.Author.Author;
 import com.BryceBG.DatabaseTools.Database.Book.Book;
 import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface;
 import com.BryceBG.DatabaseTools.Database.Book.BookDaoInterface.EDIT_TYPE;
+import com.BryceBG.DatabaseTools.Database.Book.BookPatch;
 import com.BryceBG.DatabaseTools.Database.Series.Series;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class testBookDao {
 
 	// global timeout to ensure no issues
-	@Rule
+	@Rule(order = 0)
 	public Timeout globalTimeout = Timeout.seconds(20);
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule(order = 1)
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void runBeforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testGetAllBooks() {
 		ArrayList<Book> books = DAORoot.bookDao.getAllBooks();
@@ -148,6 +148,19 @@ public class testBookDao {
 		}
 	}
 
+	// Dependencies: getAllBooks()
+	@Test
+	public void testForEachBook() {
+		ArrayList<Book> books = DAORoot.bookDao.getAllBooks();
+		List<Book> visited = new ArrayList<Book>();
+
+		// Test 1: every book is visited once and is filled out the same as
+		// getAllBooks() (authors, genres, identifiers)
+		assertTrue(DAORoot.bookDao.forEachBook(visited::add));
+		assertEquals(books.size(), visited.size());
+		assertTrue(visited.containsAll(books));
+	}
+
 	// Dependencies: getAllBooks(), authorDao.getAuthor()
 	@Test
 	public void testGetBooksByAuthor() {
@@ -175,6 +188,44 @@ public class testBookDao {
 
 	}
 
+	// Dependencies: getBooksByAuthor(), authorDao.getAuthor()
+	@Test
+	public void testGetBooksByAuthorPaged() {
+		Author author1 = DAORoot.authorDao.getAuthor("James", "Joyce");
+		Book[] all = DAORoot.bookDao.getBooksByAuthor(author1.getAuthorID());
+
+		for (BookDaoInterface.BOOK_SORT sort : BookDaoInterface.BOOK_SORT.values()) {
+			// Test 1: walking the pages returns every book exactly once
+			List<Book> paged = new ArrayList<Book>();
+			Book last = null;
+			Book[] page;
+			do {
+				page = DAORoot.bookDao.getBooksByAuthor(author1.getAuthorID(), sort, last, 4);
+				assertTrue(page.length <= 4);
+				for (Book bookX : page) {
+					assertFalse(paged.contains(bookX));
+					paged.add(bookX);
+				}
+				if (page.length > 0)
+					last = page[page.length - 1];
+			} while (page.length == 4);
+			assertEquals(all.length, paged.size());
+
+			// Test 2: results come back in the requested order (titles in the database's
+			// collation order)
+			String order = (sort == BookDaoInterface.BOOK_SORT.BY_TITLE) ? "b.title, b.book_id" : "b.book_id";
+			List<Long> expected = UtilsForTests.queryBookIDs("SELECT b.book_id FROM books b JOIN book_authors ba "
+					+ "ON ba.book_id = b.book_id WHERE ba.author_id = ? ORDER BY " + order, author1.getAuthorID());
+			List<Long> pagedIDs = new ArrayList<Long>();
+			for (Book bookX : paged)
+				pagedIDs.add(bookX.getBookID());
+			assertEquals(expected, pagedIDs);
+		}
+
+		// Test 3: author with no books
+		assertEquals(0, DAORoot.bookDao.getBooksByAuthor(-1, null, null, 10).length);
+	}
+
 	@Test
 	public void testGetRandomBook() {
 		List<Book> books = new ArrayList<Book>();
@@ -191,6 +242,33 @@ public class testBookDao {
 		assertTrue(books.size() > 1);
 	}
 
+	@Test
+	public void testGetRandomBooks() {
+		// Test 1: books returned are distinct
+		Book[] books = DAORoot.bookDao.getRandomBooks(4, null);
+		assertEquals(4, books.length);
+		for (int x = 0; x < books.length; x++) {
+			for (int y = x + 1; y < books.length; y++) {
+				assertNotEquals(books[x].getBookID(), books[y].getBookID());
+			}
+		}
+
+		// Test 2: asking for more books than exist returns every book once
+		books = DAORoot.bookDao.getRandomBooks(20, null);
+		assertEquals(DAORoot.bookDao.getAllBooks().size(), books.length);
+
+		// Test 3: only books in the genre (TestBook2 and TestBook3) are returned
+		books = DAORoot.bookDao.getRandomBooks(5, "TestGenre1");
+		assertEquals(2, books.length);
+		for (Book bookX : books) {
+			assertTrue(ArrayUtils.contains(bookX.getGenres(), "TestGenre1"));
+		}
+
+		// Test 4: genre not in database and bad count
+		assertEquals(0, DAORoot.bookDao.getRandomBooks(5, "NotAGenre").length);
+		assertEquals(0, DAORoot.bookDao.getRandomBooks(0, null).length);
+	}
+
 	// DEPENDENCY
 	@Test
 	public void testGetBookByIdentifier() {
@@ -357,7 +435,7 @@ public class testBookDao {
 		assertFalse(bookDao.editBook(-1, BookDaoInterface.EDIT_TYPE.ADD_AUTHOR, possibleAuthorIDs[0]));
 
 		// TEST 3: try to add with null new authorID
-		runBeforeTest(); // reset DB as otherwise this could fail for other reasons
+		UtilsForTests.resetDB(false); // reset DB as otherwise this could fail for other reasons
 		booksBefore = bookDao.getAllBooks();
 		assertFalse(bookDao.editBook(booksBefore.get(0).getBookID(), BookDaoInterface.EDIT_TYPE.ADD_AUTHOR, null));
 
@@ -690,6 +768,12 @@ public class testBookDao {
 		Book bookX = bookDao.getBookByBookID(booksBefore.get(0).getBookID());
 		assertEquals(validNewValue.intValue(), bookX.getSeriesID());
 
+		// Test 6: the series count follows the book
+		int expectedCount = series.get(0).getNumberBooksInSeries();
+		if (booksBefore.get(0).getSeriesID() != validNewValue.intValue())
+			expectedCount++;
+		assertEquals(expectedCount, seriesDao.getSeriesBySeriesID(validNewValue).getNumberBooksInSeries());
+
 	}
 
 	// Dependencies getAllBooks(), getBookByBookID(), getAllGenres()
@@ -791,4 +875,60 @@ public class testBookDao {
 
 	}
 
+	// Dependencies getAllBooks(), getBookByBookID(), getAllAuthors(), getAllGenreNames()
+	@Test
+	public void testEditBook_Patch() {
+		Book bookBefore = bookDao.getAllBooks().get(0);
+		long bookID = bookBefore.getBookID();
+		ArrayList<String> genreNames = genreDao.getAllGenreNames();
+		int newAuthorID = 0;
+		for (Author authorX : authorDao.getAllAuthors()) {
+			if (ArrayUtils.contains(bookBefore.getAuthorIDs(), authorX.getAuthorID()) == false) {
+				newAuthorID = authorX.getAuthorID();
+				break;
+			}
+		}
+		assertTrue(newAuthorID > 0);
+
+		// Test 1: several fields and junction tables in one patch
+		BookPatch patch = new BookPatch().set(EDIT_TYPE.SET_DESCRIPTION, "patched description")
+				.set(EDIT_TYPE.SET_PUBLISHER, "patched publisher").set(EDIT_TYPE.SET_EDITION, 3)
+				.set(EDIT_TYPE.ADD_AUTHOR, newAuthorID).set(EDIT_TYPE.SET_GENRES, new String[] { genreNames.get(0) });
+		assertTrue(bookDao.editBook(bookID, patch));
+		Book bookX = bookDao.getBookByBookID(bookID);
+		assertEquals("patched description", bookX.getDescription());
+		assertEquals("patched publisher", bookX.getPublisher());
+		assertEquals(3, bookX.getEdition());
+		assertEquals(bookBefore.getCountAuthors() + 1, bookX.getCountAuthors());
+		assertTrue(ArrayUtils.contains(bookX.getAuthorIDs(), newAuthorID));
+		assertArrayEquals(new String[] { genreNames.get(0) }, bookX.getGenres());
+
+		// Test 2: an edit that fails rolls back the rest of the patch
+		patch = new BookPatch().set(EDIT_TYPE.SET_DESCRIPTION, "never saved")
+				.set(EDIT_TYPE.REMOVE_AUTHOR, newAuthorID).set(EDIT_TYPE.SET_GENRES, new String[] { "HelloWorld" });
+		assertFalse(bookDao.editBook(bookID, patch));
+		bookX = bookDao.getBookByBookID(bookID);
+		assertEquals("patched description", bookX.getDescription());
+		assertTrue(ArrayUtils.contains(bookX.getAuthorIDs(), newAuthorID));
+
+		// Test 3: a later value for a field replaces the earlier one
+		assertTrue(bookDao.editBook(bookID, new BookPatch().set(EDIT_TYPE.SET_PUBLISHER, "first")
+				.set(EDIT_TYPE.SET_PUBLISHER, "second").set(EDIT_TYPE.REMOVE_AUTHOR, newAuthorID)));
+		bookX = bookDao.getBookByBookID(bookID);
+		assertEquals("second", bookX.getPublisher());
+		assertEquals(bookBefore.getCountAuthors(), bookX.getCountAuthors());
+		assertEquals(bookBefore.getPrimaryAuthorID(), bookX.getPrimaryAuthorID());
+
+		// Test 4: invalid patches are rejected without querying
+		assertFalse(bookDao.editBook(bookID, (BookPatch) null));
+		assertFalse(bookDao.editBook(bookID, new BookPatch()));
+		assertFalse(bookDao.editBook(bookID, new BookPatch().set(EDIT_TYPE.SET_DESCRIPTION, "x")
+				.set(EDIT_TYPE.SET_EDITION, "3")));
+		assertFalse(bookDao.editBook(bookID,
+				new BookPatch().set(EDIT_TYPE.ADD_AUTHOR, newAuthorID).set(EDIT_TYPE.REMOVE_AUTHOR, newAuthorID)));
+
+		// Test 5: bookID is not in DB or an added author isn't
+		assertFalse(bookDao.editBook(-1, new BookPatch().set(EDIT_TYPE.SET_DESCRIPTION, "x")));
+		assertFalse(bookDao.editBook(bookID, new BookPatch().set(EDIT_TYPE.ADD_AUTHOR, 50)));
+	}
 }
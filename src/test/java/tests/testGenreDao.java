@@ -3,9 +3,9 @@ import static com.BryceBG.DatabaseTools.Database.DAORoot.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.lang.ArrayUtils;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
@@ -13,25 +13,26 @@ import org.junit.rules.Timeout;
 
 import com.BryceBG.DatabaseTools.Database.Genre.Genre;
 import com.BryceBG.DatabaseTools.Database.Genre.GenreDao;
+import com.BryceBG.DatabaseTools.Database.Genre.GenreIndex;
 
+import testUtils.RollbackRule;
 import testUtils.UtilsForTests;
 
 public class testGenreDao {
 
 	// global timeout to ensure no issues of endless runtime for tests
-	@Rule
+	@Rule(order = 0)
 	public Timeout globalTimeout = Timeout.seconds(20);
 
+	// every test's changes are rolled back (each test starts from the test database's entries)
+	@Rule(order = 1)
+	public RollbackRule rollback = new RollbackRule();
+
 	@BeforeClass
 	public static void runOnce() {
 		UtilsForTests.setupForTests();
 	}
 
-	@Before
-	public void runBeforeTest() {
-		UtilsForTests.resetDB(false); // reset database to initial state
-	}
-
 	@Test
 	public void testGetAllGenreNames() {
 		ArrayList<String> genreNames = genreDao.getAllGenreNames();
@@ -360,5 +361,27 @@ public class testGenreDao {
 
 		assertFalse(genreDao.editGenre(8, genreName, "TestGenre3"));
 
+		// Test 8: parent would make a cycle (TestGenre1 is now TestGenre2's parent)
+		assertFalse(genreDao.editGenre(editField, "TestGenre1", genreName));
+		assertFalse(genreDao.editGenre(editField, genreName, genreName));
+		assertNull(genreDao.getGenre("TestGenre1").getParent());
+		assertTrue(genreDao.getGenreTree().isAncestorOrSelf("TestGenre1", genreName));
+
+	}
+
+	// Dependencies: editGenre()
+	@Test
+	public void testGetGenreIndex() {
+		// Test 1: loaded from the genres table
+		GenreIndex before = genreDao.getGenreIndex();
+		assertEquals("TestGenre2", before.lookup("keyword1"));
+		assertEquals("TestGenre2", before.lookup("test genre2"));
+		assertSame(before, genreDao.getGenreIndex());
+
+		// Test 2: edits swap in a new index (holders of the old one are unaffected)
+		assertTrue(genreDao.editGenre(GenreDao.KEYWORDS, "TestGenre1", new String[] { "ulysses" }));
+		assertNotSame(before, genreDao.getGenreIndex());
+		assertEquals(Arrays.asList("TestGenre1"), genreDao.getGenreIndex().suggest("Ulysses"));
+		assertNull(before.lookup("ulysses"));
 	}
 }